@@ -79,7 +79,6 @@ BUCK_DIR_JAVA_ARGS = {
     "path_to_compile_asset_catalogs_build_phase_sh":
     "src/com/facebook/buck/apple/compile_asset_catalogs_build_phase.sh",
 
-    "path_to_intellij_py": "src/com/facebook/buck/command/intellij.py",
     "path_to_jacoco_jars": "third-party/java/jacoco-0.6.4/out",
     "path_to_static_content": "webserver/static",
     "path_to_pex": "src/com/facebook/buck/python/pex.py",
@@ -94,6 +94,7 @@ public class AaptPackageResources extends AbstractBuildRule
   private final JavacOptions javacOptions;
   private final boolean rDotJavaNeedsDexing;
   private final boolean shouldBuildStringSourceMap;
+  private final boolean emitRDotJavaBytecode;
   private final BuildOutputInitializer<BuildOutput> buildOutputInitializer;
 
   AaptPackageResources(
@@ -107,7 +108,8 @@ public class AaptPackageResources extends AbstractBuildRule
       ImmutableSet<TargetCpuType> cpuFilters,
       JavacOptions javacOptions,
       boolean rDotJavaNeedsDexing,
-      boolean shouldBuildStringSourceMap) {
+      boolean shouldBuildStringSourceMap,
+      boolean emitRDotJavaBytecode) {
     super(params, resolver);
     this.manifest = Preconditions.checkNotNull(manifest);
     this.filteredResourcesProvider = Preconditions.checkNotNull(filteredResourcesProvider);
@@ -118,6 +120,7 @@ public class AaptPackageResources extends AbstractBuildRule
     this.javacOptions = Preconditions.checkNotNull(javacOptions);
     this.rDotJavaNeedsDexing = rDotJavaNeedsDexing;
     this.shouldBuildStringSourceMap = shouldBuildStringSourceMap;
+    this.emitRDotJavaBytecode = emitRDotJavaBytecode;
     this.buildOutputInitializer = new BuildOutputInitializer<>(params.getBuildTarget(), this);
   }
 
@@ -132,7 +135,8 @@ public class AaptPackageResources extends AbstractBuildRule
         .set("packageType", packageType.toString())
         .set("cpuFilters", ImmutableSortedSet.copyOf(cpuFilters).toString())
         .set("rDotJavaNeedsDexing", rDotJavaNeedsDexing)
-        .set("shouldBuildStringSourceMap", shouldBuildStringSourceMap);
+        .set("shouldBuildStringSourceMap", shouldBuildStringSourceMap)
+        .set("emitRDotJavaBytecode", emitRDotJavaBytecode);
   }
 
   @Override
@@ -315,11 +319,18 @@ public class AaptPackageResources extends AbstractBuildRule
     Path rDotJavaSrc = getPathToGeneratedRDotJavaSrcFiles();
     steps.add(new MakeCleanDirectoryStep(rDotJavaSrc));
 
+    // Create the path where the R.java files will be compiled.
+    Path rDotJavaBin = getPathToCompiledRDotJavaFiles();
+    steps.add(new MakeCleanDirectoryStep(rDotJavaBin));
+
+    // The uber R.java files only contain constants, so when requested, their classes are written
+    // directly by the merge step rather than by compiling the (often enormous) sources with javac.
     Path rDotTxtDir = getPathToRDotTxtDir();
     MergeAndroidResourcesStep mergeStep = new MergeAndroidResourcesStep(
         resourceDeps,
         Optional.of(rDotTxtDir.resolve("R.txt")),
-        rDotJavaSrc);
+        rDotJavaSrc,
+        emitRDotJavaBytecode ? Optional.of(rDotJavaBin) : Optional.<Path>absent());
     steps.add(mergeStep);
 
     if (shouldBuildStringSourceMap) {
@@ -339,16 +350,14 @@ public class AaptPackageResources extends AbstractBuildRule
       buildableContext.recordArtifactsInDirectory(outputDirPath);
     }
 
-    // Create the path where the R.java files will be compiled.
-    Path rDotJavaBin = getPathToCompiledRDotJavaFiles();
-    steps.add(new MakeCleanDirectoryStep(rDotJavaBin));
-
-    JavacStep javac = RDotJava.createJavacStepForUberRDotJavaFiles(
-        ImmutableSet.copyOf(getResolver().getAllPaths(mergeStep.getRDotJavaFiles())),
-        rDotJavaBin,
-        javacOptions,
-        getBuildTarget());
-    steps.add(javac);
+    if (!emitRDotJavaBytecode) {
+      JavacStep javac = RDotJava.createJavacStepForUberRDotJavaFiles(
+          ImmutableSet.copyOf(getResolver().getAllPaths(mergeStep.getRDotJavaFiles())),
+          rDotJavaBin,
+          javacOptions,
+          getBuildTarget());
+      steps.add(javac);
+    }
 
     Path rDotJavaClassesTxt = getPathToRDotJavaClassesTxt();
     steps.add(new MakeCleanDirectoryStep(rDotJavaClassesTxt.getParent()));
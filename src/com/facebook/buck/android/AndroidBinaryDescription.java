@@ -155,6 +155,7 @@ public class AndroidBinaryDescription implements Description<AndroidBinaryDescri
         packageType,
         ImmutableSet.copyOf(args.cpuFilters.get()),
         args.buildStringSourceMap.or(false),
+        args.emitRDotJavaBytecode.or(false),
         shouldPreDex,
         AndroidBinary.getPrimaryDexPath(params.getBuildTarget()),
         dexSplitMode,
@@ -269,6 +270,7 @@ public class AndroidBinaryDescription implements Description<AndroidBinaryDescri
     public Optional<Long> linearAllocHardLimit;
     public Optional<List<String>> resourceFilter;
     public Optional<Boolean> buildStringSourceMap;
+    public Optional<Boolean> emitRDotJavaBytecode;
     public Optional<Set<TargetCpuType>> cpuFilters;
     public Optional<ImmutableSortedSet<BuildTarget>> preprocessJavaClassesDeps;
     public Optional<String> preprocessJavaClassesBash;
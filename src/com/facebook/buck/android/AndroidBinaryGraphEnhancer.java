@@ -70,6 +70,7 @@ public class AndroidBinaryGraphEnhancer {
   private final PackageType packageType;
   private final ImmutableSet<TargetCpuType> cpuFilters;
   private final boolean shouldBuildStringSourceMap;
+  private final boolean emitRDotJavaBytecode;
   private final boolean shouldPreDex;
   private final Path primaryDexPath;
   private final DexSplitMode dexSplitMode;
@@ -90,6 +91,7 @@ public class AndroidBinaryGraphEnhancer {
       PackageType packageType,
       ImmutableSet<TargetCpuType> cpuFilters,
       boolean shouldBuildStringSourceMap,
+      boolean emitRDotJavaBytecode,
       boolean shouldPreDex,
       Path primaryDexPath,
       DexSplitMode dexSplitMode,
@@ -111,6 +113,7 @@ public class AndroidBinaryGraphEnhancer {
     this.packageType = Preconditions.checkNotNull(packageType);
     this.cpuFilters = Preconditions.checkNotNull(cpuFilters);
     this.shouldBuildStringSourceMap = shouldBuildStringSourceMap;
+    this.emitRDotJavaBytecode = emitRDotJavaBytecode;
     this.shouldPreDex = shouldPreDex;
     this.primaryDexPath = Preconditions.checkNotNull(primaryDexPath);
     this.dexSplitMode = Preconditions.checkNotNull(dexSplitMode);
@@ -184,7 +187,8 @@ public class AndroidBinaryGraphEnhancer {
         cpuFilters,
         javacOptions,
         shouldPreDex,
-        shouldBuildStringSourceMap);
+        shouldBuildStringSourceMap,
+        emitRDotJavaBytecode);
     ruleResolver.addToIndex(aaptPackageResources);
     enhancedDeps.add(aaptPackageResources);
 
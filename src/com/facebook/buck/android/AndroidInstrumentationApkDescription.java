@@ -100,6 +100,7 @@ public class AndroidInstrumentationApkDescription
         PackageType.INSTRUMENTED,
         apkUnderTest.getCpuFilters(),
         /* shouldBuildStringSourceMap */ false,
+        /* emitRDotJavaBytecode */ false,
         /* shouldPreDex */ false,
         primaryDexPath,
         DexSplitMode.NO_SPLIT,
@@ -35,22 +35,24 @@ import com.google.common.collect.FluentIterable;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableSortedMap;
 import com.google.common.collect.Sets;
 import com.google.common.collect.SortedSetMultimap;
 import com.google.common.collect.TreeMultimap;
 
 import java.io.IOException;
-import java.io.PrintWriter;
 import java.nio.file.Path;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.SortedSet;
 
 public class MergeAndroidResourcesStep implements Step {
 
   private final ImmutableList<HasAndroidResourceDeps> androidResourceDeps;
   private final Optional<Path> uberRDotTxt;
   private final Path outputDir;
+  private final Optional<Path> rDotJavaClassesDir;
 
   /**
    * Merges text symbols files from {@code aapt} for each of the input {@code android_resource}
@@ -62,9 +64,28 @@ public class MergeAndroidResourcesStep implements Step {
       List<HasAndroidResourceDeps> androidResourceDeps,
       Optional<Path> uberRDotTxt,
       Path outputDir) {
+    this(
+        androidResourceDeps,
+        uberRDotTxt,
+        outputDir,
+        /* rDotJavaClassesDir */ Optional.<Path>absent());
+  }
+
+  /**
+   * Like {@link #MergeAndroidResourcesStep(List, Optional, Path)}, but if
+   * {@code rDotJavaClassesDir} is present, the compiled {@code R} classes for each package are
+   * also written to that directory, so that the {@code R.java} files do not need to be compiled
+   * with javac.
+   */
+  public MergeAndroidResourcesStep(
+      List<HasAndroidResourceDeps> androidResourceDeps,
+      Optional<Path> uberRDotTxt,
+      Path outputDir,
+      Optional<Path> rDotJavaClassesDir) {
     this.androidResourceDeps = ImmutableList.copyOf(androidResourceDeps);
     this.uberRDotTxt = Preconditions.checkNotNull(uberRDotTxt);
     this.outputDir = Preconditions.checkNotNull(outputDir);
+    this.rDotJavaClassesDir = Preconditions.checkNotNull(rDotJavaClassesDir);
   }
 
   public ImmutableSet<SourcePath> getRDotJavaFiles() {
@@ -155,6 +176,12 @@ public class MergeAndroidResourcesStep implements Step {
       filesystem.writeContentsToPath(
           String.format("package %s;\n\npublic class R {}\n", rDotJavaPackage),
           outputFile);
+      if (rDotJavaClassesDir.isPresent()) {
+        writeClasses(
+            new RDotJavaClassGenerator(rDotJavaPackage, uberRDotTxt.isPresent())
+                .generate(ImmutableList.<RDotTxtEntry>of()),
+            filesystem);
+      }
     }
   }
 
@@ -162,47 +189,80 @@ public class MergeAndroidResourcesStep implements Step {
   void writePerPackageRDotJava(
       SortedSetMultimap<String, RDotTxtEntry> packageToResources,
       ProjectFilesystem filesystem) throws IOException {
+    // Steps already run on the build's threads, so the packages are generated one at a time
+    // rather than on a pool of this step's own, and each is written before the next is generated.
     for (String rDotJavaPackage : packageToResources.keySet()) {
+      GeneratedPackage generatedPackage = generatePackage(
+          rDotJavaPackage,
+          packageToResources.get(rDotJavaPackage));
       Path outputFile = getPathToRDotJava(rDotJavaPackage);
       filesystem.mkdirs(outputFile.getParent());
-      try (PrintWriter writer = new PrintWriter(filesystem.newFileOutputStream(outputFile))) {
-        writer.format("package %s;\n\n", rDotJavaPackage);
-        writer.println("public class R {\n");
-
-        RDotTxtEntry.RType lastType = null;
-
-        for (RDotTxtEntry res : packageToResources.get(rDotJavaPackage)) {
-          RDotTxtEntry.RType type = res.type;
-          if (!type.equals(lastType)) {
-            // If the previous type needs to be closed, close it.
-            if (lastType != null) {
-              writer.println("  }\n");
-            }
-
-            // Now start the block for the new type.
-            writer.format("  public static class %s {\n", type);
-            lastType = type;
-          }
+      filesystem.writeContentsToPath(generatedPackage.rDotJavaSource, outputFile);
+      writeClasses(generatedPackage.classes, filesystem);
+    }
+  }
 
-          // Write out the resource.
-          // Write as an int.
-          writer.format(
-              "    public static%s%s %s=%s;\n",
-              uberRDotTxt.isPresent() ? " final " : " ",
-              res.idType,
-              res.name,
-              res.idValue);
-        }
+  private GeneratedPackage generatePackage(
+      String rDotJavaPackage,
+      SortedSet<RDotTxtEntry> resources) {
+    StringBuilder builder = new StringBuilder();
+    builder.append("package ").append(rDotJavaPackage).append(";\n\n");
+    builder.append("public class R {\n\n");
 
-        // If some type was written (e.g., the for loop was entered), then the last type needs to be
-        // closed.
+    String modifiers = uberRDotTxt.isPresent() ? "public static final " : "public static ";
+    RDotTxtEntry.RType lastType = null;
+
+    for (RDotTxtEntry res : resources) {
+      RDotTxtEntry.RType type = res.type;
+      if (!type.equals(lastType)) {
+        // If the previous type needs to be closed, close it.
         if (lastType != null) {
-          writer.println("  }\n");
+          builder.append("  }\n\n");
         }
 
-        // Close the class definition.
-        writer.println("}");
+        // Now start the block for the new type.
+        builder.append("  public static class ").append(type).append(" {\n");
+        lastType = type;
       }
+
+      // Write out the resource.
+      builder.append("    ")
+          .append(modifiers)
+          .append(res.idType)
+          .append(' ')
+          .append(res.name)
+          .append('=')
+          .append(res.idValue)
+          .append(";\n");
+    }
+
+    // If some type was written (e.g., the for loop was entered), then the last type needs to be
+    // closed.
+    if (lastType != null) {
+      builder.append("  }\n\n");
+    }
+
+    // Close the class definition.
+    builder.append("}\n");
+
+    ImmutableSortedMap<String, byte[]> classes;
+    if (rDotJavaClassesDir.isPresent()) {
+      classes = new RDotJavaClassGenerator(rDotJavaPackage, uberRDotTxt.isPresent())
+          .generate(resources);
+    } else {
+      classes = ImmutableSortedMap.of();
+    }
+
+    return new GeneratedPackage(builder.toString(), classes);
+  }
+
+  private void writeClasses(
+      ImmutableSortedMap<String, byte[]> classes,
+      ProjectFilesystem filesystem) throws IOException {
+    for (Map.Entry<String, byte[]> entry : classes.entrySet()) {
+      Path outputFile = rDotJavaClassesDir.get().resolve(entry.getKey());
+      filesystem.mkdirs(outputFile.getParent());
+      filesystem.writeBytesToPath(entry.getValue(), outputFile);
     }
   }
 
@@ -285,6 +345,16 @@ public class MergeAndroidResourcesStep implements Step {
     return outputDir.resolve(rDotJavaPackage.replace(".", "/")).resolve("R.java");
   }
 
+  private static class GeneratedPackage {
+    private final String rDotJavaSource;
+    private final ImmutableSortedMap<String, byte[]> classes;
+
+    public GeneratedPackage(String rDotJavaSource, ImmutableSortedMap<String, byte[]> classes) {
+      this.rDotJavaSource = rDotJavaSource;
+      this.classes = classes;
+    }
+  }
+
   private static class IntEnumerator {
     private int value;
 
@@ -0,0 +1,237 @@
+/*
+ * Copyright 2014-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.android;
+
+import com.facebook.buck.android.aapt.RDotTxtEntry;
+import com.google.common.base.CharMatcher;
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSortedMap;
+import com.google.common.collect.LinkedListMultimap;
+import com.google.common.collect.ListMultimap;
+import com.google.common.collect.Multimaps;
+
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes the {@code .class} files for an {@code R.java} file directly from the merged
+ * {@link RDotTxtEntry}s of a package, so that the (potentially huge) generated source does not have
+ * to go through javac. The output is equivalent to what javac would produce for the source written
+ * by {@link MergeAndroidResourcesStep}: a class {@code R} with one public static nested class per
+ * resource type.
+ */
+class RDotJavaClassGenerator {
+
+  /** Matches what javac emits for {@code -target 1.6}, which every version of dx can read. */
+  private static final int CLASS_FILE_VERSION = Opcodes.V1_6;
+
+  private static final Splitter ARRAY_VALUE_SPLITTER =
+      Splitter.on(',').trimResults().omitEmptyStrings();
+
+  private final String rDotJavaPackage;
+  private final boolean isFinal;
+
+  /**
+   * @param rDotJavaPackage the Java package of the {@code R} class.
+   * @param isFinal whether the fields should be {@code final}. Only the uber {@code R.java} has
+   *     final values, which are written as compile-time constants.
+   */
+  RDotJavaClassGenerator(String rDotJavaPackage, boolean isFinal) {
+    this.rDotJavaPackage = rDotJavaPackage;
+    this.isFinal = isFinal;
+  }
+
+  /**
+   * @param resources the resources of the package, sorted as they would be in {@code R.java}.
+   * @return a map from the path of each {@code .class} file, relative to the root of the output
+   *     directory, to its contents.
+   */
+  ImmutableSortedMap<String, byte[]> generate(Iterable<RDotTxtEntry> resources) {
+    ListMultimap<RDotTxtEntry.RType, RDotTxtEntry> resourcesByType = LinkedListMultimap.create();
+    for (RDotTxtEntry resource : resources) {
+      resourcesByType.put(resource.type, resource);
+    }
+
+    String outerClass = rDotJavaPackage.replace('.', '/') + "/R";
+    ImmutableSortedMap.Builder<String, byte[]> classes = ImmutableSortedMap.naturalOrder();
+    classes.put(
+        outerClass + ".class",
+        generateOuterClass(outerClass, resourcesByType.keySet()));
+    for (Map.Entry<RDotTxtEntry.RType, List<RDotTxtEntry>> entry :
+        Multimaps.asMap(resourcesByType).entrySet()) {
+      String innerClass = outerClass + "$" + entry.getKey();
+      classes.put(
+          innerClass + ".class",
+          generateInnerClass(outerClass, entry.getKey(), entry.getValue()));
+    }
+    return classes.build();
+  }
+
+  private byte[] generateOuterClass(String outerClass, Iterable<RDotTxtEntry.RType> types) {
+    ClassWriter writer = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+    writer.visit(
+        CLASS_FILE_VERSION,
+        Opcodes.ACC_PUBLIC | Opcodes.ACC_SUPER,
+        outerClass,
+        /* signature */ null,
+        "java/lang/Object",
+        /* interfaces */ null);
+    writer.visitSource("R.java", /* debug */ null);
+    for (RDotTxtEntry.RType type : types) {
+      visitInnerClass(writer, outerClass, type);
+    }
+    writeDefaultConstructor(writer);
+    writer.visitEnd();
+    return writer.toByteArray();
+  }
+
+  private byte[] generateInnerClass(
+      String outerClass,
+      RDotTxtEntry.RType type,
+      List<RDotTxtEntry> resources) {
+    String innerClass = outerClass + "$" + type;
+    ClassWriter writer = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+    writer.visit(
+        CLASS_FILE_VERSION,
+        Opcodes.ACC_PUBLIC | Opcodes.ACC_SUPER,
+        innerClass,
+        /* signature */ null,
+        "java/lang/Object",
+        /* interfaces */ null);
+    writer.visitSource("R.java", /* debug */ null);
+    visitInnerClass(writer, outerClass, type);
+
+    int access = Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC | (isFinal ? Opcodes.ACC_FINAL : 0);
+    ImmutableList.Builder<RDotTxtEntry> initializedInClinit = ImmutableList.builder();
+    for (RDotTxtEntry resource : resources) {
+      if (resource.idType == RDotTxtEntry.IdType.INT) {
+        // Final ints are compile-time constants and must be written as a ConstantValue attribute,
+        // just like javac does, so that code compiled against them can still inline them.
+        Integer constantValue = isFinal ? parseInt(resource.idValue) : null;
+        writer.visitField(access, resource.name, "I", /* signature */ null, constantValue)
+            .visitEnd();
+        if (!isFinal) {
+          initializedInClinit.add(resource);
+        }
+      } else {
+        writer.visitField(access, resource.name, "[I", /* signature */ null, /* value */ null)
+            .visitEnd();
+        initializedInClinit.add(resource);
+      }
+    }
+
+    writeDefaultConstructor(writer);
+    writeStaticInitializer(writer, innerClass, initializedInClinit.build());
+    writer.visitEnd();
+    return writer.toByteArray();
+  }
+
+  private static void visitInnerClass(
+      ClassWriter writer,
+      String outerClass,
+      RDotTxtEntry.RType type) {
+    writer.visitInnerClass(
+        outerClass + "$" + type,
+        outerClass,
+        type.toString(),
+        Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC);
+  }
+
+  private static void writeDefaultConstructor(ClassWriter writer) {
+    MethodVisitor constructor = writer.visitMethod(
+        Opcodes.ACC_PUBLIC,
+        "<init>",
+        "()V",
+        /* signature */ null,
+        /* exceptions */ null);
+    constructor.visitCode();
+    constructor.visitVarInsn(Opcodes.ALOAD, 0);
+    constructor.visitMethodInsn(Opcodes.INVOKESPECIAL, "java/lang/Object", "<init>", "()V");
+    constructor.visitInsn(Opcodes.RETURN);
+    constructor.visitMaxs(0, 0);
+    constructor.visitEnd();
+  }
+
+  private static void writeStaticInitializer(
+      ClassWriter writer,
+      String innerClass,
+      List<RDotTxtEntry> resources) {
+    if (resources.isEmpty()) {
+      return;
+    }
+
+    MethodVisitor clinit = writer.visitMethod(
+        Opcodes.ACC_STATIC,
+        "<clinit>",
+        "()V",
+        /* signature */ null,
+        /* exceptions */ null);
+    clinit.visitCode();
+    for (RDotTxtEntry resource : resources) {
+      if (resource.idType == RDotTxtEntry.IdType.INT) {
+        pushInt(clinit, parseInt(resource.idValue));
+        clinit.visitFieldInsn(Opcodes.PUTSTATIC, innerClass, resource.name, "I");
+        continue;
+      }
+
+      List<String> values = parseIntArray(resource.idValue);
+      pushInt(clinit, values.size());
+      clinit.visitIntInsn(Opcodes.NEWARRAY, Opcodes.T_INT);
+      for (int i = 0; i < values.size(); i++) {
+        clinit.visitInsn(Opcodes.DUP);
+        pushInt(clinit, i);
+        pushInt(clinit, parseInt(values.get(i)));
+        clinit.visitInsn(Opcodes.IASTORE);
+      }
+      clinit.visitFieldInsn(Opcodes.PUTSTATIC, innerClass, resource.name, "[I");
+    }
+    clinit.visitInsn(Opcodes.RETURN);
+    clinit.visitMaxs(0, 0);
+    clinit.visitEnd();
+  }
+
+  private static void pushInt(MethodVisitor visitor, int value) {
+    if (value >= -1 && value <= 5) {
+      visitor.visitInsn(Opcodes.ICONST_0 + value);
+    } else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+      visitor.visitIntInsn(Opcodes.BIPUSH, value);
+    } else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+      visitor.visitIntInsn(Opcodes.SIPUSH, value);
+    } else {
+      visitor.visitLdcInsn(value);
+    }
+  }
+
+  /**
+   * Resource ids are written by aapt in hex (e.g., {@code 0x7f010001}), while indices into
+   * styleables are written in decimal. Both are accepted by javac, so both are accepted here.
+   */
+  private static int parseInt(String value) {
+    return Long.decode(value.trim()).intValue();
+  }
+
+  /** Parses the value of an {@code int[]} entry, e.g. <code>{ 0x7f010001, 0x7f010002 }</code>. */
+  private static List<String> parseIntArray(String value) {
+    String contents = CharMatcher.anyOf("{}").trimFrom(value.trim());
+    return ARRAY_VALUE_SPLITTER.splitToList(contents);
+  }
+}
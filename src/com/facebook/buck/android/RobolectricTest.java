@@ -21,6 +21,7 @@ import static com.facebook.buck.rules.BuildableProperties.Kind.LIBRARY;
 import static com.facebook.buck.rules.BuildableProperties.Kind.TEST;
 
 import com.android.common.annotations.Nullable;
+import com.facebook.buck.java.JUnitWorkerPool;
 import com.facebook.buck.java.JavaTest;
 import com.facebook.buck.java.JavacOptions;
 import com.facebook.buck.java.TestType;
@@ -95,6 +96,8 @@ public class RobolectricTest extends JavaTest {
         proguardConfig,
         additionalClasspathEntries,
         TestType.JUNIT,
+        /* maxJvms */ 1,
+        /* workerPool */ Optional.<JUnitWorkerPool>absent(),
         javacOptions,
         vmArgs,
         sourceTargetsUnderTest,
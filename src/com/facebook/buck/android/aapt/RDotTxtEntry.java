@@ -24,6 +24,8 @@ import com.google.common.base.Optional;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.ComparisonChain;
 import com.google.common.collect.FluentIterable;
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
 
 import java.io.IOException;
 import java.nio.file.Path;
@@ -95,6 +97,12 @@ public class RDotTxtEntry implements Comparable<RDotTxtEntry> {
         }
       };
 
+  /**
+   * The same resource names show up in the {@code R.txt} of every library that depends on the
+   * resource, so names are interned to avoid holding hundreds of copies of each one in memory.
+   */
+  private static final Interner<String> NAME_INTERNER = Interners.newWeakInterner();
+
   private static final Pattern TEXT_SYMBOLS_LINE = Pattern.compile("(\\S+) (\\S+) (\\S+) (.+)");
 
   // A symbols file may look like:
@@ -140,7 +148,7 @@ public class RDotTxtEntry implements Comparable<RDotTxtEntry> {
 
     IdType idType = IdType.from(matcher.group(1));
     RType type = RType.valueOf(matcher.group(2).toUpperCase());
-    String name = matcher.group(3);
+    String name = NAME_INTERNER.intern(matcher.group(3));
     String idValue = matcher.group(4);
 
     return Optional.of(new RDotTxtEntry(idType, type, name, idValue));
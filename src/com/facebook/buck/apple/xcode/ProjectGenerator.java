@@ -16,6 +16,9 @@
 
 package com.facebook.buck.apple.xcode;
 
+import static com.facebook.buck.util.concurrent.MoreExecutors.newMultiThreadExecutorForTasks;
+import static com.google.common.util.concurrent.MoreExecutors.listeningDecorator;
+
 import com.dd.plist.NSArray;
 import com.dd.plist.NSDictionary;
 import com.dd.plist.NSObject;
@@ -88,6 +91,7 @@ import com.google.common.base.Joiner;
 import com.google.common.base.Optional;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Predicate;
+import com.google.common.base.Throwables;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
 import com.google.common.cache.LoadingCache;
@@ -101,6 +105,9 @@ import com.google.common.collect.Iterables;
 import com.google.common.collect.Iterators;
 import com.google.common.collect.Lists;
 import com.google.common.io.BaseEncoding;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
 import com.google.common.util.concurrent.UncheckedExecutionException;
 
 import org.w3c.dom.DOMImplementation;
@@ -111,6 +118,7 @@ import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.nio.file.FileVisitResult;
 import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
@@ -126,6 +134,8 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
 
 import javax.annotation.Nullable;
 import javax.xml.parsers.DocumentBuilder;
@@ -207,6 +217,8 @@ public class ProjectGenerator {
           PosixFilePermission.GROUP_READ,
           PosixFilePermission.OTHERS_READ));
 
+  private static final Object ASSET_CATALOG_COMPILER_LOCK = new Object();
+
   private final SourcePathResolver resolver;
   private final ImmutableSet<BuildRule> rulesToBuild;
   private final ProjectFilesystem projectFilesystem;
@@ -356,14 +368,17 @@ public class ProjectGenerator {
             BuckConstant.BIN_PATH.resolve(
                 "xcode-scripts/compile_asset_catalogs.py"));
         LOG.debug("Ensuring asset catalog is copied to path [%s]", placedAssetCatalogCompilerPath);
-        projectFilesystem.createParentDirs(placedAssetCatalogCompilerPath);
-        projectFilesystem.createParentDirs(placedAssetCatalogBuildPhaseScript);
-        projectFilesystem.copyFile(
-            Paths.get(PATH_TO_ASSET_CATALOG_COMPILER),
-            placedAssetCatalogCompilerPath);
-        projectFilesystem.copyFile(
-            Paths.get(PATH_TO_ASSET_CATALOG_BUILD_PHASE_SCRIPT),
-            placedAssetCatalogBuildPhaseScript);
+        // Every project places the same scripts, and projects may be generated concurrently.
+        synchronized (ASSET_CATALOG_COMPILER_LOCK) {
+          projectFilesystem.createParentDirs(placedAssetCatalogCompilerPath);
+          projectFilesystem.createParentDirs(placedAssetCatalogBuildPhaseScript);
+          projectFilesystem.copyFile(
+              Paths.get(PATH_TO_ASSET_CATALOG_COMPILER),
+              placedAssetCatalogCompilerPath);
+          projectFilesystem.copyFile(
+              Paths.get(PATH_TO_ASSET_CATALOG_BUILD_PHASE_SCRIPT),
+              placedAssetCatalogBuildPhaseScript);
+        }
       }
       projectGenerated = true;
     } catch (UncheckedExecutionException e) {
@@ -377,6 +392,39 @@ public class ProjectGenerator {
     }
   }
 
+  /**
+   * Calls {@link #createXcodeProjects()} on each of {@code generators}. Each generator builds its
+   * own {@link PBXProject} and writes its own files, so independent projects are generated
+   * concurrently.
+   */
+  static void createXcodeProjects(List<ProjectGenerator> generators) throws IOException {
+    ListeningExecutorService executorService = listeningDecorator(
+        newMultiThreadExecutorForTasks("xcode-project", generators.size()));
+    try {
+      List<ListenableFuture<Void>> futures = Lists.newArrayList();
+      for (final ProjectGenerator generator : generators) {
+        futures.add(
+            executorService.submit(
+                new Callable<Void>() {
+                  @Override
+                  public Void call() throws IOException {
+                    generator.createXcodeProjects();
+                    return null;
+                  }
+                }));
+      }
+      Futures.allAsList(futures).get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while generating Xcode projects");
+    } catch (ExecutionException e) {
+      Throwables.propagateIfInstanceOf(e.getCause(), IOException.class);
+      throw Throwables.propagate(e.getCause());
+    } finally {
+      executorService.shutdownNow();
+    }
+  }
+
   private Optional<PBXTarget> generateTargetForBuildRule(BuildRule rule) throws IOException {
     Preconditions.checkState(
         isBuiltByCurrentProject(rule),
@@ -514,16 +562,7 @@ public class ProjectGenerator {
     Path headerMapFile = buildRule.getPathToHeaderMap(headerMapType).get();
     headerMaps.add(headerMapFile);
     projectFilesystem.mkdirs(headerMapFile.getParent());
-    if (shouldGenerateReadOnlyFiles()) {
-      projectFilesystem.writeBytesToPath(
-          headerMap.getBytes(),
-          headerMapFile,
-          READ_ONLY_FILE_ATTRIBUTE);
-    } else {
-      projectFilesystem.writeBytesToPath(
-          headerMap.getBytes(),
-          headerMapFile);
-    }
+    writeIfContentsChanged(headerMap.getBytes(), headerMapFile);
   }
 
   private void setNativeTargetGid(
@@ -780,21 +819,9 @@ public class ProjectGenerator {
             configurationEntry.getValue(),
             searchPaths,
             overrideConfigs);
-        if (MorePaths.fileContentsDiffer(
-            new ByteArrayInputStream(serializedConfiguration.getBytes(Charsets.UTF_8)),
-            configurationFilePath,
-            projectFilesystem)) {
-          if (shouldGenerateReadOnlyFiles()) {
-            projectFilesystem.writeContentsToPath(
-                serializedConfiguration,
-                configurationFilePath,
-                READ_ONLY_FILE_ATTRIBUTE);
-          } else {
-            projectFilesystem.writeContentsToPath(
-                serializedConfiguration,
-                configurationFilePath);
-          }
-        }
+        writeIfContentsChanged(
+            serializedConfiguration.getBytes(Charsets.UTF_8),
+            configurationFilePath);
 
         PBXFileReference fileReference =
             configurationsGroup.getOrCreateFileReferenceBySourceTreePath(
@@ -1492,28 +1519,35 @@ public class ProjectGenerator {
     projectFilesystem.mkdirs(xcodeprojDir);
     Path serializedProject = xcodeprojDir.resolve("project.pbxproj");
     String contentsToWrite = rootObject.toXMLPropertyList();
-    // Before we write any files, check if the file contents have changed.
-    if (MorePaths.fileContentsDiffer(
-            new ByteArrayInputStream(contentsToWrite.getBytes(Charsets.UTF_8)),
-            serializedProject,
-            projectFilesystem)) {
-      LOG.debug("Regenerating project at %s", serializedProject);
-      if (shouldGenerateReadOnlyFiles()) {
-        projectFilesystem.writeContentsToPath(
-            contentsToWrite,
-            serializedProject,
-            READ_ONLY_FILE_ATTRIBUTE);
-      } else {
-        projectFilesystem.writeContentsToPath(
-            contentsToWrite,
-            serializedProject);
-      }
+    if (writeIfContentsChanged(contentsToWrite.getBytes(Charsets.UTF_8), serializedProject)) {
+      LOG.debug("Regenerated project at %s", serializedProject);
     } else {
       LOG.debug("Not regenerating project at %s (contents have not changed)", serializedProject);
     }
     return xcodeprojDir;
   }
 
+  /**
+   * Writes {@code contents} to {@code path} unless the file already has exactly those contents, so
+   * that regenerating an unchanged project does not touch any files Xcode is watching.
+   *
+   * @return whether the file was written.
+   */
+  private boolean writeIfContentsChanged(byte[] contents, Path path) throws IOException {
+    if (!MorePaths.fileContentsDiffer(
+        new ByteArrayInputStream(contents),
+        path,
+        projectFilesystem)) {
+      return false;
+    }
+    if (shouldGenerateReadOnlyFiles()) {
+      projectFilesystem.writeBytesToPath(contents, path, READ_ONLY_FILE_ATTRIBUTE);
+    } else {
+      projectFilesystem.writeBytesToPath(contents, path);
+    }
+    return true;
+  }
+
   /**
    * Create the workspace bundle structure and write the workspace file.
    *
@@ -1548,22 +1582,7 @@ public class ProjectGenerator {
       DOMSource source = new DOMSource(doc);
       StreamResult result = new StreamResult(outputStream);
       transformer.transform(source, result);
-      String contentsToWrite = outputStream.toString();
-      if (MorePaths.fileContentsDiffer(
-          new ByteArrayInputStream(contentsToWrite.getBytes(Charsets.UTF_8)),
-          serializedWorkspace,
-          projectFilesystem)) {
-        if (shouldGenerateReadOnlyFiles()) {
-          projectFilesystem.writeContentsToPath(
-              contentsToWrite,
-              serializedWorkspace,
-              READ_ONLY_FILE_ATTRIBUTE);
-        } else {
-          projectFilesystem.writeContentsToPath(
-              contentsToWrite,
-              serializedWorkspace);
-        }
-      }
+      writeIfContentsChanged(outputStream.toByteArray(), serializedWorkspace);
     } catch (TransformerException e) {
       throw new RuntimeException(e);
     }
@@ -109,11 +109,11 @@ public class SeparatedProjectsGenerator {
           target.getBasePath(),
           buildable.getProjectName(),
           projectGeneratorOptions);
-      generator.createXcodeProjects();
       projectGeneratorsBuilder.put(target, generator);
       generatedProjectPathsBuilder.add(generator.getProjectPath());
     }
     projectGenerators = projectGeneratorsBuilder.build();
+    ProjectGenerator.createXcodeProjects(projectGenerators.values().asList());
     return generatedProjectPathsBuilder.build();
   }
 
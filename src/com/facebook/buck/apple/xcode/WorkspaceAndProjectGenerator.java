@@ -38,16 +38,19 @@ import com.facebook.buck.util.ProjectFilesystem;
 import com.google.common.base.Optional;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Predicate;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableMultimap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Multimap;
 import com.google.common.collect.Sets;
 
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.file.Path;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -132,12 +135,21 @@ public class WorkspaceAndProjectGenerator {
     ImmutableMap.Builder<PBXTarget, Path> targetToProjectPathMapBuilder =
         ImmutableMap.builder();
 
+    ImmutableList.Builder<XcodeProjectConfig> requiredProjectConfigsBuilder =
+        ImmutableList.builder();
+    List<ProjectGenerator> newGenerators = Lists.newArrayList();
     for (XcodeProjectConfig xcodeProjectConfig : Iterables.filter(
         projectGraph.getNodes(),
         XcodeProjectConfig.class)) {
       if (Sets.intersection(rulesInRequiredProjects, xcodeProjectConfig.getRules()).isEmpty()) {
         continue;
       }
+      requiredProjectConfigsBuilder.add(xcodeProjectConfig);
+
+      if (projectGenerators.containsKey(xcodeProjectConfig)) {
+        LOG.debug("Already generated project for rule %s, skipping", xcodeProjectConfig);
+        continue;
+      }
 
       ImmutableSet.Builder<BuildTarget> initialTargetsBuilder = ImmutableSet.builder();
       for (BuildRule memberRule : xcodeProjectConfig.getRules()) {
@@ -145,24 +157,23 @@ public class WorkspaceAndProjectGenerator {
       }
       Set<BuildTarget> initialTargets = initialTargetsBuilder.build();
 
-      ProjectGenerator generator = projectGenerators.get(xcodeProjectConfig);
-      if (generator == null) {
-        LOG.debug("Generating project for rule %s", xcodeProjectConfig);
-        generator = new ProjectGenerator(
-            resolver,
-            projectGraph.getNodes(),
-            initialTargets,
-            projectFilesystem,
-            executionContext,
-            xcodeProjectConfig.getBuildTarget().getBasePath(),
-            xcodeProjectConfig.getProjectName(),
-            projectGeneratorOptions);
-        generator.createXcodeProjects();
-        projectGenerators.put(xcodeProjectConfig, generator);
-      } else {
-        LOG.debug("Already generated project for rule %s, skipping", xcodeProjectConfig);
-      }
+      LOG.debug("Generating project for rule %s", xcodeProjectConfig);
+      ProjectGenerator generator = new ProjectGenerator(
+          resolver,
+          projectGraph.getNodes(),
+          initialTargets,
+          projectFilesystem,
+          executionContext,
+          xcodeProjectConfig.getBuildTarget().getBasePath(),
+          xcodeProjectConfig.getProjectName(),
+          projectGeneratorOptions);
+      newGenerators.add(generator);
+      projectGenerators.put(xcodeProjectConfig, generator);
+    }
+    ProjectGenerator.createXcodeProjects(newGenerators);
 
+    for (XcodeProjectConfig xcodeProjectConfig : requiredProjectConfigsBuilder.build()) {
+      ProjectGenerator generator = projectGenerators.get(xcodeProjectConfig);
       workspaceGenerator.addFilePath(generator.getProjectPath());
 
       buildRuleToTargetMapBuilder.putAll(generator.getBuildRuleToGeneratedTargetMap());
@@ -0,0 +1,141 @@
+/*
+ * Copyright 2014-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.cli;
+
+import com.facebook.buck.json.BuildFileParseException;
+import com.facebook.buck.model.BuildTarget;
+import com.facebook.buck.model.BuildTargetException;
+import com.facebook.buck.query.AffectedTargets;
+import com.facebook.buck.query.TargetGraphIndex;
+import com.facebook.buck.rules.TargetNode;
+import com.facebook.buck.util.MorePaths;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableSortedSet;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Prints the targets that have to be rebuilt, or the tests that have to be rerun, for a set of
+ * changed files, e.g.
+ * <pre>
+ * git diff --name-only HEAD^ | xargs buck audit affected --tests
+ * </pre>
+ */
+public class AuditAffectedCommand extends AbstractCommandRunner<AuditAffectedOptions> {
+
+  public AuditAffectedCommand(CommandRunnerParams params) {
+    super(params);
+  }
+
+  @Override
+  AuditAffectedOptions createOptions(BuckConfig buckConfig) {
+    return new AuditAffectedOptions(buckConfig);
+  }
+
+  @Override
+  int runCommandWithOptionsInternal(AuditAffectedOptions options)
+      throws IOException, InterruptedException {
+    TargetGraphIndex index;
+    try {
+      index = TargetGraphIndex.of(
+          getParser().buildProjectTargetGraph(
+              options.getDefaultIncludes(),
+              getBuckEventBus(),
+              console,
+              environment));
+    } catch (BuildTargetException | BuildFileParseException e) {
+      console.printBuildFailureWithoutStacktrace(e);
+      return 1;
+    }
+
+    ImmutableSet<Path> changedPaths = getChangedPaths(options);
+    ImmutableSet<TargetNode<?>> affected;
+    if (changesDefaultIncludes(options, changedPaths)) {
+      // Every build file is evaluated with the default includes.
+      affected = index.getNodes();
+    } else {
+      affected = AffectedTargets.find(
+          index,
+          getProjectFilesystem(),
+          addIncludingBuildFiles(changedPaths));
+    }
+
+    ImmutableSortedSet.Builder<String> targets = ImmutableSortedSet.naturalOrder();
+    for (TargetNode<?> node : affected) {
+      if (!options.isOnlyTestsEnabled() ||
+          node.getDescription().getBuildRuleType().isTestRule()) {
+        targets.add(node.getBuildTarget().getFullyQualifiedName());
+      }
+    }
+
+    if (options.shouldGenerateJsonOutput()) {
+      getObjectMapper().writeValue(console.getStdOut(), targets.build());
+    } else {
+      for (String target : targets.build()) {
+        console.getStdOut().println(target);
+      }
+    }
+    return 0;
+  }
+
+  /**
+   * @return the arguments as paths relative to the project root.
+   */
+  private ImmutableSet<Path> getChangedPaths(AuditAffectedOptions options) {
+    Path root = getProjectFilesystem().getRootPath().toAbsolutePath();
+    ImmutableSet.Builder<Path> changedPaths = ImmutableSet.builder();
+    for (String argument : options.getArguments()) {
+      Path path = Paths.get(argument);
+      changedPaths.add(path.isAbsolute() ? MorePaths.relativize(root, path) : path.normalize());
+    }
+    return changedPaths.build();
+  }
+
+  /**
+   * A file pulled in with {@code include_defs()} is not an input of any target, so a change to it
+   * is treated as a change to each build file that includes it.
+   */
+  private ImmutableSet<Path> addIncludingBuildFiles(ImmutableSet<Path> changedPaths) {
+    ImmutableSet.Builder<Path> paths = ImmutableSet.builder();
+    paths.addAll(changedPaths);
+    for (Path path : changedPaths) {
+      paths.addAll(getParser().getBuildFilesIncluding(path));
+    }
+    return paths.build();
+  }
+
+  private static boolean changesDefaultIncludes(
+      AuditAffectedOptions options,
+      ImmutableSet<Path> changedPaths) {
+    for (String include : options.getDefaultIncludes()) {
+      String path = include.startsWith(BuildTarget.BUILD_TARGET_PREFIX)
+          ? include.substring(BuildTarget.BUILD_TARGET_PREFIX.length())
+          : include;
+      if (changedPaths.contains(Paths.get(path))) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  @Override
+  String getUsageIntro() {
+    return "prints the targets affected by changes to the specified files";
+  }
+}
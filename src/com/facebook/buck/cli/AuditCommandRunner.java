@@ -59,6 +59,7 @@ public class AuditCommandRunner implements CommandRunner {
 
   private void setAuditCommands(CommandRunnerParams params) {
     auditCommands = ImmutableMap.of(
+        "affected",  new AuditAffectedCommand(params),
         "input",     new AuditInputCommand(params),
         "classpath", new AuditClasspathCommand(params),
         "owner",     new AuditOwnerCommand(params),
@@ -31,7 +31,6 @@ import com.facebook.buck.rules.MultiArtifactCache;
 import com.facebook.buck.rules.NoopArtifactCache;
 import com.facebook.buck.util.Ansi;
 import com.facebook.buck.util.BuckConstant;
-import com.facebook.buck.util.FileHashCache;
 import com.facebook.buck.util.HumanReadableException;
 import com.facebook.buck.util.MorePaths;
 import com.facebook.buck.util.ProjectFilesystem;
@@ -545,6 +544,26 @@ public class BuckConfig {
     return Long.parseLong(getValue("test", "timeout").or("0"));
   }
 
+  /**
+   * @return the number of JVMs across which the test classes of a single {@code java_test()} may
+   *     be split, balanced by how long each class took to run last time.
+   */
+  public int getMaxJvmsPerJavaTest() {
+    return Integer.parseInt(getValue("test", "max_jvms_per_java_test").or("1"));
+  }
+
+  /**
+   * @return whether JUnit tests should be run in a pool of long-lived JVMs, each of which is
+   *     replaced after running {@link #getMaxRunsPerJUnitWorker()} test targets.
+   */
+  public boolean isJUnitWorkerPoolEnabled() {
+    return getBooleanValue("test", "use_junit_workers", false);
+  }
+
+  public int getMaxRunsPerJUnitWorker() {
+    return Integer.parseInt(getValue("test", "max_runs_per_junit_worker").or("50"));
+  }
+
   public boolean isTreatingAssumptionsAsErrors() {
     return getBooleanValue("test", "assumptions-are-errors", false);
   }
@@ -625,8 +644,7 @@ public class BuckConfig {
 
   public ArtifactCache createArtifactCache(
       Optional<String> currentWifiSsid,
-      BuckEventBus buckEventBus,
-      FileHashCache fileHashCache) {
+      BuckEventBus buckEventBus) {
     ImmutableList<String> modes = getArtifactCacheModes();
     if (modes.isEmpty()) {
       return new NoopArtifactCache();
@@ -643,14 +661,13 @@ public class BuckConfig {
         case cassandra:
           ArtifactCache cassandraArtifactCache = createCassandraArtifactCache(
               currentWifiSsid,
-              buckEventBus,
-              fileHashCache);
+              buckEventBus);
           if (cassandraArtifactCache != null) {
             builder.add(cassandraArtifactCache);
           }
           break;
         case http:
-          ArtifactCache httpArtifactCache = createHttpArtifactCache(buckEventBus, fileHashCache);
+          ArtifactCache httpArtifactCache = createHttpArtifactCache(buckEventBus);
           builder.add(httpArtifactCache);
           break;
         }
@@ -700,15 +717,14 @@ public class BuckConfig {
   }
 
   /**
-   * Clients should use {@link #createArtifactCache(Optional, BuckEventBus, FileHashCache)} unless
+   * Clients should use {@link #createArtifactCache(Optional, BuckEventBus)} unless
    * it is expected that the user has defined a {@code cassandra} cache, and that it should be used
    * exclusively.
    */
   @Nullable
   CassandraArtifactCache createCassandraArtifactCache(
       Optional<String> currentWifiSsid,
-      BuckEventBus buckEventBus,
-      FileHashCache fileHashCache) {
+      BuckEventBus buckEventBus) {
     // cache.blacklisted_wifi_ssids
     ImmutableSet<String> blacklistedWifi = ImmutableSet.copyOf(
         asListWithoutComments(getValue("cache", "blacklisted_wifi_ssids")));
@@ -734,17 +750,14 @@ public class BuckConfig {
           port,
           timeoutSeconds,
           doStore,
-          buckEventBus,
-          fileHashCache);
+          buckEventBus);
     } catch (ConnectionException e) {
       buckEventBus.post(ThrowableConsoleEvent.create(e, "Cassandra cache connection failure."));
       return null;
     }
   }
 
-  private ArtifactCache createHttpArtifactCache(
-      BuckEventBus buckEventBus,
-      FileHashCache fileHashCache) {
+  private ArtifactCache createHttpArtifactCache(BuckEventBus buckEventBus) {
     String host = getValue("cache", "http_host").or("localhost");
     int port = Integer.parseInt(getValue("cache", "http_port").or(DEFAULT_HTTP_CACHE_PORT));
     int timeoutSeconds = Integer.parseInt(
@@ -756,8 +769,7 @@ public class BuckConfig {
         timeoutSeconds,
         doStore,
         projectFilesystem,
-        buckEventBus,
-        fileHashCache);
+        buckEventBus);
   }
 
   private boolean readCacheMode(String fieldName, String defaultValue) {
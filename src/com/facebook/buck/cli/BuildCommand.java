@@ -69,13 +69,42 @@ public class BuildCommand extends AbstractCommandRunner<BuildCommandOptions> {
   }
 
   @Override
-  @SuppressWarnings("PMD.PrematureDeclaration")
   int runCommandWithOptionsInternal(BuildCommandOptions options)
       throws IOException, InterruptedException {
     // Create artifact cache to initialize Cassandra connection, if appropriate.
     ArtifactCache artifactCache = getArtifactCache();
 
+    int exitCode = createBuild(options, artifactCache, Optional.<TargetDevice>absent());
+    if (exitCode != 0) {
+      return exitCode;
+    }
+
+    try {
+      exitCode = executeBuildAndPrintAnyFailuresToConsole(buildTargets, build, console);
+    } finally {
+      build.close(); // Can't use try-with-resources as build is returned by getBuild.
+    }
+    getBuckEventBus().post(BuildEvent.finished(buildTargets, exitCode));
+
+    return exitCode;
+  }
 
+  /**
+   * Parses the build targets in {@code options} and creates the {@link Build} for them, which is
+   * then available from {@link #getBuild()}, without executing it. This lets a caller start other
+   * work as soon as the individual rules it depends on are built, rather than waiting for the
+   * whole build. The caller is responsible for closing the build and posting
+   * {@link BuildEvent#finished}.
+   *
+   * @param artifactCache the cache of the command that runs the build. This command may not have
+   *     been run itself, in which case it has no options from which to create one.
+   * @return the exit code, which is non-zero if the build could not be created.
+   */
+  int createBuild(
+      BuildCommandOptions options,
+      ArtifactCache artifactCache,
+      Optional<TargetDevice> targetDevice)
+      throws IOException, InterruptedException {
     try {
       buildTargets = getBuildTargets(options.getArgumentsFormattedAsBuildTargets());
     } catch (NoSuchBuildTargetException e) {
@@ -134,20 +163,12 @@ public class BuildCommand extends AbstractCommandRunner<BuildCommandOptions> {
         artifactCache,
         console,
         getBuckEventBus(),
-        Optional.<TargetDevice>absent(),
+        targetDevice,
         getCommandRunnerParams().getPlatform(),
         getCommandRunnerParams().getEnvironment(),
         getCommandRunnerParams().getObjectMapper(),
         getCommandRunnerParams().getClock());
-    int exitCode = 0;
-    try {
-      exitCode = executeBuildAndPrintAnyFailuresToConsole(buildTargets, build, console);
-    } finally {
-      build.close(); // Can't use try-with-resources as build is returned by getBuild.
-    }
-    getBuckEventBus().post(BuildEvent.finished(buildTargets, exitCode));
-
-    return exitCode;
+    return 0;
   }
 
   private static int getNumRulesToBuild(
@@ -186,16 +207,31 @@ public class BuildCommand extends AbstractCommandRunner<BuildCommandOptions> {
     }
   }
 
-  @SuppressWarnings("PMD.EmptyCatchBlock")
   static int executeBuildAndPrintAnyFailuresToConsole(
       Iterable<? extends HasBuildTarget> buildTargetsToBuild,
       Build build,
       Console console) throws InterruptedException {
-    final ActionGraph actionGraph = build.getActionGraph();
+    ListenableFuture<List<BuildRuleSuccess>> buildFuture;
+    try {
+      buildFuture = build.executeBuild(
+          getRulesToBuild(buildTargetsToBuild, build.getActionGraph()));
+    } catch (IOException e) {
+      console.printBuildFailureWithoutStacktrace(e);
+      return 1;
+    } catch (StepFailedException e) {
+      console.printBuildFailureWithoutStacktrace(e);
+      return e.getExitCode();
+    }
+    return waitForBuildAndPrintAnyFailuresToConsole(buildFuture, console);
+  }
+
+  static ImmutableSet<BuildRule> getRulesToBuild(
+      Iterable<? extends HasBuildTarget> buildTargetsToBuild,
+      final ActionGraph actionGraph) {
     // It is important to use this logic to determine the set of rules to build rather than
     // build.getActionGraph().getNodesWithNoIncomingEdges() because, due to graph enhancement,
     // there could be disconnected subgraphs in the DependencyGraph that we do not want to build.
-    Set<BuildRule> rulesToBuild = FluentIterable
+    return FluentIterable
         .from(buildTargetsToBuild)
         .transform(new Function<HasBuildTarget, BuildRule>() {
           @Override
@@ -204,11 +240,20 @@ public class BuildCommand extends AbstractCommandRunner<BuildCommandOptions> {
           }
         })
         .toSet();
+  }
 
+  /**
+   * Blocks until the build represented by {@code buildFuture}, as returned by
+   * {@link Build#executeBuild(Set)}, has finished.
+   *
+   * @return the exit code of the build.
+   */
+  @SuppressWarnings("PMD.EmptyCatchBlock")
+  static int waitForBuildAndPrintAnyFailuresToConsole(
+      ListenableFuture<?> buildFuture,
+      Console console) throws InterruptedException {
     int exitCode;
     try {
-      // Get the Future representing the build and then block until everything is built.
-      ListenableFuture<List<BuildRuleSuccess>> buildFuture = build.executeBuild(rulesToBuild);
       try {
         buildFuture.get();
       } catch (InterruptedException e) {
@@ -221,12 +266,6 @@ public class BuildCommand extends AbstractCommandRunner<BuildCommandOptions> {
         throw e;
       }
       exitCode = 0;
-    } catch (IOException e) {
-      console.printBuildFailureWithoutStacktrace(e);
-      exitCode = 1;
-    } catch (StepFailedException e) {
-      console.printBuildFailureWithoutStacktrace(e);
-      exitCode = e.getExitCode();
     } catch (ExecutionException e) {
       // This is likely a checked exception that was caught while building a build rule.
       Throwable cause = e.getCause();
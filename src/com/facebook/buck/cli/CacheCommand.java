@@ -53,8 +53,7 @@ public class CacheCommand extends AbstractCommandRunner<CacheCommandOptions> {
     BuckConfig buckConfig = options.getBuckConfig();
     CassandraArtifactCache cassandra = buckConfig.createCassandraArtifactCache(
         Optional.<String>absent(),
-        getBuckEventBus(),
-        getCommandRunnerParams().getFileHashCache());
+        getBuckEventBus());
     if (cassandra == null) {
       console.printErrorText("No cassandra cache defined.");
       return 1;
@@ -52,6 +52,10 @@ public enum Command {
       "generates project configuration files for an IDE",
       ProjectCommand.class,
       false),
+  QUERY(
+      "queries the target graph",
+      QueryCommand.class,
+      true),
   QUICKSTART(
       "generates a default project directory",
       QuickstartCommand.class,
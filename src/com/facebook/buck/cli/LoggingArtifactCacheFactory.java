@@ -21,7 +21,6 @@ import com.facebook.buck.rules.ArtifactCache;
 import com.facebook.buck.rules.ArtifactCacheConnectEvent;
 import com.facebook.buck.rules.LoggingArtifactCacheDecorator;
 import com.facebook.buck.rules.NoopArtifactCache;
-import com.facebook.buck.util.FileHashCache;
 import com.facebook.buck.util.concurrent.MoreExecutors;
 import com.facebook.buck.util.environment.ExecutionEnvironment;
 import com.google.common.base.Preconditions;
@@ -42,16 +41,13 @@ public class LoggingArtifactCacheFactory implements ArtifactCacheFactory {
   private final BuckEventBus buckEventBus;
   private final List<ArtifactCache> createdArtifactCaches;
   private final ExecutionEnvironment executionEnvironment;
-  private final FileHashCache fileHashCache;
 
   public LoggingArtifactCacheFactory(
       ExecutionEnvironment executionEnvironment,
-      BuckEventBus buckEventBus,
-      FileHashCache fileHashCache) {
+      BuckEventBus buckEventBus) {
     this.executionEnvironment = Preconditions.checkNotNull(executionEnvironment);
     this.buckEventBus = Preconditions.checkNotNull(buckEventBus);
     this.createdArtifactCaches = Lists.newArrayList();
-    this.fileHashCache = Preconditions.checkNotNull(fileHashCache);
   }
 
   @Override
@@ -64,8 +60,7 @@ public class LoggingArtifactCacheFactory implements ArtifactCacheFactory {
       ArtifactCache artifactCache = new LoggingArtifactCacheDecorator(buckEventBus)
           .decorate(options.getBuckConfig().createArtifactCache(
                   executionEnvironment.getWifiSsid(),
-                  buckEventBus,
-                  fileHashCache));
+                  buckEventBus));
       buckEventBus.post(ArtifactCacheConnectEvent.finished());
       createdArtifactCaches.add(artifactCache);
       return artifactCache;
@@ -561,7 +561,6 @@ public final class Main {
                  clock,
                  console,
                  verbosity,
-                 executionEnvironment,
                  rootRepository.getBuckConfig());
          BuckEventBus buildEventBus = new BuckEventBus(clock, buildId)) {
 
@@ -569,8 +568,7 @@ public final class Main {
       // running commands such as `buck clean`.
       artifactCacheFactory = new LoggingArtifactCacheFactory(
           executionEnvironment,
-          buildEventBus,
-          fileHashCache);
+          buildEventBus);
 
       Optional<WebServer> webServer = getWebServerIfDaemon(
           context,
@@ -623,6 +621,7 @@ public final class Main {
       JavaUtilsLoggingBuildListener.ensureLogFileIsWritten(rootRepository.getFilesystem());
 
       CachingBuildEngine buildEngine = new CachingBuildEngine();
+      ProcessExecutor.Statistics processStatisticsAtStart = ProcessExecutor.getStatistics();
       exitCode = executingCommand.execute(remainingArgs,
           rootRepository.getBuckConfig(),
           new CommandRunnerParams(
@@ -639,6 +638,10 @@ public final class Main {
               objectMapper,
               fileHashCache,
               clock));
+      LOG.debug(
+          "Subprocesses run by %s: %s",
+          commandName,
+          ProcessExecutor.getStatistics().since(processStatisticsAtStart));
 
       // If the Daemon is running and serving web traffic, print the URL to the Chrome Trace.
       if (webServer.isPresent()) {
@@ -828,7 +831,6 @@ public final class Main {
       Clock clock,
       Console console,
       Verbosity verbosity,
-      ExecutionEnvironment executionEnvironment,
       BuckConfig config) {
     if (Platform.WINDOWS != Platform.detect() &&
         console.getAnsi().isAnsiTerminal() &&
@@ -837,7 +839,6 @@ public final class Main {
       SuperConsoleEventBusListener superConsole = new SuperConsoleEventBusListener(
           console,
           clock,
-          executionEnvironment,
           config.isTreatingAssumptionsAsErrors());
       superConsole.startRenderScheduler(SUPER_CONSOLE_REFRESH_RATE.getDuration(),
           SUPER_CONSOLE_REFRESH_RATE.getUnit());
@@ -58,9 +58,7 @@ import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Iterables;
-import com.google.common.io.Files;
 
-import java.io.File;
 import java.io.IOException;
 import java.nio.file.Paths;
 import java.util.Collections;
@@ -181,55 +179,36 @@ public class ProjectCommand extends AbstractCommandRunner<ProjectCommandOptions>
         actionGraph,
         options.getBasePathToAliasMap(),
         options.getJavaPackageFinder(),
-        executionContext,
         getProjectFilesystem(),
         options.getPathToDefaultAndroidManifest(),
-        options.getPathToPostProcessScript(),
-        options.getBuckConfig().getPythonInterpreter(),
-        getObjectMapper());
-
-    File tempDir = Files.createTempDir();
-    File tempFile = new File(tempDir, "project.json");
-    int exitCode;
-    try {
-      exitCode = project.createIntellijProject(
-          tempFile,
-          executionContext.getProcessExecutor(),
-          !options.getArgumentsFormattedAsBuildTargets().isEmpty(),
-          console.getStdOut(),
-          console.getStdErr());
-      if (exitCode != 0) {
-        return exitCode;
-      }
+        options.getPathToPostProcessScript());
+
+    int exitCode = project.createIntellijProject(
+        executionContext.getProcessExecutor(),
+        !options.getArgumentsFormattedAsBuildTargets().isEmpty(),
+        console.getStdOut(),
+        console.getStdErr());
+    if (exitCode != 0) {
+      return exitCode;
+    }
 
-      List<String> additionalInitialTargets = ImmutableList.of();
-      if (options.shouldProcessAnnotations()) {
-        try {
-          additionalInitialTargets = getAnnotationProcessingTargets(options, resolver);
-        } catch (BuildTargetException | BuildFileParseException e) {
-          throw new HumanReadableException(e);
-        }
+    List<String> additionalInitialTargets = ImmutableList.of();
+    if (options.shouldProcessAnnotations()) {
+      try {
+        additionalInitialTargets = getAnnotationProcessingTargets(options, resolver);
+      } catch (BuildTargetException | BuildFileParseException e) {
+        throw new HumanReadableException(e);
       }
+    }
 
-      // Build initial targets.
-      if (options.hasInitialTargets() || !additionalInitialTargets.isEmpty()) {
-        BuildCommand buildCommand = new BuildCommand(getCommandRunnerParams());
-        BuildCommandOptions buildOptions =
-            options.createBuildCommandOptionsWithInitialTargets(additionalInitialTargets);
-
-
-        exitCode = buildCommand.runCommandWithOptions(buildOptions);
-        if (exitCode != 0) {
-          return exitCode;
-        }
-      }
-    } finally {
-      // Either leave project.json around for debugging or delete it on exit.
-      if (console.getVerbosity().shouldPrintOutput()) {
-        getStdErr().printf("project.json was written to %s", tempFile.getAbsolutePath());
-      } else {
-        tempFile.delete();
-        tempDir.delete();
+    // Build initial targets.
+    if (options.hasInitialTargets() || !additionalInitialTargets.isEmpty()) {
+      BuildCommand buildCommand = new BuildCommand(getCommandRunnerParams());
+      BuildCommandOptions buildOptions =
+          options.createBuildCommandOptionsWithInitialTargets(additionalInitialTargets);
+      exitCode = buildCommand.runCommandWithOptions(buildOptions);
+      if (exitCode != 0) {
+        return exitCode;
       }
     }
 
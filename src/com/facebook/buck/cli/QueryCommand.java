@@ -0,0 +1,138 @@
+/*
+ * Copyright 2014-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.cli;
+
+import com.facebook.buck.json.BuildFileParseException;
+import com.facebook.buck.model.BuildTargetException;
+import com.facebook.buck.query.QueryException;
+import com.facebook.buck.query.QueryExpression;
+import com.facebook.buck.query.QueryParser;
+import com.facebook.buck.query.TargetGraphIndex;
+import com.facebook.buck.rules.TargetNode;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSortedSet;
+import com.google.common.collect.Maps;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.Map;
+
+/**
+ * Evaluates queries over the target graph of the whole project, e.g.
+ * <pre>
+ * buck query "kind('_test$', rdeps(owner('java/com/example/Foo.java')))"
+ * </pre>
+ * The target graph and its indexes are kept by the daemon until a build file changes, so repeated
+ * queries only cost time in the size of their results.
+ */
+public class QueryCommand extends AbstractCommandRunner<QueryCommandOptions> {
+
+  private static final String TARGET_INDENT = "    ";
+
+  public QueryCommand(CommandRunnerParams params) {
+    super(params);
+  }
+
+  @Override
+  QueryCommandOptions createOptions(BuckConfig buckConfig) {
+    return new QueryCommandOptions(buckConfig);
+  }
+
+  @Override
+  int runCommandWithOptionsInternal(QueryCommandOptions options)
+      throws IOException, InterruptedException {
+    if (options.getArguments().isEmpty()) {
+      console.printBuildFailure("Must specify at least one query.");
+      return 1;
+    }
+
+    // Report syntax errors before doing the (potentially expensive) work of parsing the project.
+    ImmutableList.Builder<QueryExpression> expressions = ImmutableList.builder();
+    try {
+      for (String query : options.getArguments()) {
+        expressions.add(QueryParser.parse(query));
+      }
+    } catch (QueryException e) {
+      console.printBuildFailure(e.getHumanReadableErrorMessage());
+      return 1;
+    }
+
+    TargetGraphIndex index;
+    try {
+      index = TargetGraphIndex.of(
+          getParser().buildProjectTargetGraph(
+              options.getDefaultIncludes(),
+              getBuckEventBus(),
+              console,
+              environment));
+    } catch (BuildTargetException | BuildFileParseException e) {
+      console.printBuildFailureWithoutStacktrace(e);
+      return 1;
+    }
+
+    // Keyed by the queries as given, in the order they were given.
+    Map<String, ImmutableSortedSet<String>> results = Maps.newLinkedHashMap();
+    try {
+      int i = 0;
+      for (QueryExpression expression : expressions.build()) {
+        results.put(options.getArguments().get(i++), evaluate(expression, index));
+      }
+    } catch (QueryException e) {
+      console.printBuildFailure(e.getHumanReadableErrorMessage());
+      return 1;
+    }
+
+    if (options.shouldGenerateJsonOutput()) {
+      getObjectMapper().writeValue(console.getStdOut(), results);
+    } else {
+      printResults(results);
+    }
+    return 0;
+  }
+
+  private static ImmutableSortedSet<String> evaluate(
+      QueryExpression expression,
+      TargetGraphIndex index) throws QueryException {
+    ImmutableSortedSet.Builder<String> targets = ImmutableSortedSet.naturalOrder();
+    for (TargetNode<?> node : expression.eval(index)) {
+      targets.add(node.getBuildTarget().getFullyQualifiedName());
+    }
+    return targets.build();
+  }
+
+  private void printResults(Map<String, ImmutableSortedSet<String>> results) {
+    PrintStream out = console.getStdOut();
+    if (results.size() == 1) {
+      for (String target : results.values().iterator().next()) {
+        out.println(target);
+      }
+      return;
+    }
+
+    for (Map.Entry<String, ImmutableSortedSet<String>> result : results.entrySet()) {
+      out.println(result.getKey());
+      for (String target : result.getValue()) {
+        out.println(TARGET_INDENT + target);
+      }
+    }
+  }
+
+  @Override
+  String getUsageIntro() {
+    return "evaluates queries over the target graph of the whole project";
+  }
+}
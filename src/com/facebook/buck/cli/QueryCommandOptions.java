@@ -0,0 +1,46 @@
+/*
+ * Copyright 2014-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.cli;
+
+import com.google.common.collect.Lists;
+
+import org.kohsuke.args4j.Argument;
+import org.kohsuke.args4j.Option;
+
+import java.util.List;
+
+public class QueryCommandOptions extends AbstractCommandOptions {
+
+  @Option(name = "--json",
+      usage = "Print the targets each query evaluates to as JSON")
+  private boolean json;
+
+  @Argument
+  private List<String> arguments = Lists.newArrayList();
+
+  public QueryCommandOptions(BuckConfig buckConfig) {
+    super(buckConfig);
+  }
+
+  public List<String> getArguments() {
+    return arguments;
+  }
+
+  public boolean shouldGenerateJsonOutput() {
+    return json;
+  }
+}
@@ -26,6 +26,7 @@ import com.facebook.buck.java.JavaTest;
 import com.facebook.buck.json.BuildFileParseException;
 import com.facebook.buck.model.BuildTarget;
 import com.facebook.buck.model.BuildTargetException;
+import com.facebook.buck.model.HasBuildTarget;
 import com.facebook.buck.parser.PartialGraph;
 import com.facebook.buck.parser.RuleJsonPredicates;
 import com.facebook.buck.rules.ActionGraph;
@@ -38,7 +39,6 @@ import com.facebook.buck.rules.BuildRuleSuccess;
 import com.facebook.buck.rules.IndividualTestEvent;
 import com.facebook.buck.rules.TestRule;
 import com.facebook.buck.rules.TestRunEvent;
-import com.facebook.buck.step.DefaultStepRunner;
 import com.facebook.buck.step.ExecutionContext;
 import com.facebook.buck.step.Step;
 import com.facebook.buck.step.StepFailedException;
@@ -61,6 +61,7 @@ import com.google.common.base.Function;
 import com.google.common.base.Optional;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Predicate;
+import com.google.common.base.Predicates;
 import com.google.common.base.Strings;
 import com.google.common.collect.FluentIterable;
 import com.google.common.collect.ImmutableList;
@@ -70,6 +71,7 @@ import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
 import com.google.common.io.Files;
+import com.google.common.util.concurrent.AsyncFunction;
 import com.google.common.util.concurrent.FutureCallback;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
@@ -90,6 +92,7 @@ import java.util.UUID;
 import java.util.concurrent.Callable;
 import java.util.concurrent.CancellationException;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import javax.annotation.Nullable;
 import javax.xml.parsers.DocumentBuilder;
@@ -131,31 +134,28 @@ public class TestCommand extends AbstractCommandRunner<TestCommandOptions> {
 
     BuildCommand buildCommand = new BuildCommand(getCommandRunnerParams());
 
-    int exitCode = buildCommand.runCommandWithOptions(options);
+    int exitCode = buildCommand.createBuild(
+        options,
+        getArtifactCache(),
+        options.getTargetDeviceOptional());
     if (exitCode != 0) {
       return exitCode;
     }
 
-    Build build = buildCommand.getBuild();
+    try (Build build = buildCommand.getBuild()) {
+      Iterable<TestRule> results = getCandidateRules(build.getActionGraph());
 
-    Iterable<TestRule> results = getCandidateRules(build.getActionGraph());
-
-    results = filterTestRules(options, results);
-    if (options.isDryRun()) {
-      printMatchingTestRules(console, results);
-    }
-
-    BuildContext buildContext = build.getBuildContext();
-    ExecutionContext buildExecutionContext = build.getExecutionContext();
-    ExecutionContext testExecutionContext = ExecutionContext.builder().
-        setExecutionContext(buildExecutionContext).
-        setTargetDevice(options.getTargetDeviceOptional()).
-        build();
+      results = filterTestRules(options, results);
+      if (options.isDryRun()) {
+        printMatchingTestRules(console, results);
+      }
 
-    try {
-      return runTestsAndShutdownExecutor(results,
-          buildContext,
-          testExecutionContext,
+      ImmutableList<BuildTarget> buildTargets = buildCommand.getBuildTargets();
+      return buildAndRunTests(
+          ImmutableSet.copyOf(buildTargets),
+          buildTargets,
+          results,
+          build,
           options);
     } catch (ExecutionException e) {
       console.printBuildFailureWithoutStacktrace(e);
@@ -329,19 +329,8 @@ public class TestCommand extends AbstractCommandRunner<TestCommandOptions> {
         getCommandRunnerParams().getObjectMapper(),
         getCommandRunnerParams().getClock())) {
 
-      // Build all of the test rules.
-      int exitCode = BuildCommand.executeBuildAndPrintAnyFailuresToConsole(
-          testRules, build, console);
-      getBuckEventBus().post(BuildEvent.finished(emptyTargetsList, exitCode));
-      if (exitCode != 0) {
-        return exitCode;
-      }
-
-      // Once all of the rules are built, then run the tests.
-      return runTestsAndShutdownExecutor(testRules,
-          build.getBuildContext(),
-          build.getExecutionContext(),
-          options);
+      // Build all of the test rules, running each test as soon as it is built.
+      return buildAndRunTests(emptyTargetsList, testRules, testRules, build, options);
     }
   }
 
@@ -423,27 +412,23 @@ public class TestCommand extends AbstractCommandRunner<TestCommandOptions> {
     return builder.build();
   }
 
-  private int runTestsAndShutdownExecutor(
-      Iterable<TestRule> tests,
-      BuildContext buildContext,
-      ExecutionContext executionContext,
-      TestCommandOptions options)
-      throws IOException, ExecutionException, InterruptedException {
-
-    try (DefaultStepRunner stepRunner =
-            new DefaultStepRunner(executionContext, options.getNumThreads())) {
-      return runTests(tests, buildContext, executionContext, stepRunner, options);
-    }
-  }
-
+  /**
+   * Builds {@code targetsToBuild} and runs {@code tests}, which must be among them or their deps.
+   * Rather than waiting for the whole build to finish, each test is run on the build's
+   * {@link StepRunner} as soon as its own rule has been built.
+   *
+   * @param buildTargets the targets to report in the {@link BuildEvent}s.
+   */
   @SuppressWarnings("PMD.EmptyCatchBlock")
-  private int runTests(
+  private int buildAndRunTests(
+      ImmutableSet<BuildTarget> buildTargets,
+      Iterable<? extends HasBuildTarget> targetsToBuild,
       Iterable<TestRule> tests,
-      BuildContext buildContext,
-      ExecutionContext executionContext,
-      StepRunner stepRunner,
+      Build build,
       final TestCommandOptions options)
       throws IOException, ExecutionException, InterruptedException {
+    final StepRunner stepRunner = build.getStepRunner();
+    final ExecutionContext executionContext = build.getExecutionContext();
 
     if (options.isUsingOneTimeOutputDirectories()) {
       BuckConstant.setOneTimeTestSubdirectory(UUID.randomUUID().toString());
@@ -472,9 +457,16 @@ public class TestCommand extends AbstractCommandRunner<TestCommandOptions> {
         options.shouldExplainTestSelectorList(),
         options.getArgumentsFormattedAsBuildTargets()));
 
-    // Start running all of the tests. The result of each java_test() rule is represented as a
-    // ListenableFuture.
-    List<ListenableFuture<TestResults>> results = Lists.newArrayList();
+    ListenableFuture<List<BuildRuleSuccess>> buildFuture;
+    try {
+      buildFuture = build.executeBuild(
+          BuildCommand.getRulesToBuild(targetsToBuild, build.getActionGraph()));
+    } catch (StepFailedException e) {
+      console.printBuildFailureWithoutStacktrace(e);
+      getBuckEventBus().post(BuildEvent.finished(buildTargets, e.getExitCode()));
+      return e.getExitCode();
+    }
+    final BuildContext buildContext = Preconditions.checkNotNull(build.getBuildContext());
 
     // Unless `--verbose 0` is specified, print out test results as they become available.
     // Failures with the ListenableFuture should always be printed, as they indicate an error with
@@ -483,61 +475,77 @@ public class TestCommand extends AbstractCommandRunner<TestCommandOptions> {
     final boolean printTestResults = (verbosity != Verbosity.SILENT);
 
     // For grouping results!
-    TestResultsGrouper grouper = null;
+    final TestResultsGrouper grouper;
     if (options.isIgnoreFailingDependencies()) {
       grouper = new TestResultsGrouper(tests);
+    } else {
+      grouper = null;
     }
 
-    TestRuleKeyFileHelper testRuleKeyFileHelper = new TestRuleKeyFileHelper(
+    final TestRuleKeyFileHelper testRuleKeyFileHelper = new TestRuleKeyFileHelper(
         executionContext.getProjectFilesystem(),
         getBuildEngine());
-    for (TestRule test : tests) {
-      // Determine whether the test needs to be executed.
-      boolean isTestRunRequired;
-      isTestRunRequired = isTestRunRequiredForTest(
-          test,
-          getBuildEngine(),
-          executionContext,
-          testRuleKeyFileHelper,
-          options.isResultsCacheEnabled(),
-          !options.getTestSelectorList().isEmpty());
-
-
-      List<Step> steps;
-      if (isTestRunRequired) {
-        getBuckEventBus().post(IndividualTestEvent.started(
-            options.getArgumentsFormattedAsBuildTargets()));
-        ImmutableList.Builder<Step> stepsBuilder = ImmutableList.builder();
-        BuildEngine cachingBuildEngine = getBuildEngine();
-        Preconditions.checkState(cachingBuildEngine.isRuleBuilt(test.getBuildTarget()));
-        List<Step> testSteps = test.runTests(
-            buildContext,
-            executionContext,
-            options.isDryRun(),
-            options.getTestSelectorList());
-        if (!testSteps.isEmpty()) {
-          stepsBuilder.addAll(testSteps);
-          stepsBuilder.add(testRuleKeyFileHelper.createRuleKeyInDirStep(test));
-        }
-        steps = stepsBuilder.build();
-      } else {
-        steps = ImmutableList.of();
-      }
+    final Optional<TestResultsCacheHelper> testResultsCacheHelper;
+    if (options.isArtifactCacheForResultsEnabled()) {
+      testResultsCacheHelper = Optional.of(
+          new TestResultsCacheHelper(
+              executionContext.getProjectFilesystem(),
+              getBuildEngine(),
+              buildContext.getArtifactCache(),
+              getBuckEventBus(),
+              executionContext.getPlatform()));
+    } else {
+      testResultsCacheHelper = Optional.absent();
+    }
+
+    // Start running each of the tests as soon as its rule is built. The result of each test rule
+    // is represented as a ListenableFuture, which fails if the rule could not be built.
+    final AtomicBoolean isBuildFailed = new AtomicBoolean(false);
+    List<ListenableFuture<TestResults>> results = Lists.newArrayList();
+    for (final TestRule test : tests) {
+      results.add(
+          Futures.transform(
+              getBuildEngine().build(
+                  buildContext,
+                  build.getActionGraph().findBuildRuleByTarget(test.getBuildTarget())),
+              new AsyncFunction<BuildRuleSuccess, TestResults>() {
+                @Override
+                public ListenableFuture<TestResults> apply(BuildRuleSuccess success)
+                    throws IOException, ExecutionException, InterruptedException {
+                  if (isBuildFailed.get()) {
+                    return Futures.immediateCancelledFuture();
+                  }
+                  return runTest(
+                      test,
+                      buildContext,
+                      executionContext,
+                      stepRunner,
+                      testRuleKeyFileHelper,
+                      testResultsCacheHelper,
+                      options,
+                      grouper,
+                      printTestResults);
+                }
+              }));
+    }
 
-      // Always run the commands, even if the list of commands as empty. There may be zero commands
-      // because the rule is cached, but its results must still be processed.
-      ListenableFuture<TestResults> testResults =
-          stepRunner.runStepsAndYieldResult(steps,
-              getCachingStatusTransformingCallable(
-                  isTestRunRequired,
-                  test.interpretTestResults(executionContext,
-                      /*isUsingTestSelectors*/ !options.getTestSelectorList().isEmpty(),
-                      /*isDryRun*/ options.isDryRun())),
-              test.getBuildTarget());
-      FutureCallback<TestResults> onTestFinishedCallback =
-          getFutureCallback(grouper, test, options, printTestResults);
-      Futures.addCallback(testResults, onTestFinishedCallback);
-      results.add(testResults);
+    int exitCode = 1;
+    try {
+      exitCode = BuildCommand.waitForBuildAndPrintAnyFailuresToConsole(buildFuture, console);
+    } finally {
+      // Once the build has failed, don't start any more tests.
+      isBuildFailed.set(exitCode != 0);
+    }
+    getBuckEventBus().post(BuildEvent.finished(buildTargets, exitCode));
+    if (exitCode != 0) {
+      // Let the tests which have already started finish before the build is closed.
+      List<TestResults> completedResults = FluentIterable
+          .from(Futures.successfulAsList(results).get())
+          .filter(Predicates.notNull())
+          .toList();
+      getBuckEventBus().post(TestRunEvent.finished(
+          options.getArgumentsFormattedAsBuildTargets(), completedResults));
+      return exitCode;
     }
 
     // Block until all the tests have finished running.
@@ -609,6 +617,73 @@ public class TestCommand extends AbstractCommandRunner<TestCommandOptions> {
     return (failures || significantAssumptionViolations) ? TEST_FAILURES_EXIT_CODE : 0;
   }
 
+  private ListenableFuture<TestResults> runTest(
+      TestRule test,
+      BuildContext buildContext,
+      ExecutionContext executionContext,
+      StepRunner stepRunner,
+      TestRuleKeyFileHelper testRuleKeyFileHelper,
+      Optional<TestResultsCacheHelper> testResultsCacheHelper,
+      TestCommandOptions options,
+      @Nullable TestResultsGrouper grouper,
+      boolean printTestResults)
+      throws IOException, ExecutionException, InterruptedException {
+    // Determine whether the test needs to be executed.
+    boolean isTestRunRequired;
+    isTestRunRequired = isTestRunRequiredForTest(
+        test,
+        getBuildEngine(),
+        executionContext,
+        testRuleKeyFileHelper,
+        testResultsCacheHelper,
+        options.isResultsCacheEnabled(),
+        !options.getTestSelectorList().isEmpty());
+
+    List<Step> steps;
+    if (isTestRunRequired) {
+      getBuckEventBus().post(IndividualTestEvent.started(
+          options.getArgumentsFormattedAsBuildTargets()));
+      ImmutableList.Builder<Step> stepsBuilder = ImmutableList.builder();
+      BuildEngine cachingBuildEngine = getBuildEngine();
+      Preconditions.checkState(cachingBuildEngine.isRuleBuilt(test.getBuildTarget()));
+      List<Step> testSteps = test.runTests(
+          buildContext,
+          executionContext,
+          options.isDryRun(),
+          options.getTestSelectorList());
+      if (!testSteps.isEmpty()) {
+        stepsBuilder.addAll(testSteps);
+        stepsBuilder.add(testRuleKeyFileHelper.createRuleKeyInDirStep(test));
+      }
+      steps = stepsBuilder.build();
+    } else {
+      steps = ImmutableList.of();
+    }
+
+    Callable<TestResults> interpretTestResults = test.interpretTestResults(executionContext,
+        /*isUsingTestSelectors*/ !options.getTestSelectorList().isEmpty(),
+        /*isDryRun*/ options.isDryRun());
+    if (!steps.isEmpty() && testResultsCacheHelper.isPresent()) {
+      interpretTestResults = getResultsStoringCallable(
+          test,
+          testResultsCacheHelper.get(),
+          interpretTestResults);
+    }
+
+    // Always run the commands, even if the list of commands as empty. There may be zero commands
+    // because the rule is cached, but its results must still be processed.
+    ListenableFuture<TestResults> testResults =
+        stepRunner.runStepsAndYieldResult(steps,
+            getCachingStatusTransformingCallable(
+                isTestRunRequired,
+                interpretTestResults),
+            test.getBuildTarget());
+    FutureCallback<TestResults> onTestFinishedCallback =
+        getFutureCallback(grouper, test, options, printTestResults);
+    Futures.addCallback(testResults, onTestFinishedCallback);
+    return testResults;
+  }
+
   private FutureCallback<TestResults> getFutureCallback(
       @Nullable final TestResultsGrouper grouper,
       final TestRule testRule,
@@ -644,6 +719,26 @@ public class TestCommand extends AbstractCommandRunner<TestCommandOptions> {
     };
   }
 
+  /**
+   * Stores the results of a test which has just run in the {@link ArtifactCache}, once they have
+   * been interpreted. Only passing results are stored, so that flaky failures aren't cached.
+   */
+  private Callable<TestResults> getResultsStoringCallable(
+      final TestRule test,
+      final TestResultsCacheHelper testResultsCacheHelper,
+      final Callable<TestResults> originalCallable) {
+    return new Callable<TestResults>() {
+      @Override
+      public TestResults call() throws Exception {
+        TestResults testResults = originalCallable.call();
+        if (testResults.isSuccess() && !testResults.hasAssumptionViolations()) {
+          testResultsCacheHelper.storeTestResults(test);
+        }
+        return testResults;
+      }
+    };
+  }
+
   private Callable<TestResults> getCachingStatusTransformingCallable(
       boolean isTestRunRequired,
       final Callable<TestResults> originalCallable) {
@@ -672,6 +767,7 @@ public class TestCommand extends AbstractCommandRunner<TestCommandOptions> {
       BuildEngine cachingBuildEngine,
       ExecutionContext executionContext,
       TestRuleKeyFileHelper testRuleKeyFileHelper,
+      Optional<TestResultsCacheHelper> testResultsCacheHelper,
       boolean isResultsCacheEnabled,
       boolean isRunningWithTestSelectors)
       throws IOException, ExecutionException, InterruptedException {
@@ -696,6 +792,15 @@ public class TestCommand extends AbstractCommandRunner<TestCommandOptions> {
       // files) are up to date, then no commands are necessary to run the tests. The test result
       // files will be read from the XML files in interpretTestResults().
       isTestRunRequired = false;
+    } else if (isResultsCacheEnabled &&
+        testResultsCacheHelper.isPresent() &&
+        testResultsCacheHelper.get().fetchTestResults(test) &&
+        test.hasTestResultFiles(executionContext) &&
+        testRuleKeyFileHelper.isRuleKeyInDir(test)) {
+      // The results of this exact version of the test were produced by an earlier run, possibly
+      // on another machine, and have been fetched from the ArtifactCache into the output
+      // directory, from where they will be read by interpretTestResults().
+      isTestRunRequired = false;
     } else {
       isTestRunRequired = true;
     }
@@ -32,6 +32,7 @@ import javax.annotation.Nullable;
 public class TestCommandOptions extends BuildCommandOptions {
 
   public static final String USE_RESULTS_CACHE = "use_results_cache";
+  public static final String USE_ARTIFACT_CACHE_FOR_RESULTS = "use_artifact_cache_for_results";
 
   @Option(name = "--all",
           usage =
@@ -56,6 +57,8 @@ public class TestCommandOptions extends BuildCommandOptions {
   @Option(name = "--no-results-cache", usage = "Whether to use cached test results.")
   private boolean isResultsCacheDisabled = false;
 
+  private final boolean isUseArtifactCacheForResults;
+
   @Option(
       name = "--ignore-when-dependencies-fail",
       aliases = {"-i"},
@@ -94,6 +97,8 @@ public class TestCommandOptions extends BuildCommandOptions {
     super(buckConfig);
 
     setUseResultsCacheFromConfig(buckConfig);
+    isUseArtifactCacheForResults =
+        buckConfig.getBooleanValue("test", USE_ARTIFACT_CACHE_FOR_RESULTS, true);
   }
 
   public boolean isRunAllTests() {
@@ -129,6 +134,20 @@ public class TestCommandOptions extends BuildCommandOptions {
     return !isResultsCacheDisabled;
   }
 
+  /**
+   * @return whether test results should also be stored in and fetched from the
+   *     {@link com.facebook.buck.rules.ArtifactCache}, which only makes sense if they are complete
+   *     and written to the usual output directories.
+   */
+  public boolean isArtifactCacheForResultsEnabled() {
+    return isResultsCacheEnabled() &&
+        isUseArtifactCacheForResults &&
+        !isUsingOneTimeOutput &&
+        !isDryRun &&
+        !isDebugEnabled &&
+        getTestSelectorList().isEmpty();
+  }
+
   @Override
   public boolean isDebugEnabled() {
     return isDebugEnabled;
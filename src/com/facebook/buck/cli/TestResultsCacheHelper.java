@@ -0,0 +1,178 @@
+/*
+ * Copyright 2014-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.cli;
+
+import com.facebook.buck.event.BuckEventBus;
+import com.facebook.buck.event.ConsoleEvent;
+import com.facebook.buck.rules.ArtifactCache;
+import com.facebook.buck.rules.BuildEngine;
+import com.facebook.buck.rules.CacheResult;
+import com.facebook.buck.rules.RuleKey;
+import com.facebook.buck.rules.TestRule;
+import com.facebook.buck.util.ProjectFilesystem;
+import com.facebook.buck.util.environment.Platform;
+import com.facebook.buck.zip.Unzip;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Charsets;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.hash.Hashing;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+
+/**
+ * Stores the output directory of a test, which holds its results and the
+ * {@link TestRuleKeyFileHelper#RULE_KEY_FILE}, in the {@link ArtifactCache}, and fetches it back.
+ * This means that a test whose rule key hasn't changed need not be run again, even on a machine
+ * where it has never run before.
+ * <p>
+ * As well as on the rule key of the test, the results are keyed on the platform and the JVM which
+ * they were produced with.
+ */
+public class TestResultsCacheHelper {
+
+  private final ProjectFilesystem projectFilesystem;
+  private final BuildEngine buildEngine;
+  private final ArtifactCache artifactCache;
+  private final BuckEventBus eventBus;
+  private final String environment;
+
+  public TestResultsCacheHelper(
+      ProjectFilesystem projectFilesystem,
+      BuildEngine buildEngine,
+      ArtifactCache artifactCache,
+      BuckEventBus eventBus,
+      Platform platform) {
+    this.projectFilesystem = Preconditions.checkNotNull(projectFilesystem);
+    this.buildEngine = Preconditions.checkNotNull(buildEngine);
+    this.artifactCache = Preconditions.checkNotNull(artifactCache);
+    this.eventBus = Preconditions.checkNotNull(eventBus);
+    this.environment = String.format(
+        "%s %s %s",
+        platform,
+        System.getProperty("os.arch"),
+        System.getProperty("java.version"));
+  }
+
+  /**
+   * Fetches the results of the test from the cache, replacing the contents of its output
+   * directory.
+   * @return whether the results were found in the cache.
+   */
+  public boolean fetchTestResults(TestRule testRule) throws InterruptedException {
+    Path outputDir = Preconditions.checkNotNull(testRule.getPathToTestOutputDirectory());
+    File zip;
+    try {
+      zip = createTempZip(testRule);
+    } catch (IOException e) {
+      return false;
+    }
+
+    try {
+      CacheResult cacheResult = artifactCache.fetch(getTestResultsKey(testRule), zip);
+      if (!cacheResult.isSuccess()) {
+        return false;
+      }
+
+      // Don't let results left over from a different version of the test be mistaken for the
+      // cached ones.
+      projectFilesystem.rmdir(outputDir);
+      Unzip.extractZipFile(
+          zip.toPath().toAbsolutePath(),
+          projectFilesystem.getRootPath().toAbsolutePath(),
+          /* overwriteExistingFiles */ true);
+      return true;
+    } catch (IOException e) {
+      eventBus.post(ConsoleEvent.warning(
+          "Failed to unzip the cached results of %s, so it will be run: %s",
+          testRule.getBuildTarget(),
+          e.getMessage()));
+      return false;
+    } finally {
+      zip.delete();
+    }
+  }
+
+  /**
+   * Stores the contents of the output directory of the test, which must have just run, in the
+   * cache. Like {@link ArtifactCache#store(RuleKey, File)}, any errors are ignored.
+   */
+  public void storeTestResults(TestRule testRule) throws InterruptedException {
+    // Don't bother zipping up the results if they would just be thrown away.
+    if (!artifactCache.isStoreSupported()) {
+      return;
+    }
+
+    Path outputDir = Preconditions.checkNotNull(testRule.getPathToTestOutputDirectory());
+    final ImmutableList.Builder<Path> pathsToIncludeInZip = ImmutableList.builder();
+    File zip;
+    try {
+      projectFilesystem.walkRelativeFileTree(
+          outputDir,
+          new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+              pathsToIncludeInZip.add(file);
+              return FileVisitResult.CONTINUE;
+            }
+          });
+      zip = createTempZip(testRule);
+      projectFilesystem.createZip(pathsToIncludeInZip.build(), zip);
+    } catch (IOException e) {
+      eventBus.post(ConsoleEvent.info(
+          "Failed to create a zip of the results of %s: %s",
+          testRule.getBuildTarget(),
+          e.getMessage()));
+      return;
+    }
+
+    try {
+      artifactCache.store(getTestResultsKey(testRule), zip);
+    } finally {
+      zip.delete();
+    }
+  }
+
+  /**
+   * @return the key which the results of the test are cached under. This must never be the same
+   *     as the rule key of any rule, as that would clash with the rule's own artifact.
+   */
+  @VisibleForTesting
+  RuleKey getTestResultsKey(TestRule testRule) {
+    RuleKey ruleKey = Preconditions.checkNotNull(buildEngine.getRuleKey(testRule.getBuildTarget()));
+    return new RuleKey(
+        Hashing.sha1().newHasher()
+            .putString("test_results", Charsets.UTF_8)
+            .putByte((byte) 0)
+            .putString(ruleKey.toString(), Charsets.UTF_8)
+            .putByte((byte) 0)
+            .putString(environment, Charsets.UTF_8)
+            .hash()
+            .toString());
+  }
+
+  private static File createTempZip(TestRule testRule) throws IOException {
+    return File.createTempFile(
+        testRule.getBuildTarget().getFullyQualifiedName().replace('/', '_') + "_test_results",
+        ".zip");
+  }
+}
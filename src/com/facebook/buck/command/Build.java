@@ -36,6 +36,7 @@ import com.facebook.buck.rules.Builder;
 import com.facebook.buck.step.DefaultStepRunner;
 import com.facebook.buck.step.ExecutionContext;
 import com.facebook.buck.step.StepFailedException;
+import com.facebook.buck.step.StepRunner;
 import com.facebook.buck.step.TargetDevice;
 import com.facebook.buck.timing.Clock;
 import com.facebook.buck.util.AndroidDirectoryResolver;
@@ -140,6 +141,14 @@ public class Build implements Closeable {
     return executionContext;
   }
 
+  /**
+   * The {@link StepRunner} which the rules are built with. Work scheduled on it while the build is
+   * in progress shares its threads with the build.
+   */
+  public StepRunner getStepRunner() {
+    return stepRunner;
+  }
+
   /** Returns null until {@link #executeBuild(Set)} is invoked. */
   @Nullable
   public BuildContext getBuildContext() {
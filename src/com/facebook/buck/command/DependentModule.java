@@ -17,19 +17,18 @@
 package com.facebook.buck.command;
 
 import com.facebook.buck.model.BuildTarget;
-import com.fasterxml.jackson.annotation.JsonInclude;
-import com.fasterxml.jackson.annotation.JsonInclude.Include;
-import com.fasterxml.jackson.annotation.JsonProperty;
 import com.google.common.base.Objects;
 import com.google.common.base.Preconditions;
 
 import javax.annotation.Nullable;
 
-@JsonInclude(Include.NON_NULL)
 class DependentModule {
 
   private static final String LIBRARY_DEPENDENCY_TYPE = "library";
   private static final String MODULE_DEPENDENCY_TYPE = "module";
+  private static final String SOURCE_FOLDER_DEPENDENCY_TYPE = "sourceFolder";
+  private static final String INHERITED_JDK_DEPENDENCY_TYPE = "inheritedJdk";
+  private static final String JDK_DEPENDENCY_TYPE = "jdk";
 
   // The BuildTarget which this DependentModule represent. For example
   // given the target:
@@ -38,36 +37,29 @@ class DependentModule {
   @Nullable
   private final BuildTarget target;
 
-  @JsonProperty
   private final String type;
 
-  @JsonProperty
   @Nullable
   String scope;
 
-  @JsonProperty
   @Nullable
   private String name;
 
-  @JsonProperty
   @Nullable
   private String moduleName;
 
-  @JsonProperty
   @Nullable
   private Boolean forTests;
 
   /**
    * Set if {@link #type} is {@code jdk}.
    */
-  @JsonProperty
   @Nullable
   private String jdkName;
 
   /**
    * Set if {@link #type} is {@code jdk}.
    */
-  @JsonProperty
   @Nullable
   private String jdkType;
 
@@ -97,6 +89,23 @@ class DependentModule {
     return MODULE_DEPENDENCY_TYPE.equals(type);
   }
 
+  boolean isSourceFolder() {
+    return SOURCE_FOLDER_DEPENDENCY_TYPE.equals(type);
+  }
+
+  boolean isInheritedJdk() {
+    return INHERITED_JDK_DEPENDENCY_TYPE.equals(type);
+  }
+
+  boolean isJdk() {
+    return JDK_DEPENDENCY_TYPE.equals(type);
+  }
+
+  @Nullable
+  String getScope() {
+    return scope;
+  }
+
   String getLibraryName() {
     Preconditions.checkState(isLibrary());
     return Preconditions.checkNotNull(name);
@@ -107,6 +116,16 @@ class DependentModule {
     return Preconditions.checkNotNull(moduleName);
   }
 
+  String getJdkName() {
+    Preconditions.checkState(isJdk());
+    return Preconditions.checkNotNull(jdkName);
+  }
+
+  String getJdkType() {
+    Preconditions.checkState(isJdk());
+    return Preconditions.checkNotNull(jdkType);
+  }
+
   static DependentModule newLibrary(@Nullable BuildTarget owningTarget, String libraryName) {
     DependentModule module = new DependentModule(LIBRARY_DEPENDENCY_TYPE, owningTarget);
     module.name = libraryName;
@@ -120,22 +139,22 @@ class DependentModule {
   }
 
   static DependentModule newSourceFolder() {
-    return new DependentModule("sourceFolder", null);
+    return new DependentModule(SOURCE_FOLDER_DEPENDENCY_TYPE, null);
   }
 
   static DependentModule newInheritedJdk() {
-    return new DependentModule("inheritedJdk", null);
+    return new DependentModule(INHERITED_JDK_DEPENDENCY_TYPE, null);
   }
 
   static DependentModule newStandardJdk() {
-    DependentModule dependentModule = new DependentModule("jdk", null);
+    DependentModule dependentModule = new DependentModule(JDK_DEPENDENCY_TYPE, null);
     dependentModule.jdkName = "1.7";
     dependentModule.jdkType = "JavaSDK";
     return dependentModule;
   }
 
   static DependentModule newIntelliJPluginJdk() {
-    DependentModule dependentModule = new DependentModule("jdk", null);
+    DependentModule dependentModule = new DependentModule(JDK_DEPENDENCY_TYPE, null);
     // TODO(mbolin): Find the appropriate jdkName for the user's machine.
     // "IDEA IC-117.798" is the one used on my machine for IntelliJ Community Edition 11.1.3.
     // It seems as though we need to find the IntelliJ executable on the user's machine and ask
@@ -0,0 +1,557 @@
+/*
+ * Copyright 2014-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.command;
+
+import static com.facebook.buck.util.concurrent.MoreExecutors.newMultiThreadExecutorForTasks;
+import static com.google.common.util.concurrent.MoreExecutors.listeningDecorator;
+
+import com.facebook.buck.command.Project.LibraryJar;
+import com.facebook.buck.command.Project.SourceFolder;
+import com.facebook.buck.util.ProjectFilesystem;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Optional;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableListMultimap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableSortedSet;
+import com.google.common.collect.ListMultimap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+
+import java.io.IOException;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+
+import javax.annotation.Nullable;
+
+/**
+ * Writes the IntelliJ configuration for a set of {@link Module}s: an {@code .iml} file per module,
+ * {@code .idea/modules.xml}, a file per project library and the run configurations. A file is only
+ * written if its contents changed, so that IntelliJ does not reindex modules that a run of
+ * {@code buck project} did not affect.
+ */
+class IntellijConfigWriter {
+
+  private static final String MODULES_XML = ".idea/modules.xml";
+  private static final Path LIBRARIES_DIR = Paths.get(".idea/libraries");
+  private static final Path RUN_CONFIGURATIONS_DIR = Paths.get(".idea/runConfigurations");
+
+  private static final String GEN_SOURCE_FOLDER_URL = "file://$MODULE_DIR$/gen";
+
+  /**
+   * These jars are part of the IntelliJ SDK, so even though language plugins need them to work
+   * standalone, they cannot be dependencies of a plugin module because they would clash with
+   * IntelliJ itself.
+   */
+  private static final ImmutableSet<String> INTELLIJ_SDK_LIBRARIES = ImmutableSet.of(
+      "annotations",    // org/intellij/lang/annotations, org/jetbrains/annotations
+      "extensions",     // com/intellij/openapi/extensions/
+      "idea",           // org/intellij, com/intellij
+      "jdom",           // org/jdom
+      "junit",          // junit/
+      "light_psi_all",  // light psi library
+      "openapi",        // com/intellij/openapi
+      "picocontainer",  // org/picocontainer
+      "trove4j",        // gnu/trove
+      "util");          // com/intellij/util
+
+  // TODO(mbolin): Eliminate this special-case for jackson. It exists because jackson is not an
+  // ordinary module: it is a module that functions as a library.
+  private static final String EXPORTED_MODULE_NAME = "module_first_party_orca_third_party_jackson";
+
+  private static final String REMOTE_DEBUG_RUN_CONFIGURATION =
+      "<component name=\"ProjectRunConfigurationManager\">\n" +
+      "  <configuration default=\"false\" name=\"Debug Buck test\" type=\"Remote\" " +
+          "factoryName=\"Remote\">\n" +
+      "    <option name=\"USE_SOCKET_TRANSPORT\" value=\"true\" />\n" +
+      "    <option name=\"SERVER_MODE\" value=\"false\" />\n" +
+      "    <option name=\"SHMEM_ADDRESS\" value=\"javadebug\" />\n" +
+      "    <option name=\"HOST\" value=\"localhost\" />\n" +
+      "    <option name=\"PORT\" value=\"5005\" />\n" +
+      "    <RunnerSettings RunnerId=\"Debug\">\n" +
+      "      <option name=\"DEBUG_PORT\" value=\"5005\" />\n" +
+      "      <option name=\"TRANSPORT\" value=\"0\" />\n" +
+      "      <option name=\"LOCAL\" value=\"false\" />\n" +
+      "    </RunnerSettings>\n" +
+      "    <ConfigurationWrapper RunnerId=\"Debug\" />\n" +
+      "    <method />\n" +
+      "  </configuration>\n" +
+      "</component>";
+
+  private final ProjectFilesystem projectFilesystem;
+
+  IntellijConfigWriter(ProjectFilesystem projectFilesystem) {
+    this.projectFilesystem = Preconditions.checkNotNull(projectFilesystem);
+  }
+
+  /**
+   * @param generateMinimalProject whether directories that no module refers to should be excluded
+   *     from the modules above them, which keeps IntelliJ from indexing them.
+   * @return the paths, relative to the project root, of the files that were written.
+   */
+  ImmutableSortedSet<String> write(
+      List<Module> modules,
+      List<LibraryJar> libraries,
+      boolean generateMinimalProject) throws IOException, InterruptedException {
+    ImmutableSortedSet.Builder<String> modifiedFiles = ImmutableSortedSet.naturalOrder();
+
+    projectFilesystem.mkdirs(LIBRARIES_DIR);
+    for (LibraryJar library : libraries) {
+      String path = LIBRARIES_DIR.resolve(library.getName() + ".xml").toString();
+      if (writeIfChanged(path, generateLibraryXml(library))) {
+        modifiedFiles.add(path);
+      }
+    }
+
+    modifiedFiles.addAll(writeModules(modules, generateMinimalProject));
+
+    if (writeIfChanged(MODULES_XML, generateModulesXml(modules))) {
+      modifiedFiles.add(MODULES_XML);
+    }
+
+    projectFilesystem.mkdirs(RUN_CONFIGURATIONS_DIR);
+    String runConfiguration = RUN_CONFIGURATIONS_DIR.resolve("Debug_Buck_test.xml").toString();
+    if (writeIfChanged(runConfiguration, REMOTE_DEBUG_RUN_CONFIGURATION)) {
+      modifiedFiles.add(runConfiguration);
+    }
+
+    return modifiedFiles.build();
+  }
+
+  /**
+   * Writes the {@code .iml} file of each module. Modules are independent of one another, so they
+   * are generated and compared against what is on disk in parallel.
+   */
+  private List<String> writeModules(List<Module> modules, boolean generateMinimalProject)
+      throws IOException, InterruptedException {
+    final ListMultimap<String, String> additionalExcludes = generateMinimalProject ?
+        createAdditionalExcludes(modules) :
+        ImmutableListMultimap.<String, String>of();
+
+    ListeningExecutorService executorService = listeningDecorator(
+        newMultiThreadExecutorForTasks("intellij-project", modules.size()));
+
+    try {
+      List<ListenableFuture<Optional<String>>> futures = Lists.newArrayList();
+      for (final Module module : modules) {
+        futures.add(
+            executorService.submit(
+                new Callable<Optional<String>>() {
+                  @Override
+                  public Optional<String> call() throws IOException {
+                    String path = Preconditions.checkNotNull(module.pathToImlFile);
+                    String xml = generateModuleXml(module, additionalExcludes.get(path));
+                    return writeIfChanged(path, xml) ?
+                        Optional.of(path) :
+                        Optional.<String>absent();
+                  }
+                }));
+      }
+
+      List<String> modifiedFiles = Lists.newArrayList();
+      for (Optional<String> modifiedFile : Futures.allAsList(futures).get()) {
+        modifiedFiles.addAll(modifiedFile.asSet());
+      }
+      return modifiedFiles;
+    } catch (ExecutionException e) {
+      Throwables.propagateIfInstanceOf(e.getCause(), IOException.class);
+      throw Throwables.propagate(e.getCause());
+    } finally {
+      executorService.shutdownNow();
+    }
+  }
+
+  /**
+   * Writes {@code contents} to {@code path} unless the file already has the same contents, give or
+   * take leading and trailing whitespace.
+   *
+   * @return whether the file was written.
+   */
+  private boolean writeIfChanged(String path, String contents) throws IOException {
+    Optional<String> existingContents = projectFilesystem.readFileIfItExists(Paths.get(path));
+    if (existingContents.isPresent() && existingContents.get().trim().equals(contents.trim())) {
+      return false;
+    }
+    projectFilesystem.writeContentsToPath(contents, Paths.get(path));
+    return true;
+  }
+
+  @VisibleForTesting
+  static String generateModuleXml(Module module, List<String> additionalExcludes) {
+    StringBuilder xml = new StringBuilder();
+    xml.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+    xml.append(
+        String.format(
+            "<module type=\"%s\" version=\"4\">",
+            module.isIntelliJPlugin() ? "PLUGIN_MODULE" : "JAVA_MODULE"));
+
+    if (module.isAndroidModule()) {
+      appendAndroidFacet(xml, module);
+    }
+
+    xml.append("\n  <component name=\"NewModuleRootManager\" inherit-compiler-output=\"true\">");
+
+    // Empirically, if there are multiple source folders, then the <content> element for the
+    // buck-out/android/gen folder should be listed before the other source folders.
+    if (module.sourceFolders.size() > 1) {
+      appendAndroidGenSourceFolder(xml, module);
+    }
+
+    xml.append("\n    <content url=\"file://$MODULE_DIR$\">");
+    for (SourceFolder sourceFolder : module.sourceFolders) {
+      xml.append(
+          String.format(
+              "\n      <sourceFolder url=\"%s\" isTestSource=\"%s\" %s/>",
+              sourceFolder.getUrl(),
+              sourceFolder.isTestSource(),
+              sourceFolder.getPackagePrefix() == null ?
+                  "" :
+                  "packagePrefix=\"" + sourceFolder.getPackagePrefix() + "\" "));
+    }
+    for (SourceFolder excludeFolder : module.excludeFolders) {
+      xml.append(String.format("\n      <excludeFolder url=\"%s\" />", excludeFolder.getUrl()));
+    }
+    Path moduleDir = Paths.get(module.getModuleDirectoryPathWithSlash());
+    for (String excludeFolder : ImmutableSortedSet.copyOf(additionalExcludes)) {
+      xml.append(
+          String.format(
+              "\n      <excludeFolder url=\"file://$MODULE_DIR$/%s\" />",
+              moduleDir.relativize(Paths.get(excludeFolder))));
+    }
+    xml.append("\n    </content>");
+
+    if (module.annotationGenPath != null) {
+      xml.append(String.format("\n    <content url=\"file://$MODULE_DIR$%s\">",
+          module.annotationGenPath));
+      xml.append(
+          String.format(
+              "\n      <sourceFolder url=\"file://$MODULE_DIR$%s\" isTestSource=\"%s\" />",
+              module.annotationGenPath,
+              Boolean.TRUE.equals(module.annotationGenIsForTest)));
+      xml.append("\n    </content>");
+    }
+
+    // Empirically, if there is one source folder, then the <content> element for the
+    // buck-out/android/gen folder should be listed after the other source folders.
+    if (module.sourceFolders.size() <= 1) {
+      appendAndroidGenSourceFolder(xml, module);
+    }
+
+    for (DependentModule dep : filterDependencies(module)) {
+      String scope = dep.getScope() == null ? "" : "scope=\"" + dep.getScope() + "\" ";
+      if (dep.isLibrary()) {
+        if (module.isIntelliJPlugin() && INTELLIJ_SDK_LIBRARIES.contains(dep.getLibraryName())) {
+          continue;
+        }
+        xml.append(
+            String.format(
+                "\n    <orderEntry type=\"library\" exported=\"\" %sname=\"%s\" " +
+                    "level=\"project\" />",
+                scope,
+                dep.getLibraryName()));
+      } else if (dep.isModule()) {
+        xml.append(
+            String.format(
+                "\n    <orderEntry type=\"module\" module-name=\"%s\" %s%s/>",
+                dep.getModuleName(),
+                EXPORTED_MODULE_NAME.equals(dep.getModuleName()) ? "exported=\"\" " : "",
+                scope));
+      } else if (dep.isInheritedJdk()) {
+        xml.append("\n    <orderEntry type=\"inheritedJdk\" />");
+      } else if (dep.isJdk()) {
+        xml.append(
+            String.format(
+                "\n    <orderEntry type=\"jdk\" jdkName=\"%s\" jdkType=\"%s\" />",
+                dep.getJdkName(),
+                dep.getJdkType()));
+      } else if (dep.isSourceFolder()) {
+        xml.append("\n    <orderEntry type=\"sourceFolder\" forTests=\"false\" />");
+      }
+    }
+
+    xml.append("\n  </component>");
+    xml.append("\n</module>\n");
+    return xml.toString();
+  }
+
+  private static void appendAndroidFacet(StringBuilder xml, Module module) {
+    String keystore = module.keystorePath == null ?
+        "" :
+        "file://$MODULE_DIR$/" + module.keystorePath;
+    String androidManifest = module.androidManifest == null ?
+        "/AndroidManifest.xml" :
+        module.androidManifest;
+    String nativeLibs = module.nativeLibs == null ? "libs" : module.nativeLibs;
+    String moduleGenPath = Preconditions.checkNotNull(module.moduleGenPath);
+
+    xml.append("\n  <component name=\"FacetManager\">");
+    xml.append("\n    <facet type=\"android\" name=\"Android\">");
+    xml.append("\n      <configuration>");
+    appendOption(xml, "GEN_FOLDER_RELATIVE_PATH_APT", moduleGenPath);
+    appendOption(xml, "GEN_FOLDER_RELATIVE_PATH_AIDL", moduleGenPath);
+    appendOption(xml, "MANIFEST_FILE_RELATIVE_PATH", androidManifest);
+    appendOption(xml, "RES_FOLDER_RELATIVE_PATH", "/res");
+    appendOption(xml, "ASSETS_FOLDER_RELATIVE_PATH", "/assets");
+    appendOption(xml, "LIBS_FOLDER_RELATIVE_PATH", "/" + nativeLibs);
+    appendOption(xml, "USE_CUSTOM_APK_RESOURCE_FOLDER", "false");
+    appendOption(xml, "CUSTOM_APK_RESOURCE_FOLDER", "");
+    appendOption(xml, "USE_CUSTOM_COMPILER_MANIFEST", "false");
+    appendOption(xml, "CUSTOM_COMPILER_MANIFEST", "");
+    appendOption(xml, "APK_PATH", "");
+    appendOption(xml, "LIBRARY_PROJECT", String.valueOf(module.isAndroidLibrary()));
+    appendOption(xml, "RUN_PROCESS_RESOURCES_MAVEN_TASK", "true");
+    appendOption(xml, "GENERATE_UNSIGNED_APK", "false");
+    appendOption(xml, "CUSTOM_DEBUG_KEYSTORE_PATH", keystore);
+    appendOption(xml, "PACK_TEST_CODE", "false");
+    appendOption(xml, "RUN_PROGUARD", "false");
+    appendOption(xml, "PROGUARD_CFG_PATH", "/proguard.cfg");
+    xml.append("\n        <resOverlayFolders />");
+    xml.append("\n        <includeSystemProguardFile>false</includeSystemProguardFile>");
+    xml.append("\n        <includeAssetsFromLibraries>true</includeAssetsFromLibraries>");
+    xml.append("\n        <additionalNativeLibs />");
+    xml.append("\n      </configuration>");
+    xml.append("\n    </facet>");
+    xml.append("\n  </component>");
+  }
+
+  private static void appendOption(StringBuilder xml, String name, String value) {
+    xml.append(String.format("\n        <option name=\"%s\" value=\"%s\" />", name, value));
+  }
+
+  /**
+   * If we write R.java and friends to a gen/ directory under buck-out/android/, then IntelliJ
+   * wants that to be included as a separate source root.
+   */
+  private static void appendAndroidGenSourceFolder(StringBuilder xml, Module module) {
+    if (module.moduleGenPath == null) {
+      return;
+    }
+    xml.append(String.format("\n    <content url=\"file://$MODULE_DIR$%s\">",
+        module.moduleGenPath));
+    xml.append(
+        String.format(
+            "\n      <sourceFolder url=\"file://$MODULE_DIR$%s\" isTestSource=\"false\" />",
+            module.moduleGenPath));
+    xml.append("\n    </content>");
+  }
+
+  /**
+   * A module may list itself as a dependency with {@code scope="TEST"}, and may list another module
+   * with both the {@code COMPILE} and {@code TEST} scopes. Drop the former, and keep only the
+   * {@code COMPILE} entry of the latter.
+   */
+  private static List<DependentModule> filterDependencies(Module module) {
+    List<DependentModule> dependencies = Preconditions.checkNotNull(module.dependencies);
+
+    Set<String> compileDependencies = Sets.newHashSet();
+    for (DependentModule dep : dependencies) {
+      if (dep.isModule() && !"TEST".equals(dep.getScope())) {
+        compileDependencies.add(dep.getModuleName());
+      }
+    }
+
+    ImmutableList.Builder<DependentModule> filtered = ImmutableList.builder();
+    for (DependentModule dep : dependencies) {
+      if (!dep.isModule()) {
+        filtered.add(dep);
+      } else if (dep.getModuleName().equals(module.name)) {
+        continue;
+      } else if ("TEST".equals(dep.getScope()) &&
+          compileDependencies.contains(dep.getModuleName())) {
+        continue;
+      } else {
+        filtered.add(dep);
+      }
+    }
+    return filtered.build();
+  }
+
+  @VisibleForTesting
+  static String generateModulesXml(List<Module> modules) {
+    List<Module> sortedModules = Lists.newArrayList(modules);
+    // Sort modules by path so that the ordering within modules.xml is stable.
+    Collections.sort(sortedModules, new Comparator<Module>() {
+      @Override
+      public int compare(Module a, Module b) {
+        return Preconditions.checkNotNull(a.pathToImlFile).compareTo(
+            Preconditions.checkNotNull(b.pathToImlFile));
+      }
+    });
+
+    StringBuilder xml = new StringBuilder();
+    xml.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+    xml.append("<project version=\"4\">\n");
+    xml.append("  <component name=\"ProjectModuleManager\">\n");
+    xml.append("    <modules>");
+    for (Module module : sortedModules) {
+      xml.append(
+          String.format(
+              "\n      <module fileurl=\"file://$PROJECT_DIR$/%s\" " +
+                  "filepath=\"$PROJECT_DIR$/%s\" %s/>",
+              module.pathToImlFile,
+              module.pathToImlFile,
+              module.isRootModule ? "" : "group=\"modules\""));
+    }
+    xml.append("\n    </modules>\n");
+    xml.append("  </component>\n");
+    xml.append("</project>\n");
+    return xml.toString();
+  }
+
+  @VisibleForTesting
+  static String generateLibraryXml(LibraryJar library) {
+    StringBuilder xml = new StringBuilder();
+    xml.append("<component name=\"libraryTable\">\n");
+    xml.append(String.format("  <library name=\"%s\">\n", library.getName()));
+    xml.append("    <CLASSES>\n");
+    xml.append(
+        String.format("      <root url=\"jar://$PROJECT_DIR$/%s!/\" />\n", library.getBinaryJar()));
+    xml.append("    </CLASSES>");
+    if (library.getJavadocUrl().isPresent()) {
+      xml.append("\n    <JAVADOC>");
+      xml.append(String.format("\n      <root url=\"%s\" />", library.getJavadocUrl().get()));
+      xml.append("\n    </JAVADOC>");
+    } else {
+      xml.append("\n    <JAVADOC />");
+    }
+    if (library.getSourceJar().isPresent()) {
+      xml.append("\n    <SOURCES>");
+      xml.append(
+          String.format(
+              "\n      <root url=\"jar://$PROJECT_DIR$/%s!/\" />",
+              library.getSourceJar().get()));
+      xml.append("\n    </SOURCES>");
+    } else {
+      xml.append("\n    <SOURCES />");
+    }
+    xml.append("\n  </library>\n");
+    xml.append("</component>\n");
+    return xml.toString();
+  }
+
+  /**
+   * For a minimal project, finds the directories that contain no module but sit beneath one that
+   * is not a source folder itself, and excludes them from the highest such module so that
+   * IntelliJ does not index them.
+   *
+   * @return a map from the path of an {@code .iml} file to the directories it should exclude.
+   */
+  private ListMultimap<String, String> createAdditionalExcludes(List<Module> modules)
+      throws IOException {
+    final ModuleTreeNode moduleTree = new ModuleTreeNode();
+    for (Module module : modules) {
+      ModuleTreeNode node = moduleTree;
+      Path moduleDir = Paths.get(Preconditions.checkNotNull(module.pathToImlFile))
+          .normalize()
+          .getParent();
+      if (moduleDir != null) {
+        for (Path part : moduleDir) {
+          node = node.getOrCreateChild(part.toString());
+        }
+      }
+      node.module = module;
+    }
+
+    final ListMultimap<String, String> additionalExcludes = ArrayListMultimap.create();
+    final Path root = projectFilesystem.getRootPath();
+    Files.walkFileTree(
+        root,
+        EnumSet.of(FileVisitOption.FOLLOW_LINKS),
+        Integer.MAX_VALUE,
+        new SimpleFileVisitor<Path>() {
+          @Override
+          public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+            if (dir.equals(root)) {
+              return FileVisitResult.CONTINUE;
+            }
+            Path relativeDir = root.relativize(dir);
+            ModuleTreeNode node = moduleTree;
+            String highestImlFile = null;
+            for (Path part : relativeDir) {
+              if (node.module != null) {
+                // If the module has source folders other than gen/, it may well need everything
+                // beneath it, so do not look for a higher .iml file.
+                if (hasSourceFolderOtherThanGen(node.module)) {
+                  break;
+                }
+                highestImlFile = node.module.pathToImlFile;
+              }
+              ModuleTreeNode child = node.children.get(part.toString());
+              if (child == null) {
+                if (!part.toString().equals("res") && highestImlFile != null) {
+                  additionalExcludes.put(highestImlFile, relativeDir.toString());
+                }
+                return FileVisitResult.SKIP_SUBTREE;
+              }
+              node = child;
+            }
+            return FileVisitResult.CONTINUE;
+          }
+
+          @Override
+          public FileVisitResult visitFileFailed(Path file, IOException e) {
+            // Symlink cycles and unreadable directories simply are not excluded.
+            return FileVisitResult.CONTINUE;
+          }
+        });
+    return additionalExcludes;
+  }
+
+  private static boolean hasSourceFolderOtherThanGen(Module module) {
+    for (SourceFolder sourceFolder : module.sourceFolders) {
+      if (!sourceFolder.getUrl().equals(GEN_SOURCE_FOLDER_URL)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static class ModuleTreeNode {
+    private final Map<String, ModuleTreeNode> children = Maps.newHashMap();
+    @Nullable
+    private Module module;
+
+    private ModuleTreeNode getOrCreateChild(String name) {
+      ModuleTreeNode child = children.get(name);
+      if (child == null) {
+        child = new ModuleTreeNode();
+        children.put(name, child);
+      }
+      return child;
+    }
+  }
+}
@@ -19,9 +19,6 @@ package com.facebook.buck.command;
 import com.facebook.buck.command.Project.SourceFolder;
 import com.facebook.buck.model.BuildTarget;
 import com.facebook.buck.rules.BuildRule;
-import com.fasterxml.jackson.annotation.JsonInclude;
-import com.fasterxml.jackson.annotation.JsonInclude.Include;
-import com.fasterxml.jackson.annotation.JsonProperty;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.Lists;
@@ -33,7 +30,6 @@ import java.util.SortedSet;
 
 import javax.annotation.Nullable;
 
-@JsonInclude(Include.NON_NULL)
 @VisibleForTesting
 final class Module {
 
@@ -63,45 +59,45 @@ final class Module {
    * Let intellij generate the gen directory to specific path.
    */
   @Nullable
-  @JsonProperty String moduleGenPath;
+  String moduleGenPath;
 
   @Nullable
-  @JsonProperty String name;
+  String name;
   @Nullable
-  @JsonProperty String pathToImlFile;
-  @JsonProperty List<SourceFolder> sourceFolders = Lists.newArrayList();
-  @JsonProperty Boolean isRootModule = false;
+  String pathToImlFile;
+  List<SourceFolder> sourceFolders = Lists.newArrayList();
+  Boolean isRootModule = false;
 
   /**
    * &lt;excludeFolder> elements must be sorted alphabetically in an .iml file.
    */
-  @JsonProperty SortedSet<SourceFolder> excludeFolders = Sets.newTreeSet(ALPHABETIZER);
+  SortedSet<SourceFolder> excludeFolders = Sets.newTreeSet(ALPHABETIZER);
   @Nullable
-  @JsonProperty List<DependentModule> dependencies;
+  List<DependentModule> dependencies;
 
   // ANDROID_BINARY / ANDROID_LIBRARY
   @Nullable
-  @JsonProperty Boolean hasAndroidFacet;
+  Boolean hasAndroidFacet;
   @Nullable
-  @JsonProperty Boolean isAndroidLibraryProject;
+  Boolean isAndroidLibraryProject;
   @Nullable
-  @JsonProperty String proguardConfigPath;
+  String proguardConfigPath;
   @Nullable
-  @JsonProperty String resFolder;
+  String resFolder;
   @Nullable
-  @JsonProperty String keystorePath;
+  String keystorePath;
   @Nullable
-  @JsonProperty String androidManifest;
+  String androidManifest;
   @Nullable
-  @JsonProperty String nativeLibs;
+  String nativeLibs;
   @Nullable
-  @JsonProperty Boolean isIntelliJPlugin;
+  Boolean isIntelliJPlugin;
 
   // Annotation processing
   @Nullable
-  @JsonProperty String annotationGenPath;
+  String annotationGenPath;
   @Nullable
-  @JsonProperty Boolean annotationGenIsForTest;
+  Boolean annotationGenIsForTest;
 
   Module(BuildRule srcRule, BuildTarget target) {
     this.srcRule = srcRule;
@@ -40,22 +40,12 @@ import com.facebook.buck.rules.ExportDependencies;
 import com.facebook.buck.rules.ProjectConfig;
 import com.facebook.buck.rules.SourcePathResolver;
 import com.facebook.buck.rules.SourceRoot;
-import com.facebook.buck.shell.ShellStep;
-import com.facebook.buck.step.ExecutionContext;
 import com.facebook.buck.util.AndroidPlatformTarget;
-import com.facebook.buck.util.Ansi;
 import com.facebook.buck.util.BuckConstant;
-import com.facebook.buck.util.Console;
 import com.facebook.buck.util.HumanReadableException;
 import com.facebook.buck.util.KeystoreProperties;
 import com.facebook.buck.util.ProcessExecutor;
 import com.facebook.buck.util.ProjectFilesystem;
-import com.facebook.buck.util.Verbosity;
-import com.fasterxml.jackson.annotation.JsonInclude;
-import com.fasterxml.jackson.annotation.JsonInclude.Include;
-import com.fasterxml.jackson.annotation.JsonProperty;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.ObjectWriter;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Charsets;
 import com.google.common.base.Function;
@@ -63,7 +53,6 @@ import com.google.common.base.Joiner;
 import com.google.common.base.Objects;
 import com.google.common.base.Optional;
 import com.google.common.base.Preconditions;
-import com.google.common.base.Splitter;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
@@ -74,10 +63,8 @@ import com.google.common.collect.Sets;
 import com.google.common.io.Files;
 
 import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
 import java.io.PrintStream;
-import java.io.Writer;
 import java.nio.charset.Charset;
 import java.nio.file.Path;
 import java.nio.file.Paths;
@@ -114,14 +101,6 @@ public class Project {
   private static final String ANDROID_GEN_BUILD_TARGET_PREFIX =
       String.format("//%s/", ANDROID_GEN_DIR);
 
-  /**
-   * Path to the intellij.py script that is used to transform the JSON written by this file.
-   */
-  private static final String PATH_TO_INTELLIJ_PY = System.getProperty(
-      "buck.path_to_intellij_py",
-      // Fall back on this value when running Buck from an IDE.
-      new File("src/com/facebook/buck/command/intellij.py").getAbsolutePath());
-
   /**
    * For now, do not write any project.properties files. We have failed to provide them in the
    * same format as IntelliJ itself would generate them. That means that IntelliJ overwrites our
@@ -137,13 +116,10 @@ public class Project {
   private final BuildFileTree buildFileTree;
   private final ImmutableMap<Path, String> basePathToAliasMap;
   private final JavaPackageFinder javaPackageFinder;
-  private final ExecutionContext executionContext;
   private final ProjectFilesystem projectFilesystem;
   private final Optional<String> pathToDefaultAndroidManifest;
   private final Optional<String> pathToPostProcessScript;
   private final Set<BuildRule> libraryJars;
-  private final String pythonInterpreter;
-  private final ObjectMapper objectMapper;
 
   public Project(
       SourcePathResolver resolver,
@@ -151,12 +127,9 @@ public class Project {
       ActionGraph actionGraph,
       Map<Path, String> basePathToAliasMap,
       JavaPackageFinder javaPackageFinder,
-      ExecutionContext executionContext,
       ProjectFilesystem projectFilesystem,
       Optional<String> pathToDefaultAndroidManifest,
-      Optional<String> pathToPostProcessScript,
-      String pythonInterpreter,
-      ObjectMapper objectMapper) {
+      Optional<String> pathToPostProcessScript) {
     this.resolver = Preconditions.checkNotNull(resolver);
     this.rules = Preconditions.checkNotNull(rules);
     this.actionGraph = Preconditions.checkNotNull(actionGraph);
@@ -172,37 +145,23 @@ public class Project {
         ));
     this.basePathToAliasMap = ImmutableMap.copyOf(basePathToAliasMap);
     this.javaPackageFinder = Preconditions.checkNotNull(javaPackageFinder);
-    this.executionContext = Preconditions.checkNotNull(executionContext);
     this.projectFilesystem = Preconditions.checkNotNull(projectFilesystem);
     this.pathToDefaultAndroidManifest = Preconditions.checkNotNull(pathToDefaultAndroidManifest);
     this.pathToPostProcessScript = Preconditions.checkNotNull(pathToPostProcessScript);
     this.libraryJars = Sets.newHashSet();
-    this.pythonInterpreter = Preconditions.checkNotNull(pythonInterpreter);
-    this.objectMapper = Preconditions.checkNotNull(objectMapper);
   }
 
   public int createIntellijProject(
-      File jsonTempFile,
       ProcessExecutor processExecutor,
       boolean generateMinimalProject,
       PrintStream stdOut,
       PrintStream stdErr) throws IOException, InterruptedException {
     List<Module> modules = createModulesForProjectConfigs();
-    writeJsonConfig(jsonTempFile, modules);
 
-    List<String> modifiedFiles = Lists.newArrayList();
-
-    // Process the JSON config to generate the .xml and .iml files for IntelliJ.
-    ExitCodeAndOutput result = processJsonConfig(jsonTempFile, generateMinimalProject);
-    if (result.exitCode != 0) {
-      return result.exitCode;
-    } else {
-      // intellij.py writes the list of modified files to stdout, so parse stdout and add the
-      // resulting file paths to the modifiedFiles list.
-      Iterable<String> paths = Splitter.on('\n').trimResults().omitEmptyStrings().split(
-          result.stdOut);
-      Iterables.addAll(modifiedFiles, paths);
-    }
+    // Generate the .xml and .iml files for IntelliJ.
+    IntellijConfigWriter configWriter = new IntellijConfigWriter(projectFilesystem);
+    List<String> modifiedFiles = Lists.newArrayList(
+        configWriter.write(modules, createLibraryJars(), generateMinimalProject));
 
     // Write out the project.properties files.
     List<String> modifiedPropertiesFiles = generateProjectDotPropertiesFiles(modules);
@@ -232,8 +191,7 @@ public class Project {
       SortedSet<String> modifiedFilesInSortedForder = Sets.newTreeSet(modifiedFiles);
       stdOut.printf("MODIFIED FILES:\n%s\n", Joiner.on('\n').join(modifiedFilesInSortedForder));
     }
-    // Blit stderr from intellij.py to parent stderr.
-    stdErr.print(result.stdErr);
+    stdErr.println("  ::  Please close and re-open IntelliJ.");
 
     return 0;
   }
@@ -960,9 +918,8 @@ public class Project {
     return pathRelativeToProjectRoot.toString().substring(directoryPath.toString().length());
   }
 
-  private void writeJsonConfig(File jsonTempFile, List<Module> modules) throws IOException {
-    List<SerializablePrebuiltJarRule> libraries = Lists.newArrayListWithCapacity(
-        libraryJars.size());
+  private List<LibraryJar> createLibraryJars() {
+    List<LibraryJar> libraries = Lists.newArrayListWithCapacity(libraryJars.size());
     for (BuildRule libraryJar : libraryJars) {
       Preconditions.checkState(libraryJar instanceof PrebuiltJar);
       String name = getIntellijNameForRule(libraryJar, null /* basePathToAliasMap */);
@@ -975,86 +932,17 @@ public class Project {
         sourceJar = prebuiltJar.getSourceJar().get().toString();
       }
       String javadocUrl = prebuiltJar.getJavadocUrl().orNull();
-      libraries.add(new SerializablePrebuiltJarRule(name, binaryJar, sourceJar, javadocUrl));
-    }
-
-    Map<String, Object> config = ImmutableMap.<String, Object>of(
-        "modules", modules,
-        "libraries", libraries);
-
-    // Write out the JSON config to be consumed by the Python.
-    try (Writer writer = new FileWriter(jsonTempFile)) {
-      if (executionContext.getVerbosity().shouldPrintOutput()) {
-        ObjectWriter objectWriter = objectMapper.writerWithDefaultPrettyPrinter();
-        objectWriter.writeValue(writer, config);
-      } else {
-        objectMapper.writeValue(writer, config);
-      }
-    }
-  }
-
-  private ExitCodeAndOutput processJsonConfig(File jsonTempFile, boolean generateMinimalProject)
-      throws IOException, InterruptedException {
-    ImmutableList.Builder<String> argsBuilder = ImmutableList.<String>builder()
-        .add(pythonInterpreter)
-        .add(PATH_TO_INTELLIJ_PY)
-        .add(jsonTempFile.getAbsolutePath());
-
-    if (generateMinimalProject) {
-      argsBuilder.add("--generate_minimum_project");
-    }
-
-    final ImmutableList<String> args = argsBuilder.build();
-
-    ShellStep command = new ShellStep() {
-
-      @Override
-      public String getShortName() {
-        return "python";
-      }
-
-      @Override
-      protected ImmutableList<String> getShellCommandInternal(
-          ExecutionContext context) {
-        return args;
-      }
-    };
-
-    Console console = executionContext.getConsole();
-    Console childConsole = new Console(
-        Verbosity.SILENT,
-        console.getStdOut(),
-        console.getStdErr(),
-        Ansi.withoutTty());
-    ExecutionContext childContext = ExecutionContext.builder()
-        .setExecutionContext(executionContext)
-        .setConsole(childConsole)
-        .build();
-    int exitCode = command.execute(childContext);
-    return new ExitCodeAndOutput(exitCode, command.getStdout(), command.getStderr());
-  }
-
-  private static class ExitCodeAndOutput {
-    private final int exitCode;
-    private final String stdOut;
-    private final String stdErr;
-    ExitCodeAndOutput(int exitCode, String stdOut, String stdErr) {
-      this.exitCode = exitCode;
-      this.stdOut = Preconditions.checkNotNull(stdOut);
-      this.stdErr = Preconditions.checkNotNull(stdErr);
+      libraries.add(new LibraryJar(name, binaryJar, sourceJar, javadocUrl));
     }
+    return libraries;
   }
 
-  @JsonInclude(Include.NON_NULL)
   @VisibleForTesting
   static class SourceFolder {
-    @JsonProperty
     private final String url;
 
-    @JsonProperty
     private final boolean isTestSource;
 
-    @JsonProperty
     @Nullable
     private final String packagePrefix;
 
@@ -1076,6 +964,15 @@ public class Project {
       return url;
     }
 
+    boolean isTestSource() {
+      return isTestSource;
+    }
+
+    @Nullable
+    String getPackagePrefix() {
+      return packagePrefix;
+    }
+
     @Override
     public boolean equals(Object obj) {
       if (!(obj instanceof SourceFolder)) {
@@ -1102,17 +999,18 @@ public class Project {
     }
   }
 
-  @JsonInclude(Include.NON_NULL)
-  @VisibleForTesting
-  static class SerializablePrebuiltJarRule {
-    @JsonProperty private final String name;
-    @JsonProperty private final String binaryJar;
+  /**
+   * A prebuilt jar that modules depend on, which IntelliJ knows as a project library.
+   */
+  static class LibraryJar {
+    private final String name;
+    private final String binaryJar;
     @Nullable
-    @JsonProperty private final String sourceJar;
+    private final String sourceJar;
     @Nullable
-    @JsonProperty private final String javadocUrl;
+    private final String javadocUrl;
 
-    private SerializablePrebuiltJarRule(
+    LibraryJar(
         String name,
         String binaryJar,
         @Nullable String sourceJar,
@@ -1123,9 +1021,25 @@ public class Project {
       this.javadocUrl = javadocUrl;
     }
 
+    String getName() {
+      return name;
+    }
+
+    String getBinaryJar() {
+      return binaryJar;
+    }
+
+    Optional<String> getSourceJar() {
+      return Optional.fromNullable(sourceJar);
+    }
+
+    Optional<String> getJavadocUrl() {
+      return Optional.fromNullable(javadocUrl);
+    }
+
     @Override
     public String toString() {
-      return Objects.toStringHelper(SerializablePrebuiltJarRule.class)
+      return Objects.toStringHelper(LibraryJar.class)
           .add("name", name)
           .add("binaryJar", binaryJar)
           .add("sourceJar", sourceJar)
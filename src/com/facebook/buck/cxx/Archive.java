@@ -20,6 +20,7 @@ import com.facebook.buck.rules.AbstractBuildRule;
 import com.facebook.buck.rules.BuildContext;
 import com.facebook.buck.rules.BuildRuleParams;
 import com.facebook.buck.rules.BuildableContext;
+import com.facebook.buck.rules.CacheMode;
 import com.facebook.buck.rules.RuleKey;
 import com.facebook.buck.rules.SourcePath;
 import com.facebook.buck.rules.SourcePathResolver;
@@ -35,21 +36,27 @@ import java.nio.file.Path;
 /**
  * A {@link com.facebook.buck.rules.BuildRule} which builds an "ar" archive from input files
  * represented as {@link com.facebook.buck.rules.SourcePath}.
+ * <p>
+ * The archive is written directly by Buck, so it is deterministic and doesn't depend on which
+ * {@code ar} happens to be installed.
  */
 public class Archive extends AbstractBuildRule {
 
-  private final SourcePath archiver;
+  private final ArchiveFormat format;
+  private final boolean thin;
   private final Path output;
   private final ImmutableList<SourcePath> inputs;
 
   public Archive(
       BuildRuleParams params,
       SourcePathResolver resolver,
-      SourcePath archiver,
+      ArchiveFormat format,
+      boolean thin,
       Path output,
       ImmutableList<SourcePath> inputs) {
     super(params, resolver);
-    this.archiver = Preconditions.checkNotNull(archiver);
+    this.format = Preconditions.checkNotNull(format);
+    this.thin = thin;
     this.output = Preconditions.checkNotNull(output);
     this.inputs = Preconditions.checkNotNull(inputs);
   }
@@ -62,7 +69,8 @@ public class Archive extends AbstractBuildRule {
   @Override
   protected RuleKey.Builder appendDetailsToRuleKey(RuleKey.Builder builder) {
     return builder
-        .setInput("archiver", archiver)
+        .set("format", format.toString())
+        .set("thin", thin)
         .set("output", output.toString());
   }
 
@@ -77,8 +85,14 @@ public class Archive extends AbstractBuildRule {
     return ImmutableList.of(
         new MkdirStep(output.getParent()),
         new RmStep(output, /* shouldForceDeletion */ true),
-        new ArchiveStep(getResolver().getPath(archiver), output, getResolver().getAllPaths(inputs)),
-        new ArchiveScrubberStep(output));
+        new WriteArchiveStep(format, thin, output, getResolver().getAllPaths(inputs)));
+  }
+
+  // A thin archive only refers to the object files it was built from, so there's nothing worth
+  // caching.
+  @Override
+  public CacheMode getCacheMode() {
+    return thin ? CacheMode.DISABLED : CacheMode.ENABLED;
   }
 
   @Override
@@ -0,0 +1,31 @@
+/*
+ * Copyright 2014-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.cxx;
+
+/**
+ * The layout of the "ar" archives written for static libraries.
+ */
+public enum ArchiveFormat {
+  /** The System V/GNU layout, with a "/" symbol index and a "//" table for long member names. */
+  GNU,
+
+  /**
+   * The 4.4BSD layout used by Darwin, with member names stored inline after the header and a
+   * "__.SYMDEF SORTED" symbol index.
+   */
+  BSD,
+}
@@ -0,0 +1,340 @@
+/*
+ * Copyright 2014-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.cxx;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSortedMap;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Writes an "ar" archive of object files in a single pass, with all the metadata which would make
+ * the output non-deterministic (timestamps, owner, group and permissions) set to fixed values, and
+ * with a symbol index equivalent to the one written by {@code ar s}/{@code ranlib}.
+ * <p>
+ * Thin archives only contain the header of each member, with the member name being the path to
+ * the object file relative to the archive. They are much cheaper to write, but are only usable
+ * as long as the object files stay where they are.
+ */
+class ArchiveWriter {
+
+  private static final byte[] GLOBAL_HEADER = "!<arch>\n".getBytes(Charsets.US_ASCII);
+  private static final byte[] THIN_GLOBAL_HEADER = "!<thin>\n".getBytes(Charsets.US_ASCII);
+  private static final int MEMBER_HEADER_SIZE = 60;
+  private static final String MEMBER_MODE = "644";
+
+  /** GNU member names longer than this go into the "//" table. */
+  private static final int MAX_GNU_SHORT_NAME_LENGTH = 15;
+  private static final String GNU_SYMBOL_TABLE_NAME = "/";
+  private static final String GNU_LONG_NAME_TABLE_NAME = "//";
+
+  private static final String BSD_LONG_NAME_PREFIX = "#1/";
+  private static final String BSD_SYMBOL_TABLE_NAME = "__.SYMDEF SORTED";
+
+  /** Darwin's linker wants the contents of each member to be 8-byte aligned. */
+  private static final int BSD_MEMBER_ALIGNMENT = 8;
+
+  private final ArchiveFormat format;
+  private final boolean thin;
+
+  ArchiveWriter(ArchiveFormat format, boolean thin) {
+    this.format = Preconditions.checkNotNull(format);
+    Preconditions.checkArgument(
+        !thin || format == ArchiveFormat.GNU,
+        "thin archives are only supported in the GNU format");
+    this.thin = thin;
+  }
+
+  /**
+   * Write an archive to {@code output} containing {@code inputs}, in order.  Both must be
+   * absolute paths.
+   */
+  void write(Path output, List<Path> inputs) throws IOException {
+    ImmutableList.Builder<Member> members = ImmutableList.builder();
+    for (Path input : inputs) {
+      String name = thin ?
+          output.getParent().relativize(input).toString() :
+          input.getFileName().toString();
+      members.add(
+          new Member(
+              input,
+              name,
+              Files.size(input),
+              ObjectFileSymbols.getDefinedGlobalSymbols(input)));
+    }
+
+    try (OutputStream stream = new BufferedOutputStream(Files.newOutputStream(output))) {
+      switch (format) {
+        case GNU:
+          writeGnu(stream, members.build());
+          break;
+        case BSD:
+          writeBsd(stream, members.build());
+          break;
+        default:
+          throw new IllegalStateException();
+      }
+    }
+  }
+
+  private void writeGnu(OutputStream stream, ImmutableList<Member> members) throws IOException {
+    // Work out the header name of each member, moving the long ones into the "//" table.  Thin
+    // archives always use the table, as their names are paths.
+    ByteArrayOutputStream longNames = new ByteArrayOutputStream();
+    ImmutableList.Builder<String> headerNames = ImmutableList.builder();
+    for (Member member : members) {
+      if (thin ||
+          member.name.getBytes(Charsets.UTF_8).length > MAX_GNU_SHORT_NAME_LENGTH ||
+          member.name.contains(" ") ||
+          member.name.contains("/")) {
+        headerNames.add("/" + longNames.size());
+        longNames.write((member.name + "/\n").getBytes(Charsets.UTF_8));
+      } else {
+        headerNames.add(member.name + "/");
+      }
+    }
+    if (longNames.size() % 2 != 0) {
+      longNames.write('\n');
+    }
+
+    // The symbol index holds the offset of each member's header, so lay out the archive first.
+    int symbolCount = 0;
+    int symbolNamesSize = 0;
+    for (Member member : members) {
+      symbolCount += member.symbols.size();
+      for (String symbol : member.symbols) {
+        symbolNamesSize += symbol.length() + 1;
+      }
+    }
+    int symbolTableSize = pad(4 + 4 * symbolCount + symbolNamesSize, 2);
+    long offset = GLOBAL_HEADER.length;
+    if (symbolCount > 0) {
+      offset += MEMBER_HEADER_SIZE + symbolTableSize;
+    }
+    if (longNames.size() > 0) {
+      offset += MEMBER_HEADER_SIZE + longNames.size();
+    }
+    long[] memberOffsets = new long[members.size()];
+    for (int i = 0; i < members.size(); i++) {
+      memberOffsets[i] = offset;
+      offset += MEMBER_HEADER_SIZE + (thin ? 0 : pad(members.get(i).size, 2));
+    }
+    checkOffset(offset);
+
+    stream.write(thin ? THIN_GLOBAL_HEADER : GLOBAL_HEADER);
+
+    if (symbolCount > 0) {
+      ByteBuffer symbolTable = ByteBuffer.allocate(symbolTableSize).order(ByteOrder.BIG_ENDIAN);
+      symbolTable.putInt(symbolCount);
+      for (int i = 0; i < members.size(); i++) {
+        for (int j = 0; j < members.get(i).symbols.size(); j++) {
+          symbolTable.putInt((int) memberOffsets[i]);
+        }
+      }
+      for (Member member : members) {
+        for (String symbol : member.symbols) {
+          symbolTable.put(symbol.getBytes(Charsets.ISO_8859_1)).put((byte) 0);
+        }
+      }
+      writeMemberHeader(stream, GNU_SYMBOL_TABLE_NAME, "0", symbolTableSize);
+      stream.write(symbolTable.array());
+    }
+
+    if (longNames.size() > 0) {
+      // Like GNU ar, leave all the fields other than the size of the name table blank.
+      writeHeader(
+          stream,
+          String.format("%-48s%-10s`\n", GNU_LONG_NAME_TABLE_NAME, longNames.size()));
+      longNames.writeTo(stream);
+    }
+
+    ImmutableList<String> names = headerNames.build();
+    for (int i = 0; i < members.size(); i++) {
+      Member member = members.get(i);
+      writeMemberHeader(stream, names.get(i), MEMBER_MODE, member.size);
+      if (!thin) {
+        writeMemberContents(stream, member);
+        if (member.size % 2 != 0) {
+          stream.write('\n');
+        }
+      }
+    }
+  }
+
+  private void writeBsd(OutputStream stream, ImmutableList<Member> members) throws IOException {
+    // Like ranlib, index each symbol once, under the first member defining it, sorted by name so
+    // that the linker can binary search the index.
+    Map<String, Integer> definingMember = new TreeMap<>();
+    for (int i = 0; i < members.size(); i++) {
+      for (String symbol : members.get(i).symbols) {
+        if (!definingMember.containsKey(symbol)) {
+          definingMember.put(symbol, i);
+        }
+      }
+    }
+    ImmutableSortedMap<String, Integer> symbols = ImmutableSortedMap.copyOf(definingMember);
+
+    int symbolNamesSize = 0;
+    for (String symbol : symbols.keySet()) {
+      symbolNamesSize += symbol.length() + 1;
+    }
+    symbolNamesSize = pad(symbolNamesSize, 4);
+    int symbolTableSize = 4 + 8 * symbols.size() + 4 + symbolNamesSize;
+
+    // Lay out the archive, padding the inline names so that the contents of each member start on
+    // an aligned offset.
+    long offset = GLOBAL_HEADER.length;
+    int symbolTableNameSize = 0;
+    if (!symbols.isEmpty()) {
+      symbolTableNameSize = getBsdNameSize(offset, BSD_SYMBOL_TABLE_NAME);
+      offset += MEMBER_HEADER_SIZE + symbolTableNameSize + symbolTableSize;
+    }
+    long[] memberOffsets = new long[members.size()];
+    int[] nameSizes = new int[members.size()];
+    for (int i = 0; i < members.size(); i++) {
+      memberOffsets[i] = offset;
+      nameSizes[i] = getBsdNameSize(offset, members.get(i).name);
+      offset += MEMBER_HEADER_SIZE + pad(nameSizes[i] + members.get(i).size, 2);
+    }
+    checkOffset(offset);
+
+    stream.write(GLOBAL_HEADER);
+
+    if (!symbols.isEmpty()) {
+      ByteBuffer symbolTable = ByteBuffer.allocate(symbolTableSize).order(ByteOrder.LITTLE_ENDIAN);
+      symbolTable.putInt(8 * symbols.size());
+      int nameOffset = 0;
+      for (Map.Entry<String, Integer> symbol : symbols.entrySet()) {
+        symbolTable.putInt(nameOffset);
+        symbolTable.putInt((int) memberOffsets[symbol.getValue()]);
+        nameOffset += symbol.getKey().length() + 1;
+      }
+      symbolTable.putInt(symbolNamesSize);
+      for (String symbol : symbols.keySet()) {
+        symbolTable.put(symbol.getBytes(Charsets.ISO_8859_1)).put((byte) 0);
+      }
+      writeBsdMemberHeaderAndName(
+          stream,
+          BSD_SYMBOL_TABLE_NAME,
+          symbolTableNameSize,
+          MEMBER_MODE,
+          symbolTableSize);
+      stream.write(symbolTable.array());
+    }
+
+    for (int i = 0; i < members.size(); i++) {
+      Member member = members.get(i);
+      writeBsdMemberHeaderAndName(stream, member.name, nameSizes[i], MEMBER_MODE, member.size);
+      writeMemberContents(stream, member);
+      if ((nameSizes[i] + member.size) % 2 != 0) {
+        stream.write('\n');
+      }
+    }
+  }
+
+  /**
+   * @return the number of bytes to use for a BSD member name stored inline after a header written
+   *     at {@code headerOffset}: at least one NUL terminator, padded to align the contents.
+   */
+  private static int getBsdNameSize(long headerOffset, String name) {
+    long contents = headerOffset + MEMBER_HEADER_SIZE + name.getBytes(Charsets.UTF_8).length + 1;
+    return (int) (pad(contents, BSD_MEMBER_ALIGNMENT) - headerOffset - MEMBER_HEADER_SIZE);
+  }
+
+  private static void writeBsdMemberHeaderAndName(
+      OutputStream stream,
+      String name,
+      int nameSize,
+      String mode,
+      long size) throws IOException {
+    writeMemberHeader(stream, BSD_LONG_NAME_PREFIX + nameSize, mode, nameSize + size);
+    byte[] nameBytes = name.getBytes(Charsets.UTF_8);
+    stream.write(nameBytes);
+    stream.write(new byte[nameSize - nameBytes.length]);
+  }
+
+  private static void writeMemberHeader(
+      OutputStream stream,
+      String name,
+      String mode,
+      long size) throws IOException {
+    String header = String.format(
+        "%-16s%-12s%-6s%-6s%-8s%-10s`\n",
+        name,
+        /* mtime */ "0",
+        /* uid */ "0",
+        /* gid */ "0",
+        mode,
+        size);
+    writeHeader(stream, header);
+  }
+
+  private static void writeHeader(OutputStream stream, String header) throws IOException {
+    byte[] bytes = header.getBytes(Charsets.UTF_8);
+    Preconditions.checkState(bytes.length == MEMBER_HEADER_SIZE, "bad header: %s", header);
+    stream.write(bytes);
+  }
+
+  private static void writeMemberContents(OutputStream stream, Member member) throws IOException {
+    long copied = Files.copy(member.path, stream);
+    if (copied != member.size) {
+      throw new IOException(String.format("%s changed while being archived", member.path));
+    }
+  }
+
+  private static void checkOffset(long offset) throws IOException {
+    // Symbol indexes store offsets as 32-bit integers.
+    if (offset > Integer.MAX_VALUE) {
+      throw new IOException("archive too large: " + offset + " bytes");
+    }
+  }
+
+  private static int pad(int value, int alignment) {
+    return (int) pad((long) value, alignment);
+  }
+
+  private static long pad(long value, int alignment) {
+    return (value + alignment - 1) / alignment * alignment;
+  }
+
+  private static class Member {
+    public final Path path;
+    public final String name;
+    public final long size;
+    public final ImmutableList<String> symbols;
+
+    public Member(Path path, String name, long size, ImmutableList<String> symbols) {
+      this.path = path;
+      this.name = name;
+      this.size = size;
+      this.symbols = symbols;
+    }
+  }
+
+}
@@ -60,7 +60,8 @@ public class Archives {
       SourcePathResolver resolver,
       BuildTarget target,
       BuildRuleParams originalParams,
-      SourcePath archiver,
+      ArchiveFormat format,
+      boolean thin,
       Path output,
       ImmutableList<SourcePath> inputs) {
 
@@ -77,7 +78,8 @@ public class Archives {
     return new Archive(
         archiveParams,
         resolver,
-        archiver,
+        format,
+        thin,
         output,
         inputs);
   }
@@ -22,6 +22,7 @@ import com.facebook.buck.model.Flavor;
 import com.facebook.buck.rules.BuildRule;
 import com.facebook.buck.rules.BuildRuleParams;
 import com.facebook.buck.rules.BuildRuleResolver;
+import com.facebook.buck.rules.BuildRuleSourcePath;
 import com.facebook.buck.rules.BuildRuleType;
 import com.facebook.buck.rules.BuildRules;
 import com.facebook.buck.rules.SourcePath;
@@ -43,6 +44,7 @@ public class CxxCompilableEnhancer {
   private CxxCompilableEnhancer() {}
 
   private static final BuildRuleType COMPILE_TYPE = new BuildRuleType("compile");
+  private static final BuildRuleType PREPROCESS_TYPE = new BuildRuleType("preprocess");
 
   /**
    * Prefixes each of the given assembler arguments with "-Xassembler" so that the compiler
@@ -119,109 +121,193 @@ public class CxxCompilableEnhancer {
   }
 
   /**
-   * @return a {@link CxxCompile} rule that preprocesses, compiles, and assembles the given
-   *    {@link CxxSource}.
+   * @return the path of the dep file written when preprocessing the given object file.
    */
-  public static CxxCompile createCompileBuildRule(
-      BuildRuleParams params,
-      BuildRuleResolver resolver,
-      CxxPlatform platform,
-      CxxPreprocessorInput preprocessorInput,
-      ImmutableList<String> compilerFlags,
-      boolean pic,
-      String name,
-      CxxSource source) {
-
-    BuildTarget target = createCompileBuildTarget(
-        params.getBuildTarget(),
-        name,
-        pic);
-
-    ImmutableSortedSet.Builder<BuildRule> dependencies = ImmutableSortedSet.naturalOrder();
+  public static Path getCompileDepFilePath(Path output) {
+    return output.resolveSibling(output.getFileName() + ".d");
+  }
 
-    // If a build rule generates our input source, add that as a dependency.
-    dependencies.addAll(SourcePaths.filterBuildRuleInputs(ImmutableList.of(source.getPath())));
+  /**
+   * @return a build target for a {@link CxxPreprocess} rule for the source with the given name.
+   */
+  public static BuildTarget createPreprocessBuildTarget(
+      BuildTarget target,
+      String name,
+      boolean pic) {
+    return BuildTargets.extendFlavoredBuildTarget(
+        target,
+        new Flavor(String.format(
+            "preprocess-%s%s",
+            pic ? "pic-" : "",
+            Files.getNameWithoutExtension(name).replace('/', '-').replace('.', '-'))));
+  }
 
-    // Add additional dependencies only for preprocessing.
-    if (source.getType() == CxxSource.Type.C ||
-        source.getType() == CxxSource.Type.CXX ||
-        source.getType() == CxxSource.Type.ASSEMBLER_WITH_CPP) {
-
-      // Depend on the rule that generates the sources and headers we're compiling.
-      dependencies.addAll(
-          SourcePaths.filterBuildRuleInputs(
-              ImmutableList.<SourcePath>builder()
-                  .add(source.getPath())
-                  .addAll(preprocessorInput.getIncludes().values())
-                  .build()));
-
-      // Also add in extra deps from the preprocessor input, such as the symlink tree
-      // rules.
-      dependencies.addAll(
-          BuildRules.toBuildRulesFor(
-              params.getBuildTarget(),
-              resolver,
-              preprocessorInput.getRules(),
-              false));
-    }
+  /**
+   * @return the output path for the preprocessed source of the given type, preprocessed from the
+   *     source with the given name.
+   */
+  public static Path getPreprocessOutputPath(
+      BuildTarget target,
+      CxxSource.Type preprocessedType,
+      String name) {
+    return BuildTargets.getBinPath(target, "%s").resolve(
+        Files.getNameWithoutExtension(name) + "." +
+            Iterables.getFirst(preprocessedType.getExtensions(), null));
+  }
 
-    // Pick the compiler to use.  Basically, if we're dealing with C++ sources, use the C++
-    // compiler, and the C compiler for everything.
-    SourcePath compiler;
-    if (source.getType() == CxxSource.Type.CXX ||
-        source.getType() == CxxSource.Type.CXX_CPP_OUTPUT) {
-      compiler = platform.getCxx();
-    } else {
-      compiler = platform.getCc();
+  /**
+   * @return the type of the output of preprocessing a source of the given type, or absent if
+   *     sources of the given type aren't preprocessed.
+   */
+  private static Optional<CxxSource.Type> getPreprocessedType(CxxSource.Type type) {
+    switch (type) {
+      case C:
+        return Optional.of(CxxSource.Type.C_CPP_OUTPUT);
+      case CXX:
+        return Optional.of(CxxSource.Type.CXX_CPP_OUTPUT);
+      case ASSEMBLER_WITH_CPP:
+        return Optional.of(CxxSource.Type.ASSEMBLER);
+      // $CASES-OMITTED$
+      default:
+        return Optional.absent();
     }
+  }
 
+  /**
+   * @return the flags used to preprocess a source of the given type.
+   */
+  private static ImmutableList<String> getPreprocessorFlags(
+      CxxPlatform platform,
+      CxxPreprocessorInput preprocessorInput,
+      CxxSource.Type type) {
     ImmutableList.Builder<String> args = ImmutableList.builder();
 
-    // We explicitly identify our source rather then let the compiler guess based on the
-    // extension.
-    args.add("-x", source.getType().getLanguage());
-
     // If we're dealing with a C++ source that can be preprocessed, add in the various C++
     // preprocessor flags.
-    if (source.getType() == CxxSource.Type.CXX) {
+    if (type == CxxSource.Type.CXX) {
       args.addAll(preprocessorInput.getCxxppflags());
       args.addAll(platform.getCxxppflags());
     }
 
     // If we're dealing with a C source that can be preprocessed, add in the various C
     // preprocessor flags.
-    if (source.getType() == CxxSource.Type.C) {
+    if (type == CxxSource.Type.C) {
       args.addAll(preprocessorInput.getCppflags());
       args.addAll(platform.getCppflags());
     }
 
     // If we're dealing with assembly source that can be preprocessed, add in the platform
     // specific preprocessor flags.
-    if (source.getType() == CxxSource.Type.ASSEMBLER_WITH_CPP) {
+    if (type == CxxSource.Type.ASSEMBLER_WITH_CPP) {
       args.addAll(platform.getAsppflags());
     }
 
+    return args.build();
+  }
+
+  /**
+   * @return the flags for the compiler proper of a source of the given type.  These are also
+   *     passed when preprocessing separately, as they may affect predefined macros.
+   */
+  private static ImmutableList<String> getLanguageFlags(
+      CxxPlatform platform,
+      ImmutableList<String> compilerFlags,
+      CxxSource.Type type) {
+    ImmutableList.Builder<String> args = ImmutableList.builder();
+
     // If we're dealing with a C source that can be compiled, add the platform C compiler flags.
-    if (source.getType() == CxxSource.Type.C ||
-        source.getType() == CxxSource.Type.C_CPP_OUTPUT) {
+    if (type == CxxSource.Type.C ||
+        type == CxxSource.Type.C_CPP_OUTPUT) {
       args.addAll(platform.getCflags());
     }
 
     // If we're dealing with a C++ source that can be compiled, add the platform C++ compiler
     // flags.
-    if (source.getType() == CxxSource.Type.CXX ||
-        source.getType() == CxxSource.Type.CXX_CPP_OUTPUT) {
+    if (type == CxxSource.Type.CXX ||
+        type == CxxSource.Type.CXX_CPP_OUTPUT) {
       args.addAll(platform.getCxxflags());
     }
 
     // Add in explicit additional compiler flags, if we're compiling.
-    if (source.getType() == CxxSource.Type.C ||
-        source.getType() == CxxSource.Type.C_CPP_OUTPUT ||
-        source.getType() == CxxSource.Type.CXX ||
-        source.getType() == CxxSource.Type.CXX_CPP_OUTPUT) {
+    if (type == CxxSource.Type.C ||
+        type == CxxSource.Type.C_CPP_OUTPUT ||
+        type == CxxSource.Type.CXX ||
+        type == CxxSource.Type.CXX_CPP_OUTPUT) {
       args.addAll(compilerFlags);
     }
 
+    return args.build();
+  }
+
+  /**
+   * @return a {@link CxxCompile} rule that preprocesses, compiles, and assembles the given
+   *    {@link CxxSource}.  If the platform preprocesses separately, the preprocessing is done by
+   *    a {@link CxxPreprocess} rule which is added to the given {@link BuildRuleResolver}.
+   */
+  public static CxxCompile createCompileBuildRule(
+      BuildRuleParams params,
+      BuildRuleResolver resolver,
+      CxxPlatform platform,
+      CxxPreprocessorInput preprocessorInput,
+      ImmutableList<String> compilerFlags,
+      boolean pic,
+      String name,
+      CxxSource source) {
+
+    Optional<CxxSource.Type> preprocessedType = getPreprocessedType(source.getType());
+    if (preprocessedType.isPresent() &&
+        platform.getPreprocessMode() == CxxPreprocessMode.SEPARATE) {
+      CxxPreprocess preprocess = resolver.addToIndex(
+          createPreprocessBuildRule(
+              params,
+              resolver,
+              platform,
+              preprocessorInput,
+              compilerFlags,
+              pic,
+              name,
+              source,
+              preprocessedType.get()));
+      return createPreprocessedCompileBuildRule(
+          params,
+          resolver,
+          platform,
+          compilerFlags,
+          pic,
+          name,
+          new CxxSource(preprocessedType.get(), new BuildRuleSourcePath(preprocess)));
+    }
+
+    BuildTarget target = createCompileBuildTarget(
+        params.getBuildTarget(),
+        name,
+        pic);
+
+    ImmutableSortedSet.Builder<BuildRule> dependencies = ImmutableSortedSet.naturalOrder();
+
+    // If a build rule generates our input source, add that as a dependency.
+    dependencies.addAll(SourcePaths.filterBuildRuleInputs(ImmutableList.of(source.getPath())));
+
+    Path output = getCompileOutputPath(target, name);
+    Optional<Path> depFile = Optional.absent();
+
+    // Add additional dependencies only for preprocessing.
+    if (preprocessedType.isPresent()) {
+
+      // Record which headers actually get included, so that changes to other headers don't
+      // cause a rebuild.
+      depFile = Optional.of(getCompileDepFilePath(output));
+
+      dependencies.addAll(getPreprocessDependencies(params, resolver, preprocessorInput, source));
+    }
+
+    // We explicitly identify our source rather then let the compiler guess based on the
+    // extension.
+    ImmutableList.Builder<String> args = ImmutableList.builder();
+    args.add("-x", source.getType().getLanguage());
+    args.addAll(getPreprocessorFlags(platform, preprocessorInput, source.getType()));
+    args.addAll(getLanguageFlags(platform, compilerFlags, source.getType()));
+
     // All source types require assembling, so add in platform-specific assembler flags.
     args.addAll(iXassembler(platform.getAsflags()));
 
@@ -238,16 +324,142 @@ public class CxxCompilableEnhancer {
             dependencies.build(),
             ImmutableSortedSet.<BuildRule>of()),
         new SourcePathResolver(resolver),
-        compiler,
+        getCompiler(platform, source.getType()),
         Optional.<CxxCompile.Plugin>absent(),
         args.build(),
-        getCompileOutputPath(target, name),
+        output,
+        depFile,
         source.getPath(),
         preprocessorInput.getIncludeRoots(),
         preprocessorInput.getSystemIncludeRoots(),
         preprocessorInput.getIncludes());
   }
 
+  /**
+   * Pick the compiler to use.  Basically, if we're dealing with C++ sources, use the C++
+   * compiler, and the C compiler for everything.
+   */
+  private static SourcePath getCompiler(CxxPlatform platform, CxxSource.Type type) {
+    if (type == CxxSource.Type.CXX ||
+        type == CxxSource.Type.CXX_CPP_OUTPUT) {
+      return platform.getCxx();
+    } else {
+      return platform.getCc();
+    }
+  }
+
+  /**
+   * @return the rules generating the source and the headers needed to preprocess it.
+   */
+  private static ImmutableSortedSet<BuildRule> getPreprocessDependencies(
+      BuildRuleParams params,
+      BuildRuleResolver resolver,
+      CxxPreprocessorInput preprocessorInput,
+      CxxSource source) {
+    ImmutableSortedSet.Builder<BuildRule> dependencies = ImmutableSortedSet.naturalOrder();
+
+    // Depend on the rule that generates the sources and headers we're compiling.
+    dependencies.addAll(
+        SourcePaths.filterBuildRuleInputs(
+            ImmutableList.<SourcePath>builder()
+                .add(source.getPath())
+                .addAll(preprocessorInput.getIncludes().values())
+                .build()));
+
+    // Also add in extra deps from the preprocessor input, such as the symlink tree
+    // rules.
+    dependencies.addAll(
+        BuildRules.toBuildRulesFor(
+            params.getBuildTarget(),
+            resolver,
+            preprocessorInput.getRules(),
+            false));
+
+    return dependencies.build();
+  }
+
+  private static CxxPreprocess createPreprocessBuildRule(
+      BuildRuleParams params,
+      BuildRuleResolver resolver,
+      CxxPlatform platform,
+      CxxPreprocessorInput preprocessorInput,
+      ImmutableList<String> compilerFlags,
+      boolean pic,
+      String name,
+      CxxSource source,
+      CxxSource.Type preprocessedType) {
+
+    BuildTarget target = createPreprocessBuildTarget(params.getBuildTarget(), name, pic);
+
+    SourcePath preprocessor;
+    if (source.getType() == CxxSource.Type.CXX) {
+      preprocessor = platform.getCxxpp();
+    } else if (source.getType() == CxxSource.Type.C) {
+      preprocessor = platform.getCpp();
+    } else {
+      preprocessor = platform.getAspp();
+    }
+
+    // The compiler flags are passed to the preprocessor too, as they may define macros (e.g.
+    // optimization levels or -fPIC).
+    ImmutableList.Builder<String> args = ImmutableList.builder();
+    args.add("-x", source.getType().getLanguage());
+    args.addAll(getPreprocessorFlags(platform, preprocessorInput, source.getType()));
+    args.addAll(getLanguageFlags(platform, compilerFlags, source.getType()));
+    if (pic) {
+      args.add("-fPIC");
+    }
+
+    return new CxxPreprocess(
+        params.copyWithChanges(
+            PREPROCESS_TYPE,
+            target,
+            getPreprocessDependencies(params, resolver, preprocessorInput, source),
+            ImmutableSortedSet.<BuildRule>of()),
+        new SourcePathResolver(resolver),
+        preprocessor,
+        args.build(),
+        getPreprocessOutputPath(target, preprocessedType, name),
+        source.getPath(),
+        preprocessorInput.getIncludeRoots(),
+        preprocessorInput.getSystemIncludeRoots(),
+        preprocessorInput.getIncludes());
+  }
+
+  private static CxxPreprocessedCompile createPreprocessedCompileBuildRule(
+      BuildRuleParams params,
+      BuildRuleResolver resolver,
+      CxxPlatform platform,
+      ImmutableList<String> compilerFlags,
+      boolean pic,
+      String name,
+      CxxSource source) {
+
+    BuildTarget target = createCompileBuildTarget(params.getBuildTarget(), name, pic);
+
+    ImmutableList.Builder<String> args = ImmutableList.builder();
+    args.add("-x", source.getType().getLanguage());
+    args.addAll(getLanguageFlags(platform, compilerFlags, source.getType()));
+    args.addAll(iXassembler(platform.getAsflags()));
+    if (pic) {
+      args.add("-fPIC");
+    }
+
+    return new CxxPreprocessedCompile(
+        params.copyWithChanges(
+            COMPILE_TYPE,
+            target,
+            ImmutableSortedSet.copyOf(
+                SourcePaths.filterBuildRuleInputs(ImmutableList.of(source.getPath()))),
+            ImmutableSortedSet.<BuildRule>of()),
+        new SourcePathResolver(resolver),
+        getCompiler(platform, source.getType()),
+        Optional.<CxxCompile.Plugin>absent(),
+        args.build(),
+        getCompileOutputPath(target, name),
+        source.getPath());
+  }
+
   /**
    * @return a set of {@link CxxCompile} rules preprocessing, compiling, and assembling the
    *    given input {@link CxxSource} sources.
@@ -21,33 +21,50 @@ import com.facebook.buck.rules.BuildContext;
 import com.facebook.buck.rules.BuildRuleParams;
 import com.facebook.buck.rules.BuildableContext;
 import com.facebook.buck.rules.RuleKey;
+import com.facebook.buck.rules.RuleKeyBuilderFactory;
 import com.facebook.buck.rules.SourcePath;
 import com.facebook.buck.rules.SourcePathResolver;
+import com.facebook.buck.rules.SourcePaths;
+import com.facebook.buck.rules.SupportsDependencyFileRuleKey;
+import com.facebook.buck.step.AbstractExecutionStep;
+import com.facebook.buck.step.ExecutionContext;
 import com.facebook.buck.step.Step;
 import com.facebook.buck.step.fs.MkdirStep;
+import com.facebook.buck.step.fs.RmStep;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Functions;
 import com.google.common.base.Optional;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableCollection;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSortedSet;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Maps;
 
 import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Map;
 
 /**
  * A build rule which preprocesses, compiles, and assembles a C/C++ source.
  * It supports the execution of one plugin during the compilation.
+ * <p>
+ * When a dep file is requested, the headers actually included by the last compilation are recorded
+ * so that, on subsequent builds, changes to headers which were not included don't force a rebuild.
  */
-public class CxxCompile extends AbstractBuildRule {
+public class CxxCompile extends AbstractBuildRule implements SupportsDependencyFileRuleKey {
 
   private final SourcePath compiler;
   private final Optional<Plugin> plugin;
   private final ImmutableList<String> flags;
   private final Path output;
+  private final Optional<Path> depFile;
   private final SourcePath input;
   private final ImmutableList<Path> includeRoots;
   private final ImmutableList<Path> systemIncludeRoots;
   private final ImmutableMap<Path, SourcePath> includes;
+  private final RuleKeyBuilderFactory ruleKeyBuilderFactory;
 
   public CxxCompile(
       BuildRuleParams params,
@@ -56,6 +73,7 @@ public class CxxCompile extends AbstractBuildRule {
       Optional<Plugin> plugin,
       ImmutableList<String> flags,
       Path output,
+      Optional<Path> depFile,
       SourcePath input,
       ImmutableList<Path> includeRoots,
       ImmutableList<Path> systemIncludeRoots,
@@ -65,23 +83,45 @@ public class CxxCompile extends AbstractBuildRule {
     this.flags = Preconditions.checkNotNull(flags);
     this.plugin = Preconditions.checkNotNull(plugin);
     this.output = Preconditions.checkNotNull(output);
+    this.depFile = Preconditions.checkNotNull(depFile);
     this.input = Preconditions.checkNotNull(input);
     this.includeRoots = Preconditions.checkNotNull(includeRoots);
     this.systemIncludeRoots = Preconditions.checkNotNull(systemIncludeRoots);
     this.includes = Preconditions.checkNotNull(includes);
+    this.ruleKeyBuilderFactory = params.getRuleKeyBuilderFactory();
   }
 
   @Override
   protected ImmutableCollection<Path> getInputsToCompareToOutput() {
-    return ImmutableList.of(getResolver().getPath(input));
+    return SourcePaths.filterInputsToCompareToOutput(ImmutableList.of(input));
   }
 
   @Override
   protected RuleKey.Builder appendDetailsToRuleKey(RuleKey.Builder builder) {
+    builder.setInput("input", input);
+    appendCompileDetailsToRuleKey(builder);
+
+    // Hash the layout of each potentially included C/C++ header file and it's contents.
+    // We do this here, rather than returning them from `getInputsToCompareToOutput` so
+    // that we can match the contents hash up with where it was laid out in the include
+    // search path, and therefore can accurately capture header file renames.
+    for (Path path : ImmutableSortedSet.copyOf(includes.keySet())) {
+      SourcePath source = includes.get(path);
+      builder.setInput("include(" + path + ")", getResolver().getPath(source));
+    }
+
+    return builder;
+  }
+
+  /**
+   * Appends everything but the input and the headers to the {@link RuleKey}.
+   */
+  protected RuleKey.Builder appendCompileDetailsToRuleKey(RuleKey.Builder builder) {
     builder
         .setInput("compiler", compiler)
         .set("flags", flags)
-        .set("output", output.toString());
+        .set("output", output.toString())
+        .set("depFile", depFile.transform(Functions.toStringFunction()));
 
     if (plugin.isPresent()) {
       Plugin p = plugin.get();
@@ -89,16 +129,78 @@ public class CxxCompile extends AbstractBuildRule {
       builder.set("plugin-" + p.getName() + "-flags", p.getFlags());
     }
 
-    // Hash the layout of each potentially included C/C++ header file and it's contents.
-    // We do this here, rather than returning them from `getInputsToCompareToOutput` so
-    // that we can match the contents hash up with where it was laid out in the include
-    // search path, and therefore can accurately capture header file renames.
-    for (Path path : ImmutableSortedSet.copyOf(includes.keySet())) {
-      SourcePath source = includes.get(path);
-      builder.setInput("include(" + path + ")", getResolver().getPath(source));
+    return builder;
+  }
+
+  /**
+   * Unlike the normal {@link RuleKey}, which hashes the contents of every header which could be
+   * included, this only hashes the contents of the headers listed in the dep file from the last
+   * build. The layout of all headers is still hashed, as adding a header may change which one an
+   * {@code #include} resolves to.
+   * <p>
+   * Headers found relative to the input, rather than through an include root, are listed by their
+   * own path, and are hashed under it. If such a header is not one of the headers of this rule,
+   * there is nothing to check it against, so there is no key at all.
+   */
+  @Override
+  public Optional<RuleKey> getDepFileRuleKey(ImmutableList<String> depFileEntries) {
+    RuleKey.Builder builder = ruleKeyBuilderFactory.newInstance(this)
+        .setInput("input", input);
+    appendCompileDetailsToRuleKey(builder);
+    builder.set(
+        "includes",
+        ImmutableList.copyOf(
+            Iterables.transform(
+                ImmutableSortedSet.copyOf(includes.keySet()),
+                Functions.toStringFunction())));
+
+    ImmutableMap<Path, SourcePath> includesByPath = getIncludesByPath();
+    for (String entry : depFileEntries) {
+      Path path = Paths.get(entry);
+      Optional<Path> includeRoot = getIncludeRootFor(path);
+      if (!includeRoot.isPresent()) {
+        if (path.isAbsolute()) {
+          // System headers aren't hashed by the normal RuleKey either.
+          continue;
+        }
+        SourcePath source = includesByPath.get(path.normalize());
+        if (source == null) {
+          return Optional.absent();
+        }
+        builder.setInput("include(" + path + ")", getResolver().getPath(source));
+        continue;
+      }
+      Path include = includeRoot.get().relativize(path);
+      SourcePath source = includes.get(include);
+      if (source == null) {
+        // The header is no longer provided, so the previous output can't be valid anymore.
+        return Optional.absent();
+      }
+      builder.setInput("include(" + include + ")", getResolver().getPath(source));
     }
 
-    return builder;
+    return Optional.of(builder.build().getRuleKeyWithoutDeps());
+  }
+
+  /**
+   * @return the headers of this rule, keyed by the paths at which the compiler finds them when it
+   *     resolves an include relative to the input.
+   */
+  private ImmutableMap<Path, SourcePath> getIncludesByPath() {
+    Map<Path, SourcePath> includesByPath = Maps.newHashMap();
+    for (SourcePath source : includes.values()) {
+      includesByPath.put(getResolver().getPath(source).normalize(), source);
+    }
+    return ImmutableMap.copyOf(includesByPath);
+  }
+
+  private Optional<Path> getIncludeRootFor(Path path) {
+    for (Path includeRoot : includeRoots) {
+      if (path.startsWith(includeRoot)) {
+        return Optional.of(includeRoot);
+      }
+    }
+    return Optional.absent();
   }
 
   @Override
@@ -114,15 +216,74 @@ public class CxxCompile extends AbstractBuildRule {
             : flags;
 
     buildableContext.recordArtifact(output);
-    return ImmutableList.of(
-        new MkdirStep(output.getParent()),
+    ImmutableList.Builder<Step> steps = ImmutableList.builder();
+    steps.add(new MkdirStep(output.getParent()));
+    if (depFile.isPresent()) {
+      steps.add(new RmStep(depFile.get(), /* shouldForceDeletion */ true));
+    }
+    steps.add(
         new CxxCompileStep(
             getResolver().getPath(compiler),
             allFlags,
             output,
+            depFile,
             getResolver().getPath(input),
             includeRoots,
             systemIncludeRoots));
+    if (depFile.isPresent()) {
+      steps.add(new RecordDepFileStep(depFile.get(), buildableContext));
+    }
+    return steps.build();
+  }
+
+  /**
+   * Records the headers listed in the dep file written by the compiler, along with the
+   * {@link RuleKey} computed from them, as metadata for the next build.
+   */
+  private class RecordDepFileStep extends AbstractExecutionStep {
+
+    private final Path depFilePath;
+    private final BuildableContext buildableContext;
+
+    public RecordDepFileStep(Path depFilePath, BuildableContext buildableContext) {
+      super("record_dep_file");
+      this.depFilePath = depFilePath;
+      this.buildableContext = buildableContext;
+    }
+
+    @Override
+    public int execute(ExecutionContext context) {
+      Optional<String> contents = context.getProjectFilesystem().readFileIfItExists(depFilePath);
+      if (!contents.isPresent()) {
+        context.getConsole().printErrorText(
+            String.format("The compiler did not write a dep file to %s.", depFilePath));
+        return 1;
+      }
+
+      ImmutableList<String> entries = normalizeDepFileEntries(
+          Depfiles.parseDepfile(contents.get()));
+      Optional<RuleKey> depFileRuleKey = getDepFileRuleKey(entries);
+      if (depFileRuleKey.isPresent()) {
+        buildableContext.addMetadata(DEP_FILE_ON_DISK_METADATA, entries);
+        buildableContext.addMetadata(
+            DEP_FILE_RULE_KEY_ON_DISK_METADATA,
+            depFileRuleKey.get().toString());
+      }
+      return 0;
+    }
+  }
+
+  @VisibleForTesting
+  ImmutableList<String> normalizeDepFileEntries(ImmutableList<String> entries) {
+    Path inputPath = getResolver().getPath(input).normalize();
+    ImmutableSortedSet.Builder<String> normalized = ImmutableSortedSet.naturalOrder();
+    for (String entry : entries) {
+      Path path = Paths.get(entry).normalize();
+      if (!path.equals(inputPath)) {
+        normalized.add(path.toString());
+      }
+    }
+    return normalized.build().asList();
   }
 
   @Override
@@ -146,6 +307,10 @@ public class CxxCompile extends AbstractBuildRule {
     return output;
   }
 
+  public Optional<Path> getDepFile() {
+    return depFile;
+  }
+
   public SourcePath getInput() {
     return input;
   }
@@ -20,6 +20,7 @@ import com.facebook.buck.shell.ShellStep;
 import com.facebook.buck.step.ExecutionContext;
 import com.facebook.buck.util.MoreIterables;
 import com.google.common.base.Functions;
+import com.google.common.base.Optional;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Iterables;
@@ -34,6 +35,7 @@ public class CxxCompileStep extends ShellStep {
   private final Path compiler;
   private final ImmutableList<String> flags;
   private final Path output;
+  private final Optional<Path> depFile;
   private final Path input;
   private final ImmutableList<Path> includes;
   private final ImmutableList<Path> systemIncludes;
@@ -42,12 +44,14 @@ public class CxxCompileStep extends ShellStep {
       Path compiler,
       ImmutableList<String> flags,
       Path output,
+      Optional<Path> depFile,
       Path input,
       ImmutableList<Path> includes,
       ImmutableList<Path> systemIncludes) {
     this.compiler = Preconditions.checkNotNull(compiler);
     this.flags = Preconditions.checkNotNull(flags);
     this.output = Preconditions.checkNotNull(output);
+    this.depFile = Preconditions.checkNotNull(depFile);
     this.input = Preconditions.checkNotNull(input);
     this.includes = Preconditions.checkNotNull(includes);
     this.systemIncludes = Preconditions.checkNotNull(systemIncludes);
@@ -60,11 +64,19 @@ public class CxxCompileStep extends ShellStep {
 
   @Override
   protected ImmutableList<String> getShellCommandInternal(ExecutionContext context) {
-    return ImmutableList.<String>builder()
+    ImmutableList.Builder<String> command = ImmutableList.<String>builder()
         .add(compiler.toString())
         .add("-c")
         .addAll(flags)
-        .add("-o", output.toString())
+        .add("-o", output.toString());
+
+    // Have the preprocessor write out the headers that were actually included, so that the rule
+    // can be keyed on just those, rather than on every header that could have been included.
+    if (depFile.isPresent()) {
+      command.add("-MD", "-MF", depFile.get().toString());
+    }
+
+    return command
         .addAll(
             MoreIterables.zipAndConcat(
                 Iterables.cycle("-I"),
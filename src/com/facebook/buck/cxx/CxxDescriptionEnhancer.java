@@ -392,7 +392,8 @@ public class CxxDescriptionEnhancer {
         pathResolver,
         staticLibraryTarget,
         params,
-        cxxPlatform.getAr(),
+        cxxPlatform.getArchiveFormat(),
+        cxxPlatform.shouldUseThinArchives(),
         staticLibraryPath,
         objects);
     resolver.addToIndex(staticLibraryBuildRule);
@@ -45,6 +45,8 @@ public interface CxxPlatform {
   SourcePath getCxxpp();
   ImmutableList<String> getCxxppflags();
 
+  CxxPreprocessMode getPreprocessMode();
+
   SourcePath getCxxld();
   ImmutableList<String> getCxxldflags();
 
@@ -53,6 +55,8 @@ public interface CxxPlatform {
 
   SourcePath getAr();
   ImmutableList<String> getArflags();
+  ArchiveFormat getArchiveFormat();
+  boolean shouldUseThinArchives();
 
   SourcePath getLex();
   ImmutableList<String> getLexFlags();
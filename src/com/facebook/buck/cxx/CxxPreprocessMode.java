@@ -0,0 +1,32 @@
+/*
+ * Copyright 2014-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.cxx;
+
+/**
+ * How sources which need preprocessing are turned into object files.
+ */
+public enum CxxPreprocessMode {
+  /** Preprocess, compile, and assemble each source in a single rule. */
+  COMBINED,
+
+  /**
+   * Preprocess each source in its own rule, and compile the preprocessed output in another rule
+   * which is keyed on its contents, so that edits to headers which don't change the preprocessed
+   * output don't cause a recompile.
+   */
+  SEPARATE,
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright 2014-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.cxx;
+
+import com.facebook.buck.rules.BuildRuleParams;
+import com.facebook.buck.rules.RuleKey;
+import com.facebook.buck.rules.RuleKeyBuilderFactory;
+import com.facebook.buck.rules.SourcePath;
+import com.facebook.buck.rules.SourcePathResolver;
+import com.facebook.buck.rules.SupportsInputBasedRuleKey;
+import com.facebook.buck.util.ProjectFilesystem;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Charsets;
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.regex.Pattern;
+
+/**
+ * A {@link CxxCompile} of the output of a {@link CxxPreprocess} rule. In addition to its normal
+ * {@link RuleKey}, it has one based on the contents of the preprocessed source, so it is neither
+ * rebuilt nor refetched when an edit to a header (e.g. to a comment) doesn't change the output of
+ * the preprocessor.
+ */
+public class CxxPreprocessedCompile extends CxxCompile implements SupportsInputBasedRuleKey {
+
+  /**
+   * Matches the line markers written by the preprocessor, e.g. {@code # 1 "foo/bar.h" 2}.
+   */
+  private static final Pattern LINE_MARKER =
+      Pattern.compile("#(line)? [0-9]+( \"([^\"\\\\]|\\\\.)*\"( [1-4])*)?\r?\n?");
+
+  private final Path preprocessedInput;
+  private final ProjectFilesystem projectFilesystem;
+  private final RuleKeyBuilderFactory ruleKeyBuilderFactory;
+
+  public CxxPreprocessedCompile(
+      BuildRuleParams params,
+      SourcePathResolver resolver,
+      SourcePath compiler,
+      Optional<Plugin> plugin,
+      ImmutableList<String> flags,
+      Path output,
+      SourcePath input) {
+    super(
+        params,
+        resolver,
+        compiler,
+        plugin,
+        flags,
+        output,
+        /* depFile */ Optional.<Path>absent(),
+        input,
+        /* includeRoots */ ImmutableList.<Path>of(),
+        /* systemIncludeRoots */ ImmutableList.<Path>of(),
+        /* includes */ ImmutableMap.<Path, SourcePath>of());
+    this.preprocessedInput = resolver.getPath(input);
+    this.projectFilesystem = params.getProjectFilesystem();
+    this.ruleKeyBuilderFactory = params.getRuleKeyBuilderFactory();
+  }
+
+  @Override
+  public Optional<RuleKey> getInputBasedRuleKey() throws IOException {
+    HashCode inputHash;
+    try (Reader reader =
+             Files.newBufferedReader(
+                 projectFilesystem.resolve(preprocessedInput),
+                 Charsets.UTF_8)) {
+      inputHash = hashPreprocessedSource(reader, shouldKeepLineMarkers(getFlags()));
+    }
+
+    RuleKey.Builder builder = ruleKeyBuilderFactory.newInstance(this)
+        .set("input", inputHash.toString());
+    appendCompileDetailsToRuleKey(builder);
+    return Optional.of(builder.build().getRuleKeyWithoutDeps());
+  }
+
+  /**
+   * Line numbers only end up in the object file as debug info, so unless that is asked for, line
+   * markers can be ignored, which means that the line numbers they carry don't change the hash.
+   */
+  @VisibleForTesting
+  static boolean shouldKeepLineMarkers(ImmutableList<String> flags) {
+    for (String flag : flags) {
+      if (flag.startsWith("-g") && !flag.equals("-g0")) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * @return the hash of the given preprocessed source, leaving out line markers unless
+   *     {@code keepLineMarkers} is set. Every other line is hashed verbatim, line terminator and
+   *     all, as blank lines and whitespace are significant inside raw string literals.
+   */
+  @VisibleForTesting
+  static HashCode hashPreprocessedSource(Reader source, boolean keepLineMarkers)
+      throws IOException {
+    Hasher hasher = Hashing.sha1().newHasher();
+    StringBuilder line = new StringBuilder();
+    char[] buffer = new char[8192];
+    int read;
+    while ((read = source.read(buffer)) != -1) {
+      int lineStart = 0;
+      for (int i = 0; i < read; i++) {
+        if (buffer[i] == '\n') {
+          line.append(buffer, lineStart, i + 1 - lineStart);
+          hashLine(hasher, line, keepLineMarkers);
+          line.setLength(0);
+          lineStart = i + 1;
+        }
+      }
+      line.append(buffer, lineStart, read - lineStart);
+    }
+    hashLine(hasher, line, keepLineMarkers);
+    return hasher.hash();
+  }
+
+  private static void hashLine(Hasher hasher, CharSequence line, boolean keepLineMarkers) {
+    if (keepLineMarkers || !LINE_MARKER.matcher(line).matches()) {
+      hasher.putString(line, Charsets.UTF_8);
+    }
+  }
+
+}
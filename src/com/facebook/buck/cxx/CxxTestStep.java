@@ -66,7 +66,7 @@ public class CxxTestStep implements Step {
 
     Process process;
     try {
-      process = builder.start();
+      process = context.getProcessExecutor().launchProcess(builder);
     } catch (IOException e) {
       context.logError(e, "Error starting command %s", command);
       return 1;
@@ -166,6 +166,12 @@ public class DefaultCxxPlatform implements CxxPlatform {
     return getFlags("cxx", "cxxppflags", DEFAULT_CXXPPFLAGS);
   }
 
+  @Override
+  public CxxPreprocessMode getPreprocessMode() {
+    return delegate.getEnum("cxx", "preprocess_mode", CxxPreprocessMode.class)
+        .or(CxxPreprocessMode.COMBINED);
+  }
+
   @Override
   public SourcePath getCxxld() {
     return getSourcePath("cxx", "cxxld", DEFAULT_CXXLD);
@@ -226,6 +232,26 @@ public class DefaultCxxPlatform implements CxxPlatform {
     return getFlags("cxx", "arflags", DEFAULT_ARFLAGS);
   }
 
+  private ArchiveFormat getArchiveFormatForPlatform() {
+    return platform == Platform.MACOS ? ArchiveFormat.BSD : ArchiveFormat.GNU;
+  }
+
+  @Override
+  public ArchiveFormat getArchiveFormat() {
+    return delegate.getEnum("cxx", "archive_format", ArchiveFormat.class)
+        .or(getArchiveFormatForPlatform());
+  }
+
+  @Override
+  public boolean shouldUseThinArchives() {
+    boolean thin = delegate.getBooleanValue("cxx", "thin_archives", false);
+    if (thin && getArchiveFormat() != ArchiveFormat.GNU) {
+      throw new HumanReadableException(
+          "thin archives are only supported with .buckconfig's [cxx] archive_format set to GNU");
+    }
+    return thin;
+  }
+
   @Override
   public SourcePath getLex() {
     return getSourcePath("cxx", "lex", DEFAULT_LEX);
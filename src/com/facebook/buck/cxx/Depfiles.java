@@ -0,0 +1,92 @@
+/*
+ * Copyright 2014-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.cxx;
+
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Utilities for the Makefile-style dependency files written by the {@code -MD} and {@code -MF}
+ * flags of gcc and clang, e.g.:
+ * <pre>
+ * foo.o: foo.c foo.h \
+ *   some/dir\ with\ spaces/bar.h
+ * </pre>
+ */
+public class Depfiles {
+
+  private Depfiles() {}
+
+  /**
+   * @return the prerequisites listed in the first rule of the given dep file, in order.
+   */
+  public static ImmutableList<String> parseDepfile(String contents) {
+    ImmutableList.Builder<String> prerequisites = ImmutableList.builder();
+    StringBuilder current = new StringBuilder();
+    boolean seenTarget = false;
+
+    for (int i = 0; i < contents.length(); i++) {
+      char c = contents.charAt(i);
+      char next = i + 1 < contents.length() ? contents.charAt(i + 1) : '\0';
+
+      if (c == '\\' && (next == '\n' || next == '\r')) {
+        // A line continuation separates entries, just like any other whitespace.
+        addIfNotEmpty(prerequisites, current, seenTarget);
+        i++;
+        if (next == '\r' && i + 1 < contents.length() && contents.charAt(i + 1) == '\n') {
+          i++;
+        }
+      } else if (c == '\\' && (next == ' ' || next == '#' || next == '\\')) {
+        current.append(next);
+        i++;
+      } else if (c == '$' && next == '$') {
+        current.append('$');
+        i++;
+      } else if (!seenTarget && c == ':' && (Character.isWhitespace(next) || next == '\0')) {
+        // Everything before the first ':' is the target (i.e. the object file).
+        current.setLength(0);
+        seenTarget = true;
+      } else if (c == '\n' || c == '\r') {
+        // The compiler only writes one rule, unless asked for phony targets with -MP.
+        if (seenTarget) {
+          break;
+        }
+        current.setLength(0);
+      } else if (Character.isWhitespace(c)) {
+        addIfNotEmpty(prerequisites, current, seenTarget);
+      } else {
+        current.append(c);
+      }
+    }
+    addIfNotEmpty(prerequisites, current, seenTarget);
+
+    return prerequisites.build();
+  }
+
+  private static void addIfNotEmpty(
+      ImmutableList.Builder<String> prerequisites,
+      StringBuilder current,
+      boolean seenTarget) {
+    if (!seenTarget) {
+      return;
+    }
+    if (current.length() > 0) {
+      prerequisites.add(current.toString());
+    }
+    current.setLength(0);
+  }
+
+}
@@ -0,0 +1,185 @@
+/*
+ * Copyright 2014-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.cxx;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads the names of the global symbols defined by an ELF or Mach-O object file, which is what
+ * the symbol index of an archive lists so that the linker knows which members to pull in.
+ * <p>
+ * Symbol names are returned decoded as ISO-8859-1, so that encoding them again with the same
+ * charset gives back the original bytes no matter what encoding the compiler used.
+ */
+class ObjectFileSymbols {
+
+  private static final int ELF_MAGIC = 0x7f454c46;
+  private static final int EI_CLASS = 4;
+  private static final int EI_DATA = 5;
+  private static final int ELFCLASS64 = 2;
+  private static final int ELFDATA2MSB = 2;
+  private static final int SHT_SYMTAB = 2;
+  private static final int SHN_UNDEF = 0;
+  private static final int STB_GLOBAL = 1;
+  private static final int STB_WEAK = 2;
+  private static final int STB_GNU_UNIQUE = 10;
+
+  private static final int MH_MAGIC = 0xfeedface;
+  private static final int MH_CIGAM = 0xcefaedfe;
+  private static final int MH_MAGIC_64 = 0xfeedfacf;
+  private static final int MH_CIGAM_64 = 0xcffaedfe;
+  private static final int LC_SYMTAB = 0x2;
+  private static final int N_STAB = 0xe0;
+  private static final int N_TYPE = 0x0e;
+  private static final int N_EXT = 0x01;
+  private static final int N_UNDF = 0x0;
+
+  private ObjectFileSymbols() {}
+
+  /**
+   * @return the global symbols defined by the object file at {@code path}, in symbol table order,
+   *     or an empty list if it is not an object file we know how to read.
+   */
+  public static ImmutableList<String> getDefinedGlobalSymbols(Path path) throws IOException {
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      return getDefinedGlobalSymbols(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+    } catch (IOException e) {
+      throw new IOException(String.format("Error reading symbols from %s", path), e);
+    }
+  }
+
+  public static ImmutableList<String> getDefinedGlobalSymbols(ByteBuffer buffer)
+      throws IOException {
+    if (buffer.limit() < 4) {
+      return ImmutableList.of();
+    }
+    try {
+      int magic = buffer.order(ByteOrder.BIG_ENDIAN).getInt(0);
+      if (magic == ELF_MAGIC) {
+        return getElfSymbols(buffer);
+      }
+      int machMagic = buffer.order(ByteOrder.LITTLE_ENDIAN).getInt(0);
+      if (machMagic == MH_MAGIC || machMagic == MH_MAGIC_64) {
+        return getMachOSymbols(buffer, machMagic == MH_MAGIC_64);
+      }
+      if (machMagic == MH_CIGAM || machMagic == MH_CIGAM_64) {
+        buffer.order(ByteOrder.BIG_ENDIAN);
+        return getMachOSymbols(buffer, machMagic == MH_CIGAM_64);
+      }
+      return ImmutableList.of();
+    } catch (IndexOutOfBoundsException | IllegalArgumentException e) {
+      throw new IOException("malformed object file", e);
+    }
+  }
+
+  private static ImmutableList<String> getElfSymbols(ByteBuffer buffer) {
+    boolean is64 = buffer.get(EI_CLASS) == ELFCLASS64;
+    buffer.order(
+        buffer.get(EI_DATA) == ELFDATA2MSB ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN);
+
+    int sectionHeaders = is64 ? toInt(buffer.getLong(0x28)) : buffer.getInt(0x20);
+    int sectionHeaderSize = getUnsignedShort(buffer, is64 ? 0x3a : 0x2e);
+    int sectionCount = getUnsignedShort(buffer, is64 ? 0x3c : 0x30);
+
+    ImmutableList.Builder<String> symbols = ImmutableList.builder();
+    for (int i = 0; i < sectionCount; i++) {
+      int section = sectionHeaders + i * sectionHeaderSize;
+      if (buffer.getInt(section + 4) != SHT_SYMTAB) {
+        continue;
+      }
+      int offset = getElfWord(buffer, is64, section + (is64 ? 0x18 : 0x10));
+      int size = getElfWord(buffer, is64, section + (is64 ? 0x20 : 0x14));
+      int link = buffer.getInt(section + (is64 ? 0x28 : 0x18));
+      int entrySize = getElfWord(buffer, is64, section + (is64 ? 0x38 : 0x24));
+      int strings = getElfWord(
+          buffer,
+          is64,
+          sectionHeaders + link * sectionHeaderSize + (is64 ? 0x18 : 0x10));
+
+      // The first entry of every symbol table is the reserved undefined symbol.
+      for (int symbol = offset + entrySize; symbol < offset + size; symbol += entrySize) {
+        int info = buffer.get(symbol + (is64 ? 4 : 12)) & 0xff;
+        int sectionIndex = getUnsignedShort(buffer, symbol + (is64 ? 6 : 14));
+        int binding = info >> 4;
+        if ((binding == STB_GLOBAL || binding == STB_WEAK || binding == STB_GNU_UNIQUE) &&
+            sectionIndex != SHN_UNDEF) {
+          symbols.add(getString(buffer, strings + buffer.getInt(symbol)));
+        }
+      }
+    }
+    return symbols.build();
+  }
+
+  private static ImmutableList<String> getMachOSymbols(ByteBuffer buffer, boolean is64) {
+    int commandCount = buffer.getInt(16);
+    int command = is64 ? 32 : 28;
+    ImmutableList.Builder<String> symbols = ImmutableList.builder();
+    for (int i = 0; i < commandCount; i++) {
+      if (buffer.getInt(command) == LC_SYMTAB) {
+        int offset = buffer.getInt(command + 8);
+        int count = buffer.getInt(command + 12);
+        int strings = buffer.getInt(command + 16);
+        int entrySize = is64 ? 16 : 12;
+        for (int j = 0; j < count; j++) {
+          int symbol = offset + j * entrySize;
+          int type = buffer.get(symbol + 4) & 0xff;
+          if ((type & N_STAB) == 0 && (type & N_EXT) != 0 && (type & N_TYPE) != N_UNDF) {
+            symbols.add(getString(buffer, strings + buffer.getInt(symbol)));
+          }
+        }
+      }
+      command += buffer.getInt(command + 4);
+    }
+    return symbols.build();
+  }
+
+  private static int getElfWord(ByteBuffer buffer, boolean is64, int index) {
+    return is64 ? toInt(buffer.getLong(index)) : buffer.getInt(index);
+  }
+
+  private static int getUnsignedShort(ByteBuffer buffer, int index) {
+    return buffer.getShort(index) & 0xffff;
+  }
+
+  private static int toInt(long value) {
+    if (value < 0 || value > Integer.MAX_VALUE) {
+      throw new IllegalArgumentException("offset out of range: " + value);
+    }
+    return (int) value;
+  }
+
+  private static String getString(ByteBuffer buffer, int index) {
+    int end = index;
+    while (buffer.get(end) != 0) {
+      end++;
+    }
+    byte[] bytes = new byte[end - index];
+    for (int i = 0; i < bytes.length; i++) {
+      bytes[i] = buffer.get(index + i);
+    }
+    return new String(bytes, Charsets.ISO_8859_1);
+  }
+
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2014-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.cxx;
+
+import com.facebook.buck.step.ExecutionContext;
+import com.facebook.buck.step.Step;
+import com.facebook.buck.util.ProjectFilesystem;
+import com.google.common.base.Joiner;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Writes a deterministic "ar" archive from a list of object files, without shelling out to
+ * {@code ar} or having to scrub the result afterwards.
+ */
+public class WriteArchiveStep implements Step {
+
+  private final ArchiveFormat format;
+  private final boolean thin;
+  private final Path output;
+  private final ImmutableList<Path> inputs;
+
+  public WriteArchiveStep(
+      ArchiveFormat format,
+      boolean thin,
+      Path output,
+      ImmutableList<Path> inputs) {
+    this.format = Preconditions.checkNotNull(format);
+    this.thin = thin;
+    this.output = Preconditions.checkNotNull(output);
+    this.inputs = Preconditions.checkNotNull(inputs);
+  }
+
+  @Override
+  public int execute(ExecutionContext context) throws InterruptedException {
+    ProjectFilesystem filesystem = context.getProjectFilesystem();
+    ImmutableList.Builder<Path> absoluteInputs = ImmutableList.builder();
+    for (Path input : inputs) {
+      absoluteInputs.add(filesystem.resolve(input));
+    }
+    Path absoluteOutput = filesystem.resolve(output);
+    try {
+      new ArchiveWriter(format, thin).write(absoluteOutput, absoluteInputs.build());
+    } catch (IOException e) {
+      context.logError(e, "Error writing archive %s", absoluteOutput);
+      return 1;
+    }
+    return 0;
+  }
+
+  @Override
+  public String getShortName() {
+    return "archive";
+  }
+
+  @Override
+  public String getDescription(ExecutionContext context) {
+    return String.format(
+        "write %s%s archive %s from %s",
+        thin ? "thin " : "",
+        format.toString().toLowerCase(),
+        output,
+        Joiner.on(' ').join(inputs));
+  }
+
+}
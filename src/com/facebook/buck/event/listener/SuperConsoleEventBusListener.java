@@ -25,25 +25,24 @@ import com.facebook.buck.rules.TestRunEvent;
 import com.facebook.buck.step.StepEvent;
 import com.facebook.buck.timing.Clock;
 import com.facebook.buck.util.Console;
-import com.facebook.buck.util.environment.ExecutionEnvironment;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Joiner;
 import com.google.common.base.Optional;
-import com.google.common.collect.FluentIterable;
 import com.google.common.collect.ImmutableList;
 import com.google.common.eventbus.Subscribe;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 import java.io.IOException;
-import java.util.Comparator;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.List;
 import java.util.concurrent.ConcurrentLinkedQueue;
-import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * Console that provides rich, updating ansi output about the current build.
@@ -59,8 +58,23 @@ public class SuperConsoleEventBusListener extends AbstractConsoleEventBusListene
    */
   private static final long ERROR_THRESHOLD_MS = 30000;
 
-  private final ConcurrentMap<Long, Optional<? extends BuildRuleEvent>> threadsToRunningEvent;
-  private final ConcurrentMap<Long, Optional<? extends LeafEvent>> threadsToRunningStep;
+  /**
+   * The longest the console will wait between frames, however long rendering takes.
+   */
+  private static final long MAX_RENDER_INTERVAL_MS = 1000;
+
+  /**
+   * Rendering should take at most this fraction of the time between two frames, so that a busy
+   * machine does not spend even more of its time drawing the console.
+   */
+  private static final long RENDER_COST_FACTOR = 10;
+
+  /**
+   * What each thread is running, sorted by thread id. The slot of a thread is created the first
+   * time it sends an event and then only updated in place, so event handlers never block on each
+   * other or on rendering.
+   */
+  private final ConcurrentNavigableMap<Long, ThreadState> threadStates;
   private final AtomicInteger numRulesCompleted = new AtomicInteger();
 
   private final ConcurrentLinkedQueue<ConsoleEvent> logEvents;
@@ -69,17 +83,17 @@ public class SuperConsoleEventBusListener extends AbstractConsoleEventBusListene
 
   private final TestResultFormatter testFormatter;
 
-  private int lastNumLinesPrinted;
+  private ImmutableList<String> lastRenderedLines = ImmutableList.of();
+
+  private long renderIntervalMillis;
 
   public SuperConsoleEventBusListener(
       Console console,
       Clock clock,
-      ExecutionEnvironment executionEnvironment,
       boolean isTreatingAssumptionsAsErrors) {
     super(console, clock);
 
-    this.threadsToRunningEvent = new ConcurrentHashMap<>(executionEnvironment.getAvailableCores());
-    this.threadsToRunningStep = new ConcurrentHashMap<>(executionEnvironment.getAvailableCores());
+    this.threadStates = new ConcurrentSkipListMap<>();
 
     this.logEvents = new ConcurrentLinkedQueue<>();
 
@@ -89,15 +103,38 @@ public class SuperConsoleEventBusListener extends AbstractConsoleEventBusListene
   }
 
   /**
-   * Schedules a runnable that updates the console output at a fixed interval.
+   * Schedules a runnable that updates the console output every {@code renderInterval}, or less
+   * often if rendering a frame takes too long.
    */
   public void startRenderScheduler(long renderInterval, TimeUnit timeUnit) {
-    renderScheduler.scheduleAtFixedRate(new Runnable() {
-      @Override
-      public void run() {
-        SuperConsoleEventBusListener.this.render();
-      }
-    }, /* initialDelay */ renderInterval, /* period */ renderInterval, timeUnit);
+    renderIntervalMillis = timeUnit.toMillis(renderInterval);
+    scheduleRender(renderIntervalMillis);
+  }
+
+  private void scheduleRender(long delayMillis) {
+    try {
+      renderScheduler.schedule(new Runnable() {
+        @Override
+        public void run() {
+          long startNanos = System.nanoTime();
+          render();
+          long renderMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+          scheduleRender(getRenderDelayMillis(renderIntervalMillis, renderMillis));
+        }
+      }, delayMillis, TimeUnit.MILLISECONDS);
+    } catch (RejectedExecutionException e) {
+      // The scheduler has been stopped, so there are no more frames to render.
+    }
+  }
+
+  /**
+   * @return how long to wait before the next frame, given how long the last one took to render.
+   */
+  @VisibleForTesting
+  static long getRenderDelayMillis(long renderIntervalMillis, long lastRenderMillis) {
+    return Math.max(
+        renderIntervalMillis,
+        Math.min(MAX_RENDER_INTERVAL_MS, lastRenderMillis * RENDER_COST_FACTOR));
   }
 
   /**
@@ -110,8 +147,8 @@ public class SuperConsoleEventBusListener extends AbstractConsoleEventBusListene
   @VisibleForTesting
   synchronized void render() {
     ImmutableList<String> lines = createRenderLinesAtTime(clock.currentTimeMillis());
-    String nextFrame = clearLastRender() + Joiner.on("\n").join(lines);
-    lastNumLinesPrinted = lines.size();
+    String nextFrame = createFrame(lastRenderedLines, lines);
+    lastRenderedLines = lines;
 
     // Synchronize on the DirtyPrintStreamDecorator to prevent interlacing of output.
     synchronized (console.getStdOut()) {
@@ -122,12 +159,56 @@ public class SuperConsoleEventBusListener extends AbstractConsoleEventBusListene
           stopRenderScheduler();
         } else if (!nextFrame.isEmpty()) {
           nextFrame = ansi.asNoWrap(nextFrame);
-          console.getStdErr().getRawStream().println(nextFrame);
+          console.getStdErr().getRawStream().print(nextFrame);
         }
       }
     }
   }
 
+  /**
+   * @return the text that turns the lines of the last frame into {@code lines}, which only
+   *     rewrites the lines that changed. The cursor is left at the start of the line below the
+   *     frame.
+   */
+  @VisibleForTesting
+  String createFrame(List<String> lastLines, List<String> lines) {
+    if (!ansi.isAnsiTerminal()) {
+      // Without cursor movement, every frame has to be printed in full.
+      return lines.isEmpty() ? "" : Joiner.on('\n').join(lines) + '\n';
+    }
+
+    int firstChangedLine = 0;
+    while (firstChangedLine < lastLines.size() &&
+        firstChangedLine < lines.size() &&
+        lastLines.get(firstChangedLine).equals(lines.get(firstChangedLine))) {
+      firstChangedLine++;
+    }
+    if (firstChangedLine == lastLines.size() && firstChangedLine == lines.size()) {
+      return "";
+    }
+
+    StringBuilder frame = new StringBuilder();
+    if (lastLines.size() > firstChangedLine) {
+      frame.append(ansi.cursorPreviousLine(lastLines.size() - firstChangedLine));
+    }
+    for (int i = firstChangedLine; i < lines.size(); i++) {
+      String line = lines.get(i);
+      if (i >= lastLines.size() || !lastLines.get(i).equals(line)) {
+        frame.append(ansi.clearLine()).append(line);
+      }
+      frame.append('\n');
+    }
+    // Clear what is left of a longer last frame, then return to the end of this one.
+    int numLinesToClear = lastLines.size() - lines.size();
+    for (int i = 0; i < numLinesToClear; i++) {
+      frame.append(ansi.clearLine()).append('\n');
+    }
+    if (numLinesToClear > 0) {
+      frame.append(ansi.cursorPreviousLine(numLinesToClear));
+    }
+    return frame.toString();
+  }
+
   /**
    * Creates a list of lines to be rendered at a given time.
    * @param currentTimeMillis The time in ms to use when computing elapsed times.
@@ -210,37 +291,29 @@ public class SuperConsoleEventBusListener extends AbstractConsoleEventBusListene
    * @param lines Builder of lines to render this frame.
    */
   private void renderRules(long currentMillis, ImmutableList.Builder<String> lines) {
-    // Sort events by thread id.
-    ImmutableList<Map.Entry<Long, Optional<? extends BuildRuleEvent>>> eventsByThread =
-        FluentIterable.from(threadsToRunningEvent.entrySet())
-          .toSortedList(new Comparator<Map.Entry<Long, Optional<? extends BuildRuleEvent>>>() {
-            @Override
-            public int compare(Map.Entry<Long, Optional<? extends BuildRuleEvent>> a,
-                               Map.Entry<Long, Optional<? extends BuildRuleEvent>> b) {
-              return Long.signum(a.getKey() - b.getKey());
-            }
-          });
-
     // For each thread that has ever run a rule, render information about that thread.
-    for (Map.Entry<Long, Optional<? extends BuildRuleEvent>> entry : eventsByThread) {
+    for (ThreadState threadState : threadStates.values()) {
+      if (!threadState.hasRunRule) {
+        continue;
+      }
       String threadLine = " |=> ";
-      Optional<? extends BuildRuleEvent> startedEvent = entry.getValue();
+      BuildRuleEvent startedEvent = threadState.runningRule.get();
 
-      if (!startedEvent.isPresent()) {
+      if (startedEvent == null) {
         threadLine += "IDLE";
         threadLine = ansi.asSubtleText(threadLine);
       } else {
-        long elapsedTimeMs = currentMillis - startedEvent.get().getTimestamp();
-        Optional<? extends LeafEvent> leafEvent = threadsToRunningStep.get(entry.getKey());
+        long elapsedTimeMs = currentMillis - startedEvent.getTimestamp();
+        LeafEvent leafEvent = threadState.runningStep.get();
 
         threadLine += String.format("%s...  %s",
-            startedEvent.get().getBuildRule().getFullyQualifiedName(),
+            startedEvent.getBuildRule().getFullyQualifiedName(),
             formatElapsedTime(elapsedTimeMs));
 
-        if (leafEvent != null && leafEvent.isPresent()) {
+        if (leafEvent != null) {
           threadLine += String.format(" (running %s[%s])",
-              leafEvent.get().getCategory(),
-              formatElapsedTime(currentMillis - leafEvent.get().getTimestamp()));
+              leafEvent.getCategory(),
+              formatElapsedTime(currentMillis - leafEvent.getTimestamp()));
 
           if (elapsedTimeMs > WARNING_THRESHOLD_MS) {
             if (elapsedTimeMs > ERROR_THRESHOLD_MS) {
@@ -261,48 +334,51 @@ public class SuperConsoleEventBusListener extends AbstractConsoleEventBusListene
     }
   }
 
-  /**
-   * @return A string of ansi characters that will clear the last set of lines printed by
-   *     {@link SuperConsoleEventBusListener#createRenderLinesAtTime(long)}.
-   */
-  private String clearLastRender() {
-    StringBuilder result = new StringBuilder();
-    for (int i = 0; i < lastNumLinesPrinted; ++i) {
-      result.append(ansi.cursorPreviousLine(1));
-      result.append(ansi.clearLine());
+  private ThreadState getThreadState(long threadId) {
+    ThreadState threadState = threadStates.get(threadId);
+    if (threadState == null) {
+      ThreadState newThreadState = new ThreadState();
+      threadState = threadStates.putIfAbsent(threadId, newThreadState);
+      if (threadState == null) {
+        threadState = newThreadState;
+      }
     }
-    return result.toString();
+    return threadState;
   }
 
   @Subscribe
   public void buildRuleStarted(BuildRuleEvent.Started started) {
-    threadsToRunningEvent.put(started.getThreadId(), Optional.of(started));
+    ThreadState threadState = getThreadState(started.getThreadId());
+    threadState.hasRunRule = true;
+    threadState.runningRule.set(started);
   }
 
   @Subscribe
   public void buildRuleFinished(BuildRuleEvent.Finished finished) {
-    threadsToRunningEvent.put(finished.getThreadId(), Optional.<BuildRuleEvent>absent());
+    ThreadState threadState = getThreadState(finished.getThreadId());
+    threadState.hasRunRule = true;
+    threadState.runningRule.set(null);
     numRulesCompleted.getAndIncrement();
   }
 
   @Subscribe
   public void stepStarted(StepEvent.Started started) {
-    threadsToRunningStep.put(started.getThreadId(), Optional.of(started));
+    getThreadState(started.getThreadId()).runningStep.set(started);
   }
 
   @Subscribe
   public void stepFinished(StepEvent.Finished finished) {
-    threadsToRunningStep.put(finished.getThreadId(), Optional.<StepEvent>absent());
+    getThreadState(finished.getThreadId()).runningStep.set(null);
   }
 
   @Subscribe
   public void artifactStarted(ArtifactCacheEvent.Started started) {
-    threadsToRunningStep.put(started.getThreadId(), Optional.of(started));
+    getThreadState(started.getThreadId()).runningStep.set(started);
   }
 
   @Subscribe
   public void artifactFinished(ArtifactCacheEvent.Finished finished) {
-    threadsToRunningStep.put(finished.getThreadId(), Optional.<StepEvent>absent());
+    getThreadState(finished.getThreadId()).runningStep.set(null);
   }
 
   @Subscribe
@@ -349,4 +425,13 @@ public class SuperConsoleEventBusListener extends AbstractConsoleEventBusListene
     stopRenderScheduler();
     render(); // Ensure final frame is rendered.
   }
+
+  /**
+   * The rule and the step or cache operation that a build thread is running.
+   */
+  private static class ThreadState {
+    private final AtomicReference<BuildRuleEvent> runningRule = new AtomicReference<>();
+    private final AtomicReference<LeafEvent> runningStep = new AtomicReference<>();
+    private volatile boolean hasRunRule;
+  }
 }
@@ -146,7 +146,8 @@ public class ExternalJavacStep extends JavacStep {
     // Run the command
     int exitCode = -1;
     try {
-      ProcessExecutor.Result result = context.getProcessExecutor().execute(processBuilder.start());
+      ProcessExecutor.Result result = context.getProcessExecutor().execute(
+          context.getProcessExecutor().launchProcess(processBuilder));
       exitCode = result.getExitCode();
     } catch (IOException e) {
       e.printStackTrace(context.getStdErr());
@@ -27,7 +27,6 @@ import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
-import com.google.common.collect.Lists;
 
 import java.io.File;
 import java.nio.file.Path;
@@ -179,14 +178,8 @@ public class JUnitStep extends ShellStep {
       args.add("-verbose");
     }
 
-    // Build up the -classpath argument, starting with the classpath entries the client specified.
-    List<Path> classpath = Lists.newArrayList(classpathEntries);
-
-    // Finally, include an entry for the test runner.
-    classpath.add(testRunnerClassesDirectory);
-
     // Add the -classpath argument.
-    args.add("-classpath").add(Joiner.on(File.pathSeparator).join(classpath));
+    args.add("-classpath").add(Joiner.on(File.pathSeparator).join(getClasspath()));
 
     // Specify the Java class whose main() method should be run. This is the class that is
     // responsible for running the tests.
@@ -199,6 +192,26 @@ public class JUnitStep extends ShellStep {
           "java_test: unrecognized type " + type + ", expected eg. junit or testng");
     }
 
+    args.addAll(getTestRunnerArgs(context));
+
+    return args.build();
+  }
+
+  /**
+   * @return the classpath for the test runner: the classpath entries the client specified, followed
+   *     by an entry for the test runner itself.
+   */
+  ImmutableList<Path> getClasspath() {
+    return ImmutableList.<Path>builder()
+        .addAll(classpathEntries)
+        .add(testRunnerClassesDirectory)
+        .build();
+  }
+
+  /** @return the arguments for the main method of the test runner. */
+  ImmutableList<String> getTestRunnerArgs(ExecutionContext context) {
+    ImmutableList.Builder<String> args = ImmutableList.builder();
+
     // The first argument to the test runner is where the test results should be written. It is not
     // reliable to write test results to stdout or stderr because there may be output from the unit
     // tests written to those file descriptors, as well.
@@ -228,6 +241,30 @@ public class JUnitStep extends ShellStep {
     return args.build();
   }
 
+  /**
+   * @return whether these tests could be run by a {@link JUnitWorkerPool} instead. Neither code
+   *     coverage nor debugging can be switched on in a JVM which is already running.
+   */
+  boolean canRunInWorker() {
+    return type == TestType.JUNIT && !isCodeCoverageEnabled && !isDebugEnabled;
+  }
+
+  ImmutableList<String> getVmArgs() {
+    return ImmutableList.copyOf(vmArgs);
+  }
+
+  Path getTmpDirectory() {
+    return tmpDirectory;
+  }
+
+  Path getTestRunnerClassesDirectory() {
+    return testRunnerClassesDirectory;
+  }
+
+  BuildId getBuildId() {
+    return buildId;
+  }
+
   @Override
   public ImmutableMap<String, String> getEnvironmentVariables(ExecutionContext context) {
     return ImmutableMap.of("TMP", tmpDirectory.toString());
@@ -0,0 +1,250 @@
+/*
+ * Copyright 2014-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.java;
+
+import com.facebook.buck.log.Logger;
+import com.facebook.buck.util.BuckConstant;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.LinkedListMultimap;
+import com.google.common.collect.ListMultimap;
+import com.google.common.primitives.Ints;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A pool of long-lived JVMs running {@code com.facebook.buck.junit.JUnitWorkerMain}, which run
+ * JUnit tests on request so that a {@link JUnitStep} does not have to start a new JVM.
+ * <p>
+ * Workers are only shared between tests with the same working directory and the same JVM
+ * arguments. A worker which reports that it should not be reused, or which fails in any way, is
+ * shut down rather than being returned to the pool.
+ */
+public class JUnitWorkerPool {
+
+  private static final Logger LOG = Logger.get(JUnitWorkerPool.class);
+
+  private static final String WORKER_MAIN_CLASS_NAME = "com.facebook.buck.junit.JUnitWorkerMain";
+
+  private static final Path WORKER_LOG = BuckConstant.LOG_PATH.resolve("junit-workers.log");
+
+  private static final long CONNECT_TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(30);
+
+  private static final long IDLE_TIMEOUT_MILLIS = TimeUnit.MINUTES.toMillis(30);
+
+  private final int maxRunsPerWorker;
+  private final int maxIdleWorkersPerKey;
+
+  /** Keyed by the working directory followed by the JVM arguments. */
+  private final ListMultimap<ImmutableList<String>, Worker> idleWorkers;
+
+  /**
+   * @param maxRunsPerWorker the number of test runs after which a worker is replaced, however well
+   *     behaved the tests were.
+   */
+  public JUnitWorkerPool(int maxRunsPerWorker) {
+    Preconditions.checkArgument(maxRunsPerWorker > 0);
+    this.maxRunsPerWorker = maxRunsPerWorker;
+    this.maxIdleWorkersPerKey = Runtime.getRuntime().availableProcessors();
+    this.idleWorkers = LinkedListMultimap.create();
+  }
+
+  /**
+   * @return an idle worker started with {@code vmArgs} in {@code workingDirectory}, or a new one if
+   *     there is none. It must be given back with {@link #release(Worker, boolean)}.
+   */
+  Worker acquire(
+      Path workingDirectory,
+      ImmutableList<String> vmArgs,
+      Path testRunnerClassesDirectory) throws IOException {
+    ImmutableList<String> key = ImmutableList.<String>builder()
+        .add(workingDirectory.toString())
+        .addAll(vmArgs)
+        .build();
+    synchronized (idleWorkers) {
+      List<Worker> candidates = idleWorkers.get(key);
+      Iterator<Worker> iterator = candidates.iterator();
+      while (iterator.hasNext()) {
+        Worker worker = iterator.next();
+        iterator.remove();
+        if (worker.isAlive()) {
+          return worker;
+        }
+        worker.close();
+      }
+    }
+    return startWorker(key, workingDirectory, vmArgs, testRunnerClassesDirectory);
+  }
+
+  /**
+   * Returns a worker to the pool if {@code isReusable}, and shuts it down otherwise.
+   */
+  void release(Worker worker, boolean isReusable) {
+    if (isReusable && worker.isAlive()) {
+      synchronized (idleWorkers) {
+        if (idleWorkers.get(worker.key).size() < maxIdleWorkersPerKey) {
+          idleWorkers.put(worker.key, worker);
+          return;
+        }
+      }
+    }
+    worker.close();
+  }
+
+  private Worker startWorker(
+      ImmutableList<String> key,
+      Path workingDirectory,
+      ImmutableList<String> vmArgs,
+      Path testRunnerClassesDirectory) throws IOException {
+    File log = workingDirectory.resolve(WORKER_LOG).toFile();
+    Files.createDirectories(log.toPath().getParent());
+
+    // The worker connects back to us, which saves having to read a port from its output.
+    try (ServerSocket serverSocket =
+             new ServerSocket(/* port */ 0, /* backlog */ 1, InetAddress.getLoopbackAddress())) {
+      serverSocket.setSoTimeout((int) CONNECT_TIMEOUT_MILLIS);
+      ImmutableList<String> command = ImmutableList.<String>builder()
+          .add("java")
+          .addAll(vmArgs)
+          .add("-classpath", testRunnerClassesDirectory.toString())
+          .add(WORKER_MAIN_CLASS_NAME)
+          .add(String.valueOf(serverSocket.getLocalPort()))
+          .add(String.valueOf(maxRunsPerWorker))
+          .add(String.valueOf(IDLE_TIMEOUT_MILLIS))
+          .build();
+      LOG.debug("Starting JUnit worker: %s", command);
+      Process process = new ProcessBuilder(command)
+          .directory(workingDirectory.toFile())
+          .redirectErrorStream(true)
+          .redirectOutput(ProcessBuilder.Redirect.appendTo(log))
+          .start();
+      try {
+        return new Worker(key, process, serverSocket.accept());
+      } catch (IOException e) {
+        process.destroy();
+        throw e;
+      }
+    }
+  }
+
+  /** A connection to a single worker JVM, which runs one set of tests at a time. */
+  static class Worker implements Closeable {
+
+    private final ImmutableList<String> key;
+    private final Process process;
+    private final Socket socket;
+    private final DataInputStream in;
+    private final DataOutputStream out;
+
+    @VisibleForTesting
+    Worker(ImmutableList<String> key, Process process, Socket socket) throws IOException {
+      this.key = Preconditions.checkNotNull(key);
+      this.process = Preconditions.checkNotNull(process);
+      this.socket = Preconditions.checkNotNull(socket);
+      this.in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+      this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+    }
+
+    /**
+     * Runs tests in the worker, blocking until they have finished.
+     *
+     * @param runnerArgs the arguments that {@code JUnitMain} would be given.
+     * @param timeoutMillis how long to wait for the worker to finish a test before giving up on
+     *     it, or 0 to wait forever. The worker reports after each test, so this is the test timeout
+     *     rather than a limit on the whole run.
+     * @return the result of the run.
+     * @throws SocketTimeoutException if the worker did not finish a test in time. The worker is
+     *     then in an unknown state, and must not be reused.
+     */
+    Result runTests(
+        Path tmpDirectory,
+        String buildId,
+        List<Path> classpath,
+        List<String> runnerArgs,
+        long timeoutMillis) throws IOException {
+      Preconditions.checkArgument(timeoutMillis >= 0);
+      out.writeUTF(tmpDirectory.toString());
+      out.writeUTF(buildId);
+      out.writeInt(classpath.size());
+      for (Path entry : classpath) {
+        out.writeUTF(entry.toString());
+      }
+      out.writeInt(runnerArgs.size());
+      for (String arg : runnerArgs) {
+        out.writeUTF(arg);
+      }
+      out.flush();
+
+      socket.setSoTimeout(Ints.saturatedCast(timeoutMillis));
+      boolean isFinished;
+      do {
+        isFinished = in.readBoolean();
+      } while (!isFinished);
+      int exitCode = in.readInt();
+      boolean isExiting = in.readBoolean();
+      return new Result(exitCode, isExiting);
+    }
+
+    private boolean isAlive() {
+      try {
+        process.exitValue();
+        return false;
+      } catch (IllegalThreadStateException e) {
+        return !socket.isClosed();
+      }
+    }
+
+    /** Closing the connection tells the worker to exit. */
+    @Override
+    public void close() {
+      try {
+        socket.close();
+      } catch (IOException e) {
+        LOG.debug(e, "Error closing connection to JUnit worker.");
+      }
+      process.destroy();
+    }
+  }
+
+  static class Result {
+    final int exitCode;
+
+    /** Whether the worker has decided that it should not be reused, and is exiting. */
+    final boolean isExiting;
+
+    private Result(int exitCode, boolean isExiting) {
+      this.exitCode = exitCode;
+      this.isExiting = isExiting;
+    }
+  }
+}
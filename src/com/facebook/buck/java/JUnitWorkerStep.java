@@ -0,0 +1,91 @@
+/*
+ * Copyright 2014-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.java;
+
+import com.facebook.buck.step.ExecutionContext;
+import com.facebook.buck.step.Step;
+import com.google.common.base.Preconditions;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+
+/**
+ * Runs the tests of a {@link JUnitStep} in a warm JVM from a {@link JUnitWorkerPool}, rather than
+ * in a new one. If no worker can be started, the {@link JUnitStep} is run as usual. A worker which
+ * goes longer than the test timeout without finishing a test is killed.
+ */
+public class JUnitWorkerStep implements Step {
+
+  private final JUnitStep junitStep;
+  private final JUnitWorkerPool workerPool;
+
+  public JUnitWorkerStep(JUnitStep junitStep, JUnitWorkerPool workerPool) {
+    this.junitStep = Preconditions.checkNotNull(junitStep);
+    this.workerPool = Preconditions.checkNotNull(workerPool);
+    Preconditions.checkArgument(junitStep.canRunInWorker());
+  }
+
+  @Override
+  public int execute(ExecutionContext context) throws InterruptedException {
+    JUnitWorkerPool.Worker worker;
+    try {
+      worker = workerPool.acquire(
+          context.getProjectDirectoryRoot(),
+          junitStep.getVmArgs(),
+          junitStep.getTestRunnerClassesDirectory());
+    } catch (IOException e) {
+      context.logError(e, "Could not start a JUnit worker, so running the tests in a new JVM.");
+      return junitStep.execute(context);
+    }
+
+    boolean isReusable = false;
+    try {
+      JUnitWorkerPool.Result result = worker.runTests(
+          junitStep.getTmpDirectory(),
+          junitStep.getBuildId().toString(),
+          junitStep.getClasspath(),
+          junitStep.getTestRunnerArgs(context),
+          context.getDefaultTestTimeoutMillis());
+      isReusable = !result.isExiting;
+      return result.exitCode;
+    } catch (SocketTimeoutException e) {
+      // Releasing the worker as not reusable kills it, which is what a hung test deserves.
+      context.logError(
+          e,
+          "JUnit worker did not finish a test within %d ms, so it was killed.",
+          context.getDefaultTestTimeoutMillis());
+      return 1;
+    } catch (IOException e) {
+      // Most likely a test called System.exit(). Any classes which did not get to run have no
+      // results, just as if they had been run in a JVM of their own.
+      context.logError(e, "JUnit worker exited while running tests.");
+      return 1;
+    } finally {
+      workerPool.release(worker, isReusable);
+    }
+  }
+
+  @Override
+  public String getShortName() {
+    return junitStep.getShortName();
+  }
+
+  @Override
+  public String getDescription(ExecutionContext context) {
+    return junitStep.getDescription(context);
+  }
+}
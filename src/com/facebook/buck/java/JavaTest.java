@@ -43,6 +43,7 @@ import com.google.common.base.Optional;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.ImmutableSortedSet;
 import com.google.common.collect.Lists;
@@ -78,6 +79,10 @@ public class JavaTest extends DefaultJavaLibrary implements TestRule {
 
   private final TestType testType;
 
+  private final int maxJvms;
+
+  private final Optional<JUnitWorkerPool> workerPool;
+
   protected JavaTest(
       BuildRuleParams params,
       SourcePathResolver resolver,
@@ -88,6 +93,8 @@ public class JavaTest extends DefaultJavaLibrary implements TestRule {
       Optional<Path> proguardConfig,
       ImmutableSet<Path> addtionalClasspathEntries,
       TestType testType,
+      int maxJvms,
+      Optional<JUnitWorkerPool> workerPool,
       JavacOptions javacOptions,
       List<String> vmArgs,
       ImmutableSet<BuildRule> sourceUnderTest,
@@ -110,6 +117,9 @@ public class JavaTest extends DefaultJavaLibrary implements TestRule {
     this.contacts = ImmutableSet.copyOf(contacts);
     this.additionalClasspathEntries = Preconditions.checkNotNull(addtionalClasspathEntries);
     this.testType = testType;
+    Preconditions.checkArgument(maxJvms > 0);
+    this.maxJvms = maxJvms;
+    this.workerPool = Preconditions.checkNotNull(workerPool);
   }
 
   @Override
@@ -173,6 +183,20 @@ public class JavaTest extends DefaultJavaLibrary implements TestRule {
 
     Path pathToTestOutput = getPathToTestOutputDirectory();
     Path tmpDirectory = getPathToTmpDirectory();
+
+    // The durations from the last run have to be read before the output directory is cleaned.
+    ImmutableList<ImmutableSortedSet<String>> partitions;
+    if (maxJvms > 1 &&
+        !executionContext.isCodeCoverageEnabled() &&
+        !executionContext.isDebugEnabled()) {
+      partitions = TestClassPartitioner.partition(
+          testClassNames,
+          getPreviousTestClassDurations(executionContext.getProjectFilesystem(), testClassNames),
+          maxJvms);
+    } else {
+      partitions = ImmutableList.of(ImmutableSortedSet.copyOf(testClassNames));
+    }
+
     steps.add(new MakeCleanDirectoryStep(pathToTestOutput));
     steps.add(new MakeCleanDirectoryStep(tmpDirectory));
 
@@ -181,24 +205,86 @@ public class JavaTest extends DefaultJavaLibrary implements TestRule {
         .addAll(additionalClasspathEntries)
         .addAll(getBootClasspathEntries(executionContext))
         .build();
+    ImmutableList<String> amendedVmArgs =
+        amendVmArgs(vmArgs, executionContext.getTargetDeviceOptional());
+
+    if (partitions.size() == 1) {
+      steps.add(
+          maybeRunInWorker(
+              new JUnitStep(
+                  classpathEntries,
+                  testClassNames,
+                  amendedVmArgs,
+                  pathToTestOutput,
+                  tmpDirectory,
+                  executionContext.isCodeCoverageEnabled(),
+                  executionContext.isDebugEnabled(),
+                  executionContext.getBuckEventBus().getBuildId(),
+                  testSelectorList,
+                  isDryRun,
+                  testType)));
+      return steps.build();
+    }
 
-    Step junit = new JUnitStep(
-        classpathEntries,
-        testClassNames,
-        amendVmArgs(vmArgs, executionContext.getTargetDeviceOptional()),
-        pathToTestOutput,
-        tmpDirectory,
-        executionContext.isCodeCoverageEnabled(),
-        executionContext.isDebugEnabled(),
-        executionContext.getBuckEventBus().getBuildId(),
-        testSelectorList,
-        isDryRun,
-        testType);
-    steps.add(junit);
+    // Each JVM gets its own scratch space, so that tests which assume they have the tmp directory
+    // to themselves still work.
+    ImmutableList.Builder<Step> junitSteps = ImmutableList.builder();
+    for (int i = 0; i < partitions.size(); i++) {
+      Path shardTmpDirectory = tmpDirectory.resolve(String.valueOf(i));
+      steps.add(new MakeCleanDirectoryStep(shardTmpDirectory));
+      junitSteps.add(
+          maybeRunInWorker(
+              new JUnitStep(
+                  classpathEntries,
+                  partitions.get(i),
+                  amendedVmArgs,
+                  pathToTestOutput,
+                  shardTmpDirectory,
+                  /* isCodeCoverageEnabled */ false,
+                  /* isDebugEnabled */ false,
+                  executionContext.getBuckEventBus().getBuildId(),
+                  testSelectorList,
+                  isDryRun,
+                  testType)));
+    }
+    steps.add(new ParallelJUnitStep(junitSteps.build()));
 
     return steps.build();
   }
 
+  private Step maybeRunInWorker(JUnitStep junitStep) {
+    if (workerPool.isPresent() && junitStep.canRunInWorker()) {
+      return new JUnitWorkerStep(junitStep, workerPool.get());
+    }
+    return junitStep;
+  }
+
+  /**
+   * @return how long each of the test classes took to run, in milliseconds, according to the
+   *     results left in the output directory by the previous run. Classes with no results, or
+   *     whose results can't be read, are left out.
+   */
+  private ImmutableMap<String, Long> getPreviousTestClassDurations(
+      ProjectFilesystem filesystem,
+      Set<String> testClassNames) {
+    ImmutableMap.Builder<String, Long> durations = ImmutableMap.builder();
+    File outputDirectory = filesystem.getFileForRelativePath(getPathToTestOutputDirectory());
+    for (String testClass : testClassNames) {
+      File testResultFile = new File(outputDirectory, testClass + ".xml");
+      if (!testResultFile.isFile()) {
+        continue;
+      }
+      try {
+        durations.put(testClass, XmlTestResultParser.parse(testResultFile).getTotalTime());
+      } catch (IOException | RuntimeException e) {
+        // The durations are only a hint for balancing the JVMs, so a stale or corrupt results file
+        // should not stop the tests from running.
+        continue;
+      }
+    }
+    return durations.build();
+  }
+
   @VisibleForTesting
   ImmutableList<String> amendVmArgs(
       ImmutableList<String> existingVmArgs,
@@ -39,9 +39,22 @@ public class JavaTestDescription implements Description<JavaTestDescription.Arg>
 
   public static final BuildRuleType TYPE = new BuildRuleType("java_test");
   private final JavaCompilerEnvironment javacEnv;
+  private final int maxJvmsPerTest;
+  private final Optional<JUnitWorkerPool> workerPool;
 
-  public JavaTestDescription(JavaCompilerEnvironment javacEnv) {
+  /**
+   * @param maxJvmsPerTest the number of JVMs across which the classes of a single
+   *     {@code java_test()} may be split, unless it opts out with {@code shard_test_classes}.
+   * @param workerPool if present, JUnit tests are run in its warm JVMs rather than new ones.
+   */
+  public JavaTestDescription(
+      JavaCompilerEnvironment javacEnv,
+      int maxJvmsPerTest,
+      Optional<JUnitWorkerPool> workerPool) {
     this.javacEnv = Preconditions.checkNotNull(javacEnv);
+    Preconditions.checkArgument(maxJvmsPerTest > 0);
+    this.maxJvmsPerTest = maxJvmsPerTest;
+    this.workerPool = Preconditions.checkNotNull(workerPool);
   }
 
   @Override
@@ -79,6 +92,8 @@ public class JavaTestDescription implements Description<JavaTestDescription.Arg>
         args.proguardConfig,
         /* additionalClasspathEntries */ ImmutableSet.<Path>of(),
         args.testType.or(TestType.JUNIT),
+        args.shardTestClasses.or(true) ? maxJvmsPerTest : 1,
+        workerPool,
         javacOptions.build(),
         args.vmArgs.get(),
         validateAndGetSourcesUnderTest(
@@ -117,5 +132,7 @@ public class JavaTestDescription implements Description<JavaTestDescription.Arg>
     @Hint(isDep = false) public Optional<ImmutableSortedSet<BuildTarget>> sourceUnderTest;
     public Optional<ImmutableList<String>> vmArgs;
     public Optional<TestType> testType;
+    /** Set to false for tests whose classes can't be run at the same time as each other. */
+    public Optional<Boolean> shardTestClasses;
   }
 }
@@ -0,0 +1,99 @@
+/*
+ * Copyright 2014-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.java;
+
+import static com.facebook.buck.util.concurrent.MoreExecutors.newMultiThreadExecutor;
+
+import com.facebook.buck.step.ExecutionContext;
+import com.facebook.buck.step.Step;
+import com.google.common.base.Joiner;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Runs several {@link JUnitStep}s, each of which runs a disjoint subset of the classes of a
+ * {@code java_test()} in its own JVM, at the same time. All of the steps write their results to the
+ * same directory, so the results are merged just as if a single JVM had run every class.
+ */
+public class ParallelJUnitStep implements Step {
+
+  private final ImmutableList<Step> junitSteps;
+
+  public ParallelJUnitStep(List<? extends Step> junitSteps) {
+    Preconditions.checkArgument(!junitSteps.isEmpty());
+    this.junitSteps = ImmutableList.copyOf(junitSteps);
+  }
+
+  @Override
+  public int execute(final ExecutionContext context) throws InterruptedException {
+    ExecutorService executorService = newMultiThreadExecutor("junit", junitSteps.size());
+    try {
+      List<Future<Integer>> futures = Lists.newArrayList();
+      for (final Step junitStep : junitSteps) {
+        futures.add(
+            executorService.submit(
+                new Callable<Integer>() {
+                  @Override
+                  public Integer call() throws InterruptedException {
+                    return junitStep.execute(context);
+                  }
+                }));
+      }
+
+      // Wait for every JVM, even if one fails, so that all of the results get written.
+      int exitCode = 0;
+      for (Future<Integer> future : futures) {
+        int stepExitCode = future.get();
+        if (exitCode == 0) {
+          exitCode = stepExitCode;
+        }
+      }
+      return exitCode;
+    } catch (ExecutionException e) {
+      Throwables.propagateIfInstanceOf(e.getCause(), InterruptedException.class);
+      throw Throwables.propagate(e.getCause());
+    } finally {
+      executorService.shutdownNow();
+    }
+  }
+
+  @Override
+  public String getShortName() {
+    return "junit";
+  }
+
+  @Override
+  public String getDescription(ExecutionContext context) {
+    List<String> descriptions = Lists.newArrayList();
+    for (Step junitStep : junitSteps) {
+      descriptions.add(junitStep.getDescription(context));
+    }
+    return Joiner.on(" & ").join(descriptions);
+  }
+
+  ImmutableList<Step> getJUnitSteps() {
+    return junitSteps;
+  }
+}
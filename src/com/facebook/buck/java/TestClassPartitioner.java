@@ -0,0 +1,119 @@
+/*
+ * Copyright 2014-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.java;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSortedSet;
+import com.google.common.collect.Lists;
+
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Splits the test classes of a {@code java_test()} into groups which take roughly the same time
+ * to run, so that each group can be run in its own JVM.
+ */
+class TestClassPartitioner {
+
+  /** Utility class: do not instantiate. */
+  private TestClassPartitioner() {}
+
+  /**
+   * Assigns the test classes to at most {@code maxPartitions} partitions using the
+   * longest-processing-time-first heuristic: the classes are taken in decreasing order of duration,
+   * and each is added to the partition with the smallest total duration so far.
+   *
+   * @param durations how long each class took to run last time, in milliseconds. Classes whose
+   *     duration isn't known are assumed to take as long as the average class which is.
+   * @return the non-empty partitions, each sorted by class name.
+   */
+  static ImmutableList<ImmutableSortedSet<String>> partition(
+      Set<String> testClassNames,
+      final ImmutableMap<String, Long> durations,
+      int maxPartitions) {
+    Preconditions.checkArgument(maxPartitions > 0);
+    int numPartitions = Math.min(maxPartitions, testClassNames.size());
+    if (numPartitions <= 1) {
+      return testClassNames.isEmpty() ?
+          ImmutableList.<ImmutableSortedSet<String>>of() :
+          ImmutableList.of(ImmutableSortedSet.copyOf(testClassNames));
+    }
+
+    long knownTotal = 0;
+    int knownCount = 0;
+    for (String testClassName : testClassNames) {
+      Long duration = durations.get(testClassName);
+      if (duration != null) {
+        knownTotal += duration;
+        knownCount++;
+      }
+    }
+    // Give unknown classes a non-zero duration so that, with no history at all, they are spread
+    // out evenly by number.
+    final long defaultDuration = knownCount == 0 ? 1 : Math.max(1, knownTotal / knownCount);
+
+    // Break ties by name so that the partitions are deterministic.
+    List<String> longestFirst = Lists.newArrayList(testClassNames);
+    Collections.sort(
+        longestFirst,
+        new Comparator<String>() {
+          @Override
+          public int compare(String a, String b) {
+            long durationA = getDuration(durations, a, defaultDuration);
+            long durationB = getDuration(durations, b, defaultDuration);
+            if (durationA != durationB) {
+              return durationA > durationB ? -1 : 1;
+            }
+            return a.compareTo(b);
+          }
+        });
+
+    List<ImmutableSortedSet.Builder<String>> partitions = Lists.newArrayList();
+    long[] loads = new long[numPartitions];
+    for (int i = 0; i < numPartitions; i++) {
+      partitions.add(ImmutableSortedSet.<String>naturalOrder());
+    }
+    for (String testClassName : longestFirst) {
+      int lightest = 0;
+      for (int i = 1; i < numPartitions; i++) {
+        if (loads[i] < loads[lightest]) {
+          lightest = i;
+        }
+      }
+      partitions.get(lightest).add(testClassName);
+      loads[lightest] += getDuration(durations, testClassName, defaultDuration);
+    }
+
+    ImmutableList.Builder<ImmutableSortedSet<String>> result = ImmutableList.builder();
+    for (ImmutableSortedSet.Builder<String> partition : partitions) {
+      result.add(partition.build());
+    }
+    return result.build();
+  }
+
+  private static long getDuration(
+      ImmutableMap<String, Long> durations,
+      String testClassName,
+      long defaultDuration) {
+    Long duration = durations.get(testClassName);
+    return duration == null ? defaultDuration : duration;
+  }
+}
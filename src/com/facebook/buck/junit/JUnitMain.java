@@ -38,12 +38,24 @@ public class JUnitMain {
   }
 
   public static void main(String[] args) throws Throwable {
+    createRunner(args).runAndExit();
+  }
+
+  /**
+   * Runs the tests without exiting. This is called reflectively by {@link JUnitWorkerMain}, which
+   * loads this class in a new ClassLoader for each set of tests.
+   */
+  public static void runTests(String[] args) throws Throwable {
+    createRunner(args).run();
+  }
+
+  private static JUnitRunner createRunner(String[] args) throws Throwable {
     // Ensure that both junit and hamcrest are on the classpath
     CheckDependency.isPresent("junit", "org.junit.Test");
     CheckDependency.isPresent("hamcrest", "org.hamcrest.Description");
 
     JUnitRunner runner = new JUnitRunner();
     runner.parseArgs(args);
-    runner.runAndExit();
+    return runner;
   }
 }
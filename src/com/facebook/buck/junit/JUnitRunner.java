@@ -349,6 +349,13 @@ public final class JUnitRunner extends BaseRunner {
           failure == null ? null : failure.getException(),
           stdOut,
           stdErr));
+
+      // Let a JUnitWorkerMain that is running these tests know that they are making progress.
+      Object testFinishedCallback =
+          System.getProperties().get(JUnitWorkerMain.TEST_FINISHED_CALLBACK_PROPERTY);
+      if (testFinishedCallback instanceof Runnable) {
+        ((Runnable) testFinishedCallback).run();
+      }
     }
 
     /**
@@ -0,0 +1,235 @@
+/*
+ * Copyright 2014-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.junit;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.HashSet;
+import java.util.Properties;
+import java.util.Set;
+
+/**
+ * A long-lived JVM that runs the tests of one {@code java_test()} after another, so that the cost
+ * of starting and warming up a JVM is paid once rather than for every test.
+ * <p>
+ * Expected arguments are:
+ * <ul>
+ *   <li>(int) port on the loopback interface to connect to for requests
+ *   <li>(int) number of requests to serve before exiting
+ *   <li>(int) milliseconds to wait for a request before exiting
+ * </ul>
+ * <p>
+ * Each request is the temporary directory, the build id, the classpath and the arguments that
+ * {@link JUnitMain} would have been given. The tests are run in a new {@link ClassLoader} which
+ * shares nothing with the worker but the JDK, so every request sees freshly initialized classes.
+ * The worker reports progress after each test, which lets Buck tell a slow run from a hung one.
+ * The response is an exit code and whether this worker is going to exit because it should not be
+ * reused: it has served enough requests, a test left a non-daemon thread running, or the heap is
+ * nearly full. Closing the connection makes the worker exit.
+ * <p>
+ * IMPORTANT! This class limits itself to types that are available in both the JDK and Android
+ * Java API. The objective is to limit the set of files added to the ClassLoader that runs the test,
+ * as not to interfere with the results of the test.
+ */
+public class JUnitWorkerMain {
+
+  private static final String BUILD_ID_PROPERTY = "com.facebook.buck.buildId";
+
+  /** Referred to by name, as it must only ever be loaded by the ClassLoader for the tests. */
+  private static final String JUNIT_MAIN_CLASS_NAME = "com.facebook.buck.junit.JUnitMain";
+
+  /**
+   * The system property under which a {@link Runnable} is stored for {@link JUnitRunner} to call
+   * after each test. Only JDK types can be shared with the ClassLoader for the tests.
+   */
+  static final String TEST_FINISHED_CALLBACK_PROPERTY = "com.facebook.buck.junit.testFinished";
+
+  /** Recycle the worker if more than this fraction of the maximum heap is still in use. */
+  private static final double MAX_HEAP_USAGE_AFTER_RUN = 0.75;
+
+  private JUnitWorkerMain() {
+    // Launcher class.
+  }
+
+  public static void main(String[] args) throws IOException {
+    if (args.length != 3) {
+      System.err.println("Must specify a port, a maximum number of runs and an idle timeout.");
+      System.exit(1);
+    }
+    int port = Integer.parseInt(args[0]);
+    int maxRuns = Integer.parseInt(args[1]);
+    int idleTimeoutMillis = Integer.parseInt(args[2]);
+
+    Socket socket = new Socket(InetAddress.getLoopbackAddress(), port);
+    socket.setSoTimeout(idleTimeoutMillis);
+    DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+    DataOutputStream out =
+        new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+    serve(in, out, maxRuns);
+
+    // As with JUnitMain, exit explicitly in case the tests left non-daemon threads behind.
+    socket.close();
+    System.exit(0);
+  }
+
+  /**
+   * Runs the tests of each request read from {@code in}, and writes the progress and the result
+   * of each run to {@code out}, until there are no more requests or this worker should not be
+   * reused.
+   */
+  static void serve(DataInputStream in, DataOutputStream out, int maxRuns) throws IOException {
+    Set<Thread> initialThreads = getLiveNonDaemonThreads();
+    Properties initialProperties = (Properties) System.getProperties().clone();
+    for (int run = 1; ; run++) {
+      String tmpDirectory;
+      String buildId;
+      String[] classpath;
+      String[] runnerArgs;
+      try {
+        tmpDirectory = in.readUTF();
+        buildId = in.readUTF();
+        classpath = readStrings(in);
+        runnerArgs = readStrings(in);
+      } catch (EOFException | SocketTimeoutException e) {
+        // Buck has gone away, or has not needed this worker for a while.
+        return;
+      }
+
+      System.setProperty("java.io.tmpdir", tmpDirectory);
+      System.setProperty(BUILD_ID_PROPERTY, buildId);
+      System.getProperties().put(TEST_FINISHED_CALLBACK_PROPERTY, new ProgressReporter(out));
+      int exitCode = runTests(classpath, runnerArgs);
+      System.setProperties((Properties) initialProperties.clone());
+
+      boolean isExiting = run >= maxRuns ||
+          !initialThreads.containsAll(getLiveNonDaemonThreads()) ||
+          isHeapNearlyFull();
+      synchronized (out) {
+        out.writeBoolean(/* isFinished */ true);
+        out.writeInt(exitCode);
+        out.writeBoolean(isExiting);
+        out.flush();
+      }
+      if (isExiting) {
+        return;
+      }
+    }
+  }
+
+  private static int runTests(String[] classpath, String[] runnerArgs) {
+    URL[] urls = new URL[classpath.length];
+    try {
+      for (int i = 0; i < classpath.length; i++) {
+        urls[i] = new File(classpath[i]).toURI().toURL();
+      }
+    } catch (IOException e) {
+      e.printStackTrace();
+      return 1;
+    }
+
+    // The parent is the extension class loader, so that the runner and tests see none of the
+    // classes that were loaded by this worker.
+    Thread thread = Thread.currentThread();
+    ClassLoader originalContextClassLoader = thread.getContextClassLoader();
+    URLClassLoader testClassLoader =
+        new URLClassLoader(urls, ClassLoader.getSystemClassLoader().getParent());
+    thread.setContextClassLoader(testClassLoader);
+    try {
+      Class<?> jUnitMain = testClassLoader.loadClass(JUNIT_MAIN_CLASS_NAME);
+      Method runTests = jUnitMain.getMethod("runTests", String[].class);
+      runTests.invoke(/* static */ null, (Object) runnerArgs);
+      return 0;
+    } catch (InvocationTargetException e) {
+      e.getCause().printStackTrace();
+      return 1;
+    } catch (ReflectiveOperationException e) {
+      e.printStackTrace();
+      return 1;
+    } finally {
+      thread.setContextClassLoader(originalContextClassLoader);
+      try {
+        testClassLoader.close();
+      } catch (IOException e) {
+        e.printStackTrace();
+      }
+    }
+  }
+
+  /** Tells Buck that a test has finished, so that the run is not mistaken for a hung one. */
+  private static class ProgressReporter implements Runnable {
+
+    private final DataOutputStream out;
+
+    private ProgressReporter(DataOutputStream out) {
+      this.out = out;
+    }
+
+    @Override
+    public void run() {
+      synchronized (out) {
+        try {
+          out.writeBoolean(/* isFinished */ false);
+          out.flush();
+        } catch (IOException e) {
+          // Buck has gone away, which the next read of a request will find out.
+          e.printStackTrace();
+        }
+      }
+    }
+  }
+
+  private static String[] readStrings(DataInputStream in) throws IOException {
+    String[] strings = new String[in.readInt()];
+    for (int i = 0; i < strings.length; i++) {
+      strings[i] = in.readUTF();
+    }
+    return strings;
+  }
+
+  private static Set<Thread> getLiveNonDaemonThreads() {
+    Set<Thread> threads = new HashSet<>();
+    for (Thread thread : Thread.getAllStackTraces().keySet()) {
+      if (thread.isAlive() && !thread.isDaemon()) {
+        threads.add(thread);
+      }
+    }
+    return threads;
+  }
+
+  private static boolean isHeapNearlyFull() {
+    Runtime runtime = Runtime.getRuntime();
+    long maxMemory = runtime.maxMemory();
+    if (runtime.totalMemory() - runtime.freeMemory() < maxMemory * MAX_HEAP_USAGE_AFTER_RUN) {
+      return false;
+    }
+    // Only pay for a collection if there might be a problem.
+    System.gc();
+    return runtime.totalMemory() - runtime.freeMemory() >= maxMemory * MAX_HEAP_USAGE_AFTER_RUN;
+  }
+}
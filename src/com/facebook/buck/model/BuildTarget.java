@@ -27,10 +27,14 @@ import com.google.common.base.Preconditions;
 import com.google.common.base.Predicates;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.ImmutableSortedSet;
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
+import com.google.common.collect.MapMaker;
 import com.google.common.collect.Sets;
 
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.concurrent.ConcurrentMap;
 import java.util.regex.Pattern;
 
 import javax.annotation.Nullable;
@@ -46,11 +50,36 @@ public final class BuildTarget implements Comparable<BuildTarget>, HasBuildTarge
       ImmutableSortedSet.of(Flavor.DEFAULT);
   private static final Pattern VALID_FLAVOR_PATTERN = Pattern.compile("[-a-zA-Z0-9_]+");
 
+  /**
+   * The same targets are created over and over again, by every build file that refers to them and
+   * by every coercion of a rule's args, and the daemon keeps them for as long as it lives. Only one
+   * instance of each is kept, which also lets {@link #equals(Object)} usually return on identity.
+   * Targets are looked up by the arguments they are built from, so that building one that already
+   * exists costs a map lookup rather than its name and path.
+   */
+  private static final ConcurrentMap<Key, BuildTarget> TARGETS =
+      new MapMaker().weakValues().makeMap();
+
+  /**
+   * Equal targets can be built from different arguments, e.g. with or without the default flavor,
+   * so each new target is also interned.
+   */
+  private static final Interner<BuildTarget> TARGET_INTERNER = Interners.newWeakInterner();
+
+  /** Shared by the targets in the same package. */
+  private static final Interner<String> NAME_INTERNER = Interners.newWeakInterner();
+
+  /** Almost every target has no flavors other than the default one. */
+  private static final Interner<ImmutableSortedSet<Flavor>> FLAVORS_INTERNER =
+      Interners.newWeakInterner();
+
   private final Optional<String> repository;
   private final String baseName;
   private final String shortName;
   private final ImmutableSortedSet<Flavor> flavors;
   private final String fullyQualifiedName;
+  private final int hashCode;
+  private final Path basePath;
 
   private BuildTarget(
       Optional<String> repository,
@@ -85,12 +114,38 @@ public final class BuildTarget implements Comparable<BuildTarget>, HasBuildTarge
 
     this.repository = repository;
     // On Windows, baseName may contain backslashes, which are not permitted by BuildTarget.
-    this.baseName = baseName.replace("\\", "/");
+    this.baseName = NAME_INTERNER.intern(baseName.replace('\\', '/'));
     this.shortName = shortName;
-    this.flavors = flavors;
+    this.flavors = FLAVORS_INTERNER.intern(flavors);
     this.fullyQualifiedName =
         (repository.isPresent() ? "@" + repository.get() : "") +
         baseName + ":" + shortName + getFlavorPostfix();
+    this.hashCode = fullyQualifiedName.hashCode();
+    this.basePath =
+        MorePaths.intern(Paths.get(this.baseName.substring(BUILD_TARGET_PREFIX.length())));
+  }
+
+  /**
+   * @return the canonical instance of the target described by the arguments.
+   */
+  private static BuildTarget of(
+      Optional<String> repository,
+      String baseName,
+      String shortName,
+      ImmutableSortedSet<Flavor> flavors) {
+    BuildTarget target = TARGETS.get(new Key(repository, baseName, shortName, flavors));
+    if (target == null) {
+      target = TARGET_INTERNER.intern(new BuildTarget(repository, baseName, shortName, flavors));
+      // Key the target by the canonical copies of its arguments, so the map adds no strings.
+      TARGETS.putIfAbsent(
+          new Key(
+              target.repository,
+              NAME_INTERNER.intern(baseName),
+              target.shortName,
+              FLAVORS_INTERNER.intern(flavors)),
+          target);
+    }
+    return target;
   }
 
   public Path getBuildFilePath() {
@@ -167,7 +222,7 @@ public final class BuildTarget implements Comparable<BuildTarget>, HasBuildTarge
    * a file path.
    */
   public Path getBasePath() {
-    return Paths.get(baseName.substring(BUILD_TARGET_PREFIX.length()));
+    return basePath;
   }
 
   /**
@@ -206,16 +261,19 @@ public final class BuildTarget implements Comparable<BuildTarget>, HasBuildTarge
     if (!isFlavored()) {
       return this;
     } else {
-      return new BuildTarget(
+      return BuildTarget.of(
           repository,
           baseName,
           shortName,
-          ImmutableSortedSet.of(Flavor.DEFAULT));
+          JUST_DEFAULT);
     }
   }
 
   @Override
   public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
     if (!(o instanceof BuildTarget)) {
       return false;
     }
@@ -225,7 +283,7 @@ public final class BuildTarget implements Comparable<BuildTarget>, HasBuildTarge
 
   @Override
   public int hashCode() {
-    return fullyQualifiedName.hashCode();
+    return hashCode;
   }
 
   /** @return {@link #getFullyQualifiedName()} */
@@ -237,6 +295,9 @@ public final class BuildTarget implements Comparable<BuildTarget>, HasBuildTarge
   @Override
   public int compareTo(@Nullable BuildTarget target) {
     Preconditions.checkNotNull(target);
+    if (this == target) {
+      return 0;
+    }
     return getFullyQualifiedName().compareTo(target.getFullyQualifiedName());
   }
 
@@ -253,6 +314,49 @@ public final class BuildTarget implements Comparable<BuildTarget>, HasBuildTarge
     return this;
   }
 
+  /** The arguments that a {@link BuildTarget} is built from. */
+  private static final class Key {
+    private final Optional<String> repository;
+    private final String baseName;
+    private final String shortName;
+    private final ImmutableSortedSet<Flavor> flavors;
+    private final int hashCode;
+
+    private Key(
+        Optional<String> repository,
+        String baseName,
+        String shortName,
+        ImmutableSortedSet<Flavor> flavors) {
+      this.repository = Preconditions.checkNotNull(repository);
+      this.baseName = Preconditions.checkNotNull(baseName);
+      this.shortName = Preconditions.checkNotNull(shortName);
+      this.flavors = Preconditions.checkNotNull(flavors);
+      this.hashCode = 31 * (31 * (31 * repository.hashCode() + baseName.hashCode()) +
+          shortName.hashCode()) + flavors.hashCode();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof Key)) {
+        return false;
+      }
+      Key that = (Key) o;
+      return this.hashCode == that.hashCode &&
+          this.baseName.equals(that.baseName) &&
+          this.shortName.equals(that.shortName) &&
+          this.repository.equals(that.repository) &&
+          this.flavors.equals(that.flavors);
+    }
+
+    @Override
+    public int hashCode() {
+      return hashCode;
+    }
+  }
+
   public static class Builder {
     private Optional<String> repository = Optional.absent();
     private String baseName;
@@ -311,7 +415,7 @@ public final class BuildTarget implements Comparable<BuildTarget>, HasBuildTarge
     }
 
     public BuildTarget build() {
-      return new BuildTarget(repository, baseName, shortName, flavors.build());
+      return BuildTarget.of(repository, baseName, shortName, flavors.build());
     }
   }
 }
@@ -60,6 +60,9 @@ public class Flavor implements Comparable<Flavor> {
 
   @Override
   public boolean equals(Object obj) {
+    if (this == obj) {
+      return true;
+    }
     if (!(obj instanceof Flavor)) {
       return false;
     }
@@ -18,16 +18,20 @@ package com.facebook.buck.ocaml;
 
 import com.facebook.buck.rules.AbstractBuildRule;
 import com.facebook.buck.rules.BuildContext;
+import com.facebook.buck.rules.BuildRule;
 import com.facebook.buck.rules.BuildRuleParams;
 import com.facebook.buck.rules.BuildableContext;
 import com.facebook.buck.rules.RuleKey;
 import com.facebook.buck.rules.SourcePath;
 import com.facebook.buck.rules.SourcePathResolver;
 import com.facebook.buck.step.Step;
-import com.facebook.buck.step.fs.MakeCleanDirectoryStep;
+import com.facebook.buck.step.fs.MkdirStep;
+import com.google.common.base.Charsets;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableCollection;
 import com.google.common.collect.ImmutableList;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
 
 import java.nio.file.Path;
 
@@ -69,12 +73,21 @@ public class OCamlBuild extends AbstractBuildRule {
       BuildContext context,
       BuildableContext buildableContext) {
     buildableContext.recordArtifact(ocamlContext.getOutput());
+
+    // The output directory is not cleaned, so that OCamlBuildStep can reuse the modules which were
+    // compiled by the previous build. It is told the rule keys of the deps so that it doesn't reuse
+    // modules compiled against a different version of a library.
+    Hasher depsKey = Hashing.sha1().newHasher();
+    for (BuildRule dep : getDeps()) {
+      depsKey.putString(dep.getRuleKey().toString(), Charsets.UTF_8);
+    }
     return ImmutableList.of(
-        new MakeCleanDirectoryStep(ocamlContext.getOutput().getParent()),
+        new MkdirStep(ocamlContext.getOutput().getParent()),
         new OCamlBuildStep(
             ocamlContext,
             getResolver().getPath(cCompiler),
-            getResolver().getPath(cxxCompiler)));
+            getResolver().getPath(cxxCompiler),
+            depsKey.hash().toString()));
   }
 
   @Override
@@ -24,15 +24,27 @@ import com.facebook.buck.step.Step;
 import com.facebook.buck.step.fs.MakeCleanDirectoryStep;
 import com.facebook.buck.step.fs.MakeExecutableStep;
 import com.facebook.buck.step.fs.WriteFileStep;
+import com.facebook.buck.util.ProjectFilesystem;
+import com.google.common.base.Charsets;
 import com.google.common.base.Function;
 import com.google.common.base.Joiner;
 import com.google.common.base.Preconditions;
+import com.google.common.base.Splitter;
 import com.google.common.collect.FluentIterable;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
-
+import com.google.common.collect.ImmutableSortedMap;
+import com.google.common.collect.ImmutableSortedSet;
+import com.google.common.collect.Maps;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+
+import java.io.File;
+import java.io.IOException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.List;
+import java.util.Map;
 
 /**
  * A step that preprocesses, compiles, and assembles OCaml sources.
@@ -41,20 +53,35 @@ public class OCamlBuildStep implements Step {
 
   private static final Path OCAML_DEBUG = Paths.get("/usr/local/bin/ocamldebug");
 
+  /**
+   * Records the key each module was last compiled with, one "output key" pair per line, in each of
+   * the compile output directories.
+   */
+  private static final String MODULE_KEYS_FILE = ".module_keys";
+
+  private static final Splitter MODULE_KEY_SPLITTER = Splitter.on(' ').limit(2);
+
   private final OCamlBuildContext ocamlContext;
   private final Path cCompiler;
   private final Path cxxCompiler;
+  private final String depsKey;
 
   private final boolean hasGeneratedSources;
   private final OCamlDepToolStep depToolStep;
 
+  /**
+   * @param depsKey changes whenever any of the OCaml libraries that the sources are compiled
+   *     against change, so that no module is reused after that.
+   */
   public OCamlBuildStep(
       OCamlBuildContext ocamlContext,
       Path cCompiler,
-      Path cxxCompiler) {
+      Path cxxCompiler,
+      String depsKey) {
     this.ocamlContext = Preconditions.checkNotNull(ocamlContext);
     this.cCompiler = Preconditions.checkNotNull(cCompiler);
     this.cxxCompiler = Preconditions.checkNotNull(cxxCompiler);
+    this.depsKey = Preconditions.checkNotNull(depsKey);
 
     hasGeneratedSources = ocamlContext.getLexInput().size() > 0 ||
         ocamlContext.getYaccInput().size() > 0;
@@ -96,17 +123,26 @@ public class OCamlBuildStep implements Step {
     //
     // To get the DAG we launch ocamldep tool which provides the direct dependency information, like
     // module A depends on modules B, C, D.
-    ImmutableList<String> sortedInput = sortDependency(depToolStep.getStdout());
+    OCamlDependencyGraphGenerator graphGenerator = new OCamlDependencyGraphGenerator();
+    ImmutableList<String> sortedInput = graphGenerator.generate(depToolStep.getStdout());
+
     ImmutableList.Builder<String> linkerInputs = ImmutableList.builder();
-    int mlCompileExitCode = executeMLCompilation(context, sortedInput, linkerInputs);
+    int mlCompileExitCode = executeMLCompilation(
+        context,
+        sortedInput,
+        graphGenerator,
+        /* isBytecode */ false,
+        linkerInputs);
     if (mlCompileExitCode != 0) {
       return mlCompileExitCode;
     }
 
     ImmutableList.Builder<String> bytecodeLinkerInputs = ImmutableList.builder();
-    int mlCompileBytecodeExitCode = executeMLCompileBytecode(
+    int mlCompileBytecodeExitCode = executeMLCompilation(
         context,
         sortedInput,
+        graphGenerator,
+        /* isBytecode */ true,
         bytecodeLinkerInputs);
     if (mlCompileBytecodeExitCode != 0) {
       return mlCompileBytecodeExitCode;
@@ -255,72 +291,186 @@ public class OCamlBuildStep implements Step {
     return flagBuilder.build();
   }
 
+  /**
+   * Compiles the modules in dependency order, on the step's own thread. A module is only compiled
+   * if the key it was last compiled with has changed. The key covers the source, the compiler and
+   * its flags, the libraries compiled against, and the compiled outputs of the modules it depends
+   * on, so a change that does not alter a module's interface doesn't cause the modules that use it
+   * to be compiled again.
+   */
   private int executeMLCompilation(
       ExecutionContext context,
       ImmutableList<String> sortedInput,
-      ImmutableList.Builder<String> linkerInputs
-  ) throws InterruptedException {
-    MakeCleanDirectoryStep mkDir = new MakeCleanDirectoryStep(ocamlContext.getCompileOutputDir());
-    int mkDirExitCode = mkDir.execute(context);
-    if (mkDirExitCode != 0) {
-      return mkDirExitCode;
-    }
+      OCamlDependencyGraphGenerator graphGenerator,
+      boolean isBytecode,
+      ImmutableList.Builder<String> linkerInputs) throws InterruptedException {
+    ProjectFilesystem filesystem = context.getProjectFilesystem();
+    Path outputDir = isBytecode ?
+        ocamlContext.getCompileBytecodeOutputDir() :
+        ocamlContext.getCompileOutputDir();
+    Path ocamlCompiler = isBytecode ?
+        ocamlContext.getOcamlBytecodeCompiler() :
+        ocamlContext.getOcamlCompiler();
+    ImmutableList<String> compileFlags = getCompileFlags(/* excludeDeps */ false);
+
     for (String inputOutput : sortedInput) {
-      String inputFileName = Paths.get(inputOutput).getFileName().toString();
-      String outputFileName = inputFileName
-          .replaceFirst(OCamlCompilables.OCAML_ML_REGEX, OCamlCompilables.OCAML_CMX)
-          .replaceFirst(OCamlCompilables.OCAML_MLI_REGEX, OCamlCompilables.OCAML_CMI);
-      Path outputPath = ocamlContext.getCompileOutputDir().resolve(outputFileName);
+      String outputFileName = getOutputFileName(inputOutput, isBytecode);
       if (!outputFileName.endsWith(OCamlCompilables.OCAML_CMI)) {
-        linkerInputs.add(outputPath.toString());
+        linkerInputs.add(outputDir.resolve(outputFileName).toString());
       }
-      final ImmutableList<String> compileFlags = getCompileFlags(false);
-      Step compileStep = new OCamlMLCompileStep(
-          cCompiler,
-          ocamlContext.getOcamlCompiler(),
-          outputPath,
-          Paths.get(inputOutput),
-          compileFlags);
-      int compileExitCode = compileStep.execute(context);
-      if (compileExitCode != 0) {
-        return compileExitCode;
+    }
+
+    Path moduleKeysFile = outputDir.resolve(MODULE_KEYS_FILE);
+    Map<String, String> previousKeys;
+    Map<String, String> currentKeys = Maps.newHashMap();
+    int exitCode = 0;
+    try {
+      filesystem.mkdirs(outputDir);
+      removeStaleOutputs(filesystem, outputDir, sortedInput);
+      previousKeys = readModuleKeys(filesystem, moduleKeysFile);
+      // Until the new keys are written, no module is known to be up to date. That way, a module
+      // whose compilation is interrupted is compiled again next time.
+      filesystem.deleteFileAtPath(moduleKeysFile);
+
+      for (String inputOutput : sortedInput) {
+        Path input = Paths.get(inputOutput);
+        String outputFileName = getOutputFileName(inputOutput, isBytecode);
+        Path outputPath = outputDir.resolve(outputFileName);
+        String key = getModuleKey(
+            filesystem,
+            input,
+            outputDir,
+            ocamlCompiler,
+            compileFlags,
+            graphGenerator.getDependencies(inputOutput),
+            isBytecode);
+        if (key.equals(previousKeys.get(outputFileName)) && filesystem.exists(outputPath)) {
+          currentKeys.put(outputFileName, key);
+          continue;
+        }
+
+        Step compileStep = new OCamlMLCompileStep(
+            cCompiler,
+            ocamlCompiler,
+            outputPath,
+            input,
+            compileFlags);
+        exitCode = compileStep.execute(context);
+        if (exitCode != 0) {
+          break;
+        }
+        currentKeys.put(outputFileName, key);
       }
+
+      writeModuleKeys(filesystem, moduleKeysFile, currentKeys);
+    } catch (IOException e) {
+      context.logError(e, "Error compiling OCaml modules in %s.", outputDir);
+      return 1;
     }
-    return 0;
+    return exitCode;
   }
 
-  private int executeMLCompileBytecode(
-      ExecutionContext context,
-      ImmutableList<String> sortedInput,
-      ImmutableList.Builder<String> linkerInputs) throws InterruptedException {
-    MakeCleanDirectoryStep mkDir = new MakeCleanDirectoryStep(
-        ocamlContext.getCompileBytecodeOutputDir());
-    int mkDirExitCode = mkDir.execute(context);
-    if (mkDirExitCode != 0) {
-      return mkDirExitCode;
+  private static String getOutputFileName(String inputOutput, boolean isBytecode) {
+    String inputFileName = Paths.get(inputOutput).getFileName().toString();
+    return inputFileName
+        .replaceFirst(
+            OCamlCompilables.OCAML_ML_REGEX,
+            isBytecode ? OCamlCompilables.OCAML_CMO : OCamlCompilables.OCAML_CMX)
+        .replaceFirst(OCamlCompilables.OCAML_MLI_REGEX, OCamlCompilables.OCAML_CMI);
+  }
+
+  private static String getModuleName(Path source) {
+    String fileName = source.getFileName().toString();
+    int dot = fileName.indexOf('.');
+    return dot == -1 ? fileName : fileName.substring(0, dot);
+  }
+
+  private String getModuleKey(
+      ProjectFilesystem filesystem,
+      Path input,
+      Path outputDir,
+      Path ocamlCompiler,
+      ImmutableList<String> compileFlags,
+      ImmutableList<String> dependencies,
+      boolean isBytecode) throws IOException {
+    Hasher hasher = Hashing.sha1().newHasher()
+        .putString(ocamlCompiler.toString(), Charsets.UTF_8)
+        .putString(cCompiler.toString(), Charsets.UTF_8)
+        .putString(Joiner.on(' ').join(compileFlags), Charsets.UTF_8)
+        .putString(depsKey, Charsets.UTF_8)
+        .putString(filesystem.computeSha1(input), Charsets.UTF_8);
+
+    // The compiled interface of each dependency, plus, for native code, its implementation too, as
+    // ocamlopt inlines across modules.
+    ImmutableSortedSet.Builder<String> dependencyOutputs = ImmutableSortedSet.naturalOrder();
+    for (String dependency : dependencies) {
+      String moduleName = getModuleName(Paths.get(dependency));
+      dependencyOutputs.add(moduleName + OCamlCompilables.OCAML_CMI);
+      if (!isBytecode && dependency.endsWith(OCamlCompilables.OCAML_ML)) {
+        dependencyOutputs.add(moduleName + OCamlCompilables.OCAML_CMX);
+      }
+    }
+    for (String dependencyOutput : dependencyOutputs.build()) {
+      Path path = outputDir.resolve(dependencyOutput);
+      hasher.putString(dependencyOutput, Charsets.UTF_8);
+      if (filesystem.exists(path)) {
+        hasher.putString(filesystem.computeSha1(path), Charsets.UTF_8);
+      }
     }
+    return hasher.hash().toString();
+  }
+
+  /**
+   * Deletes the outputs of modules which are no longer part of the build, so that nothing can be
+   * compiled against them by mistake.
+   */
+  private void removeStaleOutputs(
+      ProjectFilesystem filesystem,
+      Path outputDir,
+      ImmutableList<String> sortedInput) throws IOException {
+    ImmutableSet.Builder<String> moduleNames = ImmutableSet.builder();
     for (String inputOutput : sortedInput) {
-      String inputFileName = Paths.get(inputOutput).getFileName().toString();
-      String outputFileName = inputFileName
-          .replaceFirst(OCamlCompilables.OCAML_ML_REGEX, OCamlCompilables.OCAML_CMO)
-          .replaceFirst(OCamlCompilables.OCAML_MLI_REGEX, OCamlCompilables.OCAML_CMI);
-      Path outputPath = ocamlContext.getCompileBytecodeOutputDir().resolve(outputFileName);
-      if (!outputFileName.endsWith(OCamlCompilables.OCAML_CMI)) {
-        linkerInputs.add(outputPath.toString());
+      moduleNames.add(getModuleName(Paths.get(inputOutput)));
+    }
+    for (Path cSrc : ocamlContext.getCInput()) {
+      moduleNames.add(getModuleName(cSrc));
+    }
+    ImmutableSet<String> currentModuleNames = moduleNames.build();
+
+    for (File file : filesystem.listFiles(outputDir)) {
+      String name = file.getName();
+      if (!name.equals(MODULE_KEYS_FILE) &&
+          !currentModuleNames.contains(getModuleName(file.toPath()))) {
+        filesystem.deleteFileAtPath(outputDir.resolve(name));
       }
-      final ImmutableList<String> compileFlags = getCompileFlags(/* excludeDeps */ false);
-      Step compileBytecodeStep = new OCamlMLCompileStep(
-          cCompiler,
-          ocamlContext.getOcamlBytecodeCompiler(),
-          outputPath,
-          Paths.get(inputOutput),
-          compileFlags);
-      int compileExitCode = compileBytecodeStep.execute(context);
-      if (compileExitCode != 0) {
-        return compileExitCode;
+    }
+  }
+
+  private static Map<String, String> readModuleKeys(
+      ProjectFilesystem filesystem,
+      Path moduleKeysFile) throws IOException {
+    Map<String, String> keys = Maps.newHashMap();
+    if (!filesystem.exists(moduleKeysFile)) {
+      return keys;
+    }
+    for (String line : filesystem.readLines(moduleKeysFile)) {
+      List<String> outputAndKey = MODULE_KEY_SPLITTER.splitToList(line);
+      if (outputAndKey.size() == 2) {
+        keys.put(outputAndKey.get(0), outputAndKey.get(1));
       }
     }
-    return 0;
+    return keys;
+  }
+
+  private static void writeModuleKeys(
+      ProjectFilesystem filesystem,
+      Path moduleKeysFile,
+      Map<String, String> keys) throws IOException {
+    ImmutableList.Builder<String> lines = ImmutableList.builder();
+    for (Map.Entry<String, String> entry : ImmutableSortedMap.copyOf(keys).entrySet()) {
+      lines.add(entry.getKey() + " " + entry.getValue());
+    }
+    filesystem.writeLinesToPath(lines.build(), moduleKeysFile);
   }
 
   private int generateSources(ExecutionContext context) throws InterruptedException {
@@ -351,9 +501,4 @@ public class OCamlBuildStep implements Step {
     return 0;
   }
 
-  private ImmutableList<String> sortDependency(String depOutput) {
-    OCamlDependencyGraphGenerator graphGenerator = new OCamlDependencyGraphGenerator();
-    return graphGenerator.generate(depOutput);
-  }
-
 }
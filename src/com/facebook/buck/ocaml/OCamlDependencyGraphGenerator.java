@@ -39,6 +39,15 @@ public class OCamlDependencyGraphGenerator {
   private static final String OCAML_DEPS_SEPARATOR = " ";
   private static final String LINE_SEPARATOR = System.getProperty("line.separator");
 
+  private static final Function<String, String> TO_SOURCE = new Function<String, String>() {
+    @Override
+    public String apply(String input) {
+      return input.replaceAll(
+          OCamlCompilables.OCAML_CMX_REGEX, OCamlCompilables.OCAML_ML).replaceAll(
+          OCamlCompilables.OCAML_CMI_REGEX, OCamlCompilables.OCAML_MLI);
+    }
+  };
+
   @Nullable
   private MutableDirectedGraph<String> graph;
 
@@ -53,15 +62,19 @@ public class OCamlDependencyGraphGenerator {
     final ImmutableList<String> sortedDeps = TopologicalSort.sort(
         graph, Predicates.<String>alwaysTrue());
 
-    return FluentIterable.from(sortedDeps).transform(
-        new Function<String, String>() {
-          @Override
-          public String apply(String input) {
-            return input.replaceAll(
-                OCamlCompilables.OCAML_CMX_REGEX, OCamlCompilables.OCAML_ML).replaceAll(
-                OCamlCompilables.OCAML_CMI_REGEX, OCamlCompilables.OCAML_MLI);
-          }
-        }).toList();
+    return FluentIterable.from(sortedDeps).transform(TO_SOURCE).toList();
+  }
+
+  /**
+   * @return the sources which {@code source} directly depends on. Must be called after
+   *     {@link #generate(String)}.
+   */
+  public ImmutableList<String> getDependencies(String source) {
+    Preconditions.checkNotNull(graph);
+    String node = source
+        .replaceAll(OCamlCompilables.OCAML_ML_REGEX, OCamlCompilables.OCAML_CMX)
+        .replaceAll(OCamlCompilables.OCAML_MLI_REGEX, OCamlCompilables.OCAML_CMI);
+    return FluentIterable.from(graph.getOutgoingNodesFor(node)).transform(TO_SOURCE).toList();
   }
 
   private void parseDependencies(String stdout) {
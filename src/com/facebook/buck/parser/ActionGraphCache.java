@@ -0,0 +1,297 @@
+/*
+ * Copyright 2014-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.parser;
+
+import com.facebook.buck.log.Logger;
+import com.facebook.buck.model.BuildTarget;
+import com.facebook.buck.rules.AbstractBuildRule;
+import com.facebook.buck.rules.BuildRule;
+import com.facebook.buck.rules.BuildRuleResolver;
+import com.facebook.buck.rules.InitializableFromDisk;
+import com.facebook.buck.rules.ReusableDescription;
+import com.facebook.buck.rules.TargetNode;
+import com.facebook.buck.rules.TargetNodeToBuildRuleTransformer;
+import com.facebook.buck.util.HumanReadableException;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Optional;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.Nullable;
+
+/**
+ * Keeps the {@link BuildRule}s created for {@link TargetNode}s between the action graphs built by
+ * the commands run by the daemon. A rule is reused when its {@link TargetNode} is the same instance
+ * that it was created from (the {@link Parser} creates a new node whenever the build file that
+ * defines it changes) and every rule that was looked up while creating it is still the same, which
+ * means that only the subgraphs above the changed nodes are created again.
+ * <p>
+ * Only the rules of {@link ReusableDescription}s are reused, as other rules may hold state from the
+ * build that they were last used in.
+ */
+class ActionGraphCache {
+
+  private static final Logger LOG = Logger.get(ActionGraphCache.class);
+
+  private final TargetNodeToBuildRuleTransformer transformer;
+  private final ConcurrentMap<BuildTarget, Entry> entries;
+  private final AtomicInteger reusedRules;
+  private final AtomicInteger createdRules;
+
+  /**
+   * The resolver of the action graph that is currently being built. Reused rules that look up
+   * targets which they did not depend on when they were created fall back to this resolver.
+   */
+  private volatile BuildRuleResolver currentResolver;
+
+  ActionGraphCache() {
+    this(new TargetNodeToBuildRuleTransformer());
+  }
+
+  @VisibleForTesting
+  ActionGraphCache(TargetNodeToBuildRuleTransformer transformer) {
+    this.transformer = Preconditions.checkNotNull(transformer);
+    this.entries = Maps.newConcurrentMap();
+    this.reusedRules = new AtomicInteger();
+    this.createdRules = new AtomicInteger();
+    this.currentResolver = new BuildRuleResolver();
+  }
+
+  /**
+   * Must be called before the first call to {@link #getBuildRule(BuildRuleResolver, TargetNode)}
+   * for a new action graph.
+   */
+  void startActionGraph(BuildRuleResolver ruleResolver) {
+    currentResolver = Preconditions.checkNotNull(ruleResolver);
+    reusedRules.set(0);
+    createdRules.set(0);
+  }
+
+  /**
+   * Must be called once all of the rules of the action graph have been created. Forgets the rules
+   * of targets which are not among {@code nodes}, so that targets which have been removed, or
+   * which are no longer built, do not hold on to their rules for the life of the daemon.
+   */
+  void finishActionGraph(Iterable<TargetNode<?>> nodes) {
+    Set<BuildTarget> targets = Sets.newHashSet();
+    for (TargetNode<?> node : nodes) {
+      targets.add(node.getBuildTarget());
+    }
+    entries.keySet().retainAll(targets);
+    LOG.debug(
+        "Reused %d build rules and created %d build rules, %d cached.",
+        reusedRules.get(),
+        createdRules.get(),
+        entries.size());
+  }
+
+  /**
+   * Returns the {@link BuildRule} for {@code node}, reusing the one created by a previous action
+   * graph if possible. As with {@link TargetNodeToBuildRuleTransformer#transform}, the rules of the
+   * deps of {@code node} must already be in {@code ruleResolver}.
+   * <p>
+   * Neither the returned rule nor the rules that its description added while creating it are
+   * added to {@code ruleResolver}, as other nodes may be transformed against it concurrently and
+   * add rules for the same targets. It is up to the caller to add them.
+   */
+  NodeRules getBuildRule(BuildRuleResolver ruleResolver, TargetNode<?> node)
+      throws NoSuchBuildTargetException {
+    Entry entry = entries.get(node.getBuildTarget());
+    if (entry != null && entry.canBeReusedWith(ruleResolver, node)) {
+      entry.resetBuildState();
+      reusedRules.incrementAndGet();
+      return new NodeRules(entry.rule, entry.sideRules);
+    }
+
+    NodeResolver nodeResolver = new NodeResolver(ruleResolver);
+    BuildRule rule = transformer.transform(nodeResolver, node);
+    nodeResolver.seal(rule);
+    createdRules.incrementAndGet();
+
+    if (node.getDescription() instanceof ReusableDescription &&
+        nodeResolver.areAllRulesResettable()) {
+      entries.put(node.getBuildTarget(), new Entry(node, rule, nodeResolver));
+    } else {
+      entries.remove(node.getBuildTarget());
+    }
+    return new NodeRules(rule, ImmutableList.copyOf(nodeResolver.addedRules.values()));
+  }
+
+  /**
+   * The {@link BuildRule} of a {@link TargetNode}, and the rules that its description added to the
+   * resolver while creating it, in the order that they were added.
+   */
+  static class NodeRules {
+    final BuildRule rule;
+    final ImmutableList<BuildRule> sideRules;
+
+    private NodeRules(BuildRule rule, ImmutableList<BuildRule> sideRules) {
+      this.rule = rule;
+      this.sideRules = sideRules;
+    }
+  }
+
+  private static class Entry {
+    private final TargetNode<?> node;
+    private final BuildRule rule;
+    private final ImmutableList<BuildRule> sideRules;
+    private final ImmutableMap<BuildTarget, Optional<BuildRule>> lookups;
+
+    private Entry(TargetNode<?> node, BuildRule rule, NodeResolver nodeResolver) {
+      this.node = node;
+      this.rule = rule;
+      this.sideRules = ImmutableList.copyOf(nodeResolver.addedRules.values());
+      this.lookups = ImmutableMap.copyOf(nodeResolver.lookups);
+    }
+
+    private boolean canBeReusedWith(BuildRuleResolver ruleResolver, TargetNode<?> node) {
+      if (this.node != node || ruleResolver.getRuleOptional(rule.getBuildTarget()).isPresent()) {
+        return false;
+      }
+      for (BuildRule sideRule : sideRules) {
+        if (ruleResolver.getRuleOptional(sideRule.getBuildTarget()).isPresent()) {
+          return false;
+        }
+      }
+      for (Map.Entry<BuildTarget, Optional<BuildRule>> lookup : lookups.entrySet()) {
+        BuildRule previous = lookup.getValue().orNull();
+        BuildRule current = ruleResolver.getRuleOptional(lookup.getKey()).orNull();
+        if (previous != current) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    private void resetBuildState() {
+      resetBuildState(rule);
+      for (BuildRule sideRule : sideRules) {
+        resetBuildState(sideRule);
+      }
+    }
+
+    private static void resetBuildState(BuildRule rule) {
+      ((AbstractBuildRule) rule).invalidateRuleKey();
+      if (rule instanceof InitializableFromDisk) {
+        ((InitializableFromDisk<?>) rule).getBuildOutputInitializer().invalidate();
+      }
+    }
+  }
+
+  /**
+   * The {@link BuildRuleResolver} that a rule is created with. While the rule is being created,
+   * it records every lookup so that they can be checked when the rule is reused, and keeps the
+   * rules added to it to itself, as the delegate is shared with the nodes being transformed
+   * concurrently. Afterwards, it only resolves the rules that were involved in creating the rule,
+   * so that reused rules do not keep the resolvers of previous action graphs alive.
+   */
+  private class NodeResolver extends BuildRuleResolver {
+    @Nullable private volatile BuildRuleResolver delegate;
+    private final Map<BuildTarget, Optional<BuildRule>> lookups;
+    private final Map<BuildTarget, BuildRule> addedRules;
+    private volatile ImmutableMap<BuildTarget, BuildRule> sealedRules;
+
+    private NodeResolver(BuildRuleResolver delegate) {
+      this.delegate = delegate;
+      this.lookups = Maps.newConcurrentMap();
+      this.addedRules = Maps.newLinkedHashMap();
+      this.sealedRules = ImmutableMap.of();
+    }
+
+    private void seal(BuildRule rule) {
+      Map<BuildTarget, BuildRule> rules = Maps.newHashMap();
+      for (Optional<BuildRule> lookup : lookups.values()) {
+        if (lookup.isPresent()) {
+          rules.put(lookup.get().getBuildTarget(), lookup.get());
+        }
+      }
+      rules.putAll(addedRules);
+      rules.put(rule.getBuildTarget(), rule);
+      sealedRules = ImmutableMap.copyOf(rules);
+      delegate = null;
+    }
+
+    private boolean areAllRulesResettable() {
+      for (BuildRule rule : sealedRules.values()) {
+        if (!(rule instanceof AbstractBuildRule)) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    @Override
+    public Iterable<BuildRule> getBuildRules() {
+      BuildRuleResolver resolver = delegate;
+      if (resolver == null) {
+        return currentResolver.getBuildRules();
+      }
+      return Iterables.concat(resolver.getBuildRules(), ImmutableList.copyOf(addedRules.values()));
+    }
+
+    @Override
+    public BuildRule getRule(BuildTarget buildTarget) {
+      Optional<BuildRule> rule = getRuleOptional(buildTarget);
+      if (!rule.isPresent()) {
+        throw new HumanReadableException(
+            "Rule for target '%s' could not be resolved.",
+            buildTarget);
+      }
+      return rule.get();
+    }
+
+    @Override
+    public Optional<BuildRule> getRuleOptional(BuildTarget buildTarget) {
+      BuildRuleResolver resolver = delegate;
+      if (resolver != null) {
+        BuildRule addedRule = addedRules.get(buildTarget);
+        if (addedRule != null) {
+          return Optional.of(addedRule);
+        }
+        Optional<BuildRule> rule = resolver.getRuleOptional(buildTarget);
+        lookups.put(buildTarget, rule);
+        return rule;
+      }
+      BuildRule rule = sealedRules.get(Preconditions.checkNotNull(buildTarget));
+      return rule == null ? currentResolver.getRuleOptional(buildTarget) : Optional.of(rule);
+    }
+
+    @Override
+    public <T extends BuildRule> T addToIndex(T buildRule) {
+      BuildRuleResolver resolver = delegate;
+      if (resolver == null) {
+        return currentResolver.addToIndex(buildRule);
+      }
+      BuildTarget target = buildRule.getBuildTarget();
+      if (resolver.getRuleOptional(target).isPresent() ||
+          addedRules.put(target, buildRule) != null) {
+        throw new IllegalStateException(
+            "A build rule for this target has already been created: " + target);
+      }
+      return buildRule;
+    }
+  }
+}
@@ -42,12 +42,16 @@ import com.facebook.buck.rules.RuleKeyBuilderFactory;
 import com.facebook.buck.rules.TargetNode;
 import com.facebook.buck.util.BuckConstant;
 import com.facebook.buck.util.Console;
+import com.facebook.buck.util.FileReconciler;
+import com.facebook.buck.util.FileSnapshot;
 import com.facebook.buck.util.HumanReadableException;
 import com.facebook.buck.util.ProjectFilesystem;
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Functions;
 import com.google.common.base.Optional;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Predicate;
+import com.google.common.base.Stopwatch;
 import com.google.common.base.Supplier;
 import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.ImmutableList;
@@ -62,14 +66,18 @@ import com.google.common.collect.Sets;
 import com.google.common.eventbus.Subscribe;
 
 import java.io.IOException;
+import java.nio.file.FileVisitResult;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
 import java.nio.file.StandardWatchEventKinds;
 import java.nio.file.WatchEvent;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 import java.util.regex.Pattern;
 
 import javax.annotation.Nullable;
@@ -108,6 +116,17 @@ public class Parser {
    */
   private final ListMultimap<Path, Path> buildFileDependents;
 
+  /**
+   * The snapshot of every file and directory that went into the cached rules: build files, the
+   * files they include and the directories of their packages, whose snapshots change when files
+   * are added or removed and so when globs may match different files. When file change events have
+   * been lost, these are compared against the filesystem to invalidate only what changed.
+   */
+  private final Map<Path, FileSnapshot> fileSnapshots;
+
+  /** A map from the absolute directories of parsed packages to their build files. */
+  private final Map<Path, Path> packageDirectories;
+
   /**
    * A BuckEvent used to record the parse start time, which should include the WatchEvent
    * processing that occurs before the BuildTargets required to build a full ParseStart event are
@@ -172,6 +191,19 @@ public class Parser {
   }
   private final BuildFileTreeCache buildFileTreeCache;
 
+  /**
+   * The rules of the action graphs built from the {@link TargetGraph}s returned by this parser,
+   * which are reused by later action graphs for the nodes that have not changed.
+   */
+  private final ActionGraphCache actionGraphCache;
+
+  /**
+   * The target graph of every rule in the project, which is kept until a build file changes so
+   * that commands which query the whole project do not have to rebuild it.
+   */
+  @Nullable
+  private TargetGraph projectTargetGraph;
+
   public static Parser createParser(
       final RepositoryFactory repositoryFactory,
       String pythonInterpreter,
@@ -219,8 +251,11 @@ public class Parser {
     this.buildFileParserFactory = Preconditions.checkNotNull(buildFileParserFactory);
     this.ruleKeyBuilderFactory = Preconditions.checkNotNull(ruleKeyBuilderFactory);
     this.buildFileDependents = ArrayListMultimap.create();
+    this.fileSnapshots = Maps.newHashMap();
+    this.packageDirectories = Maps.newHashMap();
     this.tempFilePatterns = tempFilePatterns;
     this.state = new CachedState();
+    this.actionGraphCache = new ActionGraphCache();
   }
 
   public BuildTargetParser getBuildTargetParser() {
@@ -480,7 +515,7 @@ public class Parser {
       throw new HumanReadableException(e.getMessage());
     }
 
-    return new TargetGraph(graph);
+    return new TargetGraph(graph, actionGraphCache);
   }
 
   /**
@@ -546,6 +581,11 @@ public class Parser {
 
     if (!isCached(buildFile, defaultIncludes, environment)) {
       LOG.debug("Parsing %s file: %s", BuckConstant.BUILD_RULES_FILE_NAME, buildFile);
+      // Take the snapshots of the build file and of its package first, so that a change made while
+      // the build file is executed makes them stale, as DefaultFileHashCache does when hashing.
+      Path normalizedBuildFile = normalize(buildFile);
+      fileSnapshots.put(normalizedBuildFile, FileSnapshot.of(normalizedBuildFile));
+      recordPackageDirectories(normalizedBuildFile);
       parseRawRulesInternal(buildFileParser.getAllRulesAndMetaRules(buildFile));
     } else {
       LOG.debug("Not parsing %s file (already in cache)", BuckConstant.BUILD_RULES_FILE_NAME);
@@ -594,7 +634,7 @@ public class Parser {
    * @param map a meta rule read from a build file.
    */
   @SuppressWarnings("unchecked") // Needed for downcast from Object to List<String>.
-  private synchronized boolean parseMetaRule(Map<String, Object> map) {
+  private synchronized boolean parseMetaRule(Map<String, Object> map) throws IOException {
     Preconditions.checkState(isMetaRule(map));
 
     // INCLUDES_META_RULE maps to a list of file paths: the head is a
@@ -603,11 +643,52 @@ public class Parser {
     Preconditions.checkNotNull(fileNames);
     Path dependent = normalize(Paths.get(fileNames.get(0)));
     for (String fileName : fileNames) {
-      buildFileDependents.put(normalize(Paths.get(fileName)), dependent);
+      Path path = normalize(Paths.get(fileName));
+      buildFileDependents.put(path, dependent);
+      // Keep a snapshot taken before the build file was executed, which is stale if the file was
+      // changed since. Only files that are included for the first time have none yet.
+      if (!fileSnapshots.containsKey(path)) {
+        fileSnapshots.put(path, FileSnapshot.of(path));
+      }
+    }
+    if (!packageDirectories.containsKey(dependent.getParent())) {
+      recordPackageDirectories(dependent);
     }
     return true;
   }
 
+  /**
+   * Records the snapshots of the directories that belong to the package of {@code buildFile}, that
+   * is, every directory under it that is not ignored and is not in a package of its own.
+   */
+  private synchronized void recordPackageDirectories(final Path buildFile) throws IOException {
+    final ProjectFilesystem filesystem = repository.getFilesystem();
+    final Path packageDirectory = buildFile.getParent();
+    Path root = filesystem.getRootPath().toAbsolutePath().normalize();
+    filesystem.walkRelativeFileTree(
+        root.relativize(packageDirectory),
+        new SimpleFileVisitor<Path>() {
+          @Override
+          public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attributes) {
+            Path absoluteDir = normalize(dir);
+            if (!absoluteDir.equals(packageDirectory) &&
+                (filesystem.isIgnored(dir) ||
+                    filesystem.exists(dir.resolve(BuckConstant.BUILD_RULES_FILE_NAME)))) {
+              return FileVisitResult.SKIP_SUBTREE;
+            }
+            fileSnapshots.put(absoluteDir, FileSnapshot.of(attributes));
+            packageDirectories.put(absoluteDir, buildFile);
+            return FileVisitResult.CONTINUE;
+          }
+
+          @Override
+          public FileVisitResult visitFileFailed(Path file, IOException e) {
+            // Most likely a broken symlink or a loop, which globs do not follow either.
+            return FileVisitResult.CONTINUE;
+          }
+        });
+  }
+
   /**
    * @param filter the test to apply to all targets that have been read from build files, or null.
    * @return the build targets that pass the test, or null if the filter was null.
@@ -676,6 +757,49 @@ public class Parser {
   }
 
 
+  /**
+   * @param defaultIncludes the files to include before executing build files.
+   * @return the target graph of every rule in the project, which is cached until a build file is
+   *     changed, added or removed.
+   */
+  public synchronized TargetGraph buildProjectTargetGraph(
+      Iterable<String> defaultIncludes,
+      BuckEventBus eventBus,
+      Console console,
+      ImmutableMap<String, String> environment)
+      throws BuildFileParseException, BuildTargetException, IOException, InterruptedException {
+    // Either of these clears the cached graph along with the parsed build files.
+    state.invalidateCacheOnIncludeChange(defaultIncludes);
+    state.invalidateCacheOnEnvironmentChange(environment);
+    if (projectTargetGraph == null) {
+      projectTargetGraph = buildTargetGraph(
+          ImmutableList.of(
+              new RuleJsonPredicateSpec(
+                  RuleJsonPredicates.alwaysTrue(),
+                  repository.getFilesystem().getIgnorePaths())),
+          defaultIncludes,
+          eventBus,
+          console,
+          environment,
+          /* enableProfiling */ false);
+    }
+    return projectTargetGraph;
+  }
+
+  /**
+   * @param path a file relative to the project root.
+   * @return the build files, relative to the project root, that include {@code path} directly or
+   *     transitively, as of the last time they were parsed.
+   */
+  public synchronized ImmutableSet<Path> getBuildFilesIncluding(Path path) {
+    Path root = repository.getFilesystem().getRootPath().toAbsolutePath().normalize();
+    ImmutableSet.Builder<Path> buildFiles = ImmutableSet.builder();
+    for (Path buildFile : buildFileDependents.get(normalize(path))) {
+      buildFiles.add(root.relativize(buildFile));
+    }
+    return buildFiles.build();
+  }
+
   /**
    * Called when a new command is executed and used to signal to the BuildFileTreeCache
    * that reconstructing the build file tree may result in a different BuildFileTree.
@@ -714,6 +838,7 @@ public class Parser {
 
           // If a build file has been added or removed, reconstruct the build file tree.
           buildFileTreeCache.invalidateIfStale();
+          projectTargetGraph = null;
         }
 
         // Added or removed files can affect globs, so invalidate the package build file
@@ -725,15 +850,60 @@ public class Parser {
 
       LOG.verbose("Invalidating dependents for path %s, cache state %s", path, state);
 
-      // Invalidate the raw rules and targets dependent on this file.
+      // Invalidate the raw rules and targets dependent on this file, along with its snapshot.
       state.invalidateDependents(path);
+      fileSnapshots.remove(normalize(path));
 
     } else {
-      // Non-path change event, likely an overflow due to many change events: invalidate everything.
-      LOG.debug("Parser invalidating entire cache on overflow.");
+      // Non-path change event, likely an overflow due to many change events: find the files that
+      // changed and invalidate the build files that depend on them.
       buildFileTreeCache.invalidateIfStale();
+      reconcile();
+    }
+  }
+
+  /**
+   * Compares the files and directories the cached rules were read from against their snapshots,
+   * and invalidates the build files that depend on the ones that changed.
+   */
+  private synchronized void reconcile() {
+    Stopwatch stopwatch = Stopwatch.createStarted();
+    ImmutableSet<Path> changedPaths;
+    try {
+      changedPaths = FileReconciler.findChangedPaths(fileSnapshots, Functions.<Path>identity());
+    } catch (InterruptedException e) {
+      LOG.debug("Parser invalidating entire cache, interrupted while reconciling.");
+      Thread.currentThread().interrupt();
+      fileSnapshots.clear();
+      packageDirectories.clear();
       invalidateCache();
+      return;
     }
+
+    ImmutableSet<Path> parsedBuildFiles = state.getParsedBuildFiles();
+    for (Path buildFile : parsedBuildFiles) {
+      // There is no telling whether a build file parsed without a snapshot has changed.
+      if (!fileSnapshots.containsKey(buildFile)) {
+        state.invalidateDependents(buildFile);
+      }
+    }
+    for (Path path : changedPaths) {
+      LOG.verbose("Reconciling changed path %s", path);
+      fileSnapshots.remove(path);
+      state.invalidateDependents(path);
+      Path buildFile = packageDirectories.remove(path);
+      if (buildFile != null) {
+        // Files were added to or removed from the package, which may change its globs.
+        state.invalidateDependents(buildFile);
+      }
+    }
+    LOG.debug(
+        "Parser reconciled %d files in %d ms: %d changed, invalidated %d of %d build files.",
+        fileSnapshots.size() + changedPaths.size(),
+        stopwatch.elapsed(TimeUnit.MILLISECONDS),
+        changedPaths.size(),
+        parsedBuildFiles.size() - state.getParsedBuildFiles().size(),
+        parsedBuildFiles.size());
   }
 
   /**
@@ -867,6 +1037,7 @@ public class Parser {
 
     public void invalidateAll() {
       LOG.debug("Invalidating all cached data.");
+      projectTargetGraph = null;
       parsedBuildFiles.clear();
       memoizedTargetNodes.clear();
       targetsToFile.clear();
@@ -930,6 +1101,7 @@ public class Parser {
 
       if (parsedBuildFiles.containsKey(path)) {
         LOG.debug("Parser invalidating %s cache", path);
+        projectTargetGraph = null;
 
         // Remove all targets defined by path from cache.
         for (Map<String, Object> rawRule : parsedBuildFiles.get(path)) {
@@ -961,6 +1133,10 @@ public class Parser {
       LOG.verbose("Removed build file dependents %s defined by %s", removedDependents, path);
     }
 
+    public synchronized ImmutableSet<Path> getParsedBuildFiles() {
+      return ImmutableSet.copyOf(parsedBuildFiles.keySet());
+    }
+
     public boolean isParsed(Path buildFile) {
       return parsedBuildFiles.containsKey(normalize(buildFile));
     }
@@ -16,7 +16,9 @@
 
 package com.facebook.buck.parser;
 
-import com.facebook.buck.graph.AbstractBottomUpTraversal;
+import static com.facebook.buck.util.concurrent.MoreExecutors.newMultiThreadExecutorForTasks;
+import static com.google.common.util.concurrent.MoreExecutors.listeningDecorator;
+
 import com.facebook.buck.graph.DefaultImmutableDirectedAcyclicGraph;
 import com.facebook.buck.graph.MutableDirectedGraph;
 import com.facebook.buck.rules.AbstractDependencyVisitor;
@@ -24,9 +26,22 @@ import com.facebook.buck.rules.ActionGraph;
 import com.facebook.buck.rules.BuildRule;
 import com.facebook.buck.rules.BuildRuleResolver;
 import com.facebook.buck.rules.TargetNode;
-import com.facebook.buck.rules.TargetNodeToBuildRuleTransformer;
 import com.facebook.buck.util.HumanReadableException;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableSortedSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
 
 /**
  * Represents the graph of {@link com.facebook.buck.rules.TargetNode}s constructed
@@ -34,74 +49,167 @@ import com.google.common.collect.ImmutableSet;
  */
 public class TargetGraph extends DefaultImmutableDirectedAcyclicGraph<TargetNode<?>> {
 
+  private final ActionGraphCache actionGraphCache;
+
   public TargetGraph(MutableDirectedGraph<TargetNode<?>> graph) {
-    super(graph);
+    this(graph, new ActionGraphCache());
   }
 
-  public ActionGraph buildActionGraph(final BuildRuleResolver ruleResolver) {
-    final MutableDirectedGraph<BuildRule> actionGraph = new MutableDirectedGraph<>();
-
-    final TargetNodeToBuildRuleTransformer transformer = new TargetNodeToBuildRuleTransformer();
-
-    AbstractBottomUpTraversal<TargetNode<?>, ActionGraph> bottomUpTraversal =
-        new AbstractBottomUpTraversal<TargetNode<?>, ActionGraph>(this) {
-
-          @Override
-          public void visit(TargetNode<?> node) {
-            BuildRule rule;
-            try {
-              rule = transformer.transform(ruleResolver, node);
-            } catch (NoSuchBuildTargetException e) {
-              throw new HumanReadableException(e);
-            }
-            ruleResolver.addToIndex(rule);
-            actionGraph.addNode(rule);
+  /**
+   * @param actionGraphCache holds the {@link BuildRule}s created for the action graphs of previous
+   *     {@link TargetGraph}s, which are reused when their nodes have not changed.
+   */
+  TargetGraph(MutableDirectedGraph<TargetNode<?>> graph, ActionGraphCache actionGraphCache) {
+    super(graph);
+    this.actionGraphCache = Preconditions.checkNotNull(actionGraphCache);
+  }
 
-            for (BuildRule buildRule : rule.getDeps()) {
-              if (buildRule.getBuildTarget().isFlavored()) {
-                addGraphEnhancedDeps(rule);
-              }
-            }
+  /**
+   * Creates the {@link BuildRule}s for the nodes of this graph. The nodes are transformed in waves:
+   * each wave holds the nodes whose deps were all transformed by earlier waves, so the nodes in a
+   * wave are independent of each other and are transformed in parallel. Between waves, the new
+   * rules are added to {@code ruleResolver} and to the {@link ActionGraph} in the order of their
+   * targets, so the result does not depend on how the threads were scheduled.
+   * <p>
+   * Descriptions may also create rules for targets other than their own, such as the pre-dexed
+   * libraries of an android_binary, which other nodes of the same wave can create as well. The
+   * first node in target order keeps its rules, and the others are transformed again, against the
+   * rules added so far, as they would have been if the nodes had been transformed one at a time.
+   */
+  public ActionGraph buildActionGraph(final BuildRuleResolver ruleResolver)
+      throws InterruptedException {
+    MutableDirectedGraph<BuildRule> actionGraph = new MutableDirectedGraph<>();
+    ImmutableList<ImmutableSortedSet<TargetNode<?>>> waves = getWaves();
+
+    int maxWaveSize = 0;
+    for (ImmutableSortedSet<TargetNode<?>> wave : waves) {
+      maxWaveSize = Math.max(maxWaveSize, wave.size());
+    }
+    ListeningExecutorService executorService =
+        listeningDecorator(newMultiThreadExecutorForTasks("action-graph", maxWaveSize));
+
+    actionGraphCache.startActionGraph(ruleResolver);
+    try {
+      for (ImmutableSortedSet<TargetNode<?>> wave : waves) {
+        List<ListenableFuture<ActionGraphCache.NodeRules>> futures =
+            Lists.newArrayListWithCapacity(wave.size());
+        for (final TargetNode<?> node : wave) {
+          futures.add(
+              executorService.submit(
+                  new Callable<ActionGraphCache.NodeRules>() {
+                    @Override
+                    public ActionGraphCache.NodeRules call() throws NoSuchBuildTargetException {
+                      return actionGraphCache.getBuildRule(ruleResolver, node);
+                    }
+                  }));
+        }
+
+        List<ActionGraphCache.NodeRules> waveRules = Futures.allAsList(futures).get();
+        for (int i = 0; i < waveRules.size(); i++) {
+          ActionGraphCache.NodeRules nodeRules = waveRules.get(i);
+          if (isAnyIndexed(ruleResolver, nodeRules.sideRules)) {
+            nodeRules = actionGraphCache.getBuildRule(ruleResolver, wave.asList().get(i));
+          }
+          ruleResolver.addAllToIndex(nodeRules.sideRules);
+          BuildRule rule = ruleResolver.addToIndex(nodeRules.rule);
+          actionGraph.addNode(rule);
 
-            for (BuildRule dep : rule.getDeps()) {
-              actionGraph.addEdge(rule, dep);
+          for (BuildRule buildRule : rule.getDeps()) {
+            if (buildRule.getBuildTarget().isFlavored()) {
+              addGraphEnhancedDeps(actionGraph, rule);
             }
+          }
 
+          for (BuildRule dep : rule.getDeps()) {
+            actionGraph.addEdge(rule, dep);
           }
+        }
+      }
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof NoSuchBuildTargetException) {
+        throw new HumanReadableException((NoSuchBuildTargetException) e.getCause());
+      }
+      throw Throwables.propagate(e.getCause());
+    } catch (NoSuchBuildTargetException e) {
+      throw new HumanReadableException(e);
+    } finally {
+      executorService.shutdownNow();
+    }
+    actionGraphCache.finishActionGraph(getNodes());
+    return new ActionGraph(actionGraph);
+  }
 
-          @Override
-          public ActionGraph getResult() {
-            return new ActionGraph(actionGraph);
+  /**
+   * @return the nodes of this graph, grouped so that the deps of the nodes in each group are all in
+   *     earlier groups.
+   */
+  private ImmutableList<ImmutableSortedSet<TargetNode<?>>> getWaves() {
+    Map<TargetNode<?>, Integer> remainingDeps = Maps.newHashMap();
+    ImmutableSortedSet.Builder<TargetNode<?>> firstWave = ImmutableSortedSet.naturalOrder();
+    for (TargetNode<?> node : getNodes()) {
+      int deps = getOutgoingNodesFor(node).size();
+      if (deps == 0) {
+        firstWave.add(node);
+      } else {
+        remainingDeps.put(node, deps);
+      }
+    }
+
+    ImmutableList.Builder<ImmutableSortedSet<TargetNode<?>>> waves = ImmutableList.builder();
+    ImmutableSortedSet<TargetNode<?>> wave = firstWave.build();
+    while (!wave.isEmpty()) {
+      waves.add(wave);
+      ImmutableSortedSet.Builder<TargetNode<?>> nextWave = ImmutableSortedSet.naturalOrder();
+      for (TargetNode<?> node : wave) {
+        for (TargetNode<?> dependent : getIncomingNodesFor(node)) {
+          int deps = remainingDeps.get(dependent) - 1;
+          if (deps == 0) {
+            remainingDeps.remove(dependent);
+            nextWave.add(dependent);
+          } else {
+            remainingDeps.put(dependent, deps);
           }
+        }
+      }
+      wave = nextWave.build();
+    }
+    return waves.build();
+  }
 
-          private void addGraphEnhancedDeps(BuildRule rule) {
-            new AbstractDependencyVisitor(rule) {
-              @Override
-              public ImmutableSet<BuildRule> visit(BuildRule rule) {
-                ImmutableSet.Builder<BuildRule> depsToVisit = null;
-                boolean isRuleFlavored = rule.getBuildTarget().isFlavored();
-
-                for (BuildRule dep : rule.getDeps()) {
-                  boolean isDepFlavored = dep.getBuildTarget().isFlavored();
-                  if (isRuleFlavored || isDepFlavored) {
-                    actionGraph.addEdge(rule, dep);
-                  }
-
-                  if (isDepFlavored) {
-                    if (depsToVisit == null) {
-                      depsToVisit = ImmutableSet.builder();
-                    }
-                    depsToVisit.add(dep);
-                  }
-                }
+  private static boolean isAnyIndexed(BuildRuleResolver ruleResolver, Iterable<BuildRule> rules) {
+    for (BuildRule rule : rules) {
+      if (ruleResolver.getRuleOptional(rule.getBuildTarget()).isPresent()) {
+        return true;
+      }
+    }
+    return false;
+  }
 
-                return depsToVisit == null ? ImmutableSet.<BuildRule>of() : depsToVisit.build();
-              }
-            }.start();
+  private static void addGraphEnhancedDeps(
+      final MutableDirectedGraph<BuildRule> actionGraph,
+      BuildRule rule) {
+    new AbstractDependencyVisitor(rule) {
+      @Override
+      public ImmutableSet<BuildRule> visit(BuildRule rule) {
+        ImmutableSet.Builder<BuildRule> depsToVisit = null;
+        boolean isRuleFlavored = rule.getBuildTarget().isFlavored();
+
+        for (BuildRule dep : rule.getDeps()) {
+          boolean isDepFlavored = dep.getBuildTarget().isFlavored();
+          if (isRuleFlavored || isDepFlavored) {
+            actionGraph.addEdge(rule, dep);
+          }
+
+          if (isDepFlavored) {
+            if (depsToVisit == null) {
+              depsToVisit = ImmutableSet.builder();
+            }
+            depsToVisit.add(dep);
           }
-        };
+        }
 
-    bottomUpTraversal.traverse();
-    return bottomUpTraversal.getResult();
+        return depsToVisit == null ? ImmutableSet.<BuildRule>of() : depsToVisit.build();
+      }
+    }.start();
   }
 }
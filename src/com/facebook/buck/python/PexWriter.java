@@ -0,0 +1,409 @@
+/*
+ * Copyright 2014-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.python;
+
+import static com.facebook.buck.util.concurrent.MoreExecutors.newMultiThreadExecutorForTasks;
+import static com.google.common.util.concurrent.MoreExecutors.listeningDecorator;
+
+import com.facebook.buck.util.HumanReadableException;
+import com.facebook.buck.util.MoreFiles;
+import com.facebook.buck.zip.CustomZipEntry;
+import com.facebook.buck.zip.CustomZipOutputStream;
+import com.facebook.buck.zip.RawZipFile;
+import com.facebook.buck.zip.ZipOutputStreams;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.base.Charsets;
+import com.google.common.base.Optional;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSortedMap;
+import com.google.common.collect.Queues;
+import com.google.common.collect.Sets;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteSource;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+import java.util.zip.ZipEntry;
+
+/**
+ * Writes a PEX file from within Buck, laid out the same way as the ones built by {@code pex.py}
+ * through twitter.common.python's {@code PEXBuilder}: a "#!" line followed by a zip containing the
+ * modules and resources, {@code __init__.py} files for any packages missing one, the PEX runtime
+ * under {@code .bootstrap}, a {@code PEX-INFO} manifest and a {@code __main__.py} which starts the
+ * runtime.
+ * <p>
+ * Entries whose contents are the same, byte for byte, as those of the same entry in the previous
+ * version of the PEX are copied over without being recompressed. The others are compressed in
+ * parallel.
+ * <p>
+ * Unlike {@code PEXBuilder}, this doesn't precompile modules to {@code .pyc} files, which would
+ * need a Python interpreter. They get compiled on import instead.
+ */
+class PexWriter {
+
+  private static final String BOOTSTRAP_DIR = ".bootstrap";
+  private static final String PEX_INFO = "PEX-INFO";
+  private static final String MAIN = "__main__.py";
+  private static final String INIT = "__init__.py";
+
+  /** The contents of the {@code __init__.py} files added for packages which don't have one. */
+  private static final String NAMESPACE_PACKAGE_INIT =
+      "__import__('pkg_resources').declare_namespace(__name__)";
+
+  /** The {@code __main__.py} written by {@code PEXBuilder}, which hands off to the runtime. */
+  private static final String BOOTSTRAP_MAIN = "\n" +
+      "import os\n" +
+      "import sys\n" +
+      "\n" +
+      "__entry_point__ = None\n" +
+      "if '__file__' in locals() and __file__ is not None:\n" +
+      "  __entry_point__ = os.path.dirname(__file__)\n" +
+      "elif '__loader__' in locals():\n" +
+      "  from zipimport import zipimporter\n" +
+      "  from pkgutil import ImpLoader\n" +
+      "  if hasattr(__loader__, 'archive'):\n" +
+      "    __entry_point__ = __loader__.archive\n" +
+      "  elif isinstance(__loader__, ImpLoader):\n" +
+      "    __entry_point__ = os.path.dirname(__loader__.get_filename())\n" +
+      "\n" +
+      "if __entry_point__ is None:\n" +
+      "  sys.stderr.write('Could not launch python executable!\\n')\n" +
+      "  sys.exit(2)\n" +
+      "\n" +
+      "sys.path[0] = os.path.abspath(sys.path[0])\n" +
+      "sys.path.insert(0, os.path.abspath(os.path.join(__entry_point__, '.bootstrap')))\n" +
+      "\n" +
+      "from _twitter_common_python.pex_bootstrapper import bootstrap_pex\n" +
+      "bootstrap_pex(__entry_point__)\n";
+
+  /** Where the pieces of the PEX runtime live, relative to Buck's {@code third-party/py}. */
+  private static final String PKG_RESOURCES = "setuptools/pkg_resources.py";
+  private static final String RUNTIME = "twitter-commons/src/python/twitter/common/python";
+  private static final String RUNTIME_PACKAGE = "_twitter_common_python";
+  private static final ImmutableList<String> RUNTIME_SUBPACKAGES = ImmutableList.of("", "http");
+
+  private static final ObjectMapper MAPPER = new ObjectMapper();
+
+  private final Path pathToThirdPartyPy;
+  private final String hashbang;
+  private final String entryPoint;
+
+  /**
+   * @param pathToThirdPartyPy Buck's {@code third-party/py} directory, which contains the PEX
+   *     runtime.
+   * @param hashbang the interpreter to run the PEX with, e.g. {@code /usr/bin/env python2.7}.
+   * @param entryPoint the module to run.
+   */
+  PexWriter(Path pathToThirdPartyPy, String hashbang, String entryPoint) {
+    this.pathToThirdPartyPy = Preconditions.checkNotNull(pathToThirdPartyPy);
+    this.hashbang = Preconditions.checkNotNull(hashbang);
+    this.entryPoint = Preconditions.checkNotNull(entryPoint);
+  }
+
+  /**
+   * Writes the PEX to {@code output}, reusing the compressed contents of the PEX already there,
+   * if any. All paths must be absolute.
+   *
+   * @param modules map from the path of each module in the PEX to its source.
+   * @param resources map from the path of each resource in the PEX to its source.
+   */
+  void write(
+      Path output,
+      ImmutableMap<Path, Path> modules,
+      ImmutableMap<Path, Path> resources) throws IOException, InterruptedException {
+    ImmutableSortedMap<String, ByteSource> codeEntries = getCodeEntries(modules, resources);
+    for (String name : codeEntries.keySet()) {
+      if (name.equals(MAIN) || name.equals(PEX_INFO) || name.startsWith(BOOTSTRAP_DIR + "/")) {
+        throw new HumanReadableException(
+            "%s can't be packaged in a PEX, as it clashes with the PEX runtime", name);
+      }
+    }
+    ImmutableMap.Builder<String, ByteSource> allEntries = ImmutableMap.builder();
+    allEntries.putAll(codeEntries);
+    allEntries.putAll(getBootstrapEntries());
+    ImmutableList<Map.Entry<String, ByteSource>> entries =
+        allEntries.build().entrySet().asList();
+
+    Path temp = output.resolveSibling(output.getFileName() + ".tmp");
+    Optional<RawZipFile> previous = openPrevious(output);
+    ListeningExecutorService executorService =
+        listeningDecorator(newMultiThreadExecutorForTasks("pex", entries.size()));
+
+    try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(temp))) {
+      out.write(("#!" + hashbang + "\n").getBytes(Charsets.UTF_8));
+
+      // Write the entries in order as they become ready, remembering the hashes of the code for
+      // the manifest. Only enough entries to keep every thread busy are prepared ahead of the one
+      // being written, so that prepared entries do not pile up in memory waiting for their turn.
+      int maxEntriesInFlight = 2 * Runtime.getRuntime().availableProcessors();
+      Iterator<Map.Entry<String, ByteSource>> entriesToPrepare = entries.iterator();
+      Deque<ListenableFuture<PreparedEntry>> entriesInFlight = Queues.newArrayDeque();
+      Hasher codeHash = Hashing.sha1().newHasher();
+      try (CustomZipOutputStream zip = ZipOutputStreams.newOutputStream(out)) {
+        while (entriesToPrepare.hasNext() || !entriesInFlight.isEmpty()) {
+          while (entriesToPrepare.hasNext() && entriesInFlight.size() < maxEntriesInFlight) {
+            entriesInFlight.add(
+                executorService.submit(newPrepareEntryTask(entriesToPrepare.next(), previous)));
+          }
+          PreparedEntry entry = entriesInFlight.remove().get();
+          if (codeEntries.containsKey(entry.entry.getName())) {
+            codeHash.putString(entry.entry.getName(), Charsets.UTF_8);
+            codeHash.putBytes(entry.sha1.asBytes());
+          }
+          writeEntry(zip, entry);
+        }
+        writeEntry(
+            zip,
+            prepareEntry(
+                PEX_INFO,
+                ByteSource.wrap(getPexInfo(codeHash.hash()).getBytes(Charsets.UTF_8)),
+                Optional.<RawZipFile>absent()));
+      }
+    } catch (ExecutionException e) {
+      Throwables.propagateIfInstanceOf(e.getCause(), IOException.class);
+      throw Throwables.propagate(e.getCause());
+    } finally {
+      executorService.shutdownNow();
+      if (previous.isPresent()) {
+        previous.get().close();
+      }
+    }
+
+    Files.move(temp, output, StandardCopyOption.REPLACE_EXISTING);
+    MoreFiles.makeExecutable(output.toFile());
+  }
+
+  /**
+   * @return the modules, generated {@code __init__.py} files and resources to put in the PEX,
+   *     sorted by name.
+   */
+  private static ImmutableSortedMap<String, ByteSource> getCodeEntries(
+      ImmutableMap<Path, Path> modules,
+      ImmutableMap<Path, Path> resources) {
+    ImmutableSortedMap.Builder<String, ByteSource> entries = ImmutableSortedMap.naturalOrder();
+    Set<String> moduleNames = Sets.newHashSet();
+    for (Map.Entry<Path, Path> module : modules.entrySet()) {
+      moduleNames.add(getEntryName(module.getKey()));
+      entries.put(getEntryName(module.getKey()), asByteSource(module.getValue()));
+    }
+
+    // Like PEXBuilder, make sure that every directory containing modules is a package.
+    Set<String> inits = Sets.newHashSet();
+    for (Path module : modules.keySet()) {
+      for (Path dir = module.getParent(); dir != null; dir = dir.getParent()) {
+        String init = getEntryName(dir.resolve(INIT));
+        if (!moduleNames.contains(init) && inits.add(init)) {
+          entries.put(init, ByteSource.wrap(NAMESPACE_PACKAGE_INIT.getBytes(Charsets.UTF_8)));
+        }
+      }
+    }
+
+    for (Map.Entry<Path, Path> resource : resources.entrySet()) {
+      entries.put(getEntryName(resource.getKey()), asByteSource(resource.getValue()));
+    }
+    return entries.build();
+  }
+
+  /**
+   * @return the runtime which starts the PEX, taken from Buck's own copy of twitter.common.python,
+   *     and the {@code __main__.py} which runs it.
+   */
+  private ImmutableSortedMap<String, ByteSource> getBootstrapEntries() throws IOException {
+    ImmutableSortedMap.Builder<String, ByteSource> entries = ImmutableSortedMap.naturalOrder();
+    entries.put(
+        BOOTSTRAP_DIR + "/pkg_resources.py",
+        asByteSource(pathToThirdPartyPy.resolve(PKG_RESOURCES)));
+    for (String subpackage : RUNTIME_SUBPACKAGES) {
+      Path dir = pathToThirdPartyPy.resolve(RUNTIME).resolve(subpackage);
+      String prefix = BOOTSTRAP_DIR + "/" + RUNTIME_PACKAGE + "/" +
+          (subpackage.isEmpty() ? "" : subpackage + "/");
+      try (DirectoryStream<Path> sources = Files.newDirectoryStream(dir, "*.py")) {
+        for (Path source : sources) {
+          entries.put(prefix + source.getFileName(), asByteSource(source));
+        }
+      }
+    }
+    entries.put(MAIN, ByteSource.wrap(BOOTSTRAP_MAIN.getBytes(Charsets.UTF_8)));
+    return entries.build();
+  }
+
+  private String getPexInfo(HashCode codeHash) throws IOException {
+    ImmutableMap<String, Object> pexInfo = ImmutableMap.<String, Object>builder()
+        .put("requirements", ImmutableList.of())
+        .put("distributions", ImmutableMap.of())
+        .put("always_write_cache", false)
+        .put("build_properties", ImmutableMap.of())
+        .put("zip_safe", true)
+        .put("entry_point", entryPoint)
+        .put("code_hash", codeHash.toString())
+        .build();
+    return MAPPER.writeValueAsString(pexInfo);
+  }
+
+  private static Optional<RawZipFile> openPrevious(Path output) {
+    if (!Files.exists(output)) {
+      return Optional.absent();
+    }
+    try {
+      return Optional.of(RawZipFile.open(output));
+    } catch (IOException e) {
+      // The previous PEX is only an optimization, so just rebuild everything if it's unreadable.
+      return Optional.absent();
+    }
+  }
+
+  private static Callable<PreparedEntry> newPrepareEntryTask(
+      final Map.Entry<String, ByteSource> entry,
+      final Optional<RawZipFile> previous) {
+    return new Callable<PreparedEntry>() {
+      @Override
+      public PreparedEntry call() throws IOException {
+        return prepareEntry(entry.getKey(), entry.getValue(), previous);
+      }
+    };
+  }
+
+  /**
+   * Reads the contents of an entry and compresses them, or reuses the compressed contents of the
+   * same entry in the previous PEX if they haven't changed. Matching CRCs and sizes aren't enough
+   * to tell, so the previous contents are inflated and compared, which is still much cheaper than
+   * deflating the new ones.
+   */
+  private static PreparedEntry prepareEntry(
+      String name,
+      ByteSource source,
+      Optional<RawZipFile> previous) throws IOException {
+    byte[] contents = source.read();
+    long crc = Hashing.crc32().hashBytes(contents).padToLong();
+    HashCode sha1 = Hashing.sha1().hashBytes(contents);
+
+    CustomZipEntry entry = new CustomZipEntry(name);
+    // Keep the PEX deterministic.
+    entry.setTime(0);
+    entry.setCrc(crc);
+    entry.setSize(contents.length);
+
+    if (previous.isPresent()) {
+      Optional<ZipEntry> previousEntry = previous.get().getEntry(name);
+      if (previousEntry.isPresent() &&
+          previousEntry.get().getMethod() == ZipEntry.DEFLATED &&
+          previousEntry.get().getSize() == contents.length &&
+          previousEntry.get().getCrc() == crc) {
+        byte[] previousRawContents = previous.get().getRawContents(name);
+        if (inflatesTo(previousRawContents, contents)) {
+          entry.setCompressedSize(previousRawContents.length);
+          return new PreparedEntry(entry, previousRawContents, sha1);
+        }
+      }
+    }
+
+    byte[] compressed = deflate(contents);
+    entry.setCompressedSize(compressed.length);
+    return new PreparedEntry(entry, compressed, sha1);
+  }
+
+  private static byte[] deflate(byte[] contents) {
+    Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, /* nowrap */ true);
+    try {
+      deflater.setInput(contents);
+      deflater.finish();
+      ByteArrayOutputStream out = new ByteArrayOutputStream(contents.length / 2 + 64);
+      byte[] buffer = new byte[8192];
+      while (!deflater.finished()) {
+        int count = deflater.deflate(buffer);
+        out.write(buffer, 0, count);
+      }
+      return out.toByteArray();
+    } finally {
+      deflater.end();
+    }
+  }
+
+  private static boolean inflatesTo(byte[] compressed, byte[] contents) {
+    Inflater inflater = new Inflater(/* nowrap */ true);
+    try {
+      inflater.setInput(compressed);
+      // One extra byte, so that contents with trailing data don't look like a match.
+      byte[] inflated = new byte[contents.length + 1];
+      int count = 0;
+      while (count < inflated.length && !inflater.finished()) {
+        int read = inflater.inflate(inflated, count, inflated.length - count);
+        if (read == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+          break;
+        }
+        count += read;
+      }
+      return count == contents.length &&
+          Arrays.equals(Arrays.copyOf(inflated, count), contents);
+    } catch (DataFormatException e) {
+      return false;
+    } finally {
+      inflater.end();
+    }
+  }
+
+  private static void writeEntry(CustomZipOutputStream zip, PreparedEntry entry)
+      throws IOException {
+    zip.putNextRawEntry(entry.entry);
+    zip.write(entry.rawContents);
+    zip.closeEntry();
+  }
+
+  private static ByteSource asByteSource(Path path) {
+    return com.google.common.io.Files.asByteSource(path.toFile());
+  }
+
+  private static String getEntryName(Path path) {
+    return path.toString().replace('\\', '/');
+  }
+
+  private static class PreparedEntry {
+    public final ZipEntry entry;
+    public final byte[] rawContents;
+    public final HashCode sha1;
+
+    public PreparedEntry(ZipEntry entry, byte[] rawContents, HashCode sha1) {
+      this.entry = entry;
+      this.rawContents = rawContents;
+      this.sha1 = sha1;
+    }
+  }
+
+}
@@ -32,6 +32,7 @@ import com.facebook.buck.step.Step;
 import com.facebook.buck.step.fs.MkdirStep;
 import com.facebook.buck.util.ProjectFilesystem;
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Optional;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableCollection;
 import com.google.common.collect.ImmutableList;
@@ -39,12 +40,17 @@ import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSortedSet;
 
 import java.nio.file.Path;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 public class PythonBinary extends AbstractBuildRule implements BinaryBuildRule {
 
   private static final BuildableProperties OUTPUT_TYPE = new BuildableProperties(PACKAGING);
 
-  private final Path pathToPex;
+  private static final Pattern PYTHON_VERSION_NUMBER = Pattern.compile("\\d+\\.\\d+");
+
+  private final Optional<Path> pathToPex;
+  private final Path pathToThirdPartyPy;
   private final Path main;
   private final PythonPackageComponents components;
   private final PythonEnvironment pythonEnvironment;
@@ -52,12 +58,14 @@ public class PythonBinary extends AbstractBuildRule implements BinaryBuildRule {
   protected PythonBinary(
       BuildRuleParams params,
       SourcePathResolver resolver,
-      Path pathToPex,
+      Optional<Path> pathToPex,
+      Path pathToThirdPartyPy,
       PythonEnvironment pythonEnvironment,
       Path main,
       PythonPackageComponents components) {
     super(params, resolver);
     this.pathToPex = Preconditions.checkNotNull(pathToPex);
+    this.pathToThirdPartyPy = Preconditions.checkNotNull(pathToThirdPartyPy);
     this.pythonEnvironment = Preconditions.checkNotNull(pythonEnvironment);
     this.main = Preconditions.checkNotNull(main);
     this.components = Preconditions.checkNotNull(components);
@@ -98,6 +106,7 @@ public class PythonBinary extends AbstractBuildRule implements BinaryBuildRule {
   public RuleKey.Builder appendDetailsToRuleKey(RuleKey.Builder builder) {
     builder
         .set("packageType", "pex")
+        .set("pexBuilder", pathToPex.isPresent() ? "external" : "internal")
         .set("pythonVersion", pythonEnvironment.getPythonVersion().toString())
         .set("mainModule", main.toString());
 
@@ -116,6 +125,16 @@ public class PythonBinary extends AbstractBuildRule implements BinaryBuildRule {
     return builder;
   }
 
+  /**
+   * @return the interpreter line for PEXs run with the given version of Python, in the same
+   *     portable form used by the PEX tool, e.g. {@code /usr/bin/env python2.7}.
+   */
+  @VisibleForTesting
+  static String getHashbang(PythonVersion version) {
+    Matcher matcher = PYTHON_VERSION_NUMBER.matcher(version.toString());
+    return "/usr/bin/env python" + (matcher.find() ? matcher.group() : "");
+  }
+
   @Override
   public ImmutableCollection<Path> getInputsToCompareToOutput() {
     return ImmutableList.of();
@@ -132,15 +151,26 @@ public class PythonBinary extends AbstractBuildRule implements BinaryBuildRule {
     // Make sure the parent directory exists.
     steps.add(new MkdirStep(binPath.getParent()));
 
-    // Generate and return the PEX build step.
-    steps.add(new PexStep(
-        pathToPex,
-        pythonEnvironment.getPythonPath(),
-        binPath,
-        PythonUtil.toModuleName(getBuildTarget(), main.toString()),
-        getResolver().getMappedPaths(components.getModules()),
-        getResolver().getMappedPaths(components.getResources()),
-        getResolver().getMappedPaths(components.getNativeLibraries())));
+    // Generate and return the PEX build step, using the configured PEX tool if there is one.
+    String entry = PythonUtil.toModuleName(getBuildTarget(), main.toString());
+    if (pathToPex.isPresent()) {
+      steps.add(new PexStep(
+          pathToPex.get(),
+          pythonEnvironment.getPythonPath(),
+          binPath,
+          entry,
+          getResolver().getMappedPaths(components.getModules()),
+          getResolver().getMappedPaths(components.getResources()),
+          getResolver().getMappedPaths(components.getNativeLibraries())));
+    } else {
+      steps.add(new WritePexStep(
+          pathToThirdPartyPy,
+          getHashbang(pythonEnvironment.getPythonVersion()),
+          binPath,
+          entry,
+          getResolver().getMappedPaths(components.getModules()),
+          getResolver().getMappedPaths(components.getResources())));
+    }
 
     // Record the executable package for caching.
     buildableContext.recordArtifact(getBinPath());
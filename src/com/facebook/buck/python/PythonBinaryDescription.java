@@ -35,16 +35,20 @@ import java.nio.file.Paths;
 
 public class PythonBinaryDescription implements Description<PythonBinaryDescription.Arg> {
 
-  public static final Path DEFAULT_PATH_TO_PEX =
+  /** Buck's third-party/py directory, which holds the runtime packaged into each PEX. */
+  public static final Path PATH_TO_THIRD_PARTY_PY =
       Paths.get(System.getProperty("buck.buck_dir", System.getProperty("user.dir")))
-          .resolve("src/com/facebook/buck/python/pex.py");
+          .resolve("third-party/py");
 
   public static final BuildRuleType TYPE = new BuildRuleType("python_binary");
 
-  private final Path pathToPex;
+  private final Optional<Path> pathToPex;
   private final PythonEnvironment pythonEnvironment;
 
-  public PythonBinaryDescription(Path pathToPex, PythonEnvironment pythonEnv) {
+  /**
+   * @param pathToPex the tool to build PEXs with, or absent to build them within Buck.
+   */
+  public PythonBinaryDescription(Optional<Path> pathToPex, PythonEnvironment pythonEnv) {
     this.pathToPex = Preconditions.checkNotNull(pathToPex);
     this.pythonEnvironment = Preconditions.checkNotNull(pythonEnv);
   }
@@ -88,6 +92,7 @@ public class PythonBinaryDescription implements Description<PythonBinaryDescript
         binaryParams,
         new SourcePathResolver(resolver),
         pathToPex,
+        PATH_TO_THIRD_PARTY_PY,
         pythonEnvironment,
         mainModule,
         allPackageComponents);
@@ -59,12 +59,12 @@ public class PythonTestDescription implements Description<PythonTestDescription.
 
   private static final Flavor BINARY_FLAVOR = new Flavor("binary");
 
-  private final Path pathToPex;
+  private final Optional<Path> pathToPex;
   private final Path pathToPythonTestMain;
   private final PythonEnvironment pythonEnvironment;
 
   public PythonTestDescription(
-      Path pathToPex,
+      Optional<Path> pathToPex,
       Path pathToPythonTestMain,
       PythonEnvironment pythonEnvironment) {
     this.pathToPex = Preconditions.checkNotNull(pathToPex);
@@ -229,6 +229,7 @@ public class PythonTestDescription implements Description<PythonTestDescription.
         binaryParams,
         pathResolver,
         pathToPex,
+        PythonBinaryDescription.PATH_TO_THIRD_PARTY_PY,
         pythonEnvironment,
         getTestMainName(),
         allComponents);
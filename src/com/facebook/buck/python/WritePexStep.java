@@ -0,0 +1,104 @@
+/*
+ * Copyright 2014-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.python;
+
+import com.facebook.buck.step.ExecutionContext;
+import com.facebook.buck.step.Step;
+import com.facebook.buck.util.ProjectFilesystem;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableMap;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Map;
+
+/**
+ * Builds a PEX file in-process with a {@link PexWriter}, rather than by running a PEX tool like
+ * {@link PexStep} does.
+ */
+public class WritePexStep implements Step {
+
+  // Buck's third-party/py directory, where the PEX runtime lives.
+  private final Path pathToThirdPartyPy;
+
+  // The interpreter line to start the PEX with.
+  private final String hashbang;
+
+  // The path to the executable to create.
+  private final Path destination;
+
+  // The main module that begins execution in the PEX.
+  private final String entry;
+
+  // The map of modules to sources to package into the PEX.
+  private final ImmutableMap<Path, Path> modules;
+
+  // The map of resources to include in the PEX.
+  private final ImmutableMap<Path, Path> resources;
+
+  public WritePexStep(
+      Path pathToThirdPartyPy,
+      String hashbang,
+      Path destination,
+      String entry,
+      ImmutableMap<Path, Path> modules,
+      ImmutableMap<Path, Path> resources) {
+    this.pathToThirdPartyPy = Preconditions.checkNotNull(pathToThirdPartyPy);
+    this.hashbang = Preconditions.checkNotNull(hashbang);
+    this.destination = Preconditions.checkNotNull(destination);
+    this.entry = Preconditions.checkNotNull(entry);
+    this.modules = Preconditions.checkNotNull(modules);
+    this.resources = Preconditions.checkNotNull(resources);
+  }
+
+  private static ImmutableMap<Path, Path> resolveSources(
+      ProjectFilesystem filesystem,
+      ImmutableMap<Path, Path> components) {
+    ImmutableMap.Builder<Path, Path> resolved = ImmutableMap.builder();
+    for (Map.Entry<Path, Path> component : components.entrySet()) {
+      resolved.put(component.getKey(), filesystem.resolve(component.getValue()));
+    }
+    return resolved.build();
+  }
+
+  @Override
+  public int execute(ExecutionContext context) throws InterruptedException {
+    ProjectFilesystem filesystem = context.getProjectFilesystem();
+    Path output = filesystem.resolve(destination);
+    try {
+      new PexWriter(pathToThirdPartyPy, hashbang, entry).write(
+          output,
+          resolveSources(filesystem, modules),
+          resolveSources(filesystem, resources));
+    } catch (IOException e) {
+      context.logError(e, "Error writing PEX %s", output);
+      return 1;
+    }
+    return 0;
+  }
+
+  @Override
+  public String getShortName() {
+    return "pex";
+  }
+
+  @Override
+  public String getDescription(ExecutionContext context) {
+    return String.format("pex %s (entry point %s)", destination, entry);
+  }
+
+}
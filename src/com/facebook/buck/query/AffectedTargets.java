@@ -0,0 +1,96 @@
+/*
+ * Copyright 2014-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.query;
+
+import com.facebook.buck.model.BuildTarget;
+import com.facebook.buck.rules.TargetNode;
+import com.facebook.buck.util.BuckConstant;
+import com.facebook.buck.util.ProjectFilesystem;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+
+import javax.annotation.Nullable;
+
+/**
+ * Maps a set of changed files to the nodes of a target graph whose outputs may have changed as a
+ * result: the owners of the files and everything that transitively depends on them.
+ */
+public class AffectedTargets {
+
+  /** Utility class: do not instantiate. */
+  private AffectedTargets() {}
+
+  /**
+   * @param changedPaths paths relative to the project root of files that were modified, added or
+   *     removed.
+   * @return the nodes that own one of {@code changedPaths}, together with their reverse deps.
+   *     A changed build file affects every node of its package. A removed file that is no longer
+   *     the input of any node affects every node of the package it was in, as the package may have
+   *     picked it up with a glob.
+   */
+  public static ImmutableSet<TargetNode<?>> find(
+      TargetGraphIndex index,
+      ProjectFilesystem filesystem,
+      Iterable<Path> changedPaths) {
+    Set<TargetNode<?>> affected = Sets.newLinkedHashSet();
+    for (Path changedPath : changedPaths) {
+      Path path = changedPath.normalize();
+      if (path.endsWith(BuckConstant.BUILD_RULES_FILE_NAME)) {
+        affected.addAll(index.getNodesInPackage(getBaseName(path.getParent())));
+        continue;
+      }
+
+      ImmutableSet<TargetNode<?>> owners = index.getOwners(path);
+      if (owners.isEmpty() && !filesystem.exists(path)) {
+        owners = getNodesInEnclosingPackage(index, path);
+      }
+      affected.addAll(owners);
+    }
+
+    // Each node is enqueued at most once, so this is linear in the size of the result.
+    List<TargetNode<?>> queue = Lists.newArrayList(affected);
+    for (int i = 0; i < queue.size(); i++) {
+      for (TargetNode<?> dependent : index.getReverseDeps(queue.get(i))) {
+        if (affected.add(dependent)) {
+          queue.add(dependent);
+        }
+      }
+    }
+    return ImmutableSet.copyOf(affected);
+  }
+
+  private static ImmutableSet<TargetNode<?>> getNodesInEnclosingPackage(
+      TargetGraphIndex index,
+      Path path) {
+    for (Path directory = path.getParent(); directory != null; directory = directory.getParent()) {
+      ImmutableSet<TargetNode<?>> nodes = index.getNodesInPackage(getBaseName(directory));
+      if (!nodes.isEmpty()) {
+        return nodes;
+      }
+    }
+    return index.getNodesInPackage(BuildTarget.BUILD_TARGET_PREFIX);
+  }
+
+  private static String getBaseName(@Nullable Path directory) {
+    return BuildTarget.BUILD_TARGET_PREFIX + (directory == null ? "" : directory.toString());
+  }
+}
@@ -0,0 +1,35 @@
+/*
+ * Copyright 2014-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.query;
+
+import com.facebook.buck.util.ExceptionWithHumanReadableMessage;
+
+/**
+ * Thrown when a query cannot be parsed or refers to targets that do not exist.
+ */
+@SuppressWarnings("serial")
+public class QueryException extends Exception implements ExceptionWithHumanReadableMessage {
+
+  public QueryException(String format, Object... args) {
+    super(String.format(format, args));
+  }
+
+  @Override
+  public String getHumanReadableErrorMessage() {
+    return getMessage();
+  }
+}
@@ -0,0 +1,29 @@
+/*
+ * Copyright 2014-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.query;
+
+import com.facebook.buck.rules.TargetNode;
+import com.google.common.collect.ImmutableSet;
+
+/**
+ * A parsed query, such as {@code rdeps(owner('src/Foo.java')) ^ kind('_test$', //...)}, which
+ * evaluates to a set of nodes of the target graph. See {@link QueryParser} for the syntax.
+ */
+public interface QueryExpression {
+
+  ImmutableSet<TargetNode<?>> eval(TargetGraphIndex index) throws QueryException;
+}
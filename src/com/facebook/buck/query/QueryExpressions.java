@@ -0,0 +1,332 @@
+/*
+ * Copyright 2014-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.query;
+
+import com.facebook.buck.model.BuildTarget;
+import com.facebook.buck.parser.BuildTargetParser;
+import com.facebook.buck.parser.ParseContext;
+import com.facebook.buck.rules.TargetNode;
+import com.facebook.buck.util.HumanReadableException;
+import com.google.common.base.Optional;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Factory methods for the {@link QueryExpression}s that make up a query.
+ */
+public class QueryExpressions {
+
+  private static final String RECURSIVE_SUFFIX = "/...";
+
+  /** Utility class: do not instantiate. */
+  private QueryExpressions() {}
+
+  /**
+   * @param pattern a fully-qualified target, such as {@code //foo:bar}, every target in a package,
+   *     such as {@code //foo:}, or every target in and below a package, such as {@code //foo/...}.
+   */
+  public static QueryExpression targetPattern(String pattern) {
+    return new TargetPattern(pattern);
+  }
+
+  /**
+   * @return the nodes of {@code expression} and their deps, up to {@code depth} edges away.
+   */
+  public static QueryExpression deps(QueryExpression expression, int depth) {
+    return new Closure("deps", expression, depth, /* reverse */ false);
+  }
+
+  /**
+   * @return the nodes of {@code expression} and the nodes that depend on them, up to
+   *     {@code depth} edges away, anywhere in the project.
+   */
+  public static QueryExpression rdeps(QueryExpression expression, int depth) {
+    return new Closure("rdeps", expression, depth, /* reverse */ true);
+  }
+
+  /**
+   * @param path relative to the project root.
+   * @return the nodes that have {@code path} among their inputs.
+   */
+  public static QueryExpression owner(String path) {
+    return new Owner(path);
+  }
+
+  /**
+   * @return the nodes of {@code expression} whose rule type, e.g. {@code java_library}, contains a
+   *     match for {@code regex}.
+   */
+  public static QueryExpression kind(String regex, QueryExpression expression) {
+    return new Kind(regex, expression);
+  }
+
+  /**
+   * @return the nodes of {@code expression} whose fully-qualified target contains a match for
+   *     {@code regex}.
+   */
+  public static QueryExpression filter(String regex, QueryExpression expression) {
+    return new Filter(regex, expression);
+  }
+
+  /**
+   * @return the nodes of {@code expression} that have {@code label} in their {@code labels}.
+   */
+  public static QueryExpression label(String label, QueryExpression expression) {
+    return new Label(label, expression);
+  }
+
+  public static QueryExpression union(QueryExpression left, QueryExpression right) {
+    return new SetOperation("+", left, right);
+  }
+
+  public static QueryExpression except(QueryExpression left, QueryExpression right) {
+    return new SetOperation("-", left, right);
+  }
+
+  public static QueryExpression intersect(QueryExpression left, QueryExpression right) {
+    return new SetOperation("^", left, right);
+  }
+
+  private static Pattern compile(String regex) throws QueryException {
+    try {
+      return Pattern.compile(regex);
+    } catch (IllegalArgumentException e) {
+      throw new QueryException("Invalid regular expression '%s': %s", regex, e.getMessage());
+    }
+  }
+
+  private static String quote(String word) {
+    return "'" + word + "'";
+  }
+
+  private static class TargetPattern implements QueryExpression {
+    private final String pattern;
+
+    private TargetPattern(String pattern) {
+      this.pattern = Preconditions.checkNotNull(pattern);
+    }
+
+    @Override
+    public ImmutableSet<TargetNode<?>> eval(TargetGraphIndex index) throws QueryException {
+      if (!pattern.startsWith(BuildTarget.BUILD_TARGET_PREFIX)) {
+        throw new QueryException("Target patterns must start with //, but was '%s'.", pattern);
+      }
+
+      if (pattern.endsWith(RECURSIVE_SUFFIX)) {
+        String baseName = pattern.substring(0, pattern.length() - RECURSIVE_SUFFIX.length());
+        return index.getNodesInPackagesUnder(
+            baseName.isEmpty() ? BuildTarget.BUILD_TARGET_PREFIX : baseName);
+      }
+
+      if (pattern.endsWith(":")) {
+        return index.getNodesInPackage(pattern.substring(0, pattern.length() - 1));
+      }
+
+      BuildTarget target;
+      try {
+        target = new BuildTargetParser().parse(pattern, ParseContext.fullyQualified());
+      } catch (HumanReadableException | IllegalArgumentException e) {
+        throw new QueryException("Invalid target '%s': %s", pattern, e.getMessage());
+      }
+      Optional<TargetNode<?>> node = index.getNode(target);
+      if (!node.isPresent()) {
+        throw new QueryException("No such target: '%s'.", pattern);
+      }
+      return ImmutableSet.<TargetNode<?>>of(node.get());
+    }
+
+    @Override
+    public String toString() {
+      return pattern;
+    }
+  }
+
+  private static class Closure implements QueryExpression {
+    private final String name;
+    private final QueryExpression expression;
+    private final int depth;
+    private final boolean reverse;
+
+    private Closure(String name, QueryExpression expression, int depth, boolean reverse) {
+      Preconditions.checkArgument(depth >= 0, "depth must not be negative but was %s", depth);
+      this.name = name;
+      this.expression = Preconditions.checkNotNull(expression);
+      this.depth = depth;
+      this.reverse = reverse;
+    }
+
+    @Override
+    public ImmutableSet<TargetNode<?>> eval(TargetGraphIndex index) throws QueryException {
+      Set<TargetNode<?>> visited = Sets.newLinkedHashSet(expression.eval(index));
+      List<TargetNode<?>> frontier = Lists.newArrayList(visited);
+      for (int i = 0; i < depth && !frontier.isEmpty(); i++) {
+        List<TargetNode<?>> next = Lists.newArrayList();
+        for (TargetNode<?> node : frontier) {
+          for (TargetNode<?> neighbor :
+              reverse ? index.getReverseDeps(node) : index.getDeps(node)) {
+            if (visited.add(neighbor)) {
+              next.add(neighbor);
+            }
+          }
+        }
+        frontier = next;
+      }
+      return ImmutableSet.copyOf(visited);
+    }
+
+    @Override
+    public String toString() {
+      return name + "(" + expression + (depth == Integer.MAX_VALUE ? "" : ", " + depth) + ")";
+    }
+  }
+
+  private static class Owner implements QueryExpression {
+    private final String path;
+
+    private Owner(String path) {
+      this.path = Preconditions.checkNotNull(path);
+    }
+
+    @Override
+    public ImmutableSet<TargetNode<?>> eval(TargetGraphIndex index) throws QueryException {
+      try {
+        return index.getOwners(Paths.get(path));
+      } catch (IllegalArgumentException e) {
+        throw new QueryException("Invalid path '%s': %s", path, e.getMessage());
+      }
+    }
+
+    @Override
+    public String toString() {
+      return "owner(" + quote(path) + ")";
+    }
+  }
+
+  private static class Kind implements QueryExpression {
+    private final String regex;
+    private final QueryExpression expression;
+
+    private Kind(String regex, QueryExpression expression) {
+      this.regex = Preconditions.checkNotNull(regex);
+      this.expression = Preconditions.checkNotNull(expression);
+    }
+
+    @Override
+    public ImmutableSet<TargetNode<?>> eval(TargetGraphIndex index) throws QueryException {
+      Pattern pattern = compile(regex);
+      Set<TargetNode<?>> ofKind = Sets.newHashSet();
+      for (String type : index.getTypes()) {
+        if (pattern.matcher(type).find()) {
+          ofKind.addAll(index.getNodesOfType(type));
+        }
+      }
+      return ImmutableSet.copyOf(Sets.intersection(expression.eval(index), ofKind));
+    }
+
+    @Override
+    public String toString() {
+      return "kind(" + quote(regex) + ", " + expression + ")";
+    }
+  }
+
+  private static class Filter implements QueryExpression {
+    private final String regex;
+    private final QueryExpression expression;
+
+    private Filter(String regex, QueryExpression expression) {
+      this.regex = Preconditions.checkNotNull(regex);
+      this.expression = Preconditions.checkNotNull(expression);
+    }
+
+    @Override
+    public ImmutableSet<TargetNode<?>> eval(TargetGraphIndex index) throws QueryException {
+      Pattern pattern = compile(regex);
+      ImmutableSet.Builder<TargetNode<?>> result = ImmutableSet.builder();
+      for (TargetNode<?> node : expression.eval(index)) {
+        if (pattern.matcher(node.getBuildTarget().getFullyQualifiedName()).find()) {
+          result.add(node);
+        }
+      }
+      return result.build();
+    }
+
+    @Override
+    public String toString() {
+      return "filter(" + quote(regex) + ", " + expression + ")";
+    }
+  }
+
+  private static class Label implements QueryExpression {
+    private final String label;
+    private final QueryExpression expression;
+
+    private Label(String label, QueryExpression expression) {
+      this.label = Preconditions.checkNotNull(label);
+      this.expression = Preconditions.checkNotNull(expression);
+    }
+
+    @Override
+    public ImmutableSet<TargetNode<?>> eval(TargetGraphIndex index) throws QueryException {
+      return ImmutableSet.copyOf(
+          Sets.intersection(expression.eval(index), index.getNodesWithLabel(label)));
+    }
+
+    @Override
+    public String toString() {
+      return "label(" + quote(label) + ", " + expression + ")";
+    }
+  }
+
+  private static class SetOperation implements QueryExpression {
+    private final String operator;
+    private final ImmutableList<QueryExpression> operands;
+
+    private SetOperation(String operator, QueryExpression left, QueryExpression right) {
+      this.operator = operator;
+      this.operands = ImmutableList.of(left, right);
+    }
+
+    @Override
+    public ImmutableSet<TargetNode<?>> eval(TargetGraphIndex index) throws QueryException {
+      ImmutableSet<TargetNode<?>> left = operands.get(0).eval(index);
+      ImmutableSet<TargetNode<?>> right = operands.get(1).eval(index);
+      switch (operator) {
+        case "+":
+          return ImmutableSet.copyOf(Sets.union(left, right));
+        case "-":
+          return ImmutableSet.copyOf(Sets.difference(left, right));
+        case "^":
+          return ImmutableSet.copyOf(Sets.intersection(left, right));
+        default:
+          throw new IllegalStateException("Unknown operator: " + operator);
+      }
+    }
+
+    @Override
+    public String toString() {
+      return "(" + operands.get(0) + " " + operator + " " + operands.get(1) + ")";
+    }
+  }
+}
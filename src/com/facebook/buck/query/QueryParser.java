@@ -0,0 +1,246 @@
+/*
+ * Copyright 2014-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.query;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Parses the query language of {@code buck query}:
+ * <pre>
+ * expr ::= term (('+' | 'union' | '-' | 'except' | '^' | 'intersect') term)*
+ * term ::= target-pattern
+ *        | 'deps(' expr [',' depth] ')'
+ *        | 'rdeps(' expr [',' depth] ')'
+ *        | 'owner(' path ')'
+ *        | 'kind(' regex ',' expr ')'
+ *        | 'filter(' regex ',' expr ')'
+ *        | 'label(' label ',' expr ')'
+ *        | '(' expr ')'
+ * </pre>
+ * Binary operators are left-associative and have the same precedence. Words may be quoted with
+ * single or double quotes, which is necessary for regular expressions that contain any of
+ * {@code ( ) , + ^}.
+ */
+public class QueryParser {
+
+  private static final String OPERATOR_CHARS = "(),+^";
+
+  private final String query;
+  private final ImmutableList<Token> tokens;
+  private int position;
+
+  private QueryParser(String query) throws QueryException {
+    this.query = Preconditions.checkNotNull(query);
+    this.tokens = tokenize(query);
+    this.position = 0;
+  }
+
+  public static QueryExpression parse(String query) throws QueryException {
+    QueryParser parser = new QueryParser(query);
+    QueryExpression expression = parser.parseExpression();
+    if (parser.position < parser.tokens.size()) {
+      throw parser.unexpected(parser.tokens.get(parser.position));
+    }
+    return expression;
+  }
+
+  private QueryExpression parseExpression() throws QueryException {
+    QueryExpression expression = parseTerm();
+    while (position < tokens.size()) {
+      Token token = tokens.get(position);
+      if (token.quoted) {
+        break;
+      }
+      switch (token.text) {
+        case "+":
+        case "union":
+          position++;
+          expression = QueryExpressions.union(expression, parseTerm());
+          break;
+        case "-":
+        case "except":
+          position++;
+          expression = QueryExpressions.except(expression, parseTerm());
+          break;
+        case "^":
+        case "intersect":
+          position++;
+          expression = QueryExpressions.intersect(expression, parseTerm());
+          break;
+        default:
+          return expression;
+      }
+    }
+    return expression;
+  }
+
+  private QueryExpression parseTerm() throws QueryException {
+    Token token = next();
+    if (isOperator(token, "(")) {
+      QueryExpression expression = parseExpression();
+      expect(")");
+      return expression;
+    }
+    if (isOperatorToken(token)) {
+      throw unexpected(token);
+    }
+    if (token.quoted || !peekIs("(")) {
+      return QueryExpressions.targetPattern(token.text);
+    }
+
+    position++;
+    QueryExpression expression;
+    switch (token.text) {
+      case "deps":
+      case "rdeps":
+        QueryExpression argument = parseExpression();
+        int depth = Integer.MAX_VALUE;
+        if (peekIs(",")) {
+          position++;
+          depth = parseDepth(next());
+        }
+        expression = token.text.equals("deps")
+            ? QueryExpressions.deps(argument, depth)
+            : QueryExpressions.rdeps(argument, depth);
+        break;
+      case "owner":
+        expression = QueryExpressions.owner(parseWord());
+        break;
+      case "kind":
+        String kind = parseWord();
+        expect(",");
+        expression = QueryExpressions.kind(kind, parseExpression());
+        break;
+      case "filter":
+        String filter = parseWord();
+        expect(",");
+        expression = QueryExpressions.filter(filter, parseExpression());
+        break;
+      case "label":
+        String label = parseWord();
+        expect(",");
+        expression = QueryExpressions.label(label, parseExpression());
+        break;
+      default:
+        throw new QueryException("Unknown function '%s' in query: %s", token.text, query);
+    }
+    expect(")");
+    return expression;
+  }
+
+  private String parseWord() throws QueryException {
+    Token token = next();
+    if (isOperatorToken(token)) {
+      throw unexpected(token);
+    }
+    return token.text;
+  }
+
+  private int parseDepth(Token token) throws QueryException {
+    try {
+      int depth = Integer.parseInt(token.text);
+      if (depth >= 0) {
+        return depth;
+      }
+    } catch (NumberFormatException e) {
+      // Reported below.
+    }
+    throw new QueryException("Expected a depth but found '%s' in query: %s", token.text, query);
+  }
+
+  private Token next() throws QueryException {
+    if (position >= tokens.size()) {
+      throw new QueryException("Unexpected end of query: %s", query);
+    }
+    return tokens.get(position++);
+  }
+
+  private void expect(String operator) throws QueryException {
+    Token token = next();
+    if (!isOperator(token, operator)) {
+      throw new QueryException(
+          "Expected '%s' but found '%s' in query: %s",
+          operator,
+          token.text,
+          query);
+    }
+  }
+
+  private boolean peekIs(String operator) {
+    return position < tokens.size() && isOperator(tokens.get(position), operator);
+  }
+
+  private QueryException unexpected(Token token) {
+    return new QueryException("Unexpected '%s' in query: %s", token.text, query);
+  }
+
+  private static boolean isOperator(Token token, String operator) {
+    return !token.quoted && token.text.equals(operator);
+  }
+
+  private static boolean isOperatorToken(Token token) {
+    return !token.quoted &&
+        token.text.length() == 1 &&
+        OPERATOR_CHARS.indexOf(token.text.charAt(0)) >= 0;
+  }
+
+  private static ImmutableList<Token> tokenize(String query) throws QueryException {
+    ImmutableList.Builder<Token> tokens = ImmutableList.builder();
+    int i = 0;
+    while (i < query.length()) {
+      char c = query.charAt(i);
+      if (Character.isWhitespace(c)) {
+        i++;
+      } else if (OPERATOR_CHARS.indexOf(c) >= 0) {
+        tokens.add(new Token(String.valueOf(c), /* quoted */ false));
+        i++;
+      } else if (c == '\'' || c == '"') {
+        int end = query.indexOf(c, i + 1);
+        if (end < 0) {
+          throw new QueryException("Unterminated quote in query: %s", query);
+        }
+        tokens.add(new Token(query.substring(i + 1, end), /* quoted */ true));
+        i = end + 1;
+      } else {
+        int start = i;
+        while (i < query.length() && isWordChar(query.charAt(i))) {
+          i++;
+        }
+        tokens.add(new Token(query.substring(start, i), /* quoted */ false));
+      }
+    }
+    return tokens.build();
+  }
+
+  private static boolean isWordChar(char c) {
+    return !Character.isWhitespace(c) &&
+        OPERATOR_CHARS.indexOf(c) < 0 &&
+        c != '\'' &&
+        c != '"';
+  }
+
+  private static class Token {
+    private final String text;
+    private final boolean quoted;
+
+    private Token(String text, boolean quoted) {
+      this.text = text;
+      this.quoted = quoted;
+    }
+  }
+}
@@ -0,0 +1,168 @@
+/*
+ * Copyright 2014-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.query;
+
+import com.facebook.buck.model.BuildTarget;
+import com.facebook.buck.parser.TargetGraph;
+import com.facebook.buck.rules.TargetNode;
+import com.google.common.base.Optional;
+import com.google.common.base.Preconditions;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableSetMultimap;
+
+import java.nio.file.Path;
+
+/**
+ * Indexes the nodes of a {@link TargetGraph} by the properties that queries select them by, so that
+ * evaluating a query costs time in the size of its result rather than in the size of the graph.
+ * The deps and reverse deps of each node are already indexed by the graph itself.
+ */
+public class TargetGraphIndex {
+
+  /**
+   * The daemon keeps the target graph of the whole project for as long as no build file changes,
+   * so its index is kept alongside it. Weak keys are compared by identity.
+   */
+  private static final LoadingCache<TargetGraph, TargetGraphIndex> INDEXES =
+      CacheBuilder.newBuilder()
+          .weakKeys()
+          .build(
+              new CacheLoader<TargetGraph, TargetGraphIndex>() {
+                @Override
+                public TargetGraphIndex load(TargetGraph graph) {
+                  return new TargetGraphIndex(graph);
+                }
+              });
+
+  private final TargetGraph graph;
+  private final ImmutableSet<TargetNode<?>> nodes;
+  private final ImmutableMap<BuildTarget, TargetNode<?>> nodesByTarget;
+  private final ImmutableSetMultimap<String, TargetNode<?>> nodesByBaseName;
+  private final ImmutableSetMultimap<String, TargetNode<?>> nodesByType;
+  private final ImmutableSetMultimap<String, TargetNode<?>> nodesByLabel;
+  private final ImmutableSetMultimap<Path, TargetNode<?>> nodesByInput;
+
+  private TargetGraphIndex(TargetGraph graph) {
+    this.graph = Preconditions.checkNotNull(graph);
+
+    ImmutableSet.Builder<TargetNode<?>> nodes = ImmutableSet.builder();
+    ImmutableMap.Builder<BuildTarget, TargetNode<?>> nodesByTarget = ImmutableMap.builder();
+    ImmutableSetMultimap.Builder<String, TargetNode<?>> nodesByBaseName =
+        ImmutableSetMultimap.builder();
+    ImmutableSetMultimap.Builder<String, TargetNode<?>> nodesByType =
+        ImmutableSetMultimap.builder();
+    ImmutableSetMultimap.Builder<String, TargetNode<?>> nodesByLabel =
+        ImmutableSetMultimap.builder();
+    ImmutableSetMultimap.Builder<Path, TargetNode<?>> nodesByInput =
+        ImmutableSetMultimap.builder();
+    for (TargetNode<?> node : graph.getNodes()) {
+      BuildTarget target = node.getBuildTarget();
+      nodes.add(node);
+      nodesByTarget.put(target, node);
+      nodesByBaseName.put(target.getBaseName(), node);
+      nodesByType.put(node.getDescription().getBuildRuleType().getName(), node);
+      for (String label : node.getRuleFactoryParams().getOptionalListAttribute("labels")) {
+        nodesByLabel.put(label, node);
+      }
+      for (Path input : node.getInputs()) {
+        nodesByInput.put(input, node);
+      }
+    }
+    this.nodes = nodes.build();
+    this.nodesByTarget = nodesByTarget.build();
+    this.nodesByBaseName = nodesByBaseName.build();
+    this.nodesByType = nodesByType.build();
+    this.nodesByLabel = nodesByLabel.build();
+    this.nodesByInput = nodesByInput.build();
+  }
+
+  /**
+   * @return the index of {@code graph}, which is only built the first time it is asked for.
+   */
+  public static TargetGraphIndex of(TargetGraph graph) {
+    return INDEXES.getUnchecked(graph);
+  }
+
+  public ImmutableSet<TargetNode<?>> getNodes() {
+    return nodes;
+  }
+
+  public Optional<TargetNode<?>> getNode(BuildTarget target) {
+    return Optional.<TargetNode<?>>fromNullable(nodesByTarget.get(target));
+  }
+
+  /**
+   * @param baseName e.g. {@code //third_party/java/guava}.
+   * @return the nodes defined by the build file of that package.
+   */
+  public ImmutableSet<TargetNode<?>> getNodesInPackage(String baseName) {
+    return nodesByBaseName.get(baseName);
+  }
+
+  /**
+   * @param baseName e.g. {@code //third_party/java}, or {@code //} for the whole project.
+   * @return the nodes defined by the build files of that package and of all packages below it.
+   */
+  public ImmutableSet<TargetNode<?>> getNodesInPackagesUnder(String baseName) {
+    if (baseName.equals(BuildTarget.BUILD_TARGET_PREFIX)) {
+      return nodes;
+    }
+    String prefix = baseName + "/";
+    ImmutableSet.Builder<TargetNode<?>> result = ImmutableSet.builder();
+    for (String packageName : nodesByBaseName.keySet()) {
+      if (packageName.equals(baseName) || packageName.startsWith(prefix)) {
+        result.addAll(nodesByBaseName.get(packageName));
+      }
+    }
+    return result.build();
+  }
+
+  /**
+   * @return the names of the rule types of the nodes in the graph, e.g. {@code java_library}.
+   */
+  public ImmutableSet<String> getTypes() {
+    return nodesByType.keySet();
+  }
+
+  public ImmutableSet<TargetNode<?>> getNodesOfType(String type) {
+    return nodesByType.get(type);
+  }
+
+  public ImmutableSet<TargetNode<?>> getNodesWithLabel(String label) {
+    return nodesByLabel.get(label);
+  }
+
+  /**
+   * @param input a path relative to the project root.
+   * @return the nodes that have {@code input} among their inputs.
+   */
+  public ImmutableSet<TargetNode<?>> getOwners(Path input) {
+    return nodesByInput.get(input.normalize());
+  }
+
+  public ImmutableSet<TargetNode<?>> getDeps(TargetNode<?> node) {
+    return graph.getOutgoingNodesFor(node);
+  }
+
+  public ImmutableSet<TargetNode<?>> getReverseDeps(TargetNode<?> node) {
+    return graph.getIncomingNodesFor(node);
+  }
+}
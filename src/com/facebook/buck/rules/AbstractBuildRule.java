@@ -170,6 +170,14 @@ public abstract class AbstractBuildRule implements BuildRule {
     return getRuleKeyPair().getRuleKeyWithoutDeps();
   }
 
+  /**
+   * Forgets the memoized {@link RuleKey}s, which depend on the contents of the inputs of this rule
+   * and so must be computed again when the rule is reused by another build.
+   */
+  public void invalidateRuleKey() {
+    ruleKeyPair = null;
+  }
+
   private RuleKey.Builder.RuleKeyPair getRuleKeyPair() {
     // This uses the "double-checked locking using volatile" pattern:
     // http://www.cs.umd.edu/~pugh/java/memoryModel/DoubleCheckedLocking.html.
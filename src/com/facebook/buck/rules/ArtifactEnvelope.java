@@ -0,0 +1,161 @@
+/*
+ * Copyright 2014-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.rules;
+
+import com.facebook.buck.log.Logger;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteStreams;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UTFDataFormatException;
+import java.util.Arrays;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipException;
+
+/**
+ * The format in which every {@link ArtifactCache} stores artifacts:
+ * <pre>
+ * magic (int), version (byte), rule key (UTF), size of the artifact (long),
+ * deflate(contents of the artifact, SHA-1 of the contents)
+ * </pre>
+ * Compressing at the fastest level cuts the disk and network traffic of cache hits, at a cost
+ * that is small next to that of the transfer. Keeping the hash inside the compressed stream means
+ * that both ends compute it while streaming, and that corruption anywhere in an entry is detected
+ * when it is read.
+ */
+final class ArtifactEnvelope {
+
+  private static final Logger LOG = Logger.get(ArtifactEnvelope.class);
+
+  /** {@code "BUCK"} in ASCII. */
+  private static final int MAGIC = 0x4255434b;
+  private static final byte VERSION = 1;
+  private static final HashFunction HASH_FUNCTION = Hashing.sha1();
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  /** Utility class: do not instantiate. */
+  private ArtifactEnvelope() {}
+
+  /**
+   * Writes the envelope of an artifact to {@code out}, which is neither flushed nor closed.
+   *
+   * @param artifact the contents of the artifact, which must be {@code size} bytes long.
+   */
+  static void write(RuleKey ruleKey, InputStream artifact, long size, OutputStream out)
+      throws IOException {
+    DataOutputStream header = new DataOutputStream(out);
+    header.writeInt(MAGIC);
+    header.writeByte(VERSION);
+    header.writeUTF(ruleKey.toString());
+    header.writeLong(size);
+    header.flush();
+
+    Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+    try {
+      DeflaterOutputStream compressed = new DeflaterOutputStream(out, deflater, BUFFER_SIZE);
+      Hasher hasher = HASH_FUNCTION.newHasher();
+      byte[] buffer = new byte[BUFFER_SIZE];
+      long written = 0;
+      int read;
+      while ((read = artifact.read(buffer)) != -1) {
+        hasher.putBytes(buffer, 0, read);
+        compressed.write(buffer, 0, read);
+        written += read;
+      }
+      if (written != size) {
+        throw new IOException(
+            String.format(
+                "Artifact %s was expected to be %d bytes but was %d bytes.",
+                ruleKey,
+                size,
+                written));
+      }
+      compressed.write(hasher.hash().asBytes());
+      compressed.finish();
+    } finally {
+      deflater.end();
+    }
+  }
+
+  /**
+   * Reads an envelope from {@code in} and writes the contents of the artifact to {@code out},
+   * which is neither flushed nor closed.
+   *
+   * @return whether the envelope was intact and contained the artifact for {@code ruleKey}. If
+   *     not, whatever was written to {@code out} must be discarded.
+   */
+  static boolean read(RuleKey ruleKey, InputStream in, OutputStream out) throws IOException {
+    try {
+      DataInputStream header = new DataInputStream(in);
+      if (header.readInt() != MAGIC || header.readByte() != VERSION) {
+        LOG.warn("Artifact %s is in an unknown format.", ruleKey);
+        return false;
+      }
+      String storedRuleKey = header.readUTF();
+      if (!storedRuleKey.equals(ruleKey.toString())) {
+        LOG.warn("Artifact %s was stored for %s.", ruleKey, storedRuleKey);
+        return false;
+      }
+      long size = header.readLong();
+
+      Inflater inflater = new Inflater();
+      try {
+        InputStream decompressed = new InflaterInputStream(in, inflater, BUFFER_SIZE);
+        Hasher hasher = HASH_FUNCTION.newHasher();
+        byte[] buffer = new byte[BUFFER_SIZE];
+        for (long remaining = size; remaining > 0; ) {
+          int read = decompressed.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+          if (read == -1) {
+            throw new EOFException();
+          }
+          hasher.putBytes(buffer, 0, read);
+          out.write(buffer, 0, read);
+          remaining -= read;
+        }
+
+        byte[] expectedHash = new byte[HASH_FUNCTION.bits() / Byte.SIZE];
+        ByteStreams.readFully(decompressed, expectedHash);
+        if (!Arrays.equals(expectedHash, hasher.hash().asBytes())) {
+          LOG.warn("Artifact %s has an invalid checksum.", ruleKey);
+          return false;
+        }
+
+        // Read to the end of the compressed stream, which makes the inflater check its trailer.
+        if (decompressed.read() != -1) {
+          LOG.warn("Artifact %s has trailing data.", ruleKey);
+          return false;
+        }
+        return true;
+      } finally {
+        inflater.end();
+      }
+    } catch (EOFException | UTFDataFormatException | ZipException e) {
+      LOG.warn(e, "Artifact %s is truncated or corrupt.", ruleKey);
+      return false;
+    }
+  }
+}
@@ -210,6 +210,17 @@ public class BuildInfoRecorder {
       return;
     }
     artifactCache.store(ruleKey, zip);
+
+    // Also make the artifact available to builds that only know the RuleKey of the inputs which
+    // were actually used, or of the contents of the outputs of the deps.
+    for (String key : ImmutableList.of(
+        SupportsDependencyFileRuleKey.DEP_FILE_RULE_KEY_ON_DISK_METADATA,
+        SupportsInputBasedRuleKey.INPUT_BASED_RULE_KEY_ON_DISK_METADATA)) {
+      String secondaryRuleKey = metadataToWrite.get(key);
+      if (secondaryRuleKey != null) {
+        artifactCache.store(new RuleKey(secondaryRuleKey), zip);
+      }
+    }
     zip.delete();
   }
 
@@ -236,6 +247,20 @@ public class BuildInfoRecorder {
     return artifactCache.fetch(ruleKey, outputFile);
   }
 
+  /**
+   * Fetches the artifact stored under the given {@link RuleKey}, rather than the one for the
+   * {@link #buildTarget}, and writes it to the specified {@code outputFile}.
+   */
+  public CacheResult fetchArtifactForBuildable(
+      RuleKey ruleKey,
+      File outputFile,
+      ArtifactCache artifactCache)
+      throws InterruptedException {
+    Preconditions.checkNotNull(ruleKey);
+    Preconditions.checkNotNull(outputFile);
+    return artifactCache.fetch(ruleKey, outputFile);
+  }
+
   /**
    * @param pathToArtifact Relative path to the project root.
    */
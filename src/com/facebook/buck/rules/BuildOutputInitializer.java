@@ -57,6 +57,14 @@ public class BuildOutputInitializer<T> {
     this.buildOutput = buildOutput;
   }
 
+  /**
+   * Forgets the value passed to {@link #setBuildOutput(Object)}, so that the rule can be built
+   * again when it is reused by another build.
+   */
+  public void invalidate() {
+    this.buildOutput = null;
+  }
+
   /**
    * @return the value passed to {@link #setBuildOutput(Object)}.
    * @throws IllegalStateException if {@link #setBuildOutput(Object)} has not been invoked yet.
@@ -44,7 +44,8 @@ public class BuildRuleResolver {
   @VisibleForTesting
   public BuildRuleResolver(Map<BuildTarget, BuildRule> buildRuleIndex) {
     Preconditions.checkNotNull(buildRuleIndex);
-    this.buildRuleIndex = Maps.newHashMap(buildRuleIndex);
+    this.buildRuleIndex = Maps.newConcurrentMap();
+    this.buildRuleIndex.putAll(buildRuleIndex);
   }
 
   @VisibleForTesting
@@ -60,6 +60,41 @@ public class BuildRuleSuccess {
         Property.SHOULD_UPDATE_METADATA_ON_DISK
         ),
 
+    /**
+     * Computed {@link RuleKey} from the inputs used by the last build matches the one on disk.
+     * @see SupportsDependencyFileRuleKey
+     */
+    MATCHING_DEP_FILE_RULE_KEY(
+        Property.SHOULD_UPDATE_METADATA_ON_DISK
+        ),
+
+    /**
+     * Fetched via the {@link ArtifactCache} using the {@link RuleKey} computed from the inputs used
+     * by the last build, rather than the {@link RuleKey} of the rule.
+     * @see SupportsDependencyFileRuleKey
+     */
+    FETCHED_FROM_CACHE_MATCHING_DEP_FILE_RULE_KEY(
+        Property.SHOULD_UPDATE_METADATA_ON_DISK
+        ),
+
+    /**
+     * Computed {@link RuleKey} from the contents of the outputs of the deps matches the one on
+     * disk.
+     * @see SupportsInputBasedRuleKey
+     */
+    MATCHING_INPUT_BASED_RULE_KEY(
+        Property.SHOULD_UPDATE_METADATA_ON_DISK
+        ),
+
+    /**
+     * Fetched via the {@link ArtifactCache} using the {@link RuleKey} computed from the contents of
+     * the outputs of the deps, rather than the {@link RuleKey} of the rule.
+     * @see SupportsInputBasedRuleKey
+     */
+    FETCHED_FROM_CACHE_MATCHING_INPUT_BASED_RULE_KEY(
+        Property.SHOULD_UPDATE_METADATA_ON_DISK
+        ),
+
     ;
 
     private final EnumSet<Property> properties;
@@ -31,6 +31,7 @@ import com.google.common.base.Preconditions;
 import com.google.common.base.Supplier;
 import com.google.common.base.Suppliers;
 import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.util.concurrent.FutureCallback;
@@ -346,6 +347,51 @@ public class CachingBuildEngine implements BuildEngine {
       }
     }
 
+    // For rules that record the inputs they actually used, only those inputs need to be unchanged
+    // for the output on disk to still be valid.
+    Optional<RuleKey> depFileRuleKey = Optional.absent();
+    SupportsDependencyFileRuleKey depFileRule = checkIfRuleSupportsDependencyFileRuleKey(rule);
+    if (depFileRule != null) {
+      Optional<ImmutableList<String>> depFile = onDiskBuildInfo.getValues(
+          SupportsDependencyFileRuleKey.DEP_FILE_ON_DISK_METADATA);
+      if (depFile.isPresent()) {
+        depFileRuleKey = depFileRule.getDepFileRuleKey(depFile.get());
+        Optional<RuleKey> cachedDepFileRuleKey = onDiskBuildInfo.getValue(
+            SupportsDependencyFileRuleKey.DEP_FILE_RULE_KEY_ON_DISK_METADATA)
+            .transform(RuleKey.TO_RULE_KEY);
+        if (depFileRuleKey.isPresent() && depFileRuleKey.equals(cachedDepFileRuleKey)) {
+          return new BuildResult(BuildRuleSuccess.Type.MATCHING_DEP_FILE_RULE_KEY,
+              CacheResult.LOCAL_KEY_UNCHANGED_HIT);
+        }
+      }
+    }
+
+    // For rules whose output depends only on the contents of the outputs of their deps, a dep
+    // being rebuilt doesn't mean that this rule needs to be rebuilt too.
+    Optional<RuleKey> inputBasedRuleKey = Optional.absent();
+    SupportsInputBasedRuleKey inputBasedRule = checkIfRuleSupportsInputBasedRuleKey(rule);
+    if (inputBasedRule != null) {
+      try {
+        inputBasedRuleKey = inputBasedRule.getInputBasedRuleKey();
+      } catch (IOException e) {
+        return new BuildResult(e);
+      }
+      if (inputBasedRuleKey.isPresent()) {
+        Optional<RuleKey> cachedInputBasedRuleKey = onDiskBuildInfo.getValue(
+            SupportsInputBasedRuleKey.INPUT_BASED_RULE_KEY_ON_DISK_METADATA)
+            .transform(RuleKey.TO_RULE_KEY);
+        if (inputBasedRuleKey.equals(cachedInputBasedRuleKey)) {
+          return new BuildResult(BuildRuleSuccess.Type.MATCHING_INPUT_BASED_RULE_KEY,
+              CacheResult.LOCAL_KEY_UNCHANGED_HIT);
+        }
+
+        // Record the key so that it is written to disk and uploaded along with the output.
+        buildInfoRecorder.addMetadata(
+            SupportsInputBasedRuleKey.INPUT_BASED_RULE_KEY_ON_DISK_METADATA,
+            inputBasedRuleKey.get().toString());
+      }
+    }
+
     CacheResult cacheResult;
     if (shouldTryToFetchFromCache) {
       // Before deciding to build, check the ArtifactCache.
@@ -354,6 +400,7 @@ public class CachingBuildEngine implements BuildEngine {
         cacheResult = tryToFetchArtifactFromBuildCacheAndOverlayOnTopOfProjectFilesystem(
             rule,
             buildInfoRecorder,
+            Optional.<RuleKey>absent(),
             context.getArtifactCache(),
             context.getProjectRoot(),
             context);
@@ -369,6 +416,45 @@ public class CachingBuildEngine implements BuildEngine {
       return new BuildResult(BuildRuleSuccess.Type.FETCHED_FROM_CACHE, cacheResult);
     }
 
+    // Neither the dep file RuleKey nor the input-based RuleKey depend on the RuleKeys of the deps,
+    // so they are worth trying even if some of the deps were built locally.
+    if (rule.getCacheMode() == CacheMode.ENABLED) {
+      try {
+        if (depFileRuleKey.isPresent()) {
+          CacheResult depFileCacheResult =
+              tryToFetchArtifactFromBuildCacheAndOverlayOnTopOfProjectFilesystem(
+                  rule,
+                  buildInfoRecorder,
+                  depFileRuleKey,
+                  context.getArtifactCache(),
+                  context.getProjectRoot(),
+                  context);
+          if (depFileCacheResult.isSuccess()) {
+            return new BuildResult(
+                BuildRuleSuccess.Type.FETCHED_FROM_CACHE_MATCHING_DEP_FILE_RULE_KEY,
+                depFileCacheResult);
+          }
+        }
+        if (inputBasedRuleKey.isPresent()) {
+          CacheResult inputBasedCacheResult =
+              tryToFetchArtifactFromBuildCacheAndOverlayOnTopOfProjectFilesystem(
+                  rule,
+                  buildInfoRecorder,
+                  inputBasedRuleKey,
+                  context.getArtifactCache(),
+                  context.getProjectRoot(),
+                  context);
+          if (inputBasedCacheResult.isSuccess()) {
+            return new BuildResult(
+                BuildRuleSuccess.Type.FETCHED_FROM_CACHE_MATCHING_INPUT_BASED_RULE_KEY,
+                inputBasedCacheResult);
+          }
+        }
+      } catch (InterruptedException e) {
+        return new BuildResult(e);
+      }
+    }
+
     // The only remaining option is to build locally.
     try {
       executeCommandsNowThatDepsAreBuilt(rule, context, onDiskBuildInfo, buildInfoRecorder);
@@ -408,9 +494,14 @@ public class CachingBuildEngine implements BuildEngine {
     return true;
   }
 
+  /**
+   * @param alternateRuleKey if present, the artifact is looked up using this key rather than the
+   *     {@link RuleKey} of the rule.
+   */
   private CacheResult tryToFetchArtifactFromBuildCacheAndOverlayOnTopOfProjectFilesystem(
       BuildRule rule,
       BuildInfoRecorder buildInfoRecorder,
+      Optional<RuleKey> alternateRuleKey,
       ArtifactCache artifactCache,
       Path projectRoot,
       BuildContext buildContext) throws InterruptedException {
@@ -426,7 +517,12 @@ public class CachingBuildEngine implements BuildEngine {
     // TODO(mbolin): Change ArtifactCache.fetch() so that it returns a File instead of takes one.
     // Then we could download directly from Cassandra into the on-disk cache and unzip it from
     // there.
-    CacheResult cacheResult = buildInfoRecorder.fetchArtifactForBuildable(zipFile, artifactCache);
+    CacheResult cacheResult = alternateRuleKey.isPresent() ?
+        buildInfoRecorder.fetchArtifactForBuildable(
+            alternateRuleKey.get(),
+            zipFile,
+            artifactCache) :
+        buildInfoRecorder.fetchArtifactForBuildable(zipFile, artifactCache);
     if (!cacheResult.isSuccess()) {
       zipFile.delete();
       return cacheResult;
@@ -561,4 +657,20 @@ public class CachingBuildEngine implements BuildEngine {
     }
     return null;
   }
+
+  @Nullable
+  private SupportsDependencyFileRuleKey checkIfRuleSupportsDependencyFileRuleKey(BuildRule rule) {
+    if (rule instanceof SupportsDependencyFileRuleKey) {
+      return (SupportsDependencyFileRuleKey) rule;
+    }
+    return null;
+  }
+
+  @Nullable
+  private SupportsInputBasedRuleKey checkIfRuleSupportsInputBasedRuleKey(BuildRule rule) {
+    if (rule instanceof SupportsInputBasedRuleKey) {
+      return (SupportsInputBasedRuleKey) rule;
+    }
+    return null;
+  }
 }
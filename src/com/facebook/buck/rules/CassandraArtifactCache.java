@@ -16,22 +16,22 @@
 
 package com.facebook.buck.rules;
 
-import com.facebook.buck.event.AbstractBuckEvent;
-import com.facebook.buck.event.BuckEvent;
 import com.facebook.buck.event.BuckEventBus;
 import com.facebook.buck.event.ConsoleEvent;
 import com.facebook.buck.event.ThrowableConsoleEvent;
-import com.facebook.buck.util.FileHashCache;
 import com.facebook.buck.util.HumanReadableException;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Optional;
 import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
-import com.google.common.hash.HashCode;
+import com.google.common.util.concurrent.AsyncFunction;
 import com.google.common.util.concurrent.FutureCallback;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
 import com.netflix.astyanax.AstyanaxContext;
 import com.netflix.astyanax.Keyspace;
 import com.netflix.astyanax.MutationBatch;
@@ -39,27 +39,35 @@ import com.netflix.astyanax.connectionpool.NodeDiscoveryType;
 import com.netflix.astyanax.connectionpool.OperationResult;
 import com.netflix.astyanax.connectionpool.exceptions.BadRequestException;
 import com.netflix.astyanax.connectionpool.exceptions.ConnectionException;
+import com.netflix.astyanax.connectionpool.exceptions.NotFoundException;
 import com.netflix.astyanax.connectionpool.impl.ConnectionPoolConfigurationImpl;
 import com.netflix.astyanax.connectionpool.impl.CountingConnectionPoolMonitor;
 import com.netflix.astyanax.impl.AstyanaxConfigurationImpl;
 import com.netflix.astyanax.model.Column;
 import com.netflix.astyanax.model.ColumnFamily;
 import com.netflix.astyanax.model.ColumnList;
+import com.netflix.astyanax.model.Row;
+import com.netflix.astyanax.model.Rows;
 import com.netflix.astyanax.serializers.StringSerializer;
 import com.netflix.astyanax.thrift.ThriftFamilyFactory;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.EOFException;
 import java.io.File;
 import java.io.IOException;
-import java.io.NotSerializableException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Callable;
 import java.util.concurrent.CancellationException;
 import java.util.concurrent.ConcurrentHashMap;
@@ -67,6 +75,8 @@ import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
@@ -97,12 +107,30 @@ public class CassandraArtifactCache implements ArtifactCache {
       StringSerializer.get(),
       StringSerializer.get());
 
+  /**
+   * Each artifact is stored in a row keyed by its rule key: its {@link ArtifactEnvelope} is split
+   * into a number of chunk columns, followed by a manifest column that records how many chunks
+   * there are. Splitting artifacts into chunks keeps the columns at a size that Cassandra handles
+   * well, and lets them be streamed.
+   */
   private static final String ARTIFACT_COLUMN_FAMILY_NAME = "Artifacts";
-  private static final String ARTIFACT_COLUMN_NAME = "artifact";
+  private static final String ARTIFACT_CHUNKS_COLUMN_NAME = "chunks";
+  private static final String CHUNK_COLUMN_NAME_PREFIX = "chunk-";
   private static final ColumnFamily<String, String> CF_ARTIFACT = new ColumnFamily<String, String>(
       ARTIFACT_COLUMN_FAMILY_NAME,
       StringSerializer.get(),
       StringSerializer.get());
+
+  @VisibleForTesting
+  static final int CHUNK_SIZE_BYTES = 1024 * 1024;
+
+  /** Bounds the memory held by chunks that are waiting to be stored. */
+  private static final int MAX_CHUNK_STORES_IN_FLIGHT = 32;
+
+  /** The number of chunks each fetch reads ahead of the one it is writing to disk. */
+  private static final int MAX_CHUNK_FETCHES_IN_FLIGHT = 4;
+
+  private static final int MAX_MANIFESTS_PER_FETCH = 64;
   private final AstyanaxContext<Keyspace> context;
 
   private static final class KeyspaceAndTtl {
@@ -128,21 +156,23 @@ public class CassandraArtifactCache implements ArtifactCache {
   private final AtomicInteger numConnectionExceptionReports;
   private final boolean doStore;
   private final BuckEventBus buckEventBus;
-  private final FileHashCache fileHashCache;
 
   private final Set<ListenableFuture<OperationResult<Void>>> futures;
   private final AtomicBoolean isWaitingToClose;
   private final AtomicBoolean isKilled;
 
+  private final Semaphore chunkStorePermits;
+  private final BlockingQueue<ManifestRequest> manifestRequests;
+  private final ExecutorService manifestFetchService;
+
   public CassandraArtifactCache(
       String hosts,
       int port,
       int timeoutSeconds,
       boolean doStore,
-      BuckEventBus buckEventBus,
-      FileHashCache fileHashCache)
+      BuckEventBus buckEventBus)
       throws ConnectionException {
-    this(timeoutSeconds, doStore, buckEventBus, fileHashCache, new AstyanaxContext.Builder()
+    this(timeoutSeconds, doStore, buckEventBus, new AstyanaxContext.Builder()
             .forCluster(CLUSTER_NAME)
             .forKeyspace(KEYSPACE_NAME)
             .withAstyanaxConfiguration(new AstyanaxConfigurationImpl()
@@ -164,11 +194,9 @@ public class CassandraArtifactCache implements ArtifactCache {
       int timeoutSeconds,
       boolean doStore,
       BuckEventBus buckEventBus,
-      FileHashCache fileHashCache,
       final AstyanaxContext<Keyspace> context) {
     this.doStore = doStore;
     this.buckEventBus = Preconditions.checkNotNull(buckEventBus);
-    this.fileHashCache = Preconditions.checkNotNull(fileHashCache);
     this.numConnectionExceptionReports = new AtomicInteger(0);
     this.timeoutSeconds = timeoutSeconds;
     this.context = Preconditions.checkNotNull(context);
@@ -195,6 +223,17 @@ public class CassandraArtifactCache implements ArtifactCache {
         new ConcurrentHashMap<ListenableFuture<OperationResult<Void>>, Boolean>());
     this.isWaitingToClose = new AtomicBoolean(false);
     this.isKilled = new AtomicBoolean(false);
+
+    this.chunkStorePermits = new Semaphore(MAX_CHUNK_STORES_IN_FLIGHT);
+    this.manifestRequests = new LinkedBlockingQueue<>();
+    this.manifestFetchService = MoreExecutors.getExitingExecutorService(
+        (ThreadPoolExecutor) Executors.newFixedThreadPool(1), 0, TimeUnit.SECONDS);
+    this.manifestFetchService.submit(new Runnable() {
+      @Override
+      public void run() {
+        fetchManifests();
+      }
+    });
   }
 
   private static void verifyMagic(Keyspace keyspace) throws ConnectionException {
@@ -265,78 +304,57 @@ public class CassandraArtifactCache implements ArtifactCache {
       // Connecting to Cassandra failed, return false
       return CacheResult.MISS;
     }
+    Keyspace keyspace = keyspaceAndTtl.get().getKeyspace();
+    int ttl = keyspaceAndTtl.get().getTtl();
 
-    // Execute the query to Cassandra.
-    OperationResult<ColumnList<String>> result;
-    int ttl;
+    // Look up the manifest of the artifact along with those of any other concurrent fetches.
+    Optional<ArtifactManifest> manifest;
+    ManifestRequest request = new ManifestRequest(keyspace, ruleKey.toString());
+    manifestRequests.add(request);
     try {
-      Keyspace keyspace = keyspaceAndTtl.get().getKeyspace();
-      ttl = keyspaceAndTtl.get().getTtl();
-
-      result = keyspace.prepareQuery(CF_ARTIFACT)
-          .getKey(ruleKey.toString())
-          .execute();
-    } catch (ConnectionException e) {
-      reportConnectionFailure("Attempting to fetch " + ruleKey + ".", e);
+      manifest = request.result.get(timeoutSeconds, TimeUnit.SECONDS);
+    } catch (TimeoutException e) {
+      // Give up on the lookup rather than wait for a query that may never complete.
+      request.result.cancel(/* mayInterruptIfRunning */ false);
+      return CacheResult.MISS;
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof ConnectionException) {
+        reportConnectionFailure(
+            "Attempting to fetch " + ruleKey + ".",
+            (ConnectionException) e.getCause());
+      } else {
+        buckEventBus.post(ThrowableConsoleEvent.create(e,
+            "Artifact fetch(%s, %s) error: %s",
+            ruleKey,
+            output.getPath(),
+            e.getCause().getMessage()));
+      }
+      return CacheResult.MISS;
+    } catch (CancellationException e) {
       return CacheResult.MISS;
     }
 
     CacheResult success = CacheResult.MISS;
-    try {
-      Column<String> column = result.getResult().getColumnByName(ARTIFACT_COLUMN_NAME);
-      if (column != null) {
-        ByteArrayInputStream dataStream = new ByteArrayInputStream(column.getByteArrayValue());
-
-        // Setup an object input stream to deserialize the hash code.
-        try (ObjectInputStream objectStream = new ObjectInputStream(dataStream)) {
-
-          // Deserialize the expected hash code object from the front of the artifact.
-          HashCode expectedHashCode;
-          try {
-            expectedHashCode = (HashCode) objectStream.readObject();
-          } catch (ClassNotFoundException | ClassCastException e) {
-            buckEventBus.post(
-                ThrowableConsoleEvent.create(
-                    e,
-                    "Could not deserialize artifact checksum from %s:%s.",
-                    ruleKey,
-                    output.getPath()));
-            return CacheResult.MISS;
-          }
-
-          // Write the contents to a temp file that sits next to the real destination.
-          Path path = output.toPath();
-          Files.createDirectories(path.getParent());
-          Path temp = Files.createTempFile(path.getParent(), path.getFileName().toString(), ".tmp");
-          Files.copy(dataStream, temp, StandardCopyOption.REPLACE_EXISTING);
-
-          // Compare the embedded hash code with the one we calculated here.  If they don't match,
-          // discard the output and report a mismatch event.
-          HashCode actualHashCode = fileHashCache.get(temp);
-          if (!expectedHashCode.equals(actualHashCode)) {
-            buckEventBus.post(new CassandraChecksumMismatchEvent(expectedHashCode, actualHashCode));
-            Files.delete(temp);
-            return CacheResult.MISS;
+    if (manifest.isPresent()) {
+      try {
+        if (fetchArtifact(keyspace, ruleKey, manifest.get(), output.toPath())) {
+          // Cassandra timestamps use microsecond resolution.
+          long age = System.currentTimeMillis() * 1000L - manifest.get().getTimestamp();
+          if (age > ttl * 1000000L / 2L) {
+            // The cache entry has lived for more than half of its total TTL, so rewrite it in
+            // order to reset the TTL.
+            store(ruleKey, output);
           }
-
-          // Finally, move the temp file into it's final place.
-          Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING);
-
+          success = CacheResult.CASSANDRA_HIT;
         }
-
-        // Cassandra timestamps use microsecond resolution.
-        if (System.currentTimeMillis() * 1000L - column.getTimestamp() > ttl * 1000000L / 2L) {
-          // The cache entry has lived for more than half of its total TTL, so rewrite it in order
-          // to reset the TTL.
-          store(ruleKey, output);
-        }
-        success = CacheResult.CASSANDRA_HIT;
+      } catch (ConnectionException e) {
+        reportConnectionFailure("Attempting to fetch " + ruleKey + ".", e);
+      } catch (IOException e) {
+        buckEventBus.post(ThrowableConsoleEvent.create(e,
+            "Artifact was fetched but could not be written: %s at %s.",
+            ruleKey,
+            output.getPath()));
       }
-    } catch (IOException e) {
-      buckEventBus.post(ThrowableConsoleEvent.create(e,
-          "Artifact was fetched but could not be written: %s at %s.",
-          ruleKey,
-          output.getPath()));
     }
 
     buckEventBus.post(ConsoleEvent.fine("Artifact fetch(%s, %s) cache %s",
@@ -346,6 +364,104 @@ public class CassandraArtifactCache implements ArtifactCache {
     return success;
   }
 
+  /**
+   * Streams the chunks of an artifact to a temp file next to {@code output}, reading a few chunks
+   * ahead so that only those are held in memory, and moves it into place if its envelope was
+   * intact.
+   *
+   * @return whether the artifact was written to {@code output}.
+   */
+  private boolean fetchArtifact(
+      Keyspace keyspace,
+      RuleKey ruleKey,
+      ArtifactManifest manifest,
+      Path output)
+      throws ConnectionException, IOException {
+    Files.createDirectories(output.getParent());
+    Path temp = Files.createTempFile(output.getParent(), output.getFileName().toString(), ".tmp");
+    try {
+      boolean isValid;
+      try (InputStream inputStream = new ChunkFetchingInputStream(
+               keyspace,
+               ruleKey.toString(),
+               manifest.getChunks());
+           OutputStream outputStream = new BufferedOutputStream(Files.newOutputStream(temp))) {
+        isValid = ArtifactEnvelope.read(ruleKey, inputStream, outputStream);
+      } catch (IOException e) {
+        Throwables.propagateIfInstanceOf(e.getCause(), ConnectionException.class);
+        throw e;
+      }
+      if (!isValid) {
+        return false;
+      }
+
+      // Finally, move the temp file into it's final place.
+      Files.move(temp, output, StandardCopyOption.REPLACE_EXISTING);
+      return true;
+    } finally {
+      Files.deleteIfExists(temp);
+    }
+  }
+
+  /**
+   * Looks up the manifests of the artifacts that are being fetched, as many per query as have been
+   * requested since the previous query was sent. This runs until the cache is closed.
+   */
+  private void fetchManifests() {
+    List<ManifestRequest> batch = Lists.newArrayListWithCapacity(MAX_MANIFESTS_PER_FETCH);
+    try {
+      while (true) {
+        batch.add(manifestRequests.take());
+        manifestRequests.drainTo(batch, MAX_MANIFESTS_PER_FETCH - 1);
+        fetchManifestBatch(batch);
+        batch.clear();
+      }
+    } catch (InterruptedException e) {
+      // The cache is being closed.
+      Thread.currentThread().interrupt();
+    } finally {
+      manifestRequests.drainTo(batch);
+      for (ManifestRequest request : batch) {
+        request.result.cancel(/* mayInterruptIfRunning */ false);
+      }
+    }
+  }
+
+  private static void fetchManifestBatch(List<ManifestRequest> batch) {
+    Set<String> keys = Sets.newHashSet();
+    for (ManifestRequest request : batch) {
+      keys.add(request.key);
+    }
+
+    Rows<String, String> rows;
+    try {
+      rows = batch.get(0).keyspace.prepareQuery(CF_ARTIFACT)
+          .getKeySlice(keys)
+          .withColumnSlice(ARTIFACT_CHUNKS_COLUMN_NAME)
+          .execute()
+          .getResult();
+    } catch (ConnectionException | RuntimeException e) {
+      for (ManifestRequest request : batch) {
+        request.result.setException(e);
+      }
+      return;
+    }
+
+    for (ManifestRequest request : batch) {
+      // A malformed row fails only its own request, and must not end the thread that serves all
+      // of them.
+      try {
+        Row<String, String> row = rows.getRow(request.key);
+        request.result.set(
+            row == null
+                ? Optional.<ArtifactManifest>absent()
+                : ArtifactManifest.fromColumns(row.getColumns()));
+      } catch (RuntimeException e) {
+        request.result.setException(e);
+      }
+    }
+  }
+
   @Override
   public void store(RuleKey ruleKey, File output) throws InterruptedException {
     if (!isStoreSupported()) {
@@ -356,52 +472,56 @@ public class CassandraArtifactCache implements ArtifactCache {
     if (!keyspaceAndTtl.isPresent()) {
       return;
     }
+    final Keyspace keyspace = keyspaceAndTtl.get().getKeyspace();
+    final int ttl = keyspaceAndTtl.get().getTtl();
+    final String key = ruleKey.toString();
     try {
-
-      // Prepare a byte stream to stage the data we're storing.
-      ByteArrayOutputStream dataStream = new ByteArrayOutputStream();
-
-      // Setup an object output stream wrapper to serialize the hash code.
-      try (ObjectOutputStream objectStream = new ObjectOutputStream(dataStream)) {
-
-        // Store the hash code at the beginning of the data we're storing.
-        HashCode hashCode = fileHashCache.get(output.toPath());
-        try {
-          objectStream.writeObject(hashCode);
-          objectStream.flush();
-        } catch (NotSerializableException e) {
-          buckEventBus.post(
-              ThrowableConsoleEvent.create(
-                  e,
-                  "Artifact store(%s, %s) error: %s",
-                  ruleKey,
-                  output.getPath()));
-          return;
-        }
-
-        // The rest of the data is the contents of the artifact.
-        Files.copy(output.toPath(), dataStream);
-
-        Keyspace keyspace = keyspaceAndTtl.get().getKeyspace();
-        int ttl = keyspaceAndTtl.get().getTtl();
-        MutationBatch mutationBatch = keyspace.prepareMutationBatch();
-        mutationBatch.withRow(CF_ARTIFACT, ruleKey.toString())
-            .setDefaultTtl(ttl)
-            .putColumn(ARTIFACT_COLUMN_NAME, dataStream.toByteArray());
-        ListenableFuture<OperationResult<Void>> mutationFuture = mutationBatch.executeAsync();
-        trackFuture(mutationFuture);
-
+      // Each chunk is written by its own mutation as soon as it has been filled, and the number of
+      // chunks that are waiting to be written is bounded, so that storing a large artifact does
+      // not require holding all of it in memory.
+      ChunkStoringOutputStream chunks = new ChunkStoringOutputStream(keyspace, key, ttl);
+      Path path = output.toPath();
+      try (InputStream inputStream = new BufferedInputStream(Files.newInputStream(path))) {
+        ArtifactEnvelope.write(ruleKey, inputStream, Files.size(path), chunks);
       }
-    } catch (ConnectionException e) {
-      reportConnectionFailure("Attempting to store " + ruleKey + ".", e);
+      chunks.close();
+      final int numChunks = chunks.getChunkFutures().size();
+
+      // The manifest is only written once all of the chunks have been, so that a fetch never sees
+      // a partially stored artifact.
+      ListenableFuture<OperationResult<Void>> manifestFuture = Futures.transform(
+          Futures.allAsList(chunks.getChunkFutures()),
+          new AsyncFunction<List<OperationResult<Void>>, OperationResult<Void>>() {
+            @Override
+            public ListenableFuture<OperationResult<Void>> apply(
+                List<OperationResult<Void>> chunkResults) throws ConnectionException {
+              MutationBatch mutationBatch = keyspace.prepareMutationBatch();
+              mutationBatch.withRow(CF_ARTIFACT, key)
+                  .setDefaultTtl(ttl)
+                  .putColumn(ARTIFACT_CHUNKS_COLUMN_NAME, numChunks);
+              return mutationBatch.executeAsync();
+            }
+          });
+      trackFuture(manifestFuture);
     } catch (IOException | OutOfMemoryError e) {
-      buckEventBus.post(ThrowableConsoleEvent.create(e,
-          "Artifact store(%s, %s) error: %s",
-          ruleKey,
-          output.getPath()));
+      if (e.getCause() instanceof ConnectionException) {
+        reportConnectionFailure(
+            "Attempting to store " + ruleKey + ".",
+            (ConnectionException) e.getCause());
+      } else {
+        buckEventBus.post(ThrowableConsoleEvent.create(e,
+            "Artifact store(%s, %s) error: %s",
+            ruleKey,
+            output.getPath()));
+      }
     }
   }
 
+  @VisibleForTesting
+  static String getChunkColumnName(int chunk) {
+    return CHUNK_COLUMN_NAME_PREFIX + chunk;
+  }
+
   private void trackFuture(final ListenableFuture<OperationResult<Void>> future) {
     futures.add(future);
     Futures.addCallback(future, new FutureCallback<OperationResult<Void>>() {
@@ -441,6 +561,7 @@ public class CassandraArtifactCache implements ArtifactCache {
       Thread.currentThread().interrupt();
       return;
     } finally {
+      manifestFetchService.shutdownNow();
       context.shutdown();
     }
   }
@@ -461,49 +582,236 @@ public class CassandraArtifactCache implements ArtifactCache {
     }
   }
 
-  public static class CassandraConnectionExceptionEvent extends ThrowableConsoleEvent {
+  /**
+   * Describes an artifact whose chunks are all stored.
+   */
+  private static final class ArtifactManifest {
+    private final int chunks;
+    private final long timestamp;
 
-    public CassandraConnectionExceptionEvent(Throwable throwable, String message) {
-      super(throwable, Level.WARNING, message);
+    private ArtifactManifest(int chunks, long timestamp) {
+      this.chunks = chunks;
+      this.timestamp = timestamp;
+    }
+
+    /**
+     * @return the manifest, or {@link Optional#absent()} if it has not been written (yet).
+     */
+    private static Optional<ArtifactManifest> fromColumns(ColumnList<String> columns) {
+      Column<String> chunks = columns.getColumnByName(ARTIFACT_CHUNKS_COLUMN_NAME);
+      if (chunks == null) {
+        return Optional.absent();
+      }
+      return Optional.of(new ArtifactManifest(chunks.getIntegerValue(), chunks.getTimestamp()));
+    }
+
+    private int getChunks() {
+      return chunks;
+    }
+
+    /**
+     * @return when the manifest was written, in microseconds.
+     */
+    private long getTimestamp() {
+      return timestamp;
     }
   }
 
-  public static class CassandraChecksumMismatchEvent extends AbstractBuckEvent {
+  /**
+   * Reads the chunks of an artifact in order, keeping a few queries ahead of the reader. A chunk
+   * that is missing reads as the end of the stream, which makes the envelope read as truncated.
+   * Failures to connect are thrown as an {@link IOException} caused by the
+   * {@link ConnectionException}.
+   */
+  private static final class ChunkFetchingInputStream extends InputStream {
+    private final Keyspace keyspace;
+    private final String key;
+    private final int numChunks;
+    private final Deque<ListenableFuture<OperationResult<Column<String>>>> chunks;
+    private int nextChunk;
+    private byte[] chunk;
+    private int position;
+
+    private ChunkFetchingInputStream(Keyspace keyspace, String key, int numChunks) {
+      this.keyspace = keyspace;
+      this.key = key;
+      this.numChunks = numChunks;
+      this.chunks = new ArrayDeque<>();
+      this.nextChunk = 0;
+      this.chunk = new byte[0];
+      this.position = 0;
+    }
+
+    @Override
+    public int read() throws IOException {
+      byte[] b = new byte[1];
+      return read(b, 0, 1) == -1 ? -1 : b[0] & 0xff;
+    }
 
-    private final HashCode expected;
-    private final HashCode actual;
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      if (len == 0) {
+        return 0;
+      }
+      while (position == chunk.length) {
+        if (!readNextChunk()) {
+          return -1;
+        }
+      }
+      int read = Math.min(len, chunk.length - position);
+      System.arraycopy(chunk, position, b, off, read);
+      position += read;
+      return read;
+    }
 
-    public CassandraChecksumMismatchEvent(HashCode expected, HashCode actual) {
-      this.expected = Preconditions.checkNotNull(expected);
-      this.actual = Preconditions.checkNotNull(actual);
+    private boolean readNextChunk() throws IOException {
+      try {
+        while (nextChunk < numChunks && chunks.size() < MAX_CHUNK_FETCHES_IN_FLIGHT) {
+          chunks.add(
+              keyspace.prepareQuery(CF_ARTIFACT)
+                  .getKey(key)
+                  .getColumn(getChunkColumnName(nextChunk++))
+                  .executeAsync());
+        }
+        if (chunks.isEmpty()) {
+          return false;
+        }
+        chunk = chunks.remove().get().getResult().getByteArrayValue();
+        position = 0;
+        return true;
+      } catch (ConnectionException e) {
+        throw new IOException(e);
+      } catch (ExecutionException e) {
+        if (e.getCause() instanceof NotFoundException) {
+          // The chunk expired or was never written.
+          throw new EOFException(String.format("Chunk of %s is missing.", key));
+        }
+        throw new IOException(e.getCause());
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException();
+      }
     }
 
     @Override
-    protected String getValueString() {
-      return String.format(
-          "Checksum mismatch: %s (expected) != %s (actual)",
-          expected,
-          actual);
+    public void close() {
+      for (ListenableFuture<?> pending : chunks) {
+        pending.cancel(true);
+      }
+      chunks.clear();
+    }
+  }
+
+  /**
+   * Writes each {@link #CHUNK_SIZE_BYTES} of what is written to it as a chunk column of an
+   * artifact, and the remainder when it is closed. Failures to connect are thrown as an
+   * {@link IOException} caused by the {@link ConnectionException}.
+   */
+  private final class ChunkStoringOutputStream extends OutputStream {
+    private final Keyspace keyspace;
+    private final String key;
+    private final int ttl;
+    private final byte[] buffer;
+    private final List<ListenableFuture<OperationResult<Void>>> chunkFutures;
+    private int position;
+    private boolean isClosed;
+
+    private ChunkStoringOutputStream(Keyspace keyspace, String key, int ttl) {
+      this.keyspace = keyspace;
+      this.key = key;
+      this.ttl = ttl;
+      this.buffer = new byte[CHUNK_SIZE_BYTES];
+      this.chunkFutures = Lists.newArrayList();
+      this.position = 0;
+      this.isClosed = false;
     }
 
     @Override
-    public boolean isRelatedTo(BuckEvent event) {
-      return false;
+    public void write(int b) throws IOException {
+      write(new byte[] {(byte) b}, 0, 1);
     }
 
     @Override
-    public String getEventName() {
-      return "CassandraChecksumMismatchEvent";
+    public void write(byte[] b, int off, int len) throws IOException {
+      while (len > 0) {
+        int written = Math.min(len, buffer.length - position);
+        System.arraycopy(b, off, buffer, position, written);
+        position += written;
+        off += written;
+        len -= written;
+        if (position == buffer.length) {
+          storeChunk();
+        }
+      }
     }
 
-    public HashCode getExpected() {
-      return expected;
+    @Override
+    public void close() throws IOException {
+      if (!isClosed && position > 0) {
+        storeChunk();
+      }
+      isClosed = true;
     }
 
-    public HashCode getActual() {
-      return actual;
+    private List<ListenableFuture<OperationResult<Void>>> getChunkFutures() {
+      return chunkFutures;
     }
 
+    private void storeChunk() throws IOException {
+      MutationBatch mutationBatch = keyspace.prepareMutationBatch();
+      mutationBatch.withRow(CF_ARTIFACT, key)
+          .setDefaultTtl(ttl)
+          .putColumn(
+              getChunkColumnName(chunkFutures.size()),
+              Arrays.copyOf(buffer, position));
+      position = 0;
+
+      try {
+        chunkStorePermits.acquire();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException();
+      }
+      ListenableFuture<OperationResult<Void>> chunkFuture;
+      try {
+        chunkFuture = mutationBatch.executeAsync();
+      } catch (ConnectionException | RuntimeException e) {
+        chunkStorePermits.release();
+        Throwables.propagateIfInstanceOf(e, RuntimeException.class);
+        throw new IOException(e);
+      }
+      Futures.addCallback(chunkFuture, new FutureCallback<OperationResult<Void>>() {
+        @Override
+        public void onSuccess(OperationResult<Void> result) {
+          chunkStorePermits.release();
+        }
+
+        @Override
+        public void onFailure(Throwable t) {
+          chunkStorePermits.release();
+        }
+      });
+      chunkFutures.add(chunkFuture);
+    }
+  }
+
+  private static final class ManifestRequest {
+    private final Keyspace keyspace;
+    private final String key;
+    private final SettableFuture<Optional<ArtifactManifest>> result;
+
+    private ManifestRequest(Keyspace keyspace, String key) {
+      this.keyspace = keyspace;
+      this.key = key;
+      this.result = SettableFuture.create();
+    }
+  }
+
+  public static class CassandraConnectionExceptionEvent extends ThrowableConsoleEvent {
+
+    public CassandraConnectionExceptionEvent(Throwable throwable, String message) {
+      super(throwable, Level.WARNING, message);
+    }
   }
 
 }
@@ -27,11 +27,17 @@ import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableList;
 import com.google.common.eventbus.Subscribe;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 
+import javax.annotation.Nullable;
+
 public class DirArtifactCache implements ArtifactCache {
 
   private static final Logger LOG = Logger.get(DirArtifactCache.class);
@@ -53,16 +59,34 @@ public class DirArtifactCache implements ArtifactCache {
     CacheResult success = CacheResult.MISS;
     File cacheEntry = new File(cacheDir, ruleKey.toString());
     if (cacheEntry.exists()) {
+      Path tmpOutput = null;
       try {
-        Files.createDirectories(output.toPath().getParent());
-        Files.copy(cacheEntry.toPath(), output.toPath(), REPLACE_EXISTING);
-        success = CacheResult.DIR_HIT;
+        // Write to a temporary file next to the output, so that a corrupt entry never replaces it.
+        Path path = output.toPath();
+        Files.createDirectories(path.getParent());
+        tmpOutput = Files.createTempFile(path.getParent(), path.getFileName().toString(), ".tmp");
+        boolean isValid;
+        try (InputStream inputStream = new BufferedInputStream(
+                 Files.newInputStream(cacheEntry.toPath()));
+             OutputStream outputStream = new BufferedOutputStream(
+                 Files.newOutputStream(tmpOutput))) {
+          isValid = ArtifactEnvelope.read(ruleKey, inputStream, outputStream);
+        }
+        if (isValid) {
+          Files.move(tmpOutput, path, REPLACE_EXISTING);
+          success = CacheResult.DIR_HIT;
+        } else {
+          // Make room for a good entry to be stored in its place.
+          Files.deleteIfExists(cacheEntry.toPath());
+        }
       } catch (IOException e) {
         LOG.warn(
             e,
             "Artifact fetch(%s, %s) error",
             ruleKey,
             output.getPath());
+      } finally {
+        deleteTempFile(tmpOutput);
       }
     }
     LOG.debug(
@@ -85,7 +109,12 @@ public class DirArtifactCache implements ArtifactCache {
       // against partial artifacts (whether due to buck interruption or filesystem failure) posing
       // as valid artifacts during subsequent buck runs.
       tmpCacheEntry = File.createTempFile(ruleKey.toString(), ".tmp", cacheDir).toPath();
-      Files.copy(output.toPath(), tmpCacheEntry, REPLACE_EXISTING);
+      try (InputStream inputStream = new BufferedInputStream(
+               Files.newInputStream(output.toPath()));
+           OutputStream outputStream = new BufferedOutputStream(
+               Files.newOutputStream(tmpCacheEntry))) {
+        ArtifactEnvelope.write(ruleKey, inputStream, Files.size(output.toPath()), outputStream);
+      }
       Files.move(tmpCacheEntry, cacheEntry.toPath(), REPLACE_EXISTING);
     } catch (IOException e) {
       LOG.warn(
@@ -93,13 +122,18 @@ public class DirArtifactCache implements ArtifactCache {
           "Artifact store(%s, %s) error",
           ruleKey,
           output.getPath());
-      if (tmpCacheEntry != null) {
-        try {
-          Files.deleteIfExists(tmpCacheEntry);
-        } catch (IOException ignored) {
-          // Unable to delete a temporary file. Nothing sane to do.
-          LOG.debug(ignored, "Unable to delete temp cache file");
-        }
+    } finally {
+      deleteTempFile(tmpCacheEntry);
+    }
+  }
+
+  private static void deleteTempFile(@Nullable Path tmpFile) {
+    if (tmpFile != null) {
+      try {
+        Files.deleteIfExists(tmpFile);
+      } catch (IOException ignored) {
+        // Unable to delete a temporary file. Nothing sane to do.
+        LOG.debug(ignored, "Unable to delete temp cache file");
       }
     }
   }
@@ -50,6 +50,7 @@ import com.facebook.buck.extension.BuckExtensionDescription;
 import com.facebook.buck.file.Downloader;
 import com.facebook.buck.file.RemoteFileDescription;
 import com.facebook.buck.gwt.GwtBinaryDescription;
+import com.facebook.buck.java.JUnitWorkerPool;
 import com.facebook.buck.java.JavaBinaryDescription;
 import com.facebook.buck.java.JavaCompilerEnvironment;
 import com.facebook.buck.java.JavaLibraryDescription;
@@ -241,7 +242,13 @@ public class KnownBuildRuleTypes {
     builder.register(new IosPostprocessResourcesDescription());
     builder.register(new JavaBinaryDescription());
     builder.register(new JavaLibraryDescription(javacEnv));
-    builder.register(new JavaTestDescription(javacEnv));
+    builder.register(
+        new JavaTestDescription(
+            javacEnv,
+            config.getMaxJvmsPerJavaTest(),
+            config.isJUnitWorkerPoolEnabled() ?
+                Optional.of(new JUnitWorkerPool(config.getMaxRunsPerJUnitWorker())) :
+                Optional.<JUnitWorkerPool>absent()));
     builder.register(new KeystoreDescription());
     builder.register(new NdkLibraryDescription(ndkVersion));
     builder.register(new OCamlBinaryDescription(ocamlBuckConfig));
@@ -252,13 +259,11 @@ public class KnownBuildRuleTypes {
     builder.register(new PrebuiltOCamlLibraryDescription());
     builder.register(new ProjectConfigDescription());
     builder.register(
-        new PythonBinaryDescription(
-            pythonPathToPex.or(PythonBinaryDescription.DEFAULT_PATH_TO_PEX),
-            pythonEnv));
+        new PythonBinaryDescription(pythonPathToPex, pythonEnv));
     builder.register(new PythonLibraryDescription());
     builder.register(
         new PythonTestDescription(
-            pythonPathToPex.or(PythonBinaryDescription.DEFAULT_PATH_TO_PEX),
+            pythonPathToPex,
             pythonPathToPythonTestMain.or(PythonTestDescription.PYTHON_PATH_TO_PYTHON_TEST_MAIN),
             pythonEnv));
     builder.register(new RemoteFileDescription(downloadAtRuntimeOk, downloader));
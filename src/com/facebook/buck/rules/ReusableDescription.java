@@ -0,0 +1,27 @@
+/*
+ * Copyright 2014-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.rules;
+
+/**
+ * A {@link Description} whose {@link BuildRule}s, including any it adds to the
+ * {@link BuildRuleResolver} while creating them, keep no state that depends on a particular build
+ * other than their {@link RuleKey} and the output of their {@link BuildOutputInitializer}. The
+ * daemon resets both and keeps using such rules across commands for as long as their
+ * {@link TargetNode}s and deps do not change, rather than creating them again.
+ */
+public interface ReusableDescription<T> extends Description<T> {
+}
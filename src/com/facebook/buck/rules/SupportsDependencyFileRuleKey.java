@@ -0,0 +1,47 @@
+/*
+ * Copyright 2014-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.rules;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+
+/**
+ * {@link BuildRule} that can avoid rebuilding itself when only inputs that were not actually used
+ * by its last build have changed. After building, such a rule records the list of inputs it used
+ * (its "dep file") as metadata, and the {@link RuleKey} computed from just those inputs.
+ */
+public interface SupportsDependencyFileRuleKey {
+
+  /**
+   * Key for {@link OnDiskBuildInfo} to identify the inputs that were used by the last build.
+   */
+  public static final String DEP_FILE_ON_DISK_METADATA = "DEP_FILE";
+
+  /**
+   * Key for {@link OnDiskBuildInfo} to identify the {@link RuleKey} computed from the inputs that
+   * were used by the last build.
+   */
+  public static final String DEP_FILE_RULE_KEY_ON_DISK_METADATA = "DEP_FILE_RULE_KEY";
+
+  /**
+   * @param depFileEntries the inputs recorded in {@link #DEP_FILE_ON_DISK_METADATA} by a previous
+   *     build of this rule.
+   * @return a {@link RuleKey} over all properties of this rule other than its deps and the given
+   *     inputs, or absent if one of the inputs no longer exists.
+   */
+  public Optional<RuleKey> getDepFileRuleKey(ImmutableList<String> depFileEntries);
+}
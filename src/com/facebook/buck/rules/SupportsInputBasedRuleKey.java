@@ -0,0 +1,43 @@
+/*
+ * Copyright 2014-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.rules;
+
+import com.google.common.base.Optional;
+
+import java.io.IOException;
+
+/**
+ * {@link BuildRule} whose output is a function of the contents of the outputs of its deps, rather
+ * than of the {@link RuleKey}s of its deps. Such a rule can avoid rebuilding itself, and can be
+ * fetched from the {@link ArtifactCache}, when a dep was rebuilt but produced equivalent output.
+ */
+public interface SupportsInputBasedRuleKey {
+
+  /**
+   * Key for {@link OnDiskBuildInfo} to identify the input-based {@link RuleKey} of the last build.
+   */
+  public static final String INPUT_BASED_RULE_KEY_ON_DISK_METADATA = "INPUT_BASED_RULE_KEY";
+
+  /**
+   * This is only called once all of the deps of this rule have been built, so that their outputs
+   * can be read.
+   *
+   * @return a {@link RuleKey} over all properties of this rule other than its deps and the
+   *     contents of the outputs of its deps, or absent if there is no such key for this rule.
+   */
+  public Optional<RuleKey> getInputBasedRuleKey() throws IOException;
+}
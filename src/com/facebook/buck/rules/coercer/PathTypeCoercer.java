@@ -18,6 +18,7 @@ package com.facebook.buck.rules.coercer;
 
 import com.facebook.buck.parser.BuildTargetParser;
 import com.facebook.buck.rules.BuildRuleResolver;
+import com.facebook.buck.util.MorePaths;
 import com.facebook.buck.util.ProjectFilesystem;
 
 import java.nio.file.Path;
@@ -42,7 +43,7 @@ public class PathTypeCoercer extends LeafTypeCoercer<Path> {
 
       // Normalize the path.
       try {
-        normalizedPath = pathRelativeToProjectRoot.resolve(path).normalize();
+        normalizedPath = MorePaths.intern(pathRelativeToProjectRoot.resolve(path).normalize());
       } catch (RuntimeException e) {
         throw new CoerceFailedException("invalid path", e);
       }
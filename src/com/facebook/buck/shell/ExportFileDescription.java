@@ -19,13 +19,13 @@ package com.facebook.buck.shell;
 import com.facebook.buck.rules.BuildRuleParams;
 import com.facebook.buck.rules.BuildRuleResolver;
 import com.facebook.buck.rules.BuildRuleType;
-import com.facebook.buck.rules.Description;
+import com.facebook.buck.rules.ReusableDescription;
 import com.facebook.buck.rules.SourcePath;
 import com.facebook.buck.rules.SourcePathResolver;
 import com.facebook.infer.annotation.SuppressFieldNotInitialized;
 import com.google.common.base.Optional;
 
-public class ExportFileDescription implements Description<ExportFileDescription.Arg> {
+public class ExportFileDescription implements ReusableDescription<ExportFileDescription.Arg> {
 
   public static final BuildRuleType TYPE = new BuildRuleType("export_file");
 
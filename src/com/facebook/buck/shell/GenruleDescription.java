@@ -24,8 +24,8 @@ import com.facebook.buck.rules.BuildRuleFactoryParams;
 import com.facebook.buck.rules.BuildRuleParams;
 import com.facebook.buck.rules.BuildRuleResolver;
 import com.facebook.buck.rules.BuildRuleType;
-import com.facebook.buck.rules.Description;
 import com.facebook.buck.rules.ImplicitDepsInferringDescription;
+import com.facebook.buck.rules.ReusableDescription;
 import com.facebook.buck.rules.SourcePath;
 import com.facebook.buck.rules.SourcePathResolver;
 import com.facebook.buck.rules.SourcePaths;
@@ -46,7 +46,7 @@ import com.google.common.collect.ImmutableSortedSet;
 import com.google.common.collect.Iterables;
 
 public class GenruleDescription
-    implements Description<GenruleDescription.Arg>, ImplicitDepsInferringDescription {
+    implements ReusableDescription<GenruleDescription.Arg>, ImplicitDepsInferringDescription {
 
   public static final BuildRuleType TYPE = new BuildRuleType("genrule");
 
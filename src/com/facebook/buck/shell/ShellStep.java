@@ -109,7 +109,7 @@ public abstract class ShellStep implements Step {
     int exitCode;
     try {
       startTime = System.currentTimeMillis();
-      process = processBuilder.start();
+      process = context.getProcessExecutor().launchProcess(processBuilder);
       exitCode = interactWithProcess(context, process);
     } catch (IOException e) {
       e.printStackTrace(context.getStdErr());
@@ -21,21 +21,29 @@ import com.facebook.buck.rules.AbstractBuildRule;
 import com.facebook.buck.rules.BuildContext;
 import com.facebook.buck.rules.BuildRuleParams;
 import com.facebook.buck.rules.BuildableContext;
+import com.facebook.buck.rules.PathSourcePath;
 import com.facebook.buck.rules.RuleKey;
 import com.facebook.buck.rules.Sha1HashCode;
 import com.facebook.buck.rules.SourcePath;
 import com.facebook.buck.rules.SourcePathResolver;
 import com.facebook.buck.step.Step;
 import com.facebook.buck.step.fs.MakeCleanDirectoryStep;
+import com.facebook.buck.util.ProjectFilesystem;
+import com.google.common.base.Optional;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableCollection;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.ImmutableSortedSet;
+import com.google.common.collect.Maps;
 import com.google.common.hash.HashCode;
 
 import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Map;
+import java.util.Set;
 
 import javax.annotation.Nullable;
 
@@ -49,6 +57,7 @@ public class ThriftCompiler extends AbstractBuildRule implements AbiRule {
   private final ImmutableSet<String> options;
   private final ImmutableList<Path> includeRoots;
   private final ImmutableMap<Path, SourcePath> includes;
+  private final ProjectFilesystem projectFilesystem;
 
   public ThriftCompiler(
       BuildRuleParams params,
@@ -70,6 +79,7 @@ public class ThriftCompiler extends AbstractBuildRule implements AbiRule {
     this.options = Preconditions.checkNotNull(options);
     this.includeRoots = Preconditions.checkNotNull(includeRoots);
     this.includes = Preconditions.checkNotNull(includes);
+    this.projectFilesystem = params.getProjectFilesystem();
   }
 
   @Override
@@ -87,17 +97,97 @@ public class ThriftCompiler extends AbstractBuildRule implements AbiRule {
         .set("language", language);
 
 
-    // Hash the layout of each potentially included thrift file dependency and it's contents.
+    // Hash the layout of each included thrift file dependency and it's contents.
     // We do this here, rather than returning them from `getInputsToCompareToOutput` so that
     // we can match the contents hash up with where it was laid out in the include search path.
-    for (Path path : ImmutableSortedSet.copyOf(includes.keySet())) {
-      SourcePath source = includes.get(path);
+    // Only the files reachable through the `include` statements of our input can affect what
+    // the compiler generates, so when we can follow them we leave everything else out, which
+    // keeps this rule's key stable when unrelated thrift files change.
+    ImmutableMap<Path, SourcePath> hashedIncludes = getTransitiveIncludes().or(includes);
+    for (Path path : ImmutableSortedSet.copyOf(hashedIncludes.keySet())) {
+      SourcePath source = hashedIncludes.get(path);
       builder.setInput("include(" + path + ")", getResolver().getPath(source));
     }
 
     return builder;
   }
 
+  /**
+   * Follows the {@code include} statements of the input through the include search path.
+   *
+   * @return the includes that the input transitively depends on, or {@link Optional#absent()} if
+   *     that cannot be determined without building something first (e.g. an include is generated
+   *     by another rule), if a thrift file cannot be parsed, or if an include cannot be found
+   *     amongst {@link #includes}.
+   */
+  private Optional<ImmutableMap<Path, SourcePath>> getTransitiveIncludes() {
+    Optional<Path> inputIncludePath = Optional.absent();
+    for (Map.Entry<Path, SourcePath> entry : includes.entrySet()) {
+      if (entry.getValue().equals(input)) {
+        inputIncludePath = Optional.of(entry.getKey());
+        break;
+      }
+    }
+    if (!inputIncludePath.isPresent()) {
+      return Optional.absent();
+    }
+
+    Map<Path, SourcePath> visited = Maps.newHashMap();
+    Deque<Path> toVisit = new ArrayDeque<>();
+    toVisit.add(inputIncludePath.get());
+    while (!toVisit.isEmpty()) {
+      Path includePath = toVisit.remove();
+      if (visited.containsKey(includePath)) {
+        continue;
+      }
+      SourcePath source = includes.get(includePath);
+      if (!(source instanceof PathSourcePath)) {
+        return Optional.absent();
+      }
+      visited.put(includePath, source);
+      Optional<String> contents =
+          projectFilesystem.readFileIfItExists(((PathSourcePath) source).getRelativePath());
+      if (!contents.isPresent()) {
+        return Optional.absent();
+      }
+      Optional<ImmutableList<String>> includesOfSource = ThriftIncludes.parse(contents.get());
+      if (!includesOfSource.isPresent()) {
+        return Optional.absent();
+      }
+      for (String include : includesOfSource.get()) {
+        Optional<Path> resolved = resolveInclude(includePath, include, includes.keySet());
+        if (!resolved.isPresent()) {
+          return Optional.absent();
+        }
+        toVisit.add(resolved.get());
+      }
+    }
+
+    return Optional.of(ImmutableMap.copyOf(visited));
+  }
+
+  /**
+   * Mirrors how the thrift compiler looks up an include: first relative to the directory of the
+   * including file, then in each of the include roots.
+   */
+  private static Optional<Path> resolveInclude(
+      Path includingPath,
+      String include,
+      Set<Path> includePaths) {
+    Path parent = includingPath.getParent();
+    Path relative =
+        (parent == null ? includingPath.getFileSystem().getPath(include) : parent.resolve(include))
+            .normalize();
+    if (includePaths.contains(relative)) {
+      return Optional.of(relative);
+    }
+    Path fromRoot = includingPath.getFileSystem().getPath(include).normalize();
+    if (includePaths.contains(fromRoot)) {
+      return Optional.of(fromRoot);
+    }
+    return Optional.absent();
+  }
+
   @Override
   public ImmutableList<Step> getBuildSteps(
       BuildContext context, BuildableContext buildableContext) {
@@ -0,0 +1,139 @@
+/*
+ * Copyright 2014-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.thrift;
+
+import com.google.common.base.Optional;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Extracts the {@code include} statements from the contents of a thrift file, so that the files a
+ * thrift source actually depends on can be told apart from everything else on its include path.
+ */
+class ThriftIncludes {
+
+  private static final String INCLUDE = "include";
+
+  private enum Token {
+    /** An identifier or keyword, whose text is in {@link Lexer#text}. */
+    WORD,
+    /** A string literal, whose contents are in {@link Lexer#text}. */
+    LITERAL,
+    /** Any other single character, such as punctuation. */
+    OTHER,
+    END,
+    /** Something that we cannot be sure the thrift compiler would read the same way. */
+    INVALID,
+  }
+
+  /** Utility class: do not instantiate. */
+  private ThriftIncludes() {}
+
+  /**
+   * @return the paths named by the {@code include} statements in {@code contents}, in the order in
+   *     which they appear, or {@link Optional#absent()} if {@code contents} could not be tokenized,
+   *     in which case no include can be ruled out. {@code cpp_include} statements are not thrift
+   *     files and are ignored.
+   */
+  static Optional<ImmutableList<String>> parse(String contents) {
+    Lexer lexer = new Lexer(contents);
+    ImmutableList.Builder<String> includes = ImmutableList.builder();
+    for (Token token = lexer.next(); token != Token.END; token = lexer.next()) {
+      if (token == Token.INVALID) {
+        return Optional.absent();
+      }
+      if (token == Token.WORD && lexer.text.equals(INCLUDE)) {
+        if (lexer.next() != Token.LITERAL) {
+          return Optional.absent();
+        }
+        includes.add(lexer.text);
+      }
+    }
+    return Optional.of(includes.build());
+  }
+
+  /**
+   * Reads the contents of a thrift file from left to right, so that comment markers inside string
+   * literals and quotes inside comments are never mistaken for anything else.
+   */
+  private static class Lexer {
+    private final String contents;
+    private int pos;
+    private String text;
+
+    private Lexer(String contents) {
+      this.contents = Preconditions.checkNotNull(contents);
+      this.pos = 0;
+      this.text = "";
+    }
+
+    private Token next() {
+      while (pos < contents.length()) {
+        char c = contents.charAt(pos);
+        if (Character.isWhitespace(c)) {
+          pos++;
+        } else if (contents.startsWith("/*", pos)) {
+          int end = contents.indexOf("*/", pos + 2);
+          if (end == -1) {
+            return Token.INVALID;
+          }
+          pos = end + 2;
+        } else if (c == '#' || contents.startsWith("//", pos)) {
+          int end = contents.indexOf('\n', pos);
+          pos = end == -1 ? contents.length() : end + 1;
+        } else if (c == '"' || c == '\'') {
+          return readLiteral(c);
+        } else if (isWordChar(c)) {
+          int start = pos;
+          while (pos < contents.length() && isWordChar(contents.charAt(pos))) {
+            pos++;
+          }
+          text = contents.substring(start, pos);
+          return Token.WORD;
+        } else {
+          pos++;
+          return Token.OTHER;
+        }
+      }
+      return Token.END;
+    }
+
+    private Token readLiteral(char quote) {
+      int start = pos + 1;
+      for (int i = start; i < contents.length(); i++) {
+        char c = contents.charAt(i);
+        if (c == '\\') {
+          // Older thrift compilers end a literal at an escaped quote, newer ones do not.
+          if (i + 1 == contents.length() || contents.charAt(i + 1) == quote) {
+            return Token.INVALID;
+          }
+          i++;
+        } else if (c == quote) {
+          text = contents.substring(start, i);
+          pos = i + 1;
+          return Token.LITERAL;
+        }
+      }
+      return Token.INVALID;
+    }
+
+    private static boolean isWordChar(char c) {
+      return Character.isLetterOrDigit(c) || c == '_' || c == '.';
+    }
+  }
+
+}
@@ -0,0 +1,259 @@
+/*
+ * Copyright 2014-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.util;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.ByteStreams;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.Nullable;
+
+/**
+ * Decodes values written in Watchman's binary protocol, BSER. Each value arrives as a PDU: a
+ * two-byte magic header, the length of the encoded value and then the value itself. Values are
+ * decoded into the types Jackson would produce for the equivalent JSON: {@link Map}s with
+ * {@link String} keys, {@link List}s, {@link String}s, {@link Long}s, {@link Double}s,
+ * {@link Boolean}s and {@code null}.
+ * <p>
+ * Integers are written in the byte order of the machine running Watchman, which is the machine
+ * running Buck.
+ * <p>
+ * Instances reuse a buffer between PDUs and so are not thread-safe.
+ */
+public class BserDeserializer {
+
+  private static final byte[] MAGIC = {0x00, 0x01};
+
+  private static final byte BSER_ARRAY = 0x00;
+  private static final byte BSER_OBJECT = 0x01;
+  private static final byte BSER_STRING = 0x02;
+  private static final byte BSER_INT8 = 0x03;
+  private static final byte BSER_INT16 = 0x04;
+  private static final byte BSER_INT32 = 0x05;
+  private static final byte BSER_INT64 = 0x06;
+  private static final byte BSER_REAL = 0x07;
+  private static final byte BSER_TRUE = 0x08;
+  private static final byte BSER_FALSE = 0x09;
+  private static final byte BSER_NULL = 0x0a;
+  private static final byte BSER_TEMPLATE = 0x0b;
+  private static final byte BSER_SKIP = 0x0c;
+
+  /** The magic header, an integer tag and the largest integer that can follow it. */
+  private static final int MAX_HEADER_LENGTH = MAGIC.length + 1 + 8;
+
+  private final ByteOrder byteOrder;
+  private final ByteBuffer header;
+  private ByteBuffer buffer;
+
+  public BserDeserializer() {
+    this(ByteOrder.nativeOrder());
+  }
+
+  public BserDeserializer(ByteOrder byteOrder) {
+    this.byteOrder = byteOrder;
+    this.header = ByteBuffer.allocate(MAX_HEADER_LENGTH).order(byteOrder);
+    this.buffer = ByteBuffer.allocate(8192).order(byteOrder);
+  }
+
+  /**
+   * Reads and decodes the next PDU from {@code inputStream}.
+   *
+   * @throws EOFException if the stream ends before the next PDU starts.
+   * @throws IOException if the stream ends within a PDU, or the PDU is not valid BSER.
+   */
+  @Nullable
+  public Object deserializeBserValue(InputStream inputStream) throws IOException {
+    byte[] headerBytes = header.array();
+    int firstByte = inputStream.read();
+    if (firstByte == -1) {
+      throw new EOFException("No more BSER values");
+    }
+    headerBytes[0] = (byte) firstByte;
+    ByteStreams.readFully(inputStream, headerBytes, 1, MAGIC.length);
+    if (headerBytes[0] != MAGIC[0] || headerBytes[1] != MAGIC[1]) {
+      throw new IOException(
+          String.format("Invalid BSER header: 0x%02x 0x%02x", headerBytes[0], headerBytes[1]));
+    }
+    int lengthSize = getIntegerSize(headerBytes[MAGIC.length]);
+    ByteStreams.readFully(inputStream, headerBytes, MAGIC.length + 1, lengthSize);
+    header.clear();
+    header.position(MAGIC.length);
+    int length = readLength(header);
+
+    if (buffer.capacity() < length) {
+      buffer = ByteBuffer.allocate(Math.max(length, buffer.capacity() * 2)).order(byteOrder);
+    }
+    buffer.clear();
+    ByteStreams.readFully(inputStream, buffer.array(), 0, length);
+    buffer.limit(length);
+
+    try {
+      Object value = deserializeRecursive(buffer);
+      if (buffer.hasRemaining()) {
+        throw new IOException(
+            String.format("%d unexpected bytes after BSER value", buffer.remaining()));
+      }
+      return value;
+    } catch (BufferUnderflowException e) {
+      throw new IOException("BSER value is longer than its PDU", e);
+    }
+  }
+
+  @Nullable
+  private Object deserializeRecursive(ByteBuffer buffer) throws IOException {
+    byte type = buffer.get();
+    switch (type) {
+      case BSER_ARRAY:
+        return deserializeArray(buffer);
+      case BSER_OBJECT:
+        return deserializeObject(buffer);
+      case BSER_STRING:
+        return deserializeString(buffer);
+      case BSER_INT8:
+      case BSER_INT16:
+      case BSER_INT32:
+      case BSER_INT64:
+        return readInteger(buffer, type);
+      case BSER_REAL:
+        return buffer.getDouble();
+      case BSER_TRUE:
+        return Boolean.TRUE;
+      case BSER_FALSE:
+        return Boolean.FALSE;
+      case BSER_NULL:
+        return null;
+      case BSER_TEMPLATE:
+        return deserializeTemplate(buffer);
+      default:
+        throw new IOException(String.format("Unexpected BSER type 0x%02x", type));
+    }
+  }
+
+  private List<Object> deserializeArray(ByteBuffer buffer) throws IOException {
+    int count = readLength(buffer);
+    List<Object> array = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      array.add(deserializeRecursive(buffer));
+    }
+    return array;
+  }
+
+  private Map<String, Object> deserializeObject(ByteBuffer buffer) throws IOException {
+    int count = readLength(buffer);
+    // LinkedHashMap preserves the order of the keys, as Jackson does.
+    Map<String, Object> object = new LinkedHashMap<>();
+    for (int i = 0; i < count; i++) {
+      if (buffer.get() != BSER_STRING) {
+        throw new IOException("BSER object key is not a string");
+      }
+      String key = deserializeString(buffer);
+      object.put(key, deserializeRecursive(buffer));
+    }
+    return object;
+  }
+
+  /**
+   * A template is an array of objects that share their keys, which are written once up front.
+   * Watchman uses it for the list of files in a query result.
+   */
+  private List<Map<String, Object>> deserializeTemplate(ByteBuffer buffer) throws IOException {
+    if (buffer.get() != BSER_ARRAY) {
+      throw new IOException("BSER template keys are not an array");
+    }
+    List<Object> keys = deserializeArray(buffer);
+    int count = readLength(buffer);
+    List<Map<String, Object>> objects = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      Map<String, Object> object = new LinkedHashMap<>();
+      for (Object key : keys) {
+        if (buffer.get(buffer.position()) == BSER_SKIP) {
+          // The object does not have this key.
+          buffer.get();
+          continue;
+        }
+        if (!(key instanceof String)) {
+          throw new IOException("BSER template key is not a string");
+        }
+        object.put((String) key, deserializeRecursive(buffer));
+      }
+      objects.add(object);
+    }
+    return objects;
+  }
+
+  private static String deserializeString(ByteBuffer buffer) throws IOException {
+    int length = readLength(buffer);
+    if (length > buffer.remaining()) {
+      throw new BufferUnderflowException();
+    }
+    String value = new String(
+        buffer.array(),
+        buffer.arrayOffset() + buffer.position(),
+        length,
+        Charsets.UTF_8);
+    buffer.position(buffer.position() + length);
+    return value;
+  }
+
+  private static int readLength(ByteBuffer buffer) throws IOException {
+    long length = readInteger(buffer, buffer.get());
+    if (length < 0 || length > Integer.MAX_VALUE) {
+      throw new IOException("Invalid BSER length " + length);
+    }
+    return (int) length;
+  }
+
+  private static long readInteger(ByteBuffer buffer, byte type) throws IOException {
+    switch (type) {
+      case BSER_INT8:
+        return buffer.get();
+      case BSER_INT16:
+        return buffer.getShort();
+      case BSER_INT32:
+        return buffer.getInt();
+      case BSER_INT64:
+        return buffer.getLong();
+      default:
+        throw new IOException(String.format("Expected a BSER integer, got type 0x%02x", type));
+    }
+  }
+
+  private static int getIntegerSize(byte type) throws IOException {
+    switch (type) {
+      case BSER_INT8:
+        return 1;
+      case BSER_INT16:
+        return 2;
+      case BSER_INT32:
+        return 4;
+      case BSER_INT64:
+        return 8;
+      default:
+        throw new IOException(String.format("Expected a BSER integer, got type 0x%02x", type));
+    }
+  }
+}
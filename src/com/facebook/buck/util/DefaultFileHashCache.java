@@ -19,9 +19,13 @@ package com.facebook.buck.util;
 import com.facebook.buck.log.Logger;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
+import com.google.common.base.Stopwatch;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
 import com.google.common.cache.LoadingCache;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Maps;
 import com.google.common.eventbus.Subscribe;
 import com.google.common.hash.HashCode;
 import com.google.common.hash.Hashing;
@@ -32,7 +36,10 @@ import java.io.File;
 import java.io.IOException;
 import java.nio.file.Path;
 import java.nio.file.WatchEvent;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 
 public class DefaultFileHashCache implements FileHashCache {
 
@@ -43,18 +50,31 @@ public class DefaultFileHashCache implements FileHashCache {
   @VisibleForTesting
   final LoadingCache<Path, HashCode> loadingCache;
 
+  /**
+   * The snapshot of each file taken just before it was hashed, used to find the entries that are
+   * stale when file change events have been lost.
+   */
+  private final ConcurrentMap<Path, FileSnapshot> snapshots;
+
   public DefaultFileHashCache(ProjectFilesystem projectFilesystem) {
     this.projectFilesystem = Preconditions.checkNotNull(projectFilesystem);
+    this.snapshots = Maps.newConcurrentMap();
 
     this.loadingCache = CacheBuilder.newBuilder()
         .build(new CacheLoader<Path, HashCode>() {
           @Override
           public HashCode load(Path path) throws Exception {
-            return getHashCode(path);
+            return loadHashCode(path);
           }
         });
   }
 
+  private HashCode loadHashCode(Path path) throws IOException {
+    // Take the snapshot first, so that a change made while hashing makes the snapshot stale.
+    snapshots.put(path, FileSnapshot.of(projectFilesystem.resolve(path)));
+    return getHashCode(path);
+  }
+
   private HashCode getHashCode(Path path) throws IOException {
     // TODO(simons): Should be this.projectFilesystem.computeSha1(path);
     File file = this.projectFilesystem.resolve(path).toFile();
@@ -99,12 +119,51 @@ public class DefaultFileHashCache implements FileHashCache {
       // Path event, remove the path from the cache as it has been changed, added or deleted.
       Path path = ((Path) event.context()).normalize();
       LOG.verbose("Invalidating %s", path);
-      loadingCache.invalidate(path);
+      invalidate(path);
     } else {
-      // Non-path change event, likely an overflow due to many change events: invalidate everything.
-      LOG.debug("Invalidating all");
+      // Non-path change event, likely an overflow due to many change events: only the files that
+      // were hashed can be stale, so invalidate the ones that no longer match their snapshot.
+      reconcile();
+    }
+  }
+
+  private void invalidate(Path path) {
+    loadingCache.invalidate(path);
+    snapshots.remove(path);
+  }
+
+  private void reconcile() {
+    Stopwatch stopwatch = Stopwatch.createStarted();
+    Map<Path, FileSnapshot> recordedSnapshots = ImmutableMap.copyOf(snapshots);
+    ImmutableSet<Path> changedPaths;
+    try {
+      changedPaths = FileReconciler.findChangedPaths(
+          recordedSnapshots,
+          projectFilesystem.getAbsolutifier());
+    } catch (InterruptedException e) {
+      LOG.debug("Interrupted while reconciling, invalidating all");
+      Thread.currentThread().interrupt();
       loadingCache.invalidateAll();
+      snapshots.clear();
+      return;
+    }
+
+    ImmutableSet<Path> cachedPaths = ImmutableSet.copyOf(loadingCache.asMap().keySet());
+    int invalidated = 0;
+    for (Path path : cachedPaths) {
+      // Entries without a snapshot were not loaded from disk, so there is no telling if they are
+      // stale.
+      if (changedPaths.contains(path) || !recordedSnapshots.containsKey(path)) {
+        invalidate(path);
+        invalidated++;
+      }
     }
+    LOG.debug(
+        "Reconciled %d files in %d ms, invalidated %d of %d hashes.",
+        recordedSnapshots.size(),
+        stopwatch.elapsed(TimeUnit.MILLISECONDS),
+        invalidated,
+        cachedPaths.size());
   }
 
 }
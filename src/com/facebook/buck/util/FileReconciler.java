@@ -0,0 +1,115 @@
+/*
+ * Copyright 2014-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.util;
+
+import static com.facebook.buck.util.concurrent.MoreExecutors.newMultiThreadExecutorForTasks;
+import static com.google.common.util.concurrent.MoreExecutors.listeningDecorator;
+
+import com.facebook.buck.log.Logger;
+import com.google.common.base.Function;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Finds the files that changed while nobody was listening, by comparing the {@link FileSnapshot}s a
+ * cache recorded against the files on disk. This is what caches do instead of invalidating
+ * everything when a {@link ProjectFilesystemWatcher} reports that events were lost.
+ */
+public class FileReconciler {
+
+  private static final Logger LOG = Logger.get(FileReconciler.class);
+
+  /** Each task stats this many paths, so that a big reconciliation is not dominated by futures. */
+  private static final int PATHS_PER_TASK = 512;
+
+  /** Utility class: do not instantiate. */
+  private FileReconciler() {}
+
+  /**
+   * Stats every path in {@code snapshots}, in parallel.
+   *
+   * @param snapshots the snapshot a cache recorded for each path it depends on.
+   * @param absolutifier resolves the keys of {@code snapshots} to absolute paths.
+   * @return the keys of {@code snapshots} whose current snapshot differs from the recorded one.
+   *     Paths that could not be read are assumed to have changed.
+   */
+  public static ImmutableSet<Path> findChangedPaths(
+      Map<Path, FileSnapshot> snapshots,
+      final Function<Path, Path> absolutifier) throws InterruptedException {
+    Preconditions.checkNotNull(absolutifier);
+    List<List<Map.Entry<Path, FileSnapshot>>> partitions =
+        Lists.partition(ImmutableList.copyOf(snapshots.entrySet()), PATHS_PER_TASK);
+
+    ListeningExecutorService executorService = listeningDecorator(
+        newMultiThreadExecutorForTasks("file-reconciler", partitions.size()));
+
+    try {
+      List<ListenableFuture<ImmutableSet<Path>>> futures = Lists.newArrayList();
+      for (final List<Map.Entry<Path, FileSnapshot>> partition : partitions) {
+        futures.add(
+            executorService.submit(
+                new Callable<ImmutableSet<Path>>() {
+                  @Override
+                  public ImmutableSet<Path> call() {
+                    return findChangedPaths(partition, absolutifier);
+                  }
+                }));
+      }
+
+      ImmutableSet.Builder<Path> changedPaths = ImmutableSet.builder();
+      for (ImmutableSet<Path> changedInPartition : Futures.allAsList(futures).get()) {
+        changedPaths.addAll(changedInPartition);
+      }
+      return changedPaths.build();
+    } catch (ExecutionException e) {
+      throw Throwables.propagate(e.getCause());
+    } finally {
+      executorService.shutdownNow();
+    }
+  }
+
+  private static ImmutableSet<Path> findChangedPaths(
+      List<Map.Entry<Path, FileSnapshot>> snapshots,
+      Function<Path, Path> absolutifier) {
+    ImmutableSet.Builder<Path> changedPaths = ImmutableSet.builder();
+    for (Map.Entry<Path, FileSnapshot> entry : snapshots) {
+      Path path = entry.getKey();
+      try {
+        if (!entry.getValue().equals(FileSnapshot.of(absolutifier.apply(path)))) {
+          changedPaths.add(path);
+        }
+      } catch (IOException e) {
+        LOG.debug(e, "Could not stat %s, assuming it changed.", path);
+        changedPaths.add(path);
+      }
+    }
+    return changedPaths.build();
+  }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright 2014-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.util;
+
+import com.google.common.base.Objects;
+import com.google.common.base.Preconditions;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+
+/**
+ * The modification time and size of a file or directory at the time a cache read it. Caches
+ * record a snapshot of each file they depend on so that, when file change events have been lost,
+ * they can find the files that changed by comparing snapshots rather than throwing everything away.
+ */
+public class FileSnapshot {
+
+  /** The snapshot of a path that does not exist. */
+  public static final FileSnapshot MISSING = new FileSnapshot(-1, -1);
+
+  private final long lastModifiedTime;
+  private final long size;
+
+  private FileSnapshot(long lastModifiedTime, long size) {
+    this.lastModifiedTime = lastModifiedTime;
+    this.size = size;
+  }
+
+  public static FileSnapshot of(BasicFileAttributes attributes) {
+    Preconditions.checkNotNull(attributes);
+    return new FileSnapshot(attributes.lastModifiedTime().toMillis(), attributes.size());
+  }
+
+  /**
+   * @param path an absolute path.
+   * @return the current snapshot of {@code path}, or {@link #MISSING} if it does not exist.
+   */
+  public static FileSnapshot of(Path path) throws IOException {
+    try {
+      return of(Files.readAttributes(path, BasicFileAttributes.class));
+    } catch (NoSuchFileException e) {
+      return MISSING;
+    }
+  }
+
+  public long getLastModifiedTime() {
+    return lastModifiedTime;
+  }
+
+  public long getSize() {
+    return size;
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if (!(obj instanceof FileSnapshot)) {
+      return false;
+    }
+    FileSnapshot that = (FileSnapshot) obj;
+    return this.lastModifiedTime == that.lastModifiedTime && this.size == that.size;
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hashCode(lastModifiedTime, size);
+  }
+
+  @Override
+  public String toString() {
+    return Objects.toStringHelper(this)
+        .add("lastModifiedTime", lastModifiedTime)
+        .add("size", size)
+        .toString();
+  }
+}
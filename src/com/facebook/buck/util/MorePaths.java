@@ -23,6 +23,8 @@ import com.google.common.base.Throwables;
 import com.google.common.collect.FluentIterable;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.ImmutableSortedSet;
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
 
 import java.io.IOException;
 import java.io.InputStream;
@@ -42,6 +44,8 @@ public class MorePaths {
   /** Utility class: do not instantiate. */
   private MorePaths() {}
 
+  private static final Interner<Path> PATH_INTERNER = Interners.newWeakInterner();
+
   public static final Function<String, Path> TO_PATH = new Function<String, Path>() {
     @Override
     public Path apply(String path) {
@@ -49,6 +53,15 @@ public class MorePaths {
     }
   };
 
+  /**
+   * Returns the canonical instance of {@code path}, so that the daemon keeps a single copy of each
+   * of the relative paths that are referenced from many build rules, like the base paths of
+   * packages.
+   */
+  public static Path intern(Path path) {
+    return PATH_INTERNER.intern(path);
+  }
+
   public static String pathWithUnixSeparators(String path) {
     return pathWithUnixSeparators(Paths.get(path));
   }
@@ -17,20 +17,50 @@
 package com.facebook.buck.util;
 
 import com.google.common.base.Charsets;
+import com.google.common.base.Objects;
 import com.google.common.base.Optional;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 import java.io.IOException;
 import java.io.OutputStreamWriter;
 import java.io.PrintStream;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Executes a {@link Process} and blocks until it is finished.
  */
 public class ProcessExecutor {
 
+  /**
+   * Threads that copy the output of subprocesses to where it should go. A build runs hundreds of
+   * short-lived processes, so these threads are shared by all executors and kept alive between
+   * processes rather than created for each one. The pool cannot be bounded: every running process
+   * needs a thread blocked on its output for as long as it runs.
+   */
+  private static final ExecutorService OUTPUT_PUMPS = new ThreadPoolExecutor(
+      /* corePoolSize */ 0,
+      /* maximumPoolSize */ Integer.MAX_VALUE,
+      /* keepAliveTime */ 60L, TimeUnit.SECONDS,
+      /* workQueue */ new SynchronousQueue<Runnable>(),
+      /* threadFactory */ new ThreadFactoryBuilder()
+          .setNameFormat("ProcessExecutor pump-%d")
+          .setDaemon(true)
+          .build());
+
+  private static final AtomicLong processesLaunched = new AtomicLong();
+  private static final AtomicLong totalSpawnNanos = new AtomicLong();
+  private static final AtomicLong processesExecuted = new AtomicLong();
+  private static final AtomicLong totalExecutionNanos = new AtomicLong();
+
   /**
    * Options for {@link ProcessExecutor#execute(Process, Set, Optional)}.
    */
@@ -67,6 +97,18 @@ public class ProcessExecutor {
     this.ansi = console.getAnsi();
   }
 
+  /**
+   * Starts the process described by {@code processBuilder}, recording how long that took in the
+   * {@link Statistics} of this JVM.
+   */
+  public Process launchProcess(ProcessBuilder processBuilder) throws IOException {
+    long startNanos = System.nanoTime();
+    Process process = processBuilder.start();
+    totalSpawnNanos.addAndGet(System.nanoTime() - startNanos);
+    processesLaunched.incrementAndGet();
+    return process;
+  }
+
   /**
    * Convenience method for {@link #execute(Process, Set, Optional)}
    * with boolean values set to {@code false} and optional values set to absent.
@@ -119,11 +161,12 @@ public class ProcessExecutor {
         /* flagOutputWrittenToStream */ !shouldPrintStdErr && !expectingStdErr,
         Optional.<InputStreamConsumer.Handler>absent());
 
-    // Consume the streams so they do not deadlock.
-    Thread stdOutConsumer = Threads.namedThread("ProcessExecutor (stdOut)", stdOut);
-    stdOutConsumer.start();
-    Thread stdErrConsumer = Threads.namedThread("ProcessExecutor (stdErr)", stdErr);
-    stdErrConsumer.start();
+    // Consume the streams so they do not deadlock. The calling thread must not read them itself:
+    // a blocking read cannot be interrupted, and it has to be able to destroy the process when it
+    // is interrupted.
+    long startNanos = System.nanoTime();
+    Future<?> stdOutConsumer = OUTPUT_PUMPS.submit(stdOut);
+    Future<?> stdErrConsumer = OUTPUT_PUMPS.submit(stdErr);
 
     // Block until the Process completes.
     try {
@@ -136,10 +179,13 @@ public class ProcessExecutor {
         }
       }
 
-      // Wait for the process and consumer threads to finish.
+      // Wait for the process and consumers to finish. If this is interrupted, or writing stdin
+      // failed, the process is destroyed below, which closes its output streams under the
+      // consumers. Their results are never looked at in that case, so the errors that causes are
+      // ignored, while any other error while reading the output is still reported.
       process.waitFor();
-      stdOutConsumer.join();
-      stdErrConsumer.join();
+      stdOutConsumer.get();
+      stdErrConsumer.get();
 
     } catch (IOException e) {
       // Buck was killed while waiting for the consumers to finish or while writing stdin
@@ -147,9 +193,13 @@ public class ProcessExecutor {
       // causing us to kill all other running steps. Neither of these is an exceptional
       // situation.
       return new Result(1);
+    } catch (ExecutionException e) {
+      throw new RuntimeException(e.getCause());
     } finally {
       process.destroy();
       process.waitFor();
+      totalExecutionNanos.addAndGet(System.nanoTime() - startNanos);
+      processesExecuted.incrementAndGet();
     }
 
     Optional<String> stdoutText = getDataIfNotPrinted(stdOutToWriteTo, shouldPrintStdOut);
@@ -172,6 +222,18 @@ public class ProcessExecutor {
     return new Result(exitCode, stdoutText, stderrText);
   }
 
+  /**
+   * @return how many processes have been launched and executed by every {@link ProcessExecutor}
+   *     in this JVM so far, and how long that took.
+   */
+  public static Statistics getStatistics() {
+    return new Statistics(
+        processesLaunched.get(),
+        totalSpawnNanos.get(),
+        processesExecuted.get(),
+        totalExecutionNanos.get());
+  }
+
   private static Optional<String> getDataIfNotPrinted(
       PrintStream printStream,
       boolean shouldPrint) {
@@ -221,4 +283,70 @@ public class ProcessExecutor {
 
   }
 
+  /**
+   * Cumulative counts and latencies of the processes run through {@link ProcessExecutor}.
+   * Subtract an earlier snapshot with {@link #since(Statistics)} to get the figures for a single
+   * command.
+   */
+  public static class Statistics {
+
+    private final long processesLaunched;
+    private final long totalSpawnNanos;
+    private final long processesExecuted;
+    private final long totalExecutionNanos;
+
+    Statistics(
+        long processesLaunched,
+        long totalSpawnNanos,
+        long processesExecuted,
+        long totalExecutionNanos) {
+      this.processesLaunched = processesLaunched;
+      this.totalSpawnNanos = totalSpawnNanos;
+      this.processesExecuted = processesExecuted;
+      this.totalExecutionNanos = totalExecutionNanos;
+    }
+
+    public Statistics since(Statistics earlier) {
+      return new Statistics(
+          processesLaunched - earlier.processesLaunched,
+          totalSpawnNanos - earlier.totalSpawnNanos,
+          processesExecuted - earlier.processesExecuted,
+          totalExecutionNanos - earlier.totalExecutionNanos);
+    }
+
+    /** @return the number of processes started with {@link #launchProcess(ProcessBuilder)}. */
+    public long getProcessesLaunched() {
+      return processesLaunched;
+    }
+
+    /** @return the time spent in {@link ProcessBuilder#start()}, in nanoseconds. */
+    public long getTotalSpawnNanos() {
+      return totalSpawnNanos;
+    }
+
+    /** @return the number of processes waited for by {@link #execute(Process, Set, Optional)}. */
+    public long getProcessesExecuted() {
+      return processesExecuted;
+    }
+
+    /** @return the time between starting to consume each process's output and its exit. */
+    public long getTotalExecutionNanos() {
+      return totalExecutionNanos;
+    }
+
+    @Override
+    public String toString() {
+      return Objects.toStringHelper(this)
+          .add("processesLaunched", processesLaunched)
+          .add("averageSpawnMillis", averageMillis(totalSpawnNanos, processesLaunched))
+          .add("processesExecuted", processesExecuted)
+          .add("averageExecutionMillis", averageMillis(totalExecutionNanos, processesExecuted))
+          .toString();
+    }
+
+    private static long averageMillis(long totalNanos, long count) {
+      return count == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(totalNanos / count);
+    }
+  }
+
 }
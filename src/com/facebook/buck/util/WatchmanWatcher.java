@@ -16,11 +16,8 @@
 
 package com.facebook.buck.util;
 
-
 import com.facebook.buck.log.Logger;
 import com.facebook.buck.timing.Clock;
-import com.fasterxml.jackson.core.JsonParser;
-import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Charsets;
@@ -28,13 +25,15 @@ import com.google.common.base.Preconditions;
 import com.google.common.base.Supplier;
 import com.google.common.base.Throwables;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
 import com.google.common.eventbus.EventBus;
-import com.google.common.io.ByteStreams;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
+import java.io.BufferedInputStream;
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardWatchEventKinds;
@@ -43,37 +42,46 @@ import java.util.ArrayList;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.TimeUnit;
 import javax.annotation.Nullable;
 
 /**
  * A ProjectFilesystemWatcher implementation that uses a local watchman service.
+ * <p>
+ * The watcher holds a Watchman subscription for as long as the daemon runs: a single long-lived
+ * {@code watchman} client process whose output is a stream of BSER-encoded change notifications.
+ * Changes are decoded as they arrive and queued, and {@link #postEvents()} posts whatever has been
+ * queued, however much that is, so a branch switch no longer results in an overflow.
+ * <p>
+ * Watchman only reports changes once they have settled, so before posting events the watcher
+ * creates a cookie file in the project root and waits for the subscription to report it. Every
+ * change made before the cookie was created has then been queued.
  */
 public class WatchmanWatcher implements ProjectFilesystemWatcher {
 
   private static final Logger LOG = Logger.get(WatchmanWatcher.class);
-  private static final int DEFAULT_OVERFLOW_THRESHOLD = 10000;
   private static final long DEFAULT_TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(10);
+  private static final String COOKIE_PREFIX = ".buckd-watchman-cookie-";
 
   private final Supplier<Process> watchmanProcessSupplier;
   private final EventBus eventBus;
   private final Clock clock;
-  private final ObjectMapper objectMapper;
-  private final String query;
+  private final String subscribeCommand;
+  private final Path cookieDirectory;
+  private final String cookiePrefix;
 
   /**
-   * The maximum number of watchman changes to process in each call to postEvents before
-   * giving up and generating an overflow. The goal is to be able to process a reasonable
-   * number of human generated changes quickly, but not spend a long time processing lots
-   * of changes after a branch switch which will end up invalidating the entire cache
-   * anyway. If overflow is negative calls to postEvents will just generate a single
-   * overflow event.
+   * How long {@link #postEvents()} waits for Watchman to report its cookie before giving up and
+   * posting an overflow event.
    */
-  private final int overflow;
-
   private final long timeoutMillis;
 
+  @Nullable
+  private Subscription subscription;
+  private int cookieCount;
+
   public WatchmanWatcher(ProjectFilesystem filesystem,
                          EventBus fileChangeEventBus,
                          Clock clock,
@@ -83,13 +91,33 @@ public class WatchmanWatcher implements ProjectFilesystemWatcher {
     this(createProcessSupplier(),
         fileChangeEventBus,
         clock,
-        objectMapper,
-        DEFAULT_OVERFLOW_THRESHOLD,
         DEFAULT_TIMEOUT_MILLIS,
-        createQuery(
+        MorePaths.absolutify(filesystem.getRootPath()),
+        createCookiePrefix(UUID.randomUUID().toString()),
+        ignorePaths,
+        ignoreGlobs,
+        objectMapper);
+  }
+
+  private WatchmanWatcher(Supplier<Process> processSupplier,
+                          EventBus fileChangeEventBus,
+                          Clock clock,
+                          long timeoutMillis,
+                          Path rootPath,
+                          String cookiePrefix,
+                          Iterable<Path> ignorePaths,
+                          Iterable<String> ignoreGlobs,
+                          ObjectMapper objectMapper) {
+    this(processSupplier,
+        fileChangeEventBus,
+        clock,
+        timeoutMillis,
+        rootPath,
+        cookiePrefix,
+        createSubscribeCommand(
             objectMapper,
-            MorePaths.absolutify(filesystem.getRootPath()).toString(),
-            UUID.randomUUID().toString(),
+            rootPath.toString(),
+            cookiePrefix,
             ignorePaths,
             ignoreGlobs));
   }
@@ -98,35 +126,38 @@ public class WatchmanWatcher implements ProjectFilesystemWatcher {
   WatchmanWatcher(Supplier<Process> processSupplier,
                   EventBus fileChangeEventBus,
                   Clock clock,
-                  ObjectMapper objectMapper,
-                  int overflow,
                   long timeoutMillis,
-                  String query) {
+                  Path cookieDirectory,
+                  String cookiePrefix,
+                  String subscribeCommand) {
     this.watchmanProcessSupplier = Preconditions.checkNotNull(processSupplier);
     this.eventBus = Preconditions.checkNotNull(fileChangeEventBus);
     this.clock = Preconditions.checkNotNull(clock);
-    this.objectMapper = Preconditions.checkNotNull(objectMapper);
-    this.overflow = overflow;
     this.timeoutMillis = timeoutMillis;
-    this.query = Preconditions.checkNotNull(query);
+    this.cookieDirectory = Preconditions.checkNotNull(cookieDirectory);
+    this.cookiePrefix = Preconditions.checkNotNull(cookiePrefix);
+    this.subscribeCommand = Preconditions.checkNotNull(subscribeCommand);
+  }
+
+  @VisibleForTesting
+  static String createCookiePrefix(String uuid) {
+    return COOKIE_PREFIX + uuid + "-";
   }
 
   @VisibleForTesting
-  static String createQuery(
+  static String createSubscribeCommand(
       ObjectMapper objectMapper,
       String rootPath,
-      String uuid,
+      String cookiePrefix,
       Iterable<Path> ignorePaths,
       Iterable<String> ignoreGlobs) {
-    List<Object> queryParams = new ArrayList<>();
-    queryParams.add("query");
-    queryParams.add(rootPath);
+    List<Object> commandParams = new ArrayList<>();
+    commandParams.add("subscribe");
+    commandParams.add(rootPath);
+    commandParams.add("buckd-" + cookiePrefix.substring(COOKIE_PREFIX.length()));
     // Note that we use LinkedHashMap so insertion order is preserved. That
     // helps us write tests that don't depend on the undefined order of HashMap.
-    Map<String, Object> sinceParams = new LinkedHashMap<>();
-    sinceParams.put(
-        "since",
-        new StringBuilder("n:buckd").append(uuid).toString());
+    Map<String, Object> subscriptionParams = new LinkedHashMap<>();
 
     // Exclude any expressions added to this list.
     List<Object> excludeAnyOf = Lists.<Object>newArrayList("anyof");
@@ -157,26 +188,31 @@ public class WatchmanWatcher implements ProjectFilesystemWatcher {
               "wholename"));
     }
 
-    sinceParams.put(
+    // Our own cookies must always be reported, whatever else is excluded.
+    subscriptionParams.put(
         "expression",
         Lists.newArrayList(
-            "not",
-            excludeAnyOf));
-    sinceParams.put("empty_on_fresh_instance", true);
-    sinceParams.put("fields", Lists.newArrayList("name", "exists", "new"));
-    queryParams.add(sinceParams);
+            "anyof",
+            Lists.newArrayList("match", cookiePrefix + "*", "wholename"),
+            Lists.newArrayList("not", excludeAnyOf)));
+    subscriptionParams.put("empty_on_fresh_instance", true);
+    subscriptionParams.put("fields", Lists.newArrayList("name", "exists", "new"));
+    commandParams.add(subscriptionParams);
     try {
-      return objectMapper.writeValueAsString(queryParams);
+      return objectMapper.writeValueAsString(commandParams);
     } catch (IOException e) {
       throw Throwables.propagate(e);
     }
   }
 
   private static Supplier<Process> createProcessSupplier() {
+    // With --persistent, the client keeps its connection to the Watchman server open after
+    // sending the command, and writes each notification of the subscription to stdout.
     final ProcessBuilder processBuilder = new ProcessBuilder(
         "watchman",
-        "--server-encoding=json",
-        "--no-pretty",
+        "--server-encoding=bser",
+        "--output-encoding=bser",
+        "--persistent",
         "-j");
 
     return new Supplier<Process>() {
@@ -193,148 +229,91 @@ public class WatchmanWatcher implements ProjectFilesystemWatcher {
   }
 
   /**
-   * Query Watchman for file change events. If too many events are pending or an error occurs
-   * an overflow event is posted to the EventBus signalling that events may have been lost
-   * (and so typically caches must be cleared to avoid inconsistency). Interruptions and
-   * IOExceptions are propagated to callers, but typically if overflow events are handled
-   * conservatively by subscribers then no other remedial action is required.
+   * Post the file change events that Watchman has reported since the last call. If the
+   * subscription had to be (re)started, Watchman does not report in time or an error occurs, an
+   * overflow event is posted to the EventBus signalling that events may have been lost (and so
+   * typically caches must be cleared to avoid inconsistency). Interruptions and IOExceptions are
+   * propagated to callers, but typically if overflow events are handled conservatively by
+   * subscribers then no other remedial action is required.
    */
   @Override
   public void postEvents() throws IOException, InterruptedException {
-    Process watchmanProcess = watchmanProcessSupplier.get();
-    try {
-      LOG.debug("Writing query to Watchman: %s", query);
-      watchmanProcess.getOutputStream().write(query.getBytes(Charsets.US_ASCII));
-      watchmanProcess.getOutputStream().close();
-      LOG.debug("Parsing JSON output from Watchman");
-      final long parseStartTimeMillis = clock.currentTimeMillis();
-      InputStream jsonInput = watchmanProcess.getInputStream();
-      if (LOG.isVerboseEnabled()) {
-        byte[] fullResponse = ByteStreams.toByteArray(jsonInput);
-        jsonInput.close();
-        jsonInput = new ByteArrayInputStream(fullResponse);
-        LOG.verbose("Full JSON: " + new String(fullResponse, Charsets.UTF_8).trim());
-      }
-      JsonParser jsonParser = objectMapper.getJsonFactory().createJsonParser(jsonInput);
-      PathEventBuilder builder = new PathEventBuilder();
-      JsonToken token = jsonParser.nextToken();
-      /*
-       * Watchman returns changes as an array of JSON objects with potentially unstable key
-       * ordering:
-       * {
-       *     "files": [
-       *     {
-       *         "new": false,
-       *         "exists": true,
-       *         "name": "bin/buckd",
-       *     },
-       *     ]
-       * }
-       * A simple way to parse these changes is to collect the relevant values from each object
-       * in a builder and then build an event when the end of a JSON object is reached. When the end
-       * of the enclosing JSON object is processed the builder will not contain a complete event, so
-       * the object end token will be ignored.
-       */
-      int eventCount = 0;
-      while (token != null) {
-        boolean shouldOverflow = false;
-        if (eventCount > overflow) {
-          LOG.warn(
-              "Received too many events from Watchmen (%d > overflow max %d), posting overflow " +
-              "event and giving up.",
-              eventCount,
-              overflow);
-          shouldOverflow = true;
-        } else {
-          long elapsedMillis = clock.currentTimeMillis() - parseStartTimeMillis;
-          if (elapsedMillis >= timeoutMillis) {
-            LOG.warn(
-                "Parsing took too long (timeout %d ms), posting overflow event and giving up.",
-                timeoutMillis);
-            shouldOverflow = true;
-          }
-        }
-
-        if (shouldOverflow) {
-          postWatchEvent(createOverflowEvent());
-          watchmanProcess.destroy();
-          return;
-        }
+    if (subscription == null || subscription.hasEnded()) {
+      startSubscription();
+    }
+    Subscription activeSubscription = Preconditions.checkNotNull(subscription);
 
-        switch (token) {
-          case FIELD_NAME:
-            String fieldName = jsonParser.getCurrentName();
-            switch (fieldName) {
-              case "is_fresh_instance":
-                // Force caches to be invalidated --- we have no idea what's happening.
-                Boolean newInstance = jsonParser.nextBooleanValue();
-                if (newInstance) {
-                  LOG.info("Fresh watchman instance detected. " +
-                          "Posting overflow event to flush caches.");
-                  postWatchEvent(createOverflowEvent());
-                }
-                break;
-
-              case "name":
-                builder.setPath(Paths.get(jsonParser.nextTextValue()));
-                break;
-              case "new":
-                if (jsonParser.nextBooleanValue()) {
-                  builder.setCreationEvent();
-                }
-                break;
-              case "exists":
-                if (!jsonParser.nextBooleanValue()) {
-                  builder.setDeletionEvent();
-                }
-                break;
-              case "error":
-                WatchmanWatcherException e = new WatchmanWatcherException(
-                    jsonParser.nextTextValue());
-                LOG.error(e, "Error in Watchman output");
-                throw e;
-            }
-            break;
-          case END_OBJECT:
-            if (builder.canBuild()) {
-              postWatchEvent(builder.build());
-              ++eventCount;
-            }
-            builder = new PathEventBuilder();
-            break;
-          // $CASES-OMITTED$
-          default:
-            break;
-        }
-        token = jsonParser.nextToken();
-      }
-      int watchmanExitCode;
-      LOG.debug("Posted %d Watchman events. Waiting for subprocess to exit...", eventCount);
-      watchmanExitCode = watchmanProcess.waitFor();
-      if (watchmanExitCode != 0) {
-        LOG.error("Watchman exited with error code %d", watchmanExitCode);
-        postWatchEvent(createOverflowEvent()); // Events may have been lost, signal overflow.
-        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
-        ByteStreams.copy(watchmanProcess.getErrorStream(), buffer);
-        throw new WatchmanWatcherException(
-            "Watchman failed with exit code " + watchmanExitCode + ": " + buffer.toString());
-      } else {
-        LOG.debug("Watchman exited cleanly.");
-      }
+    String cookieName = cookiePrefix + cookieCount++;
+    Path cookie = cookieDirectory.resolve(cookieName);
+    long startTimeMillis = clock.currentTimeMillis();
+    boolean cookieSeen;
+    try {
+      Files.createFile(cookie);
+      cookieSeen = activeSubscription.waitForCookie(cookieName, startTimeMillis + timeoutMillis);
     } catch (InterruptedException e) {
-      LOG.warn(e, "Killing Watchman process on interrupted exception");
+      LOG.warn(e, "Interrupted while waiting for Watchman");
       postWatchEvent(createOverflowEvent()); // Events may have been lost, signal overflow.
-      watchmanProcess.destroy();
       Thread.currentThread().interrupt();
       throw e;
     } catch (IOException e) {
-      LOG.error(e, "Killing Watchman process on I/O exception");
+      LOG.error(e, "Could not create Watchman cookie %s", cookie);
+      postWatchEvent(createOverflowEvent()); // Events may have been lost, signal overflow.
+      throw e;
+    } finally {
+      Files.deleteIfExists(cookie);
+    }
+
+    List<WatchEvent<?>> events = activeSubscription.takeEvents();
+    for (WatchEvent<?> event : events) {
+      postWatchEvent(event);
+    }
+    LOG.debug(
+        "Posted %d Watchman events in %d ms.",
+        events.size(),
+        clock.currentTimeMillis() - startTimeMillis);
+
+    String error = activeSubscription.getError();
+    if (error != null) {
       postWatchEvent(createOverflowEvent()); // Events may have been lost, signal overflow.
-      watchmanProcess.destroy();
+      close(); // Subscribe again next time.
+      WatchmanWatcherException e = new WatchmanWatcherException(error);
+      LOG.error(e, "Error in Watchman output");
       throw e;
+    } else if (!cookieSeen) {
+      postWatchEvent(createOverflowEvent()); // Events may have been lost, signal overflow.
+      if (activeSubscription.hasEnded()) {
+        throw new WatchmanWatcherException("Watchman subscription ended unexpectedly");
+      }
+      LOG.warn(
+          "Watchman did not report changes within %d ms, posting overflow event.",
+          timeoutMillis);
     }
   }
 
+  /**
+   * Starts a Watchman client that subscribes to changes in the project, and a thread that queues
+   * the changes it reports. Nothing was watching before this, so an overflow event is posted.
+   */
+  private void startSubscription() throws IOException {
+    if (subscription != null) {
+      LOG.warn("Watchman subscription ended, starting a new one.");
+      close();
+    }
+
+    LOG.debug("Subscribing to Watchman: %s", subscribeCommand);
+    Process process = watchmanProcessSupplier.get();
+    try (OutputStream stdin = process.getOutputStream()) {
+      stdin.write(subscribeCommand.getBytes(Charsets.UTF_8));
+    }
+
+    subscription = new Subscription(process);
+    Thread subscriptionThread = Threads.namedThread("Watchman subscription", subscription);
+    subscriptionThread.setDaemon(true);
+    subscriptionThread.start();
+
+    postWatchEvent(createOverflowEvent());
+  }
+
   private void postWatchEvent(WatchEvent<?> event) {
     LOG.verbose("Posting WatchEvent: %s", event);
     eventBus.post(event);
@@ -368,6 +347,148 @@ public class WatchmanWatcher implements ProjectFilesystemWatcher {
 
   @Override
   public void close() throws IOException {
+    if (subscription != null) {
+      subscription.process.destroy();
+      subscription = null;
+    }
+  }
+
+  /**
+   * A running {@code watchman} client and the changes it has reported that have not been posted
+   * yet. The changes are written by the thread reading the client's output and read by
+   * {@link #postEvents()}, guarded by this object's monitor.
+   */
+  private class Subscription implements Runnable {
+
+    private final Process process;
+    private final List<WatchEvent<?>> pendingEvents = new ArrayList<>();
+    private final Set<String> cookiesSeen = Sets.newHashSet();
+    @Nullable
+    private String error;
+    private boolean ended;
+
+    private Subscription(Process process) {
+      this.process = Preconditions.checkNotNull(process);
+    }
+
+    @Override
+    public void run() {
+      BserDeserializer deserializer = new BserDeserializer();
+      try (InputStream input = new BufferedInputStream(process.getInputStream())) {
+        while (true) {
+          Object response = deserializer.deserializeBserValue(input);
+          if (response instanceof Map) {
+            handleResponse((Map<?, ?>) response);
+          } else {
+            LOG.warn("Ignoring unexpected Watchman response: %s", response);
+          }
+        }
+      } catch (EOFException e) {
+        LOG.debug("Watchman subscription closed.");
+      } catch (IOException e) {
+        LOG.warn(e, "Could not read Watchman subscription.");
+      } finally {
+        synchronized (this) {
+          ended = true;
+          notifyAll();
+        }
+      }
+    }
+
+    /**
+     * Queues the changes in a notification. Watchman returns each changed file as an object:
+     * <pre>
+     * {
+     *     "files": [
+     *     {
+     *         "new": false,
+     *         "exists": true,
+     *         "name": "bin/buckd",
+     *     },
+     *     ]
+     * }
+     * </pre>
+     */
+    private void handleResponse(Map<?, ?> response) {
+      List<WatchEvent<?>> events = new ArrayList<>();
+      Set<String> cookies = Sets.newHashSet();
+
+      if (Boolean.TRUE.equals(response.get("is_fresh_instance"))) {
+        // Force caches to be invalidated --- we have no idea what's happening.
+        LOG.info("Fresh watchman instance detected. Posting overflow event to flush caches.");
+        events.add(createOverflowEvent());
+      }
+      Object files = response.get("files");
+      if (files instanceof List) {
+        for (Object file : (List<?>) files) {
+          if (!(file instanceof Map)) {
+            continue;
+          }
+          Map<?, ?> fileInfo = (Map<?, ?>) file;
+          Object name = fileInfo.get("name");
+          if (!(name instanceof String)) {
+            continue;
+          }
+          if (((String) name).startsWith(cookiePrefix)) {
+            cookies.add((String) name);
+            continue;
+          }
+          PathEventBuilder builder = new PathEventBuilder();
+          builder.setPath(Paths.get((String) name));
+          if (Boolean.TRUE.equals(fileInfo.get("new"))) {
+            builder.setCreationEvent();
+          }
+          if (Boolean.FALSE.equals(fileInfo.get("exists"))) {
+            builder.setDeletionEvent();
+          }
+          events.add(builder.build());
+        }
+      }
+
+      Object responseError = response.get("error");
+      synchronized (this) {
+        pendingEvents.addAll(events);
+        cookiesSeen.addAll(cookies);
+        if (responseError != null) {
+          error = responseError.toString();
+        }
+        notifyAll();
+      }
+    }
+
+    /**
+     * @return whether Watchman reported {@code cookieName} before {@code deadlineMillis}.
+     */
+    private synchronized boolean waitForCookie(String cookieName, long deadlineMillis)
+        throws InterruptedException {
+      while (!cookiesSeen.contains(cookieName) && error == null && !ended) {
+        long remainingMillis = deadlineMillis - clock.currentTimeMillis();
+        if (remainingMillis <= 0) {
+          return false;
+        }
+        wait(remainingMillis);
+      }
+      return cookiesSeen.contains(cookieName);
+    }
+
+    /**
+     * @return the changes reported so far, which are then forgotten along with the cookies seen.
+     */
+    private synchronized List<WatchEvent<?>> takeEvents() {
+      List<WatchEvent<?>> events = new ArrayList<>(pendingEvents);
+      pendingEvents.clear();
+      cookiesSeen.clear();
+      return events;
+    }
+
+    @Nullable
+    private synchronized String getError() {
+      return error;
+    }
+
+    private synchronized boolean hasEnded() {
+      return ended;
+    }
   }
 
   private static class PathEventBuilder {
@@ -418,10 +539,6 @@ public class WatchmanWatcher implements ProjectFilesystemWatcher {
         }
       };
     }
-
-    public boolean canBuild() {
-      return path != null;
-    }
   }
 
   /**
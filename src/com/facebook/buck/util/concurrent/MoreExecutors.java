@@ -16,9 +16,13 @@
 
 package com.facebook.buck.util.concurrent;
 
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
@@ -94,6 +98,67 @@ public class MoreExecutors {
         /* handler */ new ThreadPoolExecutor.DiscardPolicy());
   }
 
+  /**
+   * Creates an executor for running {@code taskCount} independent tasks, with at most one thread
+   * per processor. When there is at most one task, it is run on the calling thread instead, as
+   * there would be nothing to run in parallel with it. Either way, the caller should shut the
+   * executor down once it is done with it.
+   * @param threadName a thread name prefix used to easily identify threads when debugging.
+   * @param taskCount the number of tasks that will be submitted to the executor.
+   */
+  public static ExecutorService newMultiThreadExecutorForTasks(String threadName, int taskCount) {
+    if (taskCount <= 1) {
+      return new CallerThreadExecutorService();
+    }
+    return newMultiThreadExecutor(
+        threadName,
+        Math.min(taskCount, Runtime.getRuntime().availableProcessors()));
+  }
+
+  /**
+   * Runs each task on the thread that submits it, so it has terminated as soon as it is shut down.
+   * Guava's {@code sameThreadExecutor()} is not used to avoid a dependency on Guava in the junit
+   * target.
+   */
+  private static class CallerThreadExecutorService extends AbstractExecutorService {
+
+    private volatile boolean isShutdown;
+
+    @Override
+    public void execute(Runnable command) {
+      if (isShutdown) {
+        throw new RejectedExecutionException("Executor has been shut down.");
+      }
+      command.run();
+    }
+
+    @Override
+    public void shutdown() {
+      isShutdown = true;
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+      isShutdown = true;
+      return Collections.emptyList();
+    }
+
+    @Override
+    public boolean isShutdown() {
+      return isShutdown;
+    }
+
+    @Override
+    public boolean isTerminated() {
+      return isShutdown;
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) {
+      return isShutdown;
+    }
+  }
+
   /**
    * Cancel the processing being carried out by the given service and waits for the processing to
    * complete. If processing has still not terminated the method throws the given exception.
@@ -48,6 +48,29 @@ public abstract class CustomZipOutputStream extends OutputStream {
     entryOpen = true;
   }
 
+  /**
+   * Like {@link #putNextEntry(ZipEntry)}, except that the data subsequently written for the entry
+   * is copied to the zip verbatim, as it is expected to already be compressed according to the
+   * entry's method. This allows entries to be copied between zips, or compressed ahead of time,
+   * without going through the deflater again.
+   *
+   * @param entry The {@link ZipEntry} to write, which must have its CRC, size, and compressed size
+   *     set.
+   */
+  public final void putNextRawEntry(ZipEntry entry) throws IOException {
+    Preconditions.checkState(state != State.CLOSED, "Stream has been closed.");
+    Preconditions.checkNotNull(entry);
+    Preconditions.checkArgument(
+        entry.getCrc() != -1 && entry.getSize() != -1 && entry.getCompressedSize() != -1,
+        "Raw entries must have their CRC and sizes set: %s",
+        entry.getName());
+
+    state = State.OPEN;
+    closeEntry();
+    actuallyPutNextRawEntry(entry);
+    entryOpen = true;
+  }
+
   /**
    * Called by {@link #putNextEntry(ZipEntry)} and used by subclasses to put the next entry into the
    * zip file. It is guaranteed that the {@code entry} won't be null and the stream will be open. It
@@ -57,6 +80,12 @@ public abstract class CustomZipOutputStream extends OutputStream {
    */
   protected abstract void actuallyPutNextEntry(ZipEntry entry) throws IOException;
 
+  /**
+   * Called by {@link #putNextRawEntry(ZipEntry)}, with the same guarantees as
+   * {@link #actuallyPutNextEntry(ZipEntry)}.
+   */
+  protected abstract void actuallyPutNextRawEntry(ZipEntry entry) throws IOException;
+
   public final void closeEntry() throws IOException {
     Preconditions.checkState(state != State.CLOSED, "Stream has been closed");
     if (!entryOpen) {
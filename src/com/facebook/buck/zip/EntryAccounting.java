@@ -42,6 +42,8 @@ class EntryAccounting {
 
   private final ZipEntry entry;
   private final Method method;
+  /** Whether the data written for this entry has already been compressed by the caller. */
+  private final boolean raw;
   private Hasher crc = Hashing.crc32().newHasher();
   private long offset;
   private long externalAttributes = 0;
@@ -69,8 +71,13 @@ class EntryAccounting {
   private final byte[] buffer = new byte[ARBITRARY_SIZE];
 
   public EntryAccounting(Clock clock, ZipEntry entry, long currentOffset) {
+    this(clock, entry, currentOffset, /* raw */ false);
+  }
+
+  public EntryAccounting(Clock clock, ZipEntry entry, long currentOffset, boolean raw) {
     this.entry = Preconditions.checkNotNull(entry);
     this.method = Method.detect(entry.getMethod());
+    this.raw = raw;
     Preconditions.checkNotNull(clock);
     this.offset = currentOffset;
 
@@ -118,6 +125,10 @@ class EntryAccounting {
     return method == Method.DEFLATE;
   }
 
+  public boolean isRaw() {
+    return raw;
+  }
+
   public String getName() {
     return entry.getName();
   }
@@ -163,7 +174,8 @@ class EntryAccounting {
   }
 
   public long writeLocalFileHeader(OutputStream out) throws IOException {
-    if (method == Method.DEFLATE) {
+    // Raw entries have their sizes and CRC known up front, so they don't need a data descriptor.
+    if (method == Method.DEFLATE && !raw) {
       flags |= DATA_DESCRIPTOR_FLAG;
 
       // See http://www.pkware.com/documents/casestudies/APPNOTE.TXT (section 4.4.4)
@@ -201,7 +213,11 @@ class EntryAccounting {
       ByteIo.writeInt(stream, getTime());
 
       // In deflate mode, we don't know the size or CRC of the data.
-      if (isDeflated()) {
+      if (raw) {
+        ByteIo.writeInt(stream, entry.getCrc());
+        ByteIo.writeInt(stream, entry.getCompressedSize());
+        ByteIo.writeInt(stream, entry.getSize());
+      } else if (isDeflated()) {
         ByteIo.writeInt(stream, 0);
         ByteIo.writeInt(stream, 0);
         ByteIo.writeInt(stream, 0);
@@ -246,6 +262,11 @@ class EntryAccounting {
   }
 
   public long write(OutputStream out, byte[] b, int off, int len) throws IOException {
+    if (raw) {
+      out.write(b, off, len);
+      return len;
+    }
+
     updateCrc(b, off, len);
 
     if (!isDeflated()) {
@@ -267,6 +288,11 @@ class EntryAccounting {
   }
 
   public long close(OutputStream out) throws IOException {
+    if (raw) {
+      deflater.end();
+      return 0;
+    }
+
     if (!isDeflated()) {
       // Nothing left to do.
       return 0;
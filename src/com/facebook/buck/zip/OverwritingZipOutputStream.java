@@ -71,8 +71,17 @@ public class OverwritingZipOutputStream extends CustomZipOutputStream {
 
   @Override
   protected void actuallyPutNextEntry(ZipEntry entry) throws IOException {
+    putNextEntry(entry, /* raw */ false);
+  }
+
+  @Override
+  protected void actuallyPutNextRawEntry(ZipEntry entry) throws IOException {
+    putNextEntry(entry, /* raw */ true);
+  }
+
+  private void putNextEntry(ZipEntry entry, boolean raw) throws IOException {
     // We calculate the actual offset when closing the stream, so 0 is fine.
-    currentEntry = new EntryAccounting(clock, entry, /* currentOffset */ 0);
+    currentEntry = new EntryAccounting(clock, entry, /* currentOffset */ 0, raw);
 
     long md5 = Hashing.md5().hashUnencodedChars(entry.getName()).asLong();
     String name = String.valueOf(md5);
@@ -115,13 +124,13 @@ public class OverwritingZipOutputStream extends CustomZipOutputStream {
       Files.copy(mapEntry.getKey().toPath(), delegate);
 
       // If `entry.close()` returns 0, this means that we're using the STORED method, which doesn't
-      // perform compression.  In this case, we're responsible for manually updating the offset
-      // accounted for by the written output.  However, if a non-0 size is returned, we're using
-      // the DEFLATED method, so we don't update the offset, as entry.close will write the file
-      // header, which contains the correct size of the output.
+      // perform compression, or that the entry was written raw.  In this case, we're responsible
+      // for manually updating the offset accounted for by the written output.  However, if a non-0
+      // size is returned, we're using the DEFLATED method, so we don't update the offset, as
+      // entry.close will write the file header, which contains the correct size of the output.
       long closeSize = entry.close(delegate);
       if (closeSize == 0) {
-        currentOffset += entry.getSize();
+        currentOffset += entry.isRaw() ? entry.getCompressedSize() : entry.getSize();
       } else {
         currentOffset += closeSize;
       }
@@ -0,0 +1,206 @@
+/*
+ * Copyright 2014-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.zip;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Optional;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableMap;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+
+/**
+ * Read access to the entries of an existing zip file as they are stored, i.e. without inflating
+ * them, so that they can be copied into another zip with
+ * {@link CustomZipOutputStream#putNextRawEntry(ZipEntry)}.
+ * <p>
+ * Data prepended to the zip, such as the "#!" line of an executable zip, is accounted for. Zip64
+ * archives are not supported. Reads may be made concurrently from multiple threads.
+ */
+public class RawZipFile implements Closeable {
+
+  private static final int END_OF_CENTRAL_DIRECTORY_SIZE = 22;
+  private static final int MAX_COMMENT_SIZE = 0xffff;
+  private static final int CENTRAL_DIRECTORY_HEADER_SIZE = 46;
+  private static final int LOCAL_HEADER_SIZE = 30;
+  private static final long ZIP64_MARKER = 0xffffffffL;
+
+  private final FileChannel channel;
+  private final ImmutableMap<String, StoredEntry> entries;
+
+  private RawZipFile(FileChannel channel, ImmutableMap<String, StoredEntry> entries) {
+    this.channel = Preconditions.checkNotNull(channel);
+    this.entries = Preconditions.checkNotNull(entries);
+  }
+
+  public static RawZipFile open(Path path) throws IOException {
+    FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+    try {
+      return new RawZipFile(channel, readCentralDirectory(channel));
+    } catch (IOException | RuntimeException e) {
+      channel.close();
+      throw e;
+    }
+  }
+
+  /**
+   * @return the entry with the given name, with its method, CRC, size and compressed size set.
+   */
+  public Optional<ZipEntry> getEntry(String name) {
+    StoredEntry entry = entries.get(name);
+    if (entry == null) {
+      return Optional.absent();
+    }
+    ZipEntry zipEntry = new ZipEntry(name);
+    zipEntry.setMethod(entry.method);
+    zipEntry.setCrc(entry.crc);
+    zipEntry.setSize(entry.size);
+    zipEntry.setCompressedSize(entry.compressedSize);
+    return Optional.of(zipEntry);
+  }
+
+  /**
+   * @return the contents of the named entry exactly as they are stored in the zip.
+   */
+  public byte[] getRawContents(String name) throws IOException {
+    StoredEntry entry = entries.get(name);
+    if (entry == null) {
+      throw new ZipException("no such entry: " + name);
+    }
+    ByteBuffer header = read(channel, entry.localHeaderOffset, LOCAL_HEADER_SIZE);
+    if (header.getInt(0) != ZipEntry.LOCSIG) {
+      throw new ZipException("bad local header for " + name);
+    }
+    long dataOffset = entry.localHeaderOffset + LOCAL_HEADER_SIZE +
+        getUnsignedShort(header, 26) + getUnsignedShort(header, 28);
+    return read(channel, dataOffset, (int) entry.compressedSize).array();
+  }
+
+  @Override
+  public void close() throws IOException {
+    channel.close();
+  }
+
+  private static ImmutableMap<String, StoredEntry> readCentralDirectory(FileChannel channel)
+      throws IOException {
+    // The end of central directory record is followed by a variable length comment, so search
+    // backwards for its signature.
+    long size = channel.size();
+    int tailSize = (int) Math.min(size, END_OF_CENTRAL_DIRECTORY_SIZE + MAX_COMMENT_SIZE);
+    ByteBuffer tail = read(channel, size - tailSize, tailSize);
+    int end = tailSize - END_OF_CENTRAL_DIRECTORY_SIZE;
+    while (end >= 0 && tail.getInt(end) != ZipEntry.ENDSIG) {
+      end--;
+    }
+    if (end < 0) {
+      throw new ZipException("not a zip file");
+    }
+
+    int entryCount = getUnsignedShort(tail, end + 10);
+    long directorySize = getUnsignedInt(tail, end + 12);
+    long directoryOffset = getUnsignedInt(tail, end + 16);
+    if (directorySize == ZIP64_MARKER || directoryOffset == ZIP64_MARKER) {
+      throw new ZipException("zip64 archives are not supported");
+    }
+
+    // Offsets are relative to the start of the zip, which is only the start of the file if
+    // nothing has been prepended to it.
+    long directoryStart = size - tailSize + end - directorySize;
+    long prefixSize = directoryStart - directoryOffset;
+    if (prefixSize < 0) {
+      throw new ZipException("bad central directory offset");
+    }
+
+    ByteBuffer directory = read(channel, directoryStart, (int) directorySize);
+    ImmutableMap.Builder<String, StoredEntry> entries = ImmutableMap.builder();
+    int position = 0;
+    for (int i = 0; i < entryCount; i++) {
+      if (directory.getInt(position) != ZipEntry.CENSIG) {
+        throw new ZipException("bad central directory entry");
+      }
+      int nameLength = getUnsignedShort(directory, position + 28);
+      byte[] name = new byte[nameLength];
+      directory.position(position + CENTRAL_DIRECTORY_HEADER_SIZE);
+      directory.get(name);
+      StoredEntry entry = new StoredEntry(
+          getUnsignedShort(directory, position + 10),
+          getUnsignedInt(directory, position + 16),
+          getUnsignedInt(directory, position + 24),
+          getUnsignedInt(directory, position + 20),
+          prefixSize + getUnsignedInt(directory, position + 42));
+      if (entry.size == ZIP64_MARKER || entry.compressedSize == ZIP64_MARKER) {
+        throw new ZipException("zip64 archives are not supported");
+      }
+      entries.put(new String(name, Charsets.UTF_8), entry);
+      position += CENTRAL_DIRECTORY_HEADER_SIZE +
+          nameLength +
+          getUnsignedShort(directory, position + 30) +
+          getUnsignedShort(directory, position + 32);
+    }
+    return entries.build();
+  }
+
+  private static ByteBuffer read(FileChannel channel, long offset, int length) throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+    while (buffer.hasRemaining()) {
+      if (channel.read(buffer, offset + buffer.position()) < 0) {
+        throw new EOFException();
+      }
+    }
+    buffer.flip();
+    return buffer;
+  }
+
+  private static int getUnsignedShort(ByteBuffer buffer, int index) {
+    return buffer.getShort(index) & 0xffff;
+  }
+
+  private static long getUnsignedInt(ByteBuffer buffer, int index) {
+    return buffer.getInt(index) & ZIP64_MARKER;
+  }
+
+  private static class StoredEntry {
+    public final int method;
+    public final long crc;
+    public final long size;
+    public final long compressedSize;
+    public final long localHeaderOffset;
+
+    public StoredEntry(
+        int method,
+        long crc,
+        long size,
+        long compressedSize,
+        long localHeaderOffset) {
+      this.method = method;
+      this.crc = crc;
+      this.size = size;
+      this.compressedSize = compressedSize;
+      this.localHeaderOffset = localHeaderOffset;
+    }
+  }
+
+}
@@ -79,7 +79,8 @@ public class AaptPackageResourcesTest {
         /* cpuFilters */ ImmutableSet.<TargetCpuType>of(),
         JavacOptions.DEFAULTS,
         /* rDotJavaNeedsDexing */ false,
-        /* shouldBuildStringSourceMap */ false);
+        /* shouldBuildStringSourceMap */ false,
+        /* emitRDotJavaBytecode */ false);
 
     // Build up the parameters needed to invoke createAllAssetsDirectory().
     ImmutableList.Builder<Step> commands = ImmutableList.builder();
@@ -142,7 +143,8 @@ public class AaptPackageResourcesTest {
         /* cpuFilters */ ImmutableSet.<TargetCpuType>of(),
         JavacOptions.DEFAULTS,
         /* rDotJavaNeedsDexing */ false,
-        /* shouldBuildStringSourceMap */ false);
+        /* shouldBuildStringSourceMap */ false,
+        /* emitRDotJavaBytecode */ false);
 
     // Build up the parameters needed to invoke createAllAssetsDirectory().
     Set<Path> assetsDirectories = ImmutableSet.of(resourceOne.getAssets());
@@ -204,7 +206,8 @@ public class AaptPackageResourcesTest {
         /* cpuFilters */ ImmutableSet.<TargetCpuType>of(),
         JavacOptions.DEFAULTS,
         /* rDotJavaNeedsDexing */ false,
-        /* shouldBuildStringSourceMap */ false);
+        /* shouldBuildStringSourceMap */ false,
+        /* emitRDotJavaBytecode */ false);
 
     AndroidResource resourceOne = (AndroidResource) ruleResolver.getRule(
         BuildTargetFactory.newInstance("//facebook/base:libraryOne_resources"));
@@ -110,6 +110,7 @@ public class AndroidBinaryGraphEnhancerTest {
         AndroidBinary.PackageType.DEBUG,
         /* cpuFilters */ ImmutableSet.< TargetCpuType>of(),
         /* shouldBuildStringSourceMap */ false,
+        /* emitRDotJavaBytecode */ false,
         /* shouldPreDex */ true,
         BuildTargets.getBinPath(apkTarget, "%s/classes.dex"),
         DexSplitMode.NO_SPLIT,
@@ -136,6 +137,7 @@ public class AndroidBinaryGraphEnhancerTest {
         ImmutableSet.<TargetCpuType>of(),
         JavacOptions.DEFAULTS,
         false,
+        false,
         false);
     ruleResolver.addToIndex(aaptPackageResources);
 
@@ -216,6 +218,7 @@ public class AndroidBinaryGraphEnhancerTest {
         AndroidBinary.PackageType.DEBUG,
         /* cpuFilters */ ImmutableSet.<TargetCpuType>of(),
         /* shouldBuildStringSourceMap */ false,
+        /* emitRDotJavaBytecode */ false,
         /* shouldPreDex */ false,
         BuildTargets.getBinPath(apkTarget, "%s/classes.dex"),
         DexSplitMode.NO_SPLIT,
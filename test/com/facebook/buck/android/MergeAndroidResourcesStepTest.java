@@ -16,8 +16,10 @@
 
 package com.facebook.buck.android;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 import com.facebook.buck.android.aapt.RDotTxtEntry;
 import com.facebook.buck.model.BuildTargetFactory;
@@ -32,10 +34,13 @@ import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Sets;
 import com.google.common.collect.SortedSetMultimap;
+import com.google.common.io.ByteStreams;
 
 import org.junit.Test;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Modifier;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.Map;
@@ -166,6 +171,77 @@ public class MergeAndroidResourcesStepTest {
         filesystem.readFileIfItExists(Paths.get("output/com/facebook/R.java")).get());
   }
 
+  @Test
+  public void testGenerateRDotJavaBytecodeForUberRDotTxt() throws Exception {
+    String symbolsFile = BuckConstant.GEN_DIR +
+        "/android_res/com/facebook/http/__res_text_symbols__/R.txt";
+    ImmutableList<String> outputTextSymbols = ImmutableList.of(
+        "int id placeholder 0x7f020000",
+        "int string debug_http_proxy_title 0x7f030002",
+        "int styleable SherlockMenuItem_android_visible 4",
+        "int[] styleable SherlockMenuView { 0x7f010026, 0x7f010027 }");
+    RDotTxtEntryBuilder entriesBuilder = new RDotTxtEntryBuilder();
+    entriesBuilder.add(new RDotTxtFile("com.facebook", symbolsFile, outputTextSymbols));
+
+    FakeProjectFilesystem filesystem = entriesBuilder.getProjectFilesystem();
+    Path uberRDotTxt = Paths.get("R.txt");
+    filesystem.writeLinesToPath(outputTextSymbols, uberRDotTxt);
+
+    HasAndroidResourceDeps resource = AndroidResourceRuleBuilder.newBuilder()
+        .setResolver(new SourcePathResolver(new BuildRuleResolver()))
+        .setBuildTarget(BuildTargetFactory.newInstance("//android_res/com/facebook/http:res"))
+        .setRes(Paths.get("res"))
+        .setRDotJavaPackage("com.facebook")
+        .build();
+
+    MergeAndroidResourcesStep mergeStep = new MergeAndroidResourcesStep(
+        ImmutableList.of(resource),
+        Optional.of(uberRDotTxt),
+        Paths.get("output"),
+        Optional.of(Paths.get("classes")));
+
+    ExecutionContext executionContext = TestExecutionContext.newBuilder()
+        .setProjectFilesystem(filesystem)
+        .build();
+
+    assertEquals(0, mergeStep.execute(executionContext));
+    assertTrue(filesystem.exists(Paths.get("output/com/facebook/R.java")));
+
+    ClassLoader classLoader = new FakeProjectFilesystemClassLoader(filesystem, "classes");
+    Class<?> idClass = classLoader.loadClass("com.facebook.R$id");
+    assertEquals(0x7f020000, idClass.getField("placeholder").getInt(null));
+    assertTrue(Modifier.isFinal(idClass.getField("placeholder").getModifiers()));
+    assertEquals(classLoader.loadClass("com.facebook.R"), idClass.getDeclaringClass());
+
+    Class<?> styleableClass = classLoader.loadClass("com.facebook.R$styleable");
+    assertEquals(4, styleableClass.getField("SherlockMenuItem_android_visible").getInt(null));
+    assertArrayEquals(
+        new int[] {0x7f010026, 0x7f010027},
+        (int[]) styleableClass.getField("SherlockMenuView").get(null));
+  }
+
+  /** Loads classes written to a {@link FakeProjectFilesystem}. */
+  private static class FakeProjectFilesystemClassLoader extends ClassLoader {
+    private final FakeProjectFilesystem filesystem;
+    private final Path classesDir;
+
+    public FakeProjectFilesystemClassLoader(FakeProjectFilesystem filesystem, String classesDir) {
+      this.filesystem = filesystem;
+      this.classesDir = Paths.get(classesDir);
+    }
+
+    @Override
+    protected Class<?> findClass(String name) throws ClassNotFoundException {
+      Path classFile = classesDir.resolve(name.replace('.', '/') + ".class");
+      try (InputStream input = filesystem.newFileInputStream(classFile)) {
+        byte[] bytes = ByteStreams.toByteArray(input);
+        return defineClass(name, bytes, 0, bytes.length);
+      } catch (IOException e) {
+        throw new ClassNotFoundException(name, e);
+      }
+    }
+  }
+
   // sortSymbols has a goofy API.  This will help.
   private static class RDotTxtEntryBuilder {
     private final FakeProjectFilesystem filesystem = new FakeProjectFilesystem();
@@ -2722,6 +2722,42 @@ public class ProjectGeneratorTest {
         equalTo(49152L));
   }
 
+  @Test
+  public void headerMapsAreNotRewrittenIfContentsHaveNotChanged() throws IOException {
+    BuildRuleParams params =
+        new FakeBuildRuleParamsBuilder(BuildTarget.builder("//foo", "lib").build())
+            .setType(AppleLibraryDescription.TYPE)
+            .build();
+    AppleNativeTargetDescriptionArg arg =
+        appleLibraryDescription.createUnpopulatedConstructorArg();
+    arg.configs = Optional.of(
+        ImmutableMap.of(
+            "Debug", ImmutableList.<Either<SourcePath, ImmutableMap<String, String>>>of()));
+    arg.srcs = Optional.of(
+        ImmutableList.of(
+            AppleSource.ofSourcePathWithFlags(
+                new Pair<SourcePath, String>(new TestSourcePath("bar.h"), "public"))));
+    arg.frameworks = Optional.of(ImmutableSortedSet.<String>of());
+    arg.deps = Optional.absent();
+    arg.gid = Optional.absent();
+    arg.headerPathPrefix = Optional.absent();
+    arg.useBuckHeaderMaps = Optional.of(true);
+    BuildRule rule = appleLibraryDescription.createBuildRule(params, new BuildRuleResolver(), arg);
+    Path publicHeaderMap = Paths.get("buck-out/gen/foo/lib-public-headers.hmap");
+
+    clock.setCurrentTimeMillis(49152);
+    createProjectGeneratorForCombinedProject(
+        ImmutableSet.of(rule),
+        ImmutableSet.of(rule.getBuildTarget())).createXcodeProjects();
+    assertThat(projectFilesystem.getLastModifiedTime(publicHeaderMap), equalTo(49152L));
+
+    clock.setCurrentTimeMillis(64738);
+    createProjectGeneratorForCombinedProject(
+        ImmutableSet.of(rule),
+        ImmutableSet.of(rule.getBuildTarget())).createXcodeProjects();
+    assertThat(projectFilesystem.getLastModifiedTime(publicHeaderMap), equalTo(49152L));
+  }
+
   private ProjectGenerator createProjectGeneratorForCombinedProject(
       BuildRuleResolver resolver, ImmutableSet<BuildTarget> initialBuildTargets) {
     return createProjectGeneratorForCombinedProject(
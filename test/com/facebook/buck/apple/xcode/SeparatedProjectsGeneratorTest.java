@@ -597,6 +597,49 @@ public class SeparatedProjectsGeneratorTest {
         paths);
   }
 
+  @Test
+  public void generatesEveryProjectWhenThereAreSeveral() throws IOException {
+    BuildRuleResolver resolver = new BuildRuleResolver();
+    ImmutableSet.Builder<BuildRule> rules = ImmutableSet.builder();
+    ImmutableSet.Builder<BuildRule> configRules = ImmutableSet.builder();
+    ImmutableSet.Builder<BuildTarget> configTargets = ImmutableSet.builder();
+    for (int i = 0; i < 8; i++) {
+      BuildRule rule = createBuildRuleWithDefaults(
+          BuildTarget.builder("//foo" + i, "lib").build(),
+          ImmutableSortedSet.<BuildRule>of(),
+          appleLibraryDescription,
+          resolver);
+      resolver.addToIndex(rule);
+      BuildRule configRule = createXcodeProjectConfigRule(
+          "//foo" + i,
+          "project",
+          resolver,
+          ImmutableSortedSet.of(rule.getBuildTarget()));
+      resolver.addToIndex(configRule);
+      rules.add(rule, configRule);
+      configRules.add(configRule);
+      configTargets.add(configRule.getBuildTarget());
+    }
+
+    SeparatedProjectsGenerator generator = new SeparatedProjectsGenerator(
+        new SourcePathResolver(resolver),
+        projectFilesystem,
+        createPartialGraphFromBuildRules(rules.build()).getActionGraph(),
+        executionContext,
+        configTargets.build(),
+        ImmutableSet.<ProjectGenerator.Option>of());
+    generator.generateProjects();
+
+    for (BuildRule configRule : configRules.build()) {
+      Path basePath = configRule.getBuildTarget().getBasePath();
+      assertTrue(
+          projectFilesystem.exists(basePath.resolve("project.xcodeproj/project.pbxproj")));
+      assertTargetExistsAndReturnTarget(
+          getGeneratedProjectOfConfigRule(generator, configRule),
+          "lib");
+    }
+  }
+
   private BuildRule createXcodeProjectConfigRule(
       String baseName,
       final String projectName,
@@ -0,0 +1,222 @@
+/*
+ * Copyright 2014-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.cli;
+
+import static com.facebook.buck.shell.GenruleTargetNodeBuilder.newGenruleTargetNodeBuilder;
+import static org.easymock.EasyMock.anyObject;
+import static org.easymock.EasyMock.expect;
+import static org.junit.Assert.assertEquals;
+
+import com.facebook.buck.event.BuckEventBus;
+import com.facebook.buck.event.BuckEventBusFactory;
+import com.facebook.buck.graph.MutableDirectedGraph;
+import com.facebook.buck.java.FakeJavaPackageFinder;
+import com.facebook.buck.model.BuildTarget;
+import com.facebook.buck.model.BuildTargetFactory;
+import com.facebook.buck.parser.BuildTargetParser;
+import com.facebook.buck.parser.NoSuchBuildTargetException;
+import com.facebook.buck.parser.Parser;
+import com.facebook.buck.parser.TargetGraph;
+import com.facebook.buck.rules.BuildRuleFactoryParams;
+import com.facebook.buck.rules.CachingBuildEngine;
+import com.facebook.buck.rules.FakeRuleKeyBuilderFactory;
+import com.facebook.buck.rules.NoopArtifactCache;
+import com.facebook.buck.rules.Repository;
+import com.facebook.buck.rules.TargetNode;
+import com.facebook.buck.rules.TestRepositoryBuilder;
+import com.facebook.buck.shell.ShTestDescription;
+import com.facebook.buck.testutil.AllExistingProjectFilesystem;
+import com.facebook.buck.testutil.FakeFileHashCache;
+import com.facebook.buck.testutil.FakeProjectFilesystem;
+import com.facebook.buck.testutil.TestConsole;
+import com.facebook.buck.timing.DefaultClock;
+import com.facebook.buck.util.Console;
+import com.facebook.buck.util.FakeAndroidDirectoryResolver;
+import com.facebook.buck.util.environment.Platform;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+
+import org.easymock.EasyMockSupport;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Map;
+
+public class AuditAffectedCommandTest extends EasyMockSupport {
+
+  private FakeProjectFilesystem filesystem;
+  private TestConsole console;
+  private Parser parser;
+  private TargetGraph targetGraph;
+
+  /**
+   * <pre>
+   * //app:bin  -> //lib:lib
+   * //app:test -> //lib:lib
+   * //other:other
+   * </pre>
+   */
+  @Before
+  public void setUp() {
+    filesystem = new FakeProjectFilesystem();
+    console = new TestConsole();
+    parser = createMock(Parser.class);
+
+    TargetNode<?> lib = newGenruleTargetNodeBuilder("//lib:lib").setSrcs("lib.txt").build();
+    TargetNode<?> bin = newGenruleTargetNodeBuilder("//app:bin")
+        .setSrcs("main.txt")
+        .setDeps("//lib:lib")
+        .build();
+    TargetNode<?> test = createShTestNode("//app:test", "test.sh", "//lib:lib");
+    TargetNode<?> other = newGenruleTargetNodeBuilder("//other:other")
+        .setSrcs("other.txt")
+        .build();
+    MutableDirectedGraph<TargetNode<?>> graph = new MutableDirectedGraph<>();
+    for (TargetNode<?> node : ImmutableList.of(lib, bin, test, other)) {
+      graph.addNode(node);
+      filesystem.touch(node.getInputs().iterator().next());
+    }
+    graph.addEdge(bin, lib);
+    graph.addEdge(test, lib);
+    targetGraph = new TargetGraph(graph);
+  }
+
+  @Test
+  public void argumentsAreRelativizedToTheProjectRoot() throws Exception {
+    Path absolute = filesystem.getRootPath().toAbsolutePath().resolve("other/other.txt");
+    String output = runCommand(
+        new FakeBuckConfig(),
+        ImmutableMap.<Path, ImmutableSet<Path>>of(),
+        "lib/../app/./main.txt",
+        absolute.toString());
+
+    assertEquals("//app:bin\n//other:other\n", output);
+  }
+
+  @Test
+  public void testsOptionOnlyPrintsTestTargets() throws Exception {
+    String output = runCommand(
+        new FakeBuckConfig(),
+        ImmutableMap.<Path, ImmutableSet<Path>>of(),
+        "--tests",
+        "lib/lib.txt");
+
+    assertEquals("//app:test\n", output);
+  }
+
+  @Test
+  public void jsonOptionPrintsAJsonArray() throws Exception {
+    String output = runCommand(
+        new FakeBuckConfig(),
+        ImmutableMap.<Path, ImmutableSet<Path>>of(),
+        "--json",
+        "lib/lib.txt");
+
+    assertEquals("[\"//app:bin\",\"//app:test\",\"//lib:lib\"]", output);
+  }
+
+  @Test
+  public void changedDefaultIncludeAffectsEveryTarget() throws Exception {
+    BuckConfig buckConfig = new FakeBuckConfig(
+        ImmutableMap.<String, Map<String, String>>of(
+            "buildfile", ImmutableMap.of("includes", "//defs/DEFAULT_DEFS")));
+    String output = runCommand(
+        buckConfig,
+        ImmutableMap.<Path, ImmutableSet<Path>>of(),
+        "defs/DEFAULT_DEFS");
+
+    assertEquals("//app:bin\n//app:test\n//lib:lib\n//other:other\n", output);
+  }
+
+  @Test
+  public void changedIncludeAffectsThePackagesOfTheBuildFilesThatIncludeIt() throws Exception {
+    String output = runCommand(
+        new FakeBuckConfig(),
+        ImmutableMap.of(Paths.get("defs/APP_DEFS"), ImmutableSet.of(Paths.get("app/BUCK"))),
+        "defs/APP_DEFS");
+
+    assertEquals("//app:bin\n//app:test\n", output);
+  }
+
+  private String runCommand(
+      BuckConfig buckConfig,
+      ImmutableMap<Path, ImmutableSet<Path>> buildFilesIncluding,
+      String... args)
+      throws Exception {
+    expect(
+        parser.buildProjectTargetGraph(
+            anyObject(Iterable.class),
+            anyObject(BuckEventBus.class),
+            anyObject(Console.class),
+            anyObject(ImmutableMap.class)))
+        .andReturn(targetGraph);
+    for (Map.Entry<Path, ImmutableSet<Path>> entry : buildFilesIncluding.entrySet()) {
+      expect(parser.getBuildFilesIncluding(entry.getKey())).andStubReturn(entry.getValue());
+    }
+    expect(parser.getBuildFilesIncluding(anyObject(Path.class)))
+        .andStubReturn(ImmutableSet.<Path>of());
+    replayAll();
+
+    AuditAffectedOptions options = new AuditAffectedOptions(buckConfig);
+    new CmdLineParserAdditionalOptions(options).parseArgument(args);
+    assertEquals(0, createCommand().runCommandWithOptionsInternal(options));
+
+    verifyAll();
+    return console.getTextWrittenToStdOut();
+  }
+
+  private AuditAffectedCommand createCommand() {
+    Repository repository = new TestRepositoryBuilder().setFilesystem(filesystem).build();
+    return new AuditAffectedCommand(
+        new CommandRunnerParams(
+            console,
+            repository,
+            new FakeAndroidDirectoryResolver(),
+            new CachingBuildEngine(),
+            new InstanceArtifactCacheFactory(new NoopArtifactCache()),
+            BuckEventBusFactory.newInstance(),
+            parser,
+            Platform.detect(),
+            ImmutableMap.copyOf(System.getenv()),
+            new FakeJavaPackageFinder(),
+            new ObjectMapper(),
+            FakeFileHashCache.EMPTY_CACHE,
+            new DefaultClock()));
+  }
+
+  private static TargetNode<?> createShTestNode(String target, String test, String... deps) {
+    BuildTarget buildTarget = BuildTargetFactory.newInstance(target);
+    try {
+      return new TargetNode<>(
+          new ShTestDescription(),
+          new BuildRuleFactoryParams(
+              ImmutableMap.<String, Object>of(
+                  "test", test,
+                  "deps", ImmutableList.copyOf(deps)),
+              new AllExistingProjectFilesystem(),
+              new BuildTargetParser(),
+              buildTarget,
+              new FakeRuleKeyBuilderFactory()));
+    } catch (NoSuchBuildTargetException e) {
+      throw new RuntimeException(e);
+    }
+  }
+}
@@ -16,7 +16,6 @@
 
 package com.facebook.buck.cli;
 
-import static org.easymock.EasyMock.anyObject;
 import static org.easymock.EasyMock.capture;
 import static org.easymock.EasyMock.eq;
 import static org.easymock.EasyMock.expect;
@@ -29,7 +28,6 @@ import com.facebook.buck.rules.CacheResult;
 import com.facebook.buck.rules.CassandraArtifactCache;
 import com.facebook.buck.rules.RuleKey;
 import com.facebook.buck.util.Console;
-import com.facebook.buck.util.FileHashCache;
 import com.google.common.base.Optional;
 import com.google.common.collect.ImmutableList;
 
@@ -80,8 +78,7 @@ public class CacheCommandTest extends EasyMockSupport {
     expect(
         buckConfig.createCassandraArtifactCache(
             eq(Optional.<String>absent()),
-            capture(buckEventBus),
-            anyObject(FileHashCache.class))).andReturn(null);
+            capture(buckEventBus))).andReturn(null);
 
     replayAll();
 
@@ -121,8 +118,7 @@ public class CacheCommandTest extends EasyMockSupport {
     expect(
         buckConfig.createCassandraArtifactCache(
             eq(Optional.<String>absent()),
-            capture(buckEventBus),
-            anyObject(FileHashCache.class))).andReturn(cassandra);
+            capture(buckEventBus))).andReturn(cassandra);
 
     replayAll();
 
@@ -161,8 +157,7 @@ public class CacheCommandTest extends EasyMockSupport {
     expect(
         buckConfig.createCassandraArtifactCache(
             eq(Optional.<String>absent()),
-            capture(buckEventBus),
-            anyObject(FileHashCache.class))).andReturn(cassandra);
+            capture(buckEventBus))).andReturn(cassandra);
 
     replayAll();
 
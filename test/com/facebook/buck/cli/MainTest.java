@@ -106,6 +106,7 @@ public class MainTest {
         "  clean       deletes any generated files",
         "  install     builds and installs an APK",
         "  project     generates project configuration files for an IDE",
+        "  query       queries the target graph",
         "  quickstart  generates a default project directory",
         "  run         runs a target as a command",
         "  targets     prints the list of buildable targets",
@@ -0,0 +1,208 @@
+/*
+ * Copyright 2014-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.cli;
+
+import static com.facebook.buck.shell.GenruleTargetNodeBuilder.newGenruleTargetNodeBuilder;
+import static org.easymock.EasyMock.anyObject;
+import static org.easymock.EasyMock.expect;
+import static org.junit.Assert.assertEquals;
+
+import com.facebook.buck.event.BuckEventBus;
+import com.facebook.buck.event.BuckEventBusFactory;
+import com.facebook.buck.graph.MutableDirectedGraph;
+import com.facebook.buck.java.FakeJavaPackageFinder;
+import com.facebook.buck.model.BuildTargetException;
+import com.facebook.buck.parser.Parser;
+import com.facebook.buck.parser.TargetGraph;
+import com.facebook.buck.rules.CachingBuildEngine;
+import com.facebook.buck.rules.NoopArtifactCache;
+import com.facebook.buck.rules.Repository;
+import com.facebook.buck.rules.TargetNode;
+import com.facebook.buck.rules.TestRepositoryBuilder;
+import com.facebook.buck.testutil.FakeFileHashCache;
+import com.facebook.buck.testutil.FakeProjectFilesystem;
+import com.facebook.buck.testutil.TestConsole;
+import com.facebook.buck.timing.DefaultClock;
+import com.facebook.buck.util.Console;
+import com.facebook.buck.util.FakeAndroidDirectoryResolver;
+import com.facebook.buck.util.environment.Platform;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.ImmutableMap;
+
+import org.easymock.EasyMockSupport;
+import org.easymock.IExpectationSetters;
+import org.junit.Before;
+import org.junit.Test;
+
+public class QueryCommandTest extends EasyMockSupport {
+
+  private TestConsole console;
+  private Parser parser;
+  private TargetGraph targetGraph;
+
+  /**
+   * <pre>
+   * //app:bin -> //lib:lib
+   * //other:other
+   * </pre>
+   */
+  @Before
+  public void setUp() {
+    console = new TestConsole();
+    parser = createMock(Parser.class);
+
+    TargetNode<?> lib = newGenruleTargetNodeBuilder("//lib:lib").setSrcs("lib.txt").build();
+    TargetNode<?> bin = newGenruleTargetNodeBuilder("//app:bin")
+        .setSrcs("main.txt")
+        .setDeps("//lib:lib")
+        .build();
+    TargetNode<?> other = newGenruleTargetNodeBuilder("//other:other").build();
+    MutableDirectedGraph<TargetNode<?>> graph = new MutableDirectedGraph<>();
+    graph.addNode(lib);
+    graph.addNode(bin);
+    graph.addNode(other);
+    graph.addEdge(bin, lib);
+    targetGraph = new TargetGraph(graph);
+  }
+
+  @Test
+  public void singleQueryPrintsOneTargetPerLine() throws Exception {
+    expectBuildProjectTargetGraph().andReturn(targetGraph);
+    replayAll();
+
+    assertEquals(0, runCommand("deps(//app:bin)"));
+
+    verifyAll();
+    assertEquals("//app:bin\n//lib:lib\n", console.getTextWrittenToStdOut());
+  }
+
+  @Test
+  public void multipleQueriesPrintEachQueryFollowedByItsTargets() throws Exception {
+    expectBuildProjectTargetGraph().andReturn(targetGraph);
+    replayAll();
+
+    assertEquals(0, runCommand("rdeps(//lib:lib)", "//other:"));
+
+    verifyAll();
+    assertEquals(
+        "rdeps(//lib:lib)\n    //app:bin\n    //lib:lib\n//other:\n    //other:other\n",
+        console.getTextWrittenToStdOut());
+  }
+
+  @Test
+  public void jsonOptionPrintsTheTargetsOfEachQuery() throws Exception {
+    expectBuildProjectTargetGraph().andReturn(targetGraph);
+    replayAll();
+
+    assertEquals(0, runCommand("--json", "//app:bin", "//... - //app:bin"));
+
+    verifyAll();
+    assertEquals(
+        "{\"//app:bin\":[\"//app:bin\"],\"//... - //app:bin\":[\"//lib:lib\",\"//other:other\"]}",
+        console.getTextWrittenToStdOut());
+  }
+
+  @Test
+  public void syntaxErrorIsReportedWithoutParsingTheProject() throws Exception {
+    replayAll();
+
+    assertEquals(1, runCommand("//app:bin", "deps(//app:bin"));
+
+    verifyAll();
+    assertEquals("", console.getTextWrittenToStdOut());
+    assertEquals(
+        "BUILD FAILED: Unexpected end of query: deps(//app:bin\n",
+        console.getTextWrittenToStdErr());
+  }
+
+  @Test
+  public void evaluationErrorIsReported() throws Exception {
+    expectBuildProjectTargetGraph().andReturn(targetGraph);
+    replayAll();
+
+    assertEquals(1, runCommand("//app:missing"));
+
+    verifyAll();
+    assertEquals("", console.getTextWrittenToStdOut());
+    assertEquals(
+        "BUILD FAILED: No such target: '//app:missing'.\n",
+        console.getTextWrittenToStdErr());
+  }
+
+  @Test
+  public void errorBuildingTheTargetGraphIsReported() throws Exception {
+    expectBuildProjectTargetGraph().andThrow(
+        new BuildTargetException("No such target: //lib:missing.") {
+          @Override
+          public String getHumanReadableErrorMessage() {
+            return getMessage();
+          }
+        });
+    replayAll();
+
+    assertEquals(1, runCommand("//app:bin"));
+
+    verifyAll();
+    assertEquals(
+        "BUILD FAILED: No such target: //lib:missing.\n",
+        console.getTextWrittenToStdErr());
+  }
+
+  @Test
+  public void missingQueryIsReported() throws Exception {
+    replayAll();
+
+    assertEquals(1, runCommand());
+
+    verifyAll();
+    assertEquals(
+        "BUILD FAILED: Must specify at least one query.\n",
+        console.getTextWrittenToStdErr());
+  }
+
+  private IExpectationSetters<TargetGraph> expectBuildProjectTargetGraph() throws Exception {
+    return expect(
+        parser.buildProjectTargetGraph(
+            anyObject(Iterable.class),
+            anyObject(BuckEventBus.class),
+            anyObject(Console.class),
+            anyObject(ImmutableMap.class)));
+  }
+
+  private int runCommand(String... args) throws Exception {
+    QueryCommandOptions options = new QueryCommandOptions(new FakeBuckConfig());
+    new CmdLineParserAdditionalOptions(options).parseArgument(args);
+    Repository repository =
+        new TestRepositoryBuilder().setFilesystem(new FakeProjectFilesystem()).build();
+    QueryCommand command = new QueryCommand(
+        new CommandRunnerParams(
+            console,
+            repository,
+            new FakeAndroidDirectoryResolver(),
+            new CachingBuildEngine(),
+            new InstanceArtifactCacheFactory(new NoopArtifactCache()),
+            BuckEventBusFactory.newInstance(),
+            parser,
+            Platform.detect(),
+            ImmutableMap.copyOf(System.getenv()),
+            new FakeJavaPackageFinder(),
+            new ObjectMapper(),
+            FakeFileHashCache.EMPTY_CACHE,
+            new DefaultClock()));
+    return command.runCommandWithOptionsInternal(options);
+  }
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright 2014-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.cli;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.junit.Assert.assertThat;
+
+import com.facebook.buck.testutil.integration.DebuggableTemporaryFolder;
+import com.facebook.buck.testutil.integration.ProjectWorkspace;
+import com.facebook.buck.testutil.integration.ProjectWorkspace.ProcessResult;
+import com.facebook.buck.testutil.integration.TestDataHelper;
+
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.IOException;
+
+public class TestCommandIntegrationTest {
+
+  @Rule
+  public DebuggableTemporaryFolder tmp = new DebuggableTemporaryFolder();
+
+  @Test
+  public void whenTestPassesThenTestCommandSucceeds() throws IOException {
+    ProjectWorkspace workspace = TestDataHelper.createProjectWorkspaceForScenario(
+        this, "test_command", tmp);
+    workspace.setUp();
+
+    ProcessResult result = workspace.runBuckCommand("test", "//:passing");
+    result.assertSuccess();
+    assertThat(result.getStderr(), containsString("PASS"));
+  }
+
+  @Test
+  public void whenTestFailsThenTestCommandReportsTheFailure() throws IOException {
+    ProjectWorkspace workspace = TestDataHelper.createProjectWorkspaceForScenario(
+        this, "test_command", tmp);
+    workspace.setUp();
+
+    ProcessResult result = workspace.runBuckCommand("test", "//:passing", "//:failing");
+    result.assertTestFailure();
+    assertThat(result.getStderr(), containsString("FAILURE testBadAddition"));
+  }
+}
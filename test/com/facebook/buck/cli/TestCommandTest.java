@@ -526,6 +526,7 @@ public class TestCommandTest {
             createMock(CachingBuildEngine.class),
             executionContext,
             createMock(TestRuleKeyFileHelper.class),
+            Optional.<TestResultsCacheHelper>absent(),
             true,
             false));
 
@@ -559,6 +560,7 @@ public class TestCommandTest {
             cachingBuildEngine,
             executionContext,
             createMock(TestRuleKeyFileHelper.class),
+            Optional.<TestResultsCacheHelper>absent(),
             /* results cache enabled */ true,
             /* running with test selectors */ false));
 
@@ -591,6 +593,7 @@ public class TestCommandTest {
             cachingBuildEngine,
             executionContext,
             createMock(TestRuleKeyFileHelper.class),
+            Optional.<TestResultsCacheHelper>absent(),
             /* results cache enabled */ true,
             /* running with test selectors */ false));
 
@@ -633,12 +636,59 @@ public class TestCommandTest {
             cachingBuildEngine,
             executionContext,
             testRuleKeyFileHelper,
+            Optional.<TestResultsCacheHelper>absent(),
             /* results cache enabled */ true,
             /* running with test selectors */ false));
 
     verify(executionContext, cachingBuildEngine, testRuleKeyFileHelper);
   }
 
+  @Test
+  public void testIsTestRunNotRequiredIfResultsAreFetchedFromArtifactCache()
+      throws IOException, ExecutionException, InterruptedException {
+    ExecutionContext executionContext = createMock(ExecutionContext.class);
+    expect(executionContext.isDebugEnabled()).andReturn(false);
+
+    FakeTestRule testRule = new FakeTestRule(
+        JavaTestDescription.TYPE,
+        ImmutableSet.of(new Label("windows")),
+        BuildTargetFactory.newInstance("//:lulz"),
+        new SourcePathResolver(new BuildRuleResolver()),
+        ImmutableSortedSet.<BuildRule>of(),
+        ImmutableSet.<BuildTargetPattern>of()) {
+
+      @Override
+      public boolean hasTestResultFiles(ExecutionContext context) {
+        return true;
+      }
+    };
+
+    TestRuleKeyFileHelper testRuleKeyFileHelper = createMock(TestRuleKeyFileHelper.class);
+    expect(testRuleKeyFileHelper.isRuleKeyInDir(testRule)).andReturn(true);
+
+    TestResultsCacheHelper testResultsCacheHelper = createMock(TestResultsCacheHelper.class);
+    expect(testResultsCacheHelper.fetchTestResults(testRule)).andReturn(true);
+
+    CachingBuildEngine cachingBuildEngine = createMock(CachingBuildEngine.class);
+    expect(cachingBuildEngine.getBuildRuleResult(BuildTargetFactory.newInstance("//:lulz")))
+        .andReturn(new BuildRuleSuccess(testRule, BuildRuleSuccess.Type.FETCHED_FROM_CACHE));
+    replay(executionContext, cachingBuildEngine, testRuleKeyFileHelper, testResultsCacheHelper);
+
+    assertFalse(
+        "A test whose results for its rule key are in the artifact cache should not be run, " +
+            "even if it has never been run locally.",
+        TestCommand.isTestRunRequiredForTest(
+            testRule,
+            cachingBuildEngine,
+            executionContext,
+            testRuleKeyFileHelper,
+            Optional.of(testResultsCacheHelper),
+            /* results cache enabled */ true,
+            /* running with test selectors */ false));
+
+    verify(executionContext, cachingBuildEngine, testRuleKeyFileHelper, testResultsCacheHelper);
+  }
+
   @Test
   public void testIfAGlobalExcludeExcludesALabel() throws CmdLineException {
     BuckConfig config = new FakeBuckConfig(
@@ -0,0 +1,130 @@
+/*
+ * Copyright 2014-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.cli;
+
+import static org.easymock.EasyMock.createMock;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.replay;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.facebook.buck.event.BuckEventBusFactory;
+import com.facebook.buck.java.JavaTestDescription;
+import com.facebook.buck.model.BuildTarget;
+import com.facebook.buck.model.BuildTargetFactory;
+import com.facebook.buck.model.BuildTargetPattern;
+import com.facebook.buck.rules.BuildEngine;
+import com.facebook.buck.rules.BuildRule;
+import com.facebook.buck.rules.BuildRuleResolver;
+import com.facebook.buck.rules.DirArtifactCache;
+import com.facebook.buck.rules.FakeTestRule;
+import com.facebook.buck.rules.Label;
+import com.facebook.buck.rules.RuleKey;
+import com.facebook.buck.rules.SourcePathResolver;
+import com.facebook.buck.util.ProjectFilesystem;
+import com.facebook.buck.util.environment.Platform;
+import com.google.common.base.Charsets;
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableSortedSet;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+public class TestResultsCacheHelperTest {
+
+  private static final Path OUTPUT_DIR = Paths.get("buck-out/gen/__java_test_lulz_output__");
+
+  @Rule
+  public TemporaryFolder tmp = new TemporaryFolder();
+
+  private ProjectFilesystem projectFilesystem;
+  private FakeTestRule testRule;
+  private TestResultsCacheHelper helper;
+
+  @Before
+  public void setUp() throws IOException {
+    projectFilesystem = new ProjectFilesystem(tmp.newFolder("project").toPath());
+    BuildTarget target = BuildTargetFactory.newInstance("//:lulz");
+    testRule = new FakeTestRule(
+        JavaTestDescription.TYPE,
+        ImmutableSet.<Label>of(),
+        target,
+        new SourcePathResolver(new BuildRuleResolver()),
+        ImmutableSortedSet.<BuildRule>of(),
+        ImmutableSet.<BuildTargetPattern>of()) {
+      @Override
+      public Path getPathToTestOutputDirectory() {
+        return OUTPUT_DIR;
+      }
+    };
+
+    BuildEngine buildEngine = createMock(BuildEngine.class);
+    expect(buildEngine.getRuleKey(target))
+        .andReturn(new RuleKey("aaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaa"))
+        .anyTimes();
+    replay(buildEngine);
+
+    helper = new TestResultsCacheHelper(
+        projectFilesystem,
+        buildEngine,
+        new DirArtifactCache(
+            tmp.newFolder("cache"),
+            /* doStore */ true,
+            Optional.<Long>absent()),
+        BuckEventBusFactory.newInstance(),
+        Platform.LINUX);
+  }
+
+  @Test
+  public void testResultsCanBeStoredAndFetched() throws IOException, InterruptedException {
+    assertFalse(helper.fetchTestResults(testRule));
+
+    projectFilesystem.mkdirs(OUTPUT_DIR);
+    projectFilesystem.writeContentsToPath("<testcase/>", OUTPUT_DIR.resolve("Test.xml"));
+    helper.storeTestResults(testRule);
+
+    // Anything else in the output directory must be replaced by the cached results.
+    projectFilesystem.rmdir(OUTPUT_DIR);
+    projectFilesystem.mkdirs(OUTPUT_DIR);
+    projectFilesystem.writeContentsToPath("<stale/>", OUTPUT_DIR.resolve("Stale.xml"));
+
+    assertTrue(helper.fetchTestResults(testRule));
+    assertEquals(
+        "<testcase/>",
+        new String(
+            Files.readAllBytes(projectFilesystem.resolve(OUTPUT_DIR.resolve("Test.xml"))),
+            Charsets.UTF_8));
+    assertFalse(projectFilesystem.exists(OUTPUT_DIR.resolve("Stale.xml")));
+  }
+
+  @Test
+  public void testResultsKeyDiffersFromRuleKey() {
+    assertNotEquals(
+        new RuleKey("aaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaa"),
+        helper.getTestResultsKey(testRule));
+  }
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright 2014-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.command;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.facebook.buck.command.Project.LibraryJar;
+import com.facebook.buck.command.Project.SourceFolder;
+import com.facebook.buck.model.BuildTarget;
+import com.facebook.buck.model.BuildTargetFactory;
+import com.facebook.buck.testutil.FakeProjectFilesystem;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSortedSet;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+
+public class IntellijConfigWriterTest {
+
+  @Test
+  public void testModuleXmlListsSourceFoldersAndDependencies() {
+    Module module = createModule("//java/com/example/base:base", "java/com/example/base/base.iml");
+    module.sourceFolders = ImmutableList.of(
+        new SourceFolder("file://$MODULE_DIR$", false, "com.example.base"));
+    module.dependencies = ImmutableList.of(
+        DependentModule.newLibrary(module.target, "guava"),
+        DependentModule.newSourceFolder(),
+        DependentModule.newInheritedJdk());
+
+    assertEquals(
+        "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+        "<module type=\"JAVA_MODULE\" version=\"4\">\n" +
+        "  <component name=\"NewModuleRootManager\" inherit-compiler-output=\"true\">\n" +
+        "    <content url=\"file://$MODULE_DIR$\">\n" +
+        "      <sourceFolder url=\"file://$MODULE_DIR$\" isTestSource=\"false\" " +
+            "packagePrefix=\"com.example.base\" />\n" +
+        "    </content>\n" +
+        "    <orderEntry type=\"library\" exported=\"\" name=\"guava\" level=\"project\" />\n" +
+        "    <orderEntry type=\"sourceFolder\" forTests=\"false\" />\n" +
+        "    <orderEntry type=\"inheritedJdk\" />\n" +
+        "  </component>\n" +
+        "</module>\n",
+        IntellijConfigWriter.generateModuleXml(module, ImmutableList.<String>of()));
+  }
+
+  @Test
+  public void testSelfReferencesAndRedundantTestDependenciesAreDropped() {
+    Module module = createModule("//java/com/example/base:base", "java/com/example/base/base.iml");
+    DependentModule self = DependentModule.newModule(module.target, module.name);
+    self.scope = "TEST";
+    DependentModule compileDep = DependentModule.newModule(module.target, "module_util");
+    DependentModule testDep = DependentModule.newModule(module.target, "module_util");
+    testDep.scope = "TEST";
+    DependentModule testOnlyDep = DependentModule.newModule(module.target, "module_junit");
+    testOnlyDep.scope = "TEST";
+    module.dependencies = ImmutableList.of(self, compileDep, testDep, testOnlyDep);
+
+    String xml = IntellijConfigWriter.generateModuleXml(module, ImmutableList.<String>of());
+
+    assertEquals(
+        "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+        "<module type=\"JAVA_MODULE\" version=\"4\">\n" +
+        "  <component name=\"NewModuleRootManager\" inherit-compiler-output=\"true\">\n" +
+        "    <content url=\"file://$MODULE_DIR$\">\n" +
+        "    </content>\n" +
+        "    <orderEntry type=\"module\" module-name=\"module_util\" />\n" +
+        "    <orderEntry type=\"module\" module-name=\"module_junit\" scope=\"TEST\" />\n" +
+        "  </component>\n" +
+        "</module>\n",
+        xml);
+  }
+
+  @Test
+  public void testFilesAreOnlyWrittenWhenTheirContentsChange() throws IOException,
+      InterruptedException {
+    FakeProjectFilesystem projectFilesystem = new FakeProjectFilesystem();
+    IntellijConfigWriter configWriter = new IntellijConfigWriter(projectFilesystem);
+
+    Module base = createModule("//java/com/example/base:base", "java/com/example/base/base.iml");
+    base.sourceFolders = ImmutableList.of(SourceFolder.SRC);
+    base.dependencies = ImmutableList.of(DependentModule.newLibrary(base.target, "guava"));
+    Module app = createModule("//java/com/example/app:app", "java/com/example/app/app.iml");
+    app.dependencies = ImmutableList.of(DependentModule.newModule(app.target, base.name));
+    ImmutableList<LibraryJar> libraries = ImmutableList.of(
+        new LibraryJar("guava", "third-party/guava/guava.jar", null, null));
+
+    ImmutableSortedSet<String> modifiedFiles = configWriter.write(
+        ImmutableList.of(base, app),
+        libraries,
+        /* generateMinimalProject */ false);
+    assertEquals(
+        ImmutableSortedSet.of(
+            ".idea/libraries/guava.xml",
+            ".idea/modules.xml",
+            ".idea/runConfigurations/Debug_Buck_test.xml",
+            "java/com/example/app/app.iml",
+            "java/com/example/base/base.iml"),
+        modifiedFiles);
+    assertTrue(
+        projectFilesystem.readFileIfItExists(Paths.get(".idea/modules.xml")).get().contains(
+            "<module fileurl=\"file://$PROJECT_DIR$/java/com/example/app/app.iml\" " +
+                "filepath=\"$PROJECT_DIR$/java/com/example/app/app.iml\" group=\"modules\"/>"));
+
+    app.dependencies = ImmutableList.of(
+        DependentModule.newModule(app.target, base.name),
+        DependentModule.newLibrary(app.target, "guava"));
+    modifiedFiles = configWriter.write(
+        ImmutableList.of(base, app),
+        libraries,
+        /* generateMinimalProject */ false);
+    assertEquals(
+        "Only the module whose dependencies changed should be rewritten.",
+        ImmutableSortedSet.of("java/com/example/app/app.iml"),
+        modifiedFiles);
+  }
+
+  private static Module createModule(String target, String pathToImlFile) {
+    BuildTarget buildTarget = BuildTargetFactory.newInstance(target);
+    Module module = new Module(/* srcRule */ null, buildTarget);
+    module.name = "module_" + buildTarget.getShortNameOnly();
+    module.pathToImlFile = pathToImlFile;
+    module.dependencies = ImmutableList.of();
+    return module;
+  }
+}
@@ -45,12 +45,9 @@ import com.facebook.buck.rules.ProjectConfig;
 import com.facebook.buck.rules.ProjectConfigBuilder;
 import com.facebook.buck.rules.SourcePathResolver;
 import com.facebook.buck.rules.TestSourcePath;
-import com.facebook.buck.step.ExecutionContext;
-import com.facebook.buck.testutil.BuckTestConstant;
 import com.facebook.buck.testutil.RuleMap;
 import com.facebook.buck.util.HumanReadableException;
 import com.facebook.buck.util.ProjectFilesystem;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.base.Optional;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableList;
@@ -707,7 +704,6 @@ public class ProjectTest {
     ActionGraph actionGraph = RuleMap.createGraphFromBuildRules(ruleResolver);
 
     // Create the Project.
-    ExecutionContext executionContext = EasyMock.createMock(ExecutionContext.class);
     ProjectFilesystem projectFilesystem = EasyMock.createMock(ProjectFilesystem.class);
 
     Properties keystoreProperties = new Properties();
@@ -725,17 +721,14 @@ public class ProjectTest {
         actionGraph,
         basePathToAliasMap,
         javaPackageFinder,
-        executionContext,
         projectFilesystem,
         /* pathToDefaultAndroidManifest */ Optional.<String>absent(),
-        /* pathToPostProcessScript */ Optional.<String>absent(),
-        BuckTestConstant.PYTHON_INTERPRETER,
-        new ObjectMapper());
+        /* pathToPostProcessScript */ Optional.<String>absent());
 
     // Execute Project's business logic.
-    EasyMock.replay(executionContext, projectFilesystem);
+    EasyMock.replay(projectFilesystem);
     List<Module> modules = project.createModulesForProjectConfigs();
-    EasyMock.verify(executionContext, projectFilesystem);
+    EasyMock.verify(projectFilesystem);
 
     return new ProjectWithModules(project, ImmutableList.copyOf(modules));
   }
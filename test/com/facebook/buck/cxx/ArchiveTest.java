@@ -42,7 +42,7 @@ import java.nio.file.Paths;
 
 public class ArchiveTest {
 
-  private static final SourcePath DEFAULT_ARCHIVER = new TestSourcePath("ar");
+  private static final ArchiveFormat DEFAULT_FORMAT = ArchiveFormat.GNU;
   private static final Path DEFAULT_OUTPUT = Paths.get("foo/libblah.a");
   private static final ImmutableList<SourcePath> DEFAULT_INPUTS =
       ImmutableList.<SourcePath>of(
@@ -68,7 +68,6 @@ public class ArchiveTest {
         new FakeRuleKeyBuilderFactory(
             FakeFileHashCache.createFromStrings(
               ImmutableMap.of(
-                  "ar", Strings.repeat("0", 40),
                   "a.o", Strings.repeat("a", 40),
                   "b.o", Strings.repeat("b", 40),
                   "c.o", Strings.repeat("c", 40),
@@ -80,20 +79,34 @@ public class ArchiveTest {
         new Archive(
             params,
             pathResolver,
-            DEFAULT_ARCHIVER,
+            DEFAULT_FORMAT,
+            /* thin */ false,
             DEFAULT_OUTPUT,
             DEFAULT_INPUTS));
 
-    // Verify that changing the archiver causes a rulekey change.
-    RuleKey.Builder.RuleKeyPair archiverChange = generateRuleKey(
+    // Verify that changing the archive format causes a rulekey change.
+    RuleKey.Builder.RuleKeyPair formatChange = generateRuleKey(
         ruleKeyBuilderFactory,
         new Archive(
             params,
             pathResolver,
-            new TestSourcePath("different"),
+            ArchiveFormat.BSD,
+            /* thin */ false,
             DEFAULT_OUTPUT,
             DEFAULT_INPUTS));
-    assertNotEquals(defaultRuleKey, archiverChange);
+    assertNotEquals(defaultRuleKey, formatChange);
+
+    // Verify that switching to a thin archive causes a rulekey change.
+    RuleKey.Builder.RuleKeyPair thinChange = generateRuleKey(
+        ruleKeyBuilderFactory,
+        new Archive(
+            params,
+            pathResolver,
+            DEFAULT_FORMAT,
+            /* thin */ true,
+            DEFAULT_OUTPUT,
+            DEFAULT_INPUTS));
+    assertNotEquals(defaultRuleKey, thinChange);
 
     // Verify that changing the output path causes a rulekey change.
     RuleKey.Builder.RuleKeyPair outputChange = generateRuleKey(
@@ -101,7 +114,8 @@ public class ArchiveTest {
         new Archive(
             params,
             pathResolver,
-            DEFAULT_ARCHIVER,
+            DEFAULT_FORMAT,
+            /* thin */ false,
             Paths.get("different"),
             DEFAULT_INPUTS));
     assertNotEquals(defaultRuleKey, outputChange);
@@ -112,7 +126,8 @@ public class ArchiveTest {
         new Archive(
             params,
             pathResolver,
-            DEFAULT_ARCHIVER,
+            DEFAULT_FORMAT,
+            /* thin */ false,
             DEFAULT_OUTPUT,
             ImmutableList.<SourcePath>of(new TestSourcePath("different"))));
     assertNotEquals(defaultRuleKey, inputChange);
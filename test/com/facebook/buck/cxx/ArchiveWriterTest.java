@@ -0,0 +1,146 @@
+/*
+ * Copyright 2014-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.cxx;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.facebook.buck.testutil.integration.DebuggableTemporaryFolder;
+import com.google.common.base.CharMatcher;
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.io.ByteStreams;
+
+import org.apache.commons.compress.archivers.ar.ArArchiveEntry;
+import org.apache.commons.compress.archivers.ar.ArArchiveInputStream;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+public class ArchiveWriterTest {
+
+  @Rule
+  public DebuggableTemporaryFolder tmp = new DebuggableTemporaryFolder();
+
+  private Path shortName;
+  private Path longName;
+
+  @Before
+  public void setUp() throws IOException {
+    shortName = tmp.getRoot().toPath().resolve("a.o");
+    Files.write(shortName, "odd".getBytes(Charsets.US_ASCII));
+    Path dir = tmp.newFolder("objects").toPath();
+    longName = dir.resolve("a_rather_long_object_name.o");
+    Files.write(longName, "even".getBytes(Charsets.US_ASCII));
+  }
+
+  private void assertMember(ArArchiveInputStream stream, String name, String contents)
+      throws IOException {
+    ArArchiveEntry entry = stream.getNextArEntry();
+    assertEquals(name, entry.getName());
+    assertEquals(0, entry.getLastModified());
+    assertEquals(0, entry.getUserId());
+    assertEquals(0, entry.getGroupId());
+    assertEquals(0644, entry.getMode());
+    assertEquals(
+        contents,
+        new String(ByteStreams.toByteArray(stream), Charsets.US_ASCII));
+  }
+
+  /**
+   * Reads the members of a BSD archive into a map from name to contents, checking that each
+   * header is deterministic.  commons-compress miscounts the inline names of BSD archives when
+   * looking for the next header, so this is done by hand.
+   */
+  private static ImmutableMap<String, String> readBsdMembers(Path archive) throws IOException {
+    String contents = new String(Files.readAllBytes(archive), Charsets.US_ASCII);
+    assertTrue(contents.startsWith("!<arch>\n"));
+    ImmutableMap.Builder<String, String> members = ImmutableMap.builder();
+    int offset = 8;
+    while (offset < contents.length()) {
+      String header = contents.substring(offset, offset + 60);
+      assertEquals("0           0     0     644     ", header.substring(16, 48));
+      assertTrue(header.startsWith("#1/"));
+      int nameSize = Integer.parseInt(header.substring(3, 16).trim());
+      int size = Integer.parseInt(header.substring(48, 58).trim());
+      offset += 60;
+      String name = CharMatcher.is('\0').trimTrailingFrom(
+          contents.substring(offset, offset + nameSize));
+      members.put(name, contents.substring(offset + nameSize, offset + size));
+      offset += size + size % 2;
+    }
+    return members.build();
+  }
+
+  @Test
+  public void gnuArchiveHasDeterministicHeadersAndLongNames() throws IOException {
+    Path archive = tmp.getRoot().toPath().resolve("libgnu.a");
+    new ArchiveWriter(ArchiveFormat.GNU, /* thin */ false)
+        .write(archive, ImmutableList.of(shortName, longName));
+
+    String contents = new String(Files.readAllBytes(archive), Charsets.US_ASCII);
+    assertTrue(contents.startsWith("!<arch>\n//"));
+    try (ArArchiveInputStream stream =
+             new ArArchiveInputStream(Files.newInputStream(archive))) {
+      assertMember(stream, "a.o", "odd");
+      assertMember(stream, "a_rather_long_object_name.o", "even");
+      assertNull(stream.getNextArEntry());
+    }
+  }
+
+  @Test
+  public void bsdArchiveHasDeterministicHeadersAndInlineNames() throws IOException {
+    Path archive = tmp.getRoot().toPath().resolve("libbsd.a");
+    new ArchiveWriter(ArchiveFormat.BSD, /* thin */ false)
+        .write(archive, ImmutableList.of(shortName, longName));
+
+    assertEquals(
+        ImmutableMap.of("a.o", "odd", "a_rather_long_object_name.o", "even"),
+        readBsdMembers(archive));
+  }
+
+  @Test
+  public void thinArchiveOnlyRefersToMembers() throws IOException {
+    Path archive = tmp.getRoot().toPath().resolve("libthin.a");
+    new ArchiveWriter(ArchiveFormat.GNU, /* thin */ true)
+        .write(archive, ImmutableList.of(shortName, longName));
+
+    String contents = new String(Files.readAllBytes(archive), Charsets.US_ASCII);
+    assertEquals(
+        "!<thin>\n" +
+        "//                                              42        `\n" +
+        "a.o/\n" +
+        "objects/a_rather_long_object_name.o/\n" +
+        "/0              0           0     0     644     3         `\n" +
+        "/5              0           0     0     644     4         `\n",
+        contents);
+    assertFalse(contents.contains("odd"));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void thinBsdArchivesAreRejected() {
+    new ArchiveWriter(ArchiveFormat.BSD, /* thin */ true);
+  }
+
+}
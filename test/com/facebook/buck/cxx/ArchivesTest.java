@@ -43,7 +43,7 @@ import java.nio.file.Paths;
 
 public class ArchivesTest {
 
-  private static final SourcePath DEFAULT_ARCHIVER = new TestSourcePath("ar");
+  private static final ArchiveFormat DEFAULT_FORMAT = ArchiveFormat.GNU;
   private static final Path DEFAULT_OUTPUT = Paths.get("libblah.a");
   private static final ImmutableList<SourcePath> DEFAULT_INPUTS = ImmutableList.<SourcePath>of(
       new TestSourcePath("a.o"),
@@ -71,7 +71,8 @@ public class ArchivesTest {
         new SourcePathResolver(resolver),
         target,
         params,
-        DEFAULT_ARCHIVER,
+        DEFAULT_FORMAT,
+        /* thin */ false,
         DEFAULT_OUTPUT,
         ImmutableList.<SourcePath>of(
             new TestSourcePath("simple.o"),
@@ -114,7 +115,8 @@ public class ArchivesTest {
         pathResolver,
         target,
         params,
-        DEFAULT_ARCHIVER,
+        DEFAULT_FORMAT,
+        /* thin */ false,
         DEFAULT_OUTPUT,
         DEFAULT_INPUTS);
 
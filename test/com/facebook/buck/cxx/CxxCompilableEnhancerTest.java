@@ -48,6 +48,7 @@ import org.hamcrest.Matchers;
 import org.junit.Test;
 
 import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.Collections;
 import java.util.Map;
 
@@ -402,4 +403,66 @@ public class CxxCompilableEnhancerTest {
     assertContains(assemblerWithCppCompile.getFlags(), asflags);
   }
 
+  @Test
+  public void createCompileBuildRulePreprocessesSeparately() {
+    BuildRuleResolver resolver = new BuildRuleResolver();
+    BuildTarget target = BuildTargetFactory.newInstance("//foo:bar");
+    BuildRuleParams params = BuildRuleParamsFactory.createTrivialBuildRuleParams(target);
+
+    ImmutableList<String> cppflags = ImmutableList.of("-cppflag");
+    ImmutableList<String> cflags = ImmutableList.of("-cflag");
+    ImmutableList<String> asflags = ImmutableList.of("-asflag");
+    CxxPlatform platform = new DefaultCxxPlatform(
+        new FakeBuckConfig(
+            ImmutableMap.<String, Map<String, String>>of(
+                "cxx", ImmutableMap.of(
+                    "preprocess_mode", "separate",
+                    "cppflags", cppflags.get(0),
+                    "cflags", cflags.get(0),
+                    "asflags", asflags.get(0)))));
+
+    CxxPreprocessorInput cxxPreprocessorInput = new CxxPreprocessorInput(
+        ImmutableSet.<BuildTarget>of(),
+        ImmutableList.<String>of(),
+        ImmutableList.<String>of(),
+        ImmutableMap.<Path, SourcePath>of(Paths.get("test.h"), new TestSourcePath("test.h")),
+        ImmutableList.of(Paths.get("include")),
+        ImmutableList.<Path>of());
+
+    String name = "test.c";
+    CxxCompile compile = CxxCompilableEnhancer.createCompileBuildRule(
+        params,
+        resolver,
+        platform,
+        cxxPreprocessorInput,
+        ImmutableList.<String>of(),
+        /* pic */ true,
+        name,
+        new CxxSource(CxxSource.Type.C, new TestSourcePath(name)));
+
+    // The preprocess rule sees the headers and the preprocessor flags, and is added to the
+    // resolver.
+    BuildRule rule = resolver.getRule(
+        CxxCompilableEnhancer.createPreprocessBuildTarget(target, name, /* pic */ true));
+    assertTrue(rule instanceof CxxPreprocess);
+    CxxPreprocess preprocess = (CxxPreprocess) rule;
+    assertEquals(cxxPreprocessorInput.getIncludes(), preprocess.getIncludes());
+    assertContains(preprocess.getFlags(), cppflags);
+    assertContains(preprocess.getFlags(), cflags);
+    assertContains(preprocess.getFlags(), ImmutableList.of("-fPIC"));
+    assertNotContains(preprocess.getFlags(), asflags);
+    assertThat(preprocess.getOutput().toString(), Matchers.endsWith(".i"));
+
+    // The compile rule only sees the preprocessed output.
+    assertTrue(compile instanceof CxxPreprocessedCompile);
+    assertEquals(ImmutableSortedSet.<BuildRule>of(preprocess), compile.getDeps());
+    assertEquals(new BuildRuleSourcePath(preprocess), compile.getInput());
+    assertTrue(compile.getIncludes().isEmpty());
+    assertFalse(compile.getDepFile().isPresent());
+    assertContains(compile.getFlags(), ImmutableList.of("c-cpp-output"));
+    assertNotContains(compile.getFlags(), cppflags);
+    assertContains(compile.getFlags(), cflags);
+    assertContains(compile.getFlags(), asflags);
+  }
+
 }
@@ -24,6 +24,7 @@ import com.facebook.buck.testutil.FakeProjectFilesystem;
 import com.facebook.buck.util.MoreIterables;
 import com.facebook.buck.util.ProjectFilesystem;
 import com.google.common.base.Functions;
+import com.google.common.base.Optional;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Iterables;
 
@@ -59,6 +60,7 @@ public class CxxCompileStepTest {
         compiler,
         flags,
         output,
+        Optional.<Path>absent(),
         input,
         includes,
         systemIncludes);
@@ -83,4 +85,31 @@ public class CxxCompileStepTest {
     assertEquals(expected, actual);
   }
 
+  @Test
+  public void cxxCompileStepAsksForDepFile() {
+    ExecutionContext context = TestExecutionContext.newBuilder()
+        .setProjectFilesystem(new FakeProjectFilesystem())
+        .build();
+
+    Path output = Paths.get("test.o");
+    Path depFile = Paths.get("test.o.d");
+    CxxCompileStep cxxCompileStep = new CxxCompileStep(
+        Paths.get("compiler"),
+        ImmutableList.<String>of(),
+        output,
+        Optional.of(depFile),
+        Paths.get("test.cpp"),
+        ImmutableList.<Path>of(),
+        ImmutableList.<Path>of());
+
+    ImmutableList<String> expected = ImmutableList.of(
+        "compiler",
+        "-c",
+        "-o", output.toString(),
+        "-MD",
+        "-MF", depFile.toString(),
+        "test.cpp");
+    assertEquals(expected, cxxCompileStep.getShellCommand(context));
+  }
+
 }
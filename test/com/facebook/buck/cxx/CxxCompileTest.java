@@ -17,6 +17,7 @@
 package com.facebook.buck.cxx;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotEquals;
 
 import com.facebook.buck.model.BuildTarget;
@@ -25,6 +26,7 @@ import com.facebook.buck.rules.AbstractBuildRule;
 import com.facebook.buck.rules.BuildRuleParams;
 import com.facebook.buck.rules.BuildRuleParamsFactory;
 import com.facebook.buck.rules.BuildRuleResolver;
+import com.facebook.buck.rules.FakeBuildRuleParamsBuilder;
 import com.facebook.buck.rules.FakeRuleKeyBuilderFactory;
 import com.facebook.buck.rules.RuleKey;
 import com.facebook.buck.rules.RuleKeyBuilderFactory;
@@ -32,6 +34,7 @@ import com.facebook.buck.rules.SourcePath;
 import com.facebook.buck.rules.SourcePathResolver;
 import com.facebook.buck.rules.TestSourcePath;
 import com.facebook.buck.testutil.FakeFileHashCache;
+import com.facebook.buck.util.FileHashCache;
 import com.google.common.base.Optional;
 import com.google.common.base.Strings;
 import com.google.common.collect.ImmutableList;
@@ -48,6 +51,7 @@ public class CxxCompileTest {
   private static final ImmutableList<String> DEFAULT_FLAGS =
       ImmutableList.of("-fsanitize=address");
   private static final Path DEFAULT_OUTPUT = Paths.get("test.o");
+  private static final Optional<Path> DEFAULT_DEP_FILE = Optional.of(Paths.get("test.o.d"));
   private static final SourcePath DEFAULT_INPUT = new TestSourcePath("test.cpp");
   private static final ImmutableMap<Path, SourcePath> DEFAULT_INCLUDES =
       ImmutableMap.<Path, SourcePath>of(Paths.get("test.h"), new TestSourcePath("foo/test.h"));
@@ -100,6 +104,7 @@ public class CxxCompileTest {
             DEFAULT_PLUGIN,
             DEFAULT_FLAGS,
             DEFAULT_OUTPUT,
+            DEFAULT_DEP_FILE,
             DEFAULT_INPUT,
             DEFAULT_INCLUDE_ROOTS,
             DEFAULT_SYSTEM_INCLUDE_ROOTS,
@@ -115,6 +120,7 @@ public class CxxCompileTest {
             DEFAULT_PLUGIN,
             DEFAULT_FLAGS,
             DEFAULT_OUTPUT,
+            DEFAULT_DEP_FILE,
             DEFAULT_INPUT,
             DEFAULT_INCLUDE_ROOTS,
             DEFAULT_SYSTEM_INCLUDE_ROOTS,
@@ -131,6 +137,7 @@ public class CxxCompileTest {
             DEFAULT_PLUGIN,
             ImmutableList.of("-different"),
             DEFAULT_OUTPUT,
+            DEFAULT_DEP_FILE,
             DEFAULT_INPUT,
             DEFAULT_INCLUDE_ROOTS,
             DEFAULT_SYSTEM_INCLUDE_ROOTS,
@@ -147,6 +154,7 @@ public class CxxCompileTest {
             DEFAULT_PLUGIN,
             DEFAULT_FLAGS,
             DEFAULT_OUTPUT,
+            DEFAULT_DEP_FILE,
             new TestSourcePath("different"),
             DEFAULT_INCLUDE_ROOTS,
             DEFAULT_SYSTEM_INCLUDE_ROOTS,
@@ -164,6 +172,7 @@ public class CxxCompileTest {
             DEFAULT_PLUGIN,
             DEFAULT_FLAGS,
             DEFAULT_OUTPUT,
+            DEFAULT_DEP_FILE,
             DEFAULT_INPUT,
             ImmutableList.of(Paths.get("different")),
             DEFAULT_SYSTEM_INCLUDE_ROOTS,
@@ -181,6 +190,7 @@ public class CxxCompileTest {
             DEFAULT_PLUGIN,
             DEFAULT_FLAGS,
             DEFAULT_OUTPUT,
+            DEFAULT_DEP_FILE,
             DEFAULT_INPUT,
             DEFAULT_INCLUDE_ROOTS,
             ImmutableList.of(Paths.get("different")),
@@ -197,6 +207,7 @@ public class CxxCompileTest {
             Optional.<CxxCompile.Plugin>absent(),
             DEFAULT_FLAGS,
             DEFAULT_OUTPUT,
+            DEFAULT_DEP_FILE,
             DEFAULT_INPUT,
             DEFAULT_INCLUDE_ROOTS,
             DEFAULT_SYSTEM_INCLUDE_ROOTS,
@@ -216,6 +227,7 @@ public class CxxCompileTest {
                     DEFAULT_PLUGIN.get().getFlags())),
             DEFAULT_FLAGS,
             DEFAULT_OUTPUT,
+            DEFAULT_DEP_FILE,
             DEFAULT_INPUT,
             DEFAULT_INCLUDE_ROOTS,
             DEFAULT_SYSTEM_INCLUDE_ROOTS,
@@ -235,6 +247,7 @@ public class CxxCompileTest {
                     ImmutableList.of("-abcde", "-aeiou"))),
             DEFAULT_FLAGS,
             DEFAULT_OUTPUT,
+            DEFAULT_DEP_FILE,
             DEFAULT_INPUT,
             DEFAULT_INCLUDE_ROOTS,
             DEFAULT_SYSTEM_INCLUDE_ROOTS,
@@ -254,6 +267,7 @@ public class CxxCompileTest {
                     DEFAULT_PLUGIN.get().getFlags())),
             DEFAULT_FLAGS,
             DEFAULT_OUTPUT,
+            DEFAULT_DEP_FILE,
             DEFAULT_INPUT,
             DEFAULT_INCLUDE_ROOTS,
             DEFAULT_SYSTEM_INCLUDE_ROOTS,
@@ -261,5 +275,116 @@ public class CxxCompileTest {
     assertNotEquals(defaultRuleKey, pluginNameChange);
   }
 
+  @Test
+  public void testDepFileRuleKeyOnlyHashesUsedHeaders() {
+    ImmutableMap<Path, SourcePath> includes = ImmutableMap.<Path, SourcePath>of(
+        Paths.get("test.h"), new TestSourcePath("foo/test.h"),
+        Paths.get("unused.h"), new TestSourcePath("foo/unused.h"));
+    ImmutableList<String> depFileEntries = ImmutableList.of(
+        "/usr/include/stdio.h",
+        "foo/bar/test.h");
+
+    RuleKey defaultKey = createCxxCompileWithHashes(includes, "a", "b", "c")
+        .getDepFileRuleKey(depFileEntries).get();
+
+    // Changing a header which wasn't included doesn't change the key.
+    CxxCompile unusedHeaderChanged = createCxxCompileWithHashes(includes, "a", "b", "d");
+    assertEquals(defaultKey, unusedHeaderChanged.getDepFileRuleKey(depFileEntries).get());
+    assertNotEquals(
+        createCxxCompileWithHashes(includes, "a", "b", "c").getRuleKey(),
+        unusedHeaderChanged.getRuleKey());
+
+    // Changing a header which was included does.
+    assertNotEquals(
+        defaultKey,
+        createCxxCompileWithHashes(includes, "a", "d", "c")
+            .getDepFileRuleKey(depFileEntries).get());
+
+    // As does changing the input.
+    assertNotEquals(
+        defaultKey,
+        createCxxCompileWithHashes(includes, "d", "b", "c")
+            .getDepFileRuleKey(depFileEntries).get());
+
+    // As does adding a header, which may shadow one that was previously included.
+    assertNotEquals(
+        defaultKey,
+        createCxxCompileWithHashes(
+            ImmutableMap.<Path, SourcePath>builder()
+                .putAll(includes)
+                .put(Paths.get("stdio.h"), new TestSourcePath("foo/unused.h"))
+                .build(),
+            "a", "b", "c")
+            .getDepFileRuleKey(depFileEntries).get());
+
+    // And if an included header is no longer provided, there is no key at all.
+    assertFalse(
+        createCxxCompileWithHashes(includes, "a", "b", "c")
+            .getDepFileRuleKey(ImmutableList.of("foo/bar/removed.h"))
+            .isPresent());
+  }
+
+  @Test
+  public void testDepFileRuleKeyHashesHeadersIncludedRelativeToTheInput() {
+    // A quoted include of a sibling header is listed by its own path, not through an include root.
+    ImmutableList<String> depFileEntries = ImmutableList.of("foo/test.h");
+
+    RuleKey defaultKey = createCxxCompileWithHashes(DEFAULT_INCLUDES, "a", "b", "c")
+        .getDepFileRuleKey(depFileEntries).get();
+
+    // Editing the sibling header means the object file has to be rebuilt.
+    assertNotEquals(
+        defaultKey,
+        createCxxCompileWithHashes(DEFAULT_INCLUDES, "a", "d", "c")
+            .getDepFileRuleKey(depFileEntries).get());
+
+    // And a header which isn't one of the rule's headers can't be checked, so there is no key.
+    assertFalse(
+        createCxxCompileWithHashes(DEFAULT_INCLUDES, "a", "b", "c")
+            .getDepFileRuleKey(ImmutableList.of("foo/undeclared.h"))
+            .isPresent());
+  }
+
+  @Test
+  public void testNormalizeDepFileEntries() {
+    CxxCompile cxxCompile = createCxxCompileWithHashes(DEFAULT_INCLUDES, "a", "b", "c");
+    assertEquals(
+        ImmutableList.of("/usr/include/stdio.h", "foo/bar/test.h"),
+        cxxCompile.normalizeDepFileEntries(
+            ImmutableList.of(
+                "test.cpp",
+                "foo/bar/../bar/test.h",
+                "/usr/include/stdio.h",
+                "./foo/bar/test.h")));
+  }
+
+  private CxxCompile createCxxCompileWithHashes(
+      ImmutableMap<Path, SourcePath> includes,
+      String inputHash,
+      String testHeaderHash,
+      String unusedHeaderHash) {
+    FileHashCache hashCache = FakeFileHashCache.createFromStrings(
+        ImmutableMap.<String, String>builder()
+            .put("compiler", Strings.repeat("a", 40))
+            .put("test.cpp", Strings.repeat(inputHash, 40))
+            .put("foo/test.h", Strings.repeat(testHeaderHash, 40))
+            .put("foo/unused.h", Strings.repeat(unusedHeaderHash, 40))
+            .build());
+    BuildRuleParams params = new FakeBuildRuleParamsBuilder("//foo:bar")
+        .setFileHashCache(hashCache)
+        .build();
+    return new CxxCompile(
+        params,
+        new SourcePathResolver(new BuildRuleResolver()),
+        DEFAULT_COMPILER,
+        Optional.<CxxCompile.Plugin>absent(),
+        DEFAULT_FLAGS,
+        DEFAULT_OUTPUT,
+        DEFAULT_DEP_FILE,
+        DEFAULT_INPUT,
+        DEFAULT_INCLUDE_ROOTS,
+        DEFAULT_SYSTEM_INCLUDE_ROOTS,
+        includes);
+  }
 
 }
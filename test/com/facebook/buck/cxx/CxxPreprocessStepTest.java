@@ -0,0 +1,57 @@
+/*
+ * Copyright 2014-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.cxx;
+
+import static org.junit.Assert.assertEquals;
+
+import com.facebook.buck.step.ExecutionContext;
+import com.facebook.buck.step.TestExecutionContext;
+import com.facebook.buck.testutil.FakeProjectFilesystem;
+import com.google.common.collect.ImmutableList;
+
+import org.junit.Test;
+
+import java.nio.file.Paths;
+
+public class CxxPreprocessStepTest {
+
+  @Test
+  public void cxxPreprocessStepUsesCorrectCommand() {
+    ExecutionContext context = TestExecutionContext.newBuilder()
+        .setProjectFilesystem(new FakeProjectFilesystem())
+        .build();
+
+    CxxPreprocessStep cxxPreprocessStep = new CxxPreprocessStep(
+        Paths.get("preprocessor"),
+        ImmutableList.of("-x", "c++"),
+        Paths.get("test.ii"),
+        Paths.get("test.cpp"),
+        ImmutableList.of(Paths.get("foo/bar")),
+        ImmutableList.of(Paths.get("/usr/include")));
+
+    ImmutableList<String> expected = ImmutableList.of(
+        "preprocessor",
+        "-E",
+        "-x", "c++",
+        "-o", "test.ii",
+        "-I", "foo/bar",
+        "-isystem", "/usr/include",
+        "test.cpp");
+    assertEquals(expected, cxxPreprocessStep.getShellCommand(context));
+  }
+
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright 2014-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.cxx;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.facebook.buck.rules.BuildRuleParams;
+import com.facebook.buck.rules.BuildRuleResolver;
+import com.facebook.buck.rules.FakeBuildRuleParamsBuilder;
+import com.facebook.buck.rules.RuleKey;
+import com.facebook.buck.rules.SourcePathResolver;
+import com.facebook.buck.rules.TestSourcePath;
+import com.facebook.buck.testutil.FakeFileHashCache;
+import com.facebook.buck.util.ProjectFilesystem;
+import com.google.common.base.Charsets;
+import com.google.common.base.Optional;
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.hash.HashCode;
+import com.google.common.io.Files;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.file.Paths;
+
+public class CxxPreprocessedCompileTest {
+
+  @Rule
+  public TemporaryFolder tmp = new TemporaryFolder();
+
+  private static HashCode hash(String source, boolean keepLineMarkers) throws IOException {
+    return CxxPreprocessedCompile.hashPreprocessedSource(
+        new StringReader(source),
+        keepLineMarkers);
+  }
+
+  @Test
+  public void hashIgnoresLineMarkers() throws IOException {
+    String original =
+        "# 1 \"test.c\"\n" +
+        "# 1 \"test.h\" 1\n" +
+        "int foo(void);\n" +
+        "# 2 \"test.c\" 2\n" +
+        "int foo(void) { return 1; }\n";
+    String withMovedLines =
+        "# 1 \"test.c\"\n" +
+        "# 3 \"test.h\" 1\n" +
+        "int foo(void);\n" +
+        "# 12 \"test.c\" 2\n" +
+        "int foo(void) { return 1; }\n";
+    assertEquals(hash(original, false), hash(withMovedLines, false));
+    assertNotEquals(hash(original, true), hash(withMovedLines, true));
+    assertNotEquals(
+        hash(original, false),
+        hash(original.replace("return 1", "return 2"), false));
+  }
+
+  @Test
+  public void hashIncludesBlankLinesAndWhitespaceWhichRawStringLiteralsKeep() throws IOException {
+    String original =
+        "# 1 \"test.cpp\"\n" +
+        "const char* s = R\"(a\n" +
+        "# 3 apples\n" +
+        "b)\";\n";
+    assertNotEquals(hash(original, false), hash(original.replace("a\n", "a\n\n"), false));
+    assertNotEquals(hash(original, false), hash(original.replace("a\n", "a \n"), false));
+    assertNotEquals(hash(original, false), hash(original.replace("a\n", "a\r\n"), false));
+    assertNotEquals(hash(original, false), hash(original.replace("3 apples", "4 apples"), false));
+  }
+
+  @Test
+  public void lineMarkersAreKeptForDebugInfo() {
+    assertTrue(CxxPreprocessedCompile.shouldKeepLineMarkers(ImmutableList.of("-O2", "-g")));
+    assertTrue(CxxPreprocessedCompile.shouldKeepLineMarkers(ImmutableList.of("-ggdb3")));
+    assertFalse(CxxPreprocessedCompile.shouldKeepLineMarkers(ImmutableList.of("-O2", "-g0")));
+  }
+
+  @Test
+  public void inputBasedRuleKeyDependsOnPreprocessedContents() throws IOException {
+    ProjectFilesystem filesystem = new ProjectFilesystem(tmp.getRoot().toPath());
+    File input = new File(tmp.newFolder("foo"), "test.i");
+
+    Files.write("# 1 \"test.c\"\nint foo;\n", input, Charsets.UTF_8);
+    RuleKey original = createCompile(filesystem).getInputBasedRuleKey().get();
+
+    Files.write("# 3 \"test.c\"\nint foo;\n", input, Charsets.UTF_8);
+    assertEquals(original, createCompile(filesystem).getInputBasedRuleKey().get());
+
+    Files.write("# 1 \"test.c\"\nint bar;\n", input, Charsets.UTF_8);
+    assertNotEquals(original, createCompile(filesystem).getInputBasedRuleKey().get());
+  }
+
+  private CxxPreprocessedCompile createCompile(ProjectFilesystem filesystem) {
+    BuildRuleParams params = new FakeBuildRuleParamsBuilder("//foo:bar")
+        .setProjectFilesystem(filesystem)
+        .setFileHashCache(
+            FakeFileHashCache.createFromStrings(
+                ImmutableMap.of("compiler", Strings.repeat("a", 40))))
+        .build();
+    return new CxxPreprocessedCompile(
+        params,
+        new SourcePathResolver(new BuildRuleResolver()),
+        new TestSourcePath("compiler"),
+        Optional.<CxxCompile.Plugin>absent(),
+        ImmutableList.of("-x", "c-cpp-output"),
+        Paths.get("foo/test.o"),
+        new TestSourcePath("foo/test.i"));
+  }
+
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright 2014-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.cxx;
+
+import static org.junit.Assert.assertEquals;
+
+import com.google.common.collect.ImmutableList;
+
+import org.junit.Test;
+
+public class DepfilesTest {
+
+  @Test
+  public void parsesSingleLine() {
+    assertEquals(
+        ImmutableList.of("test.cpp", "test.h"),
+        Depfiles.parseDepfile("test.o: test.cpp test.h\n"));
+  }
+
+  @Test
+  public void parsesContinuationLines() {
+    assertEquals(
+        ImmutableList.of("test.cpp", "foo/bar/test.h", "/usr/include/stdio.h"),
+        Depfiles.parseDepfile(
+            "buck-out/bin/foo/test.o: test.cpp \\\n" +
+            "  foo/bar/test.h \\\r\n" +
+            "  /usr/include/stdio.h\n"));
+  }
+
+  @Test
+  public void unescapesSpecialCharacters() {
+    assertEquals(
+        ImmutableList.of("dir with spaces/test.h", "cost$.h", "hash#.h"),
+        Depfiles.parseDepfile("test.o: dir\\ with\\ spaces/test.h cost$$.h hash\\#.h"));
+  }
+
+  @Test
+  public void ignoresPhonyTargets() {
+    assertEquals(
+        ImmutableList.of("test.cpp", "test.h"),
+        Depfiles.parseDepfile("test.o: test.cpp test.h\n\ntest.h:\n"));
+  }
+
+}
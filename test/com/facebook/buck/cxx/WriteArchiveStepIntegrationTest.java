@@ -0,0 +1,119 @@
+/*
+ * Copyright 2014-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.cxx;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import com.facebook.buck.step.ExecutionContext;
+import com.facebook.buck.step.TestExecutionContext;
+import com.facebook.buck.testutil.TestConsole;
+import com.facebook.buck.testutil.integration.DebuggableTemporaryFolder;
+import com.facebook.buck.util.ProcessExecutor;
+import com.facebook.buck.util.ProjectFilesystem;
+import com.google.common.collect.ImmutableList;
+
+import org.apache.commons.compress.archivers.ar.ArArchiveEntry;
+import org.apache.commons.compress.archivers.ar.ArArchiveInputStream;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+public class WriteArchiveStepIntegrationTest {
+
+  private static final Path GCC = Paths.get("/usr/bin/gcc");
+
+  @Rule
+  public DebuggableTemporaryFolder tmp = new DebuggableTemporaryFolder();
+
+  private ExecutionContext createExecutionContext() {
+    return TestExecutionContext.newBuilder()
+        .setProjectFilesystem(new ProjectFilesystem(tmp.getRoot().toPath()))
+        .build();
+  }
+
+  private void run(String... command) throws IOException, InterruptedException {
+    ProcessExecutor.Result result = new ProcessExecutor(new TestConsole())
+        .execute(Runtime.getRuntime().exec(command, /* envp */ null, tmp.getRoot()));
+    assertEquals(Arrays.toString(command) + " failed", 0, result.getExitCode());
+  }
+
+  @Test
+  public void thatGeneratedArchivesAreDeterministic() throws IOException, InterruptedException {
+    ProjectFilesystem filesystem = new ProjectFilesystem(tmp.getRoot().toPath());
+    Path output = Paths.get("output.a");
+    Path input = Paths.get("input.dat");
+    filesystem.writeContentsToPath("blah", input);
+
+    WriteArchiveStep step =
+        new WriteArchiveStep(ArchiveFormat.GNU, /* thin */ false, output, ImmutableList.of(input));
+    ExecutionContext executionContext = createExecutionContext();
+    TestConsole console = (TestConsole) executionContext.getConsole();
+    int exitCode = step.execute(executionContext);
+    assertEquals("archive step failed: " + console.getTextWrittenToStdErr(), 0, exitCode);
+
+    // Now read the archive entries and verify that the timestamp, UID, and GID fields are
+    // zero'd out.
+    try (ArArchiveInputStream stream = new ArArchiveInputStream(
+        new FileInputStream(filesystem.resolve(output).toFile()))) {
+      ArArchiveEntry entry = stream.getNextArEntry();
+      assertEquals(0, entry.getLastModified());
+      assertEquals(0, entry.getUserId());
+      assertEquals(0, entry.getGroupId());
+    }
+  }
+
+  @Test
+  public void thatGeneratedArchivesCanBeLinked() throws IOException, InterruptedException {
+    assumeTrue(Files.exists(GCC));
+    ProjectFilesystem filesystem = new ProjectFilesystem(tmp.getRoot().toPath());
+    filesystem.writeContentsToPath("int first(void) { return 1; }\n", Paths.get("first.c"));
+    filesystem.writeContentsToPath("int second(void) { return 2; }\n", Paths.get("second.c"));
+    filesystem.writeContentsToPath(
+        "int first(void);\nint second(void);\n" +
+        "int main(void) { return first() + second() - 3; }\n",
+        Paths.get("main.c"));
+    run(GCC.toString(), "-c", "first.c", "second.c");
+    assertEquals(
+        ImmutableList.of("first"),
+        ObjectFileSymbols.getDefinedGlobalSymbols(filesystem.resolve(Paths.get("first.o"))));
+
+    for (boolean thin : ImmutableList.of(false, true)) {
+      Path output = Paths.get(thin ? "libthin.a" : "libfull.a");
+      WriteArchiveStep step = new WriteArchiveStep(
+          ArchiveFormat.GNU,
+          thin,
+          output,
+          ImmutableList.of(Paths.get("first.o"), Paths.get("second.o")));
+      assertEquals(0, step.execute(createExecutionContext()));
+
+      // The linker only pulls in archive members through the symbol index, so this only links
+      // if the index is right.
+      run(GCC.toString(), "-o", "main", "main.c", output.toString());
+      assertTrue(Files.exists(filesystem.resolve(Paths.get("main"))));
+      run(filesystem.resolve(Paths.get("main")).toString());
+    }
+  }
+
+}
@@ -36,7 +36,6 @@ import com.facebook.buck.rules.BuildRuleStatus;
 import com.facebook.buck.rules.BuildRuleSuccess;
 import com.facebook.buck.rules.CacheResult;
 import com.facebook.buck.rules.FakeBuildRule;
-import com.facebook.buck.rules.FakeProcessExecutor;
 import com.facebook.buck.rules.SourcePathResolver;
 import com.facebook.buck.shell.GenruleDescription;
 import com.facebook.buck.step.FakeStep;
@@ -44,18 +43,21 @@ import com.facebook.buck.step.StepEvent;
 import com.facebook.buck.testutil.TestConsole;
 import com.facebook.buck.timing.Clock;
 import com.facebook.buck.timing.IncrementingFakeClock;
-import com.facebook.buck.util.environment.DefaultExecutionEnvironment;
+import com.facebook.buck.util.Ansi;
+import com.facebook.buck.util.CapturingPrintStream;
+import com.facebook.buck.util.Console;
+import com.facebook.buck.util.Verbosity;
 import com.google.common.base.Function;
 import com.google.common.base.Optional;
 import com.google.common.collect.FluentIterable;
 import com.google.common.collect.ImmutableList;
-import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.ImmutableSortedSet;
 import com.google.common.eventbus.EventBus;
 
 import org.junit.Test;
 
+import java.io.IOException;
 import java.text.DecimalFormat;
 import java.util.concurrent.TimeUnit;
 
@@ -106,10 +108,6 @@ public class SuperConsoleEventBusListenerTest {
         new SuperConsoleEventBusListener(
             console,
             fakeClock,
-            new DefaultExecutionEnvironment(
-                new FakeProcessExecutor(),
-                ImmutableMap.copyOf(System.getenv()),
-                System.getProperties()),
             /* isTreatingAssumptionsAsErrors */ false);
     eventBus.register(listener);
 
@@ -244,6 +242,51 @@ public class SuperConsoleEventBusListenerTest {
         beforeStderrWrite + "ROFLCOPTER", console.getTextWrittenToStdErr());
   }
 
+  @Test
+  public void testOnlyChangedLinesAreRewritten() throws IOException {
+    Ansi ansi = Ansi.forceTty();
+    Console console = new Console(
+        Verbosity.STANDARD_INFORMATION,
+        new CapturingPrintStream(),
+        new CapturingPrintStream(),
+        ansi);
+    try (SuperConsoleEventBusListener listener = new SuperConsoleEventBusListener(
+        console,
+        new IncrementingFakeClock(TimeUnit.SECONDS.toNanos(1)),
+        /* isTreatingAssumptionsAsErrors */ false)) {
+      ImmutableList<String> lastLines = ImmutableList.of("BUILDING", " |=> a", " |=> b");
+
+      assertEquals(
+          "An identical frame should not write anything.",
+          "",
+          listener.createFrame(lastLines, lastLines));
+      assertEquals(
+          "Only the line that changed should be rewritten.",
+          ansi.cursorPreviousLine(2) + ansi.clearLine() + " |=> c\n" + "\n",
+          listener.createFrame(lastLines, ImmutableList.of("BUILDING", " |=> c", " |=> b")));
+      assertEquals(
+          "New lines should be appended below the last frame.",
+          ansi.clearLine() + "Log:\n",
+          listener.createFrame(
+              lastLines,
+              ImmutableList.of("BUILDING", " |=> a", " |=> b", "Log:")));
+      assertEquals(
+          "Lines left over from a longer frame should be cleared.",
+          ansi.cursorPreviousLine(2) +
+              ansi.clearLine() + "\n" +
+              ansi.clearLine() + "\n" +
+              ansi.cursorPreviousLine(2),
+          listener.createFrame(lastLines, ImmutableList.of("BUILDING")));
+    }
+  }
+
+  @Test
+  public void testRenderingSlowsDownWhenFramesAreExpensive() {
+    assertEquals(100L, SuperConsoleEventBusListener.getRenderDelayMillis(100L, 2L));
+    assertEquals(300L, SuperConsoleEventBusListener.getRenderDelayMillis(100L, 30L));
+    assertEquals(1000L, SuperConsoleEventBusListener.getRenderDelayMillis(100L, 500L));
+  }
+
   private void validateConsole(TestConsole console,
       SuperConsoleEventBusListener listener,
       long timeMs,
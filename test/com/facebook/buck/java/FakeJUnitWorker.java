@@ -0,0 +1,144 @@
+/*
+ * Copyright 2014-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.java;
+
+import com.google.common.collect.ImmutableList;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.file.Path;
+
+/**
+ * The far end of a {@link JUnitWorkerPool.Worker}, which plays the part of
+ * {@code JUnitWorkerMain} from whatever responses a test writes to {@link #getResponses()} in
+ * advance.
+ */
+public class FakeJUnitWorker implements Closeable {
+
+  private final FakeProcess process;
+  private final Socket peer;
+  private final DataInputStream requests;
+  private final DataOutputStream responses;
+  private final JUnitWorkerPool.Worker worker;
+
+  public FakeJUnitWorker(Path workingDirectory, ImmutableList<String> vmArgs) throws IOException {
+    ImmutableList<String> key = ImmutableList.<String>builder()
+        .add(workingDirectory.toString())
+        .addAll(vmArgs)
+        .build();
+    try (ServerSocket serverSocket =
+             new ServerSocket(/* port */ 0, /* backlog */ 1, InetAddress.getLoopbackAddress())) {
+      Socket socket = new Socket(InetAddress.getLoopbackAddress(), serverSocket.getLocalPort());
+      this.peer = serverSocket.accept();
+      this.process = new FakeProcess();
+      this.worker = new JUnitWorkerPool.Worker(key, process, socket);
+    }
+    this.requests = new DataInputStream(peer.getInputStream());
+    this.responses = new DataOutputStream(peer.getOutputStream());
+  }
+
+  public JUnitWorkerPool.Worker getWorker() {
+    return worker;
+  }
+
+  /** Requests, as written by {@link JUnitWorkerPool.Worker#runTests}. */
+  public DataInputStream getRequests() {
+    return requests;
+  }
+
+  /**
+   * Where to write the progress reports and the result of a run, which the worker reads as soon as
+   * it has sent its request.
+   */
+  public DataOutputStream getResponses() {
+    return responses;
+  }
+
+  /** Writes the response to a run in which {@code numTests} tests finished. */
+  public void respond(int numTests, int exitCode, boolean isExiting) throws IOException {
+    for (int i = 0; i < numTests; i++) {
+      responses.writeBoolean(/* isFinished */ false);
+    }
+    responses.writeBoolean(/* isFinished */ true);
+    responses.writeInt(exitCode);
+    responses.writeBoolean(isExiting);
+    responses.flush();
+  }
+
+  /** Makes the worker JVM appear to have exited of its own accord. */
+  public void exit() {
+    process.exitValue = 0;
+  }
+
+  public boolean isDestroyed() {
+    return process.isDestroyed;
+  }
+
+  @Override
+  public void close() throws IOException {
+    peer.close();
+  }
+
+  private static class FakeProcess extends Process {
+
+    private volatile boolean isDestroyed;
+    private volatile Integer exitValue;
+
+    @Override
+    public OutputStream getOutputStream() {
+      return new ByteArrayOutputStream();
+    }
+
+    @Override
+    public InputStream getInputStream() {
+      return new ByteArrayInputStream(new byte[0]);
+    }
+
+    @Override
+    public InputStream getErrorStream() {
+      return new ByteArrayInputStream(new byte[0]);
+    }
+
+    @Override
+    public int waitFor() {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public int exitValue() {
+      if (exitValue == null) {
+        throw new IllegalThreadStateException();
+      }
+      return exitValue;
+    }
+
+    @Override
+    public void destroy() {
+      isDestroyed = true;
+      exitValue = 143;
+    }
+  }
+}
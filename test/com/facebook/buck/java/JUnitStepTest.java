@@ -17,6 +17,8 @@
 package com.facebook.buck.java;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 import com.facebook.buck.model.BuildId;
 import com.facebook.buck.step.ExecutionContext;
@@ -174,4 +176,31 @@ public class JUnitStepTest {
     assertEquals("Debugging. Suspending JVM. Connect a JDWP debugger to port 5005 to proceed.",
         console.getTextWrittenToStdErr().trim());
   }
+
+  @Test
+  public void testOnlyPlainJUnitRunsCanUseAWorker() {
+    assertTrue(createJUnitStep(false, false, TestType.JUNIT).canRunInWorker());
+    assertFalse(createJUnitStep(true, false, TestType.JUNIT).canRunInWorker());
+    assertFalse(createJUnitStep(false, true, TestType.JUNIT).canRunInWorker());
+    assertFalse(createJUnitStep(false, false, TestType.TESTNG).canRunInWorker());
+  }
+
+  private static JUnitStep createJUnitStep(
+      boolean isCodeCoverageEnabled,
+      boolean isDebugEnabled,
+      TestType testType) {
+    return new JUnitStep(
+        ImmutableSet.of(Paths.get("foo")),
+        ImmutableSet.of("com.facebook.buck.shell.JUnitCommandTest"),
+        ImmutableList.<String>of(),
+        Paths.get("buck-out/gen/theresults/"),
+        Paths.get("buck-out/gen/thetmp/"),
+        isCodeCoverageEnabled,
+        isDebugEnabled,
+        new BuildId("pretend-build-id"),
+        TestSelectorList.empty(),
+        /* isDryRun */ false,
+        testType,
+        Paths.get("build/classes/junit"));
+  }
 }
@@ -0,0 +1,148 @@
+/*
+ * Copyright 2014-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.java;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.google.common.collect.ImmutableList;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+public class JUnitWorkerPoolTest {
+
+  private static final Path WORKING_DIRECTORY = Paths.get("/project");
+  private static final ImmutableList<String> VM_ARGS = ImmutableList.of("-Xmx512m");
+
+  private FakeJUnitWorker fakeWorker;
+  private JUnitWorkerPool.Worker worker;
+
+  @Before
+  public void setUp() throws IOException {
+    fakeWorker = new FakeJUnitWorker(WORKING_DIRECTORY, VM_ARGS);
+    worker = fakeWorker.getWorker();
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    worker.close();
+    fakeWorker.close();
+  }
+
+  @Test
+  public void runTestsSendsTheRequestAndReadsTheResultAfterTheProgressReports()
+      throws IOException {
+    fakeWorker.respond(/* numTests */ 2, /* exitCode */ 3, /* isExiting */ true);
+
+    JUnitWorkerPool.Result result = worker.runTests(
+        Paths.get("/tmp/junit"),
+        "build-id",
+        ImmutableList.of(Paths.get("lib.jar"), Paths.get("testrunner/classes")),
+        ImmutableList.of("results", "0", "", "", "com.example.FooTest"),
+        /* timeoutMillis */ 0);
+
+    assertEquals(3, result.exitCode);
+    assertTrue(result.isExiting);
+
+    DataInputStream requests = fakeWorker.getRequests();
+    assertEquals("/tmp/junit", requests.readUTF());
+    assertEquals("build-id", requests.readUTF());
+    assertEquals(2, requests.readInt());
+    assertEquals("lib.jar", requests.readUTF());
+    assertEquals("testrunner/classes", requests.readUTF());
+    assertEquals(5, requests.readInt());
+    assertEquals("results", requests.readUTF());
+    assertEquals("0", requests.readUTF());
+    assertEquals("", requests.readUTF());
+    assertEquals("", requests.readUTF());
+    assertEquals("com.example.FooTest", requests.readUTF());
+  }
+
+  @Test
+  public void runTestsWaitsForProgressNoLongerThanTheTimeout() throws IOException {
+    fakeWorker.getResponses().writeBoolean(/* isFinished */ false);
+    fakeWorker.getResponses().flush();
+
+    try {
+      runTests(/* timeoutMillis */ 100);
+      fail("A worker which stops reporting progress should time out.");
+    } catch (SocketTimeoutException e) {
+      // Expected.
+    }
+  }
+
+  @Test
+  public void runTestsFailsIfTheWorkerExitsDuringTheRun() throws IOException {
+    fakeWorker.getResponses().writeBoolean(/* isFinished */ false);
+    fakeWorker.getResponses().flush();
+    fakeWorker.close();
+
+    try {
+      runTests(/* timeoutMillis */ 0);
+      fail("A worker which exits before sending its result should be an error.");
+    } catch (EOFException e) {
+      // Expected.
+    }
+  }
+
+  @Test
+  public void reusableWorkerIsReturnedToThePool() throws IOException {
+    JUnitWorkerPool pool = new JUnitWorkerPool(/* maxRunsPerWorker */ 10);
+    pool.release(worker, /* isReusable */ true);
+
+    assertFalse(fakeWorker.isDestroyed());
+    assertSame(worker, pool.acquire(WORKING_DIRECTORY, VM_ARGS, Paths.get("testrunner/classes")));
+  }
+
+  @Test
+  public void workerWhichIsNotReusableIsKilled() {
+    JUnitWorkerPool pool = new JUnitWorkerPool(/* maxRunsPerWorker */ 10);
+    pool.release(worker, /* isReusable */ false);
+
+    assertTrue(fakeWorker.isDestroyed());
+  }
+
+  @Test
+  public void workerWhichHasExitedIsNotReturnedToThePool() {
+    JUnitWorkerPool pool = new JUnitWorkerPool(/* maxRunsPerWorker */ 10);
+    fakeWorker.exit();
+    pool.release(worker, /* isReusable */ true);
+
+    assertTrue(fakeWorker.isDestroyed());
+  }
+
+  private JUnitWorkerPool.Result runTests(long timeoutMillis) throws IOException {
+    return worker.runTests(
+        Paths.get("/tmp/junit"),
+        "build-id",
+        ImmutableList.<Path>of(),
+        ImmutableList.of("results", "0", "", "", "com.example.FooTest"),
+        timeoutMillis);
+  }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright 2014-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.java;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.facebook.buck.model.BuildId;
+import com.facebook.buck.step.ExecutionContext;
+import com.facebook.buck.step.TestExecutionContext;
+import com.facebook.buck.test.selectors.TestSelectorList;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+public class JUnitWorkerStepTest {
+
+  private FakeJUnitWorker fakeWorker;
+  private JUnitWorkerStep step;
+
+  @Before
+  public void setUp() throws IOException {
+    ExecutionContext context = TestExecutionContext.newInstance();
+    fakeWorker = new FakeJUnitWorker(context.getProjectDirectoryRoot(), ImmutableList.of("-ea"));
+    JUnitStep junitStep = new JUnitStep(
+        ImmutableSet.of(Paths.get("lib.jar")),
+        ImmutableSet.of("com.example.FooTest"),
+        ImmutableList.of("-ea"),
+        Paths.get("buck-out/gen/results"),
+        Paths.get("buck-out/gen/tmp"),
+        /* isCodeCoverageEnabled */ false,
+        /* isDebugEnabled */ false,
+        new BuildId("build-id"),
+        TestSelectorList.empty(),
+        /* isDryRun */ false,
+        TestType.JUNIT,
+        Paths.get("build/testrunner/classes"));
+    step = new JUnitWorkerStep(junitStep, new FakeJUnitWorkerPool(fakeWorker.getWorker()));
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    fakeWorker.getWorker().close();
+    fakeWorker.close();
+  }
+
+  @Test
+  public void workerIsKeptAfterASuccessfulRun() throws InterruptedException, IOException {
+    fakeWorker.respond(/* numTests */ 3, /* exitCode */ 0, /* isExiting */ false);
+
+    assertEquals(0, step.execute(TestExecutionContext.newInstance()));
+    assertFalse(fakeWorker.isDestroyed());
+  }
+
+  @Test
+  public void workerWhichIsExitingIsNotKept() throws InterruptedException, IOException {
+    fakeWorker.respond(/* numTests */ 1, /* exitCode */ 0, /* isExiting */ true);
+
+    assertEquals(0, step.execute(TestExecutionContext.newInstance()));
+    assertTrue(fakeWorker.isDestroyed());
+  }
+
+  @Test
+  public void workerWhichCrashesFailsTheStepAndIsKilled()
+      throws InterruptedException, IOException {
+    fakeWorker.getResponses().writeBoolean(/* isFinished */ false);
+    fakeWorker.getResponses().flush();
+    fakeWorker.close();
+
+    assertEquals(1, step.execute(TestExecutionContext.newInstance()));
+    assertTrue(fakeWorker.isDestroyed());
+  }
+
+  @Test
+  public void workerWhichHangsIsKilledOnceTheTestTimeoutExpires() throws InterruptedException {
+    ExecutionContext context = TestExecutionContext.newBuilder()
+        .setDefaultTestTimeoutMillis(100)
+        .build();
+
+    assertEquals(1, step.execute(context));
+    assertTrue(fakeWorker.isDestroyed());
+  }
+
+  /** Hands out the one worker, whatever it is asked for. */
+  private static class FakeJUnitWorkerPool extends JUnitWorkerPool {
+
+    private final JUnitWorkerPool.Worker worker;
+
+    private FakeJUnitWorkerPool(JUnitWorkerPool.Worker worker) {
+      super(/* maxRunsPerWorker */ 10);
+      this.worker = worker;
+    }
+
+    @Override
+    JUnitWorkerPool.Worker acquire(
+        Path workingDirectory,
+        ImmutableList<String> vmArgs,
+        Path testRunnerClassesDirectory) {
+      return worker;
+    }
+  }
+}
@@ -29,7 +29,12 @@ import javax.annotation.Nullable;
 
 public class JavaTestBuilder extends AbstractBuilder<JavaTestDescription.Arg> {
   private JavaTestBuilder(BuildTarget target) {
-    super(new JavaTestDescription(JavaCompilerEnvironment.DEFAULT), target);
+    super(
+        new JavaTestDescription(
+            JavaCompilerEnvironment.DEFAULT,
+            /* maxJvmsPerTest */ 1,
+            Optional.<JUnitWorkerPool>absent()),
+        target);
   }
 
   public static JavaTestBuilder newJavaTestBuilder(BuildTarget target) {
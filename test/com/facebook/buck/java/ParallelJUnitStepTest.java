@@ -0,0 +1,75 @@
+/*
+ * Copyright 2014-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.java;
+
+import static org.junit.Assert.assertEquals;
+
+import com.facebook.buck.step.ExecutionContext;
+import com.facebook.buck.step.FakeStep;
+import com.facebook.buck.step.Step;
+import com.facebook.buck.step.TestExecutionContext;
+import com.google.common.collect.ImmutableList;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ParallelJUnitStepTest {
+
+  @Test
+  public void testStepsRunAtTheSameTime() throws InterruptedException {
+    // Each step waits for the other to start, so this only finishes if they run concurrently.
+    final CountDownLatch started = new CountDownLatch(2);
+    Step step = new FakeStep("junit", "junit", 0) {
+      @Override
+      public int execute(ExecutionContext context) {
+        started.countDown();
+        try {
+          return started.await(10, TimeUnit.SECONDS) ? 0 : 1;
+        } catch (InterruptedException e) {
+          return 1;
+        }
+      }
+    };
+
+    ParallelJUnitStep parallelStep = new ParallelJUnitStep(ImmutableList.of(step, step));
+    assertEquals(0, parallelStep.execute(TestExecutionContext.newInstance()));
+  }
+
+  @Test
+  public void testEveryStepRunsEvenIfOneFails() throws InterruptedException {
+    final AtomicInteger executed = new AtomicInteger();
+    ImmutableList.Builder<Step> steps = ImmutableList.builder();
+    for (final int exitCode : new int[] {0, 3, 0, 5}) {
+      steps.add(
+          new FakeStep("junit", "junit", exitCode) {
+            @Override
+            public int execute(ExecutionContext context) {
+              executed.incrementAndGet();
+              return exitCode;
+            }
+          });
+    }
+
+    int exitCode = new ParallelJUnitStep(steps.build())
+        .execute(TestExecutionContext.newInstance());
+    assertEquals(3, exitCode);
+    assertEquals(4, executed.get());
+  }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright 2014-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.java;
+
+import static org.junit.Assert.assertEquals;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableSortedSet;
+
+import org.junit.Test;
+
+public class TestClassPartitionerTest {
+
+  @Test
+  public void testSinglePartitionContainsEveryClass() {
+    assertEquals(
+        ImmutableList.of(ImmutableSortedSet.of("A", "B", "C")),
+        TestClassPartitioner.partition(
+            ImmutableSet.of("C", "A", "B"),
+            ImmutableMap.<String, Long>of(),
+            1));
+  }
+
+  @Test
+  public void testNoMorePartitionsThanClasses() {
+    assertEquals(
+        ImmutableList.of(ImmutableSortedSet.of("A"), ImmutableSortedSet.of("B")),
+        TestClassPartitioner.partition(
+            ImmutableSet.of("A", "B"),
+            ImmutableMap.<String, Long>of(),
+            8));
+  }
+
+  @Test
+  public void testLongestClassesAreSpreadOutFirst() {
+    assertEquals(
+        ImmutableList.of(
+            ImmutableSortedSet.of("Slow"),
+            ImmutableSortedSet.of("Fast1", "Fast2", "Medium")),
+        TestClassPartitioner.partition(
+            ImmutableSet.of("Fast1", "Fast2", "Medium", "Slow"),
+            ImmutableMap.of("Slow", 100L, "Medium", 60L, "Fast1", 20L, "Fast2", 20L),
+            2));
+  }
+
+  @Test
+  public void testClassesWithoutHistoryAreSpreadEvenly() {
+    assertEquals(
+        ImmutableList.of(ImmutableSortedSet.of("A", "C"), ImmutableSortedSet.of("B", "D")),
+        TestClassPartitioner.partition(
+            ImmutableSet.of("A", "B", "C", "D"),
+            ImmutableMap.<String, Long>of(),
+            2));
+  }
+
+  @Test
+  public void testClassesWithoutHistoryAreAssumedToTakeTheAverageTime() {
+    // The average known duration is 50, so New is balanced against Known1 before Known2 is.
+    assertEquals(
+        ImmutableList.of(
+            ImmutableSortedSet.of("Known1"),
+            ImmutableSortedSet.of("Known2", "Known3", "New")),
+        TestClassPartitioner.partition(
+            ImmutableSet.of("Known1", "Known2", "Known3", "New"),
+            ImmutableMap.of("Known1", 100L, "Known2", 40L, "Known3", 10L),
+            2));
+  }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright 2014-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.junit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableList;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+public class JUnitWorkerMainTest {
+
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  @Test
+  public void eachRunReportsEveryTestAndThenItsResult() throws IOException {
+    File results = temporaryFolder.newFolder("results");
+    ByteArrayOutputStream requests = new ByteArrayOutputStream();
+    writeRequest(new DataOutputStream(requests), results);
+    writeRequest(new DataOutputStream(requests), results);
+
+    ByteArrayOutputStream responses = new ByteArrayOutputStream();
+    JUnitWorkerMain.serve(
+        new DataInputStream(new ByteArrayInputStream(requests.toByteArray())),
+        new DataOutputStream(responses),
+        /* maxRuns */ 2);
+
+    DataInputStream in = new DataInputStream(new ByteArrayInputStream(responses.toByteArray()));
+    for (boolean isLastRun : new boolean[] {false, true}) {
+      assertFalse("First test finished.", in.readBoolean());
+      assertFalse("Second test finished.", in.readBoolean());
+      assertTrue("Run finished.", in.readBoolean());
+      assertEquals(0, in.readInt());
+      assertEquals(isLastRun, in.readBoolean());
+    }
+    assertEquals("Nothing is written after the last run.", -1, in.read());
+    assertTrue(new File(results, PassingTests.class.getName() + ".xml").exists());
+  }
+
+  @Test
+  public void workerStopsWhenThereAreNoMoreRequests() throws IOException {
+    ByteArrayOutputStream responses = new ByteArrayOutputStream();
+    JUnitWorkerMain.serve(
+        new DataInputStream(new ByteArrayInputStream(new byte[0])),
+        new DataOutputStream(responses),
+        /* maxRuns */ 2);
+
+    assertEquals(0, responses.size());
+  }
+
+  private void writeRequest(DataOutputStream out, File results) throws IOException {
+    out.writeUTF(temporaryFolder.getRoot().getAbsolutePath());
+    out.writeUTF("build-id");
+    // The tests are run in a ClassLoader of their own, which has to be able to find the runner,
+    // JUnit and the tests themselves.
+    writeStrings(
+        out,
+        Splitter.on(File.pathSeparatorChar).splitToList(System.getProperty("java.class.path")));
+    writeStrings(
+        out,
+        ImmutableList.of(
+            results.getAbsolutePath(),
+            /* defaultTestTimeoutMillis */ "0",
+            /* testSelectors */ "",
+            /* isDryRun */ "",
+            PassingTests.class.getName()));
+    out.flush();
+  }
+
+  private static void writeStrings(DataOutputStream out, List<String> strings)
+      throws IOException {
+    out.writeInt(strings.size());
+    for (String string : strings) {
+      out.writeUTF(string);
+    }
+  }
+
+  public static class PassingTests {
+
+    @Test
+    public void first() {}
+
+    @Test
+    public void second() {}
+  }
+}
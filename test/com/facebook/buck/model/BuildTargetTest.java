@@ -163,4 +163,30 @@ public class BuildTargetTest {
         .build();
   }
 
+  @Test
+  public void testEqualTargetsAreTheSameInstance() {
+    BuildTarget first = BuildTarget.builder("//foo", "bar").addFlavor("baz").build();
+    BuildTarget second = BuildTarget.builder("//foo", "bar").addFlavor(new Flavor("baz")).build();
+
+    assertSame(first, second);
+    assertSame(first.getUnflavoredTarget(), BuildTarget.builder("//foo", "bar").build());
+  }
+
+  @Test
+  public void testTargetsBuiltWithAndWithoutTheDefaultFlavorAreTheSameInstance() {
+    BuildTarget withDefault = BuildTarget.builder("//foo", "bar").addFlavor("baz").build();
+    BuildTarget withoutDefault = BuildTarget.builder("//foo", "bar").setFlavor("baz").build();
+
+    assertSame(withDefault, withoutDefault);
+    assertSame(withDefault, BuildTarget.builder("//foo", "bar").setFlavor("baz").build());
+  }
+
+  @Test
+  public void testTargetsInTheSamePackageShareTheirBasePath() {
+    BuildTarget first = BuildTarget.builder("//foo/bar", "first").build();
+    BuildTarget second = BuildTarget.builder("//foo/bar", "second").build();
+
+    assertEquals(Paths.get("foo/bar"), first.getBasePath());
+    assertSame(first.getBasePath(), second.getBasePath());
+  }
 }
@@ -0,0 +1,166 @@
+/*
+ * Copyright 2014-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.ocaml;
+
+import static org.junit.Assert.assertEquals;
+
+import com.facebook.buck.cli.FakeBuckConfig;
+import com.facebook.buck.cxx.CxxPreprocessorInput;
+import com.facebook.buck.cxx.NativeLinkableInput;
+import com.facebook.buck.model.BuildTargetFactory;
+import com.facebook.buck.rules.BuildRuleResolver;
+import com.facebook.buck.rules.SourcePath;
+import com.facebook.buck.rules.SourcePathResolver;
+import com.facebook.buck.rules.TestSourcePath;
+import com.facebook.buck.step.ExecutionContext;
+import com.facebook.buck.step.TestExecutionContext;
+import com.facebook.buck.testutil.integration.DebuggableTemporaryFolder;
+import com.facebook.buck.util.ProjectFilesystem;
+import com.facebook.buck.util.environment.Platform;
+import com.google.common.base.Joiner;
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSortedSet;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Runs {@link OCamlBuildStep} with a fake toolchain, a shell script which logs how it was invoked
+ * and "compiles" a module by copying its source to the output and to the compiled interface.
+ */
+public class OCamlBuildStepTest {
+
+  private static final String FAKE_TOOL = Joiner.on('\n').join(
+      "#!/bin/sh",
+      "echo \"$*\" >> invocations.log",
+      "if [ \"$1\" = -one-line ]; then cat deps.txt; exit 0; fi",
+      "out=; prev=; last=",
+      "for arg in \"$@\"; do",
+      "  if [ \"$prev\" = -o ]; then out=\"$arg\"; fi",
+      "  prev=\"$arg\"; last=\"$arg\"",
+      "done",
+      "if [ -z \"$out\" ]; then exit 0; fi",
+      "mkdir -p \"$(dirname \"$out\")\"",
+      "cat \"$last\" > \"$out\" 2>/dev/null || : > \"$out\"",
+      "case \"$out\" in *.cmx|*.cmo) cp \"$out\" \"${out%.*}.cmi\";; esac",
+      "");
+
+  @Rule
+  public DebuggableTemporaryFolder tmp = new DebuggableTemporaryFolder();
+
+  private ProjectFilesystem filesystem;
+  private OCamlBuildStep step;
+
+  /**
+   * <pre>
+   * b.ml -> a.ml
+   * c.ml
+   * </pre>
+   */
+  @Before
+  public void setUp() throws IOException {
+    filesystem = new ProjectFilesystem(tmp.getRoot().toPath());
+    filesystem.writeContentsToPath(FAKE_TOOL, Paths.get("tool.sh"));
+    filesystem.getFileForRelativePath("tool.sh").setExecutable(true);
+    filesystem.writeContentsToPath("a.cmx :\nb.cmx : a.cmx\nc.cmx :\n", Paths.get("deps.txt"));
+    filesystem.writeContentsToPath("let a = 1", Paths.get("a.ml"));
+    filesystem.writeContentsToPath("let b = A.a", Paths.get("b.ml"));
+    filesystem.writeContentsToPath("let c = 3", Paths.get("c.ml"));
+
+    Path tool = filesystem.resolve(Paths.get("tool.sh"));
+    Map<String, String> toolchain = ImmutableMap.of(
+        "ocaml.compiler", tool.toString(),
+        "ocaml.bytecode.compiler", tool.toString(),
+        "dep.tool", tool.toString(),
+        "yacc.compiler", tool.toString(),
+        "lex.compiler", tool.toString());
+    OCamlBuckConfig ocamlBuckConfig = new OCamlBuckConfig(
+        Platform.detect(),
+        new FakeBuckConfig(
+            ImmutableMap.<String, Map<String, String>>of("ocaml", toolchain),
+            filesystem));
+    OCamlBuildContext ocamlContext = OCamlBuildContext
+        .builder(ocamlBuckConfig, new SourcePathResolver(new BuildRuleResolver()))
+        .setFlags(ImmutableList.<String>of())
+        .setIncludes(ImmutableList.<String>of())
+        .setOcamlInput(ImmutableList.<OCamlLibrary>of())
+        .setLinkableInput(
+            new NativeLinkableInput(ImmutableList.<SourcePath>of(), ImmutableList.<String>of()))
+        .setUpDirectories(BuildTargetFactory.newInstance("//:lib"), /* isLibrary */ true)
+        .setCxxPreprocessorInput(
+            CxxPreprocessorInput.concat(ImmutableList.<CxxPreprocessorInput>of()))
+        .setInput(
+            ImmutableList.<SourcePath>of(
+                new TestSourcePath("a.ml"),
+                new TestSourcePath("b.ml"),
+                new TestSourcePath("c.ml")))
+        .build();
+    step = new OCamlBuildStep(ocamlContext, tool, tool, /* depsKey */ "deps");
+  }
+
+  @Test
+  public void unchangedModulesAreNotCompiledAgain() throws Exception {
+    assertEquals(
+        ImmutableSortedSet.of("a.cmo", "a.cmx", "b.cmo", "b.cmx", "c.cmo", "c.cmx"),
+        build());
+
+    assertEquals(ImmutableSortedSet.of(), build());
+  }
+
+  @Test
+  public void modulesThatDependOnAChangedModuleAreCompiledAgain() throws Exception {
+    build();
+    filesystem.writeContentsToPath("let a = 2", Paths.get("a.ml"));
+
+    assertEquals(ImmutableSortedSet.of("a.cmo", "a.cmx", "b.cmo", "b.cmx"), build());
+  }
+
+  @Test
+  public void changedModuleIsCompiledAgainWithoutTheModulesItDependsOn() throws Exception {
+    build();
+    filesystem.writeContentsToPath("let b = A.a + 1", Paths.get("b.ml"));
+
+    assertEquals(ImmutableSortedSet.of("b.cmo", "b.cmx"), build());
+  }
+
+  /** @return the names of the modules which were compiled. */
+  private ImmutableSortedSet<String> build() throws IOException, InterruptedException {
+    ExecutionContext context = TestExecutionContext.newBuilder()
+        .setProjectFilesystem(filesystem)
+        .build();
+    filesystem.deleteFileAtPath(Paths.get("invocations.log"));
+    assertEquals(0, step.execute(context));
+
+    ImmutableSortedSet.Builder<String> compiled = ImmutableSortedSet.naturalOrder();
+    for (String invocation : filesystem.readLines(Paths.get("invocations.log"))) {
+      List<String> args = Splitter.on(' ').splitToList(invocation);
+      if (args.contains("-c")) {
+        compiled.add(Paths.get(args.get(args.indexOf("-o") + 1)).getFileName().toString());
+      }
+    }
+    return compiled.build();
+  }
+}
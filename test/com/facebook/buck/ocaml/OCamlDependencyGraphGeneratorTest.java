@@ -0,0 +1,69 @@
+/*
+ * Copyright 2014-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.ocaml;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.base.Joiner;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Ordering;
+
+import org.junit.Test;
+
+public class OCamlDependencyGraphGeneratorTest {
+
+  private static final String LINE_SEPARATOR = System.getProperty("line.separator");
+
+  private static final String DEP_TOOL_OUTPUT = Joiner.on(LINE_SEPARATOR).join(
+      "src/main.cmx : src/list.cmx src/map.cmx src/util.cmi",
+      "src/list.cmx : src/util.cmi",
+      "src/map.cmx :",
+      "src/util.cmi :",
+      "src/util.cmx : src/util.cmi");
+
+  @Test
+  public void testSourcesAreSortedWithDependenciesFirst() {
+    ImmutableList<String> sorted = new OCamlDependencyGraphGenerator().generate(DEP_TOOL_OUTPUT);
+    assertEquals(5, sorted.size());
+    assertBefore(sorted, "src/util.mli", "src/util.ml");
+    assertBefore(sorted, "src/util.mli", "src/list.ml");
+    assertBefore(sorted, "src/list.ml", "src/main.ml");
+    assertBefore(sorted, "src/map.ml", "src/main.ml");
+  }
+
+  @Test
+  public void testGetDependencies() {
+    OCamlDependencyGraphGenerator generator = new OCamlDependencyGraphGenerator();
+    generator.generate(DEP_TOOL_OUTPUT);
+
+    assertEquals(
+        ImmutableList.of("src/list.ml", "src/map.ml", "src/util.mli"),
+        sort(generator.getDependencies("src/main.ml")));
+    assertEquals(ImmutableList.of(), generator.getDependencies("src/util.mli"));
+  }
+
+  private static void assertBefore(ImmutableList<String> sorted, String first, String second) {
+    assertTrue(
+        first + " should come before " + second,
+        sorted.indexOf(first) < sorted.indexOf(second));
+  }
+
+  private static ImmutableList<String> sort(ImmutableList<String> sources) {
+    return Ordering.natural().immutableSortedCopy(sources);
+  }
+}
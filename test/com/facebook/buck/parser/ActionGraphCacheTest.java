@@ -0,0 +1,153 @@
+/*
+ * Copyright 2014-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.parser;
+
+import static com.facebook.buck.shell.GenruleTargetNodeBuilder.newGenruleTargetNodeBuilder;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import com.facebook.buck.graph.MutableDirectedGraph;
+import com.facebook.buck.model.BuildTarget;
+import com.facebook.buck.model.BuildTargetFactory;
+import com.facebook.buck.rules.ActionGraph;
+import com.facebook.buck.rules.BuildRuleFactoryParams;
+import com.facebook.buck.rules.BuildRuleResolver;
+import com.facebook.buck.rules.Description;
+import com.facebook.buck.rules.FakeRuleKeyBuilderFactory;
+import com.facebook.buck.rules.TargetNode;
+import com.facebook.buck.shell.ShBinaryDescription;
+import com.facebook.buck.testutil.AllExistingProjectFilesystem;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Map;
+
+public class ActionGraphCacheTest {
+
+  private static final BuildTarget LIB = BuildTargetFactory.newInstance("//foo:lib");
+  private static final BuildTarget BIN = BuildTargetFactory.newInstance("//foo:bin");
+  private static final BuildTarget SCRIPT = BuildTargetFactory.newInstance("//foo:script");
+
+  private ActionGraphCache actionGraphCache;
+
+  @Before
+  public void setUp() {
+    actionGraphCache = new ActionGraphCache();
+  }
+
+  @Test
+  public void unchangedNodesKeepTheirBuildRules() throws InterruptedException {
+    TargetNode<?> lib = newGenruleTargetNodeBuilder(LIB).setCmd("echo lib").build();
+    TargetNode<?> bin = newGenruleTargetNodeBuilder(BIN).setCmd("echo bin").setDeps(LIB).build();
+
+    BuildRuleResolver firstResolver = new BuildRuleResolver();
+    buildActionGraph(firstResolver, lib, bin);
+    BuildRuleResolver secondResolver = new BuildRuleResolver();
+    buildActionGraph(secondResolver, lib, bin);
+
+    assertSame(firstResolver.getRule(LIB), secondResolver.getRule(LIB));
+    assertSame(firstResolver.getRule(BIN), secondResolver.getRule(BIN));
+  }
+
+  @Test
+  public void changedNodeRecreatesItsDependents() throws InterruptedException {
+    TargetNode<?> lib = newGenruleTargetNodeBuilder(LIB).setCmd("echo lib").build();
+    TargetNode<?> bin = newGenruleTargetNodeBuilder(BIN).setCmd("echo bin").setDeps(LIB).build();
+    BuildRuleResolver firstResolver = new BuildRuleResolver();
+    buildActionGraph(firstResolver, lib, bin);
+
+    TargetNode<?> changedLib = newGenruleTargetNodeBuilder(LIB).setCmd("echo changed").build();
+    BuildRuleResolver secondResolver = new BuildRuleResolver();
+    buildActionGraph(secondResolver, changedLib, bin);
+
+    assertNotSame(firstResolver.getRule(LIB), secondResolver.getRule(LIB));
+    assertNotSame(firstResolver.getRule(BIN), secondResolver.getRule(BIN));
+    assertSame(secondResolver.getRule(LIB), secondResolver.getRule(BIN).getDeps().first());
+  }
+
+  @Test
+  public void rulesOfOtherDescriptionsAreNotReused() throws InterruptedException {
+    TargetNode<?> lib = newGenruleTargetNodeBuilder(LIB).setCmd("echo lib").build();
+    TargetNode<?> script = createNode(
+        new ShBinaryDescription(),
+        SCRIPT,
+        ImmutableMap.<String, Object>of(
+            "main", "script.sh",
+            "deps", ImmutableList.of(LIB.getFullyQualifiedName())));
+
+    BuildRuleResolver firstResolver = new BuildRuleResolver();
+    buildActionGraph(firstResolver, lib, script);
+    BuildRuleResolver secondResolver = new BuildRuleResolver();
+    buildActionGraph(secondResolver, lib, script);
+
+    assertSame(firstResolver.getRule(LIB), secondResolver.getRule(LIB));
+    assertNotSame(firstResolver.getRule(SCRIPT), secondResolver.getRule(SCRIPT));
+  }
+
+  @Test
+  public void rulesOfTargetsMissingFromTheLatestGraphAreForgotten() throws InterruptedException {
+    TargetNode<?> lib = newGenruleTargetNodeBuilder(LIB).setCmd("echo lib").build();
+    TargetNode<?> bin = newGenruleTargetNodeBuilder(BIN).setCmd("echo bin").setDeps(LIB).build();
+    BuildRuleResolver firstResolver = new BuildRuleResolver();
+    buildActionGraph(firstResolver, lib, bin);
+    BuildRuleResolver secondResolver = new BuildRuleResolver();
+    buildActionGraph(secondResolver, lib);
+
+    BuildRuleResolver thirdResolver = new BuildRuleResolver();
+    buildActionGraph(thirdResolver, lib, bin);
+
+    assertSame(firstResolver.getRule(LIB), thirdResolver.getRule(LIB));
+    assertNotSame(firstResolver.getRule(BIN), thirdResolver.getRule(BIN));
+  }
+
+  private ActionGraph buildActionGraph(BuildRuleResolver ruleResolver, TargetNode<?>... nodes)
+      throws InterruptedException {
+    MutableDirectedGraph<TargetNode<?>> graph = new MutableDirectedGraph<>();
+    for (TargetNode<?> node : nodes) {
+      graph.addNode(node);
+    }
+    for (TargetNode<?> node : nodes) {
+      for (TargetNode<?> dep : nodes) {
+        if (node.getDeps().contains(dep.getBuildTarget())) {
+          graph.addEdge(node, dep);
+        }
+      }
+    }
+    return new TargetGraph(graph, actionGraphCache).buildActionGraph(ruleResolver);
+  }
+
+  private static <T> TargetNode<T> createNode(
+      Description<T> description,
+      BuildTarget target,
+      Map<String, Object> instance) {
+    try {
+      return new TargetNode<>(
+          description,
+          new BuildRuleFactoryParams(
+              instance,
+              new AllExistingProjectFilesystem(),
+              new BuildTargetParser(),
+              target,
+              new FakeRuleKeyBuilderFactory()));
+    } catch (NoSuchBuildTargetException e) {
+      throw new RuntimeException(e);
+    }
+  }
+}
@@ -23,6 +23,8 @@ import static org.easymock.EasyMock.replay;
 import static org.easymock.EasyMock.verify;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.fail;
 import static org.junit.Assume.assumeTrue;
 import org.junit.rules.ExpectedException;
@@ -82,10 +84,14 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardWatchEventKinds;
 import java.nio.file.WatchEvent;
+import java.nio.file.attribute.FileTime;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 import java.util.regex.Pattern;
 
+import javax.annotation.Nullable;
+
 public class ParserTest extends EasyMockSupport {
 
   private Path testBuildFile;
@@ -376,27 +382,143 @@ public class ParserTest extends EasyMockSupport {
   }
 
   @Test
-  public void whenNotifiedOfNonPathEventThenCacheRulesAreInvalidated()
+  public void whenNotifiedOfNonPathEventAndNothingChangedThenCacheRulesAreKept()
       throws BuildFileParseException, BuildTargetException, IOException, InterruptedException {
     TestProjectBuildFileParserFactory buildFileParserFactory =
         new TestProjectBuildFileParserFactory(filesystem, buildRuleTypes);
     Parser parser = createParser(emptyBuildTargets(), buildFileParserFactory);
 
     // Call filterAllTargetsInProject to populate the cache.
-    parser.filterAllTargetsInProject(
-        filesystem,
-        Lists.<String>newArrayList(),
-        alwaysTrue(),
-        new TestConsole(),
-        ImmutableMap.<String, String>of(),
-        BuckEventBusFactory.newInstance(),
-        false /* enableProfiling */);
+    filterAllTargetsInProject(parser);
 
     // Process event.
     WatchEvent<Object> event = WatchEvents.createOverflowEvent();
     parser.onFileSystemChange(event);
 
     // Call filterAllTargetsInProject to request cached rules.
+    filterAllTargetsInProject(parser);
+
+    // Test that the cache was reconciled rather than invalidated.
+    assertEquals("Should have cached build rules.", 1, buildFileParserFactory.calls);
+  }
+
+  @Test
+  public void whenNotifiedOfNonPathEventAndBuildFileChangedThenCacheRulesAreInvalidated()
+      throws BuildFileParseException, BuildTargetException, IOException, InterruptedException {
+    TestProjectBuildFileParserFactory buildFileParserFactory =
+        new TestProjectBuildFileParserFactory(filesystem, buildRuleTypes);
+    Parser parser = createParser(emptyBuildTargets(), buildFileParserFactory);
+
+    // Call filterAllTargetsInProject to populate the cache.
+    filterAllTargetsInProject(parser);
+
+    // Change the build file without notifying the parser, then process event.
+    Files.append("\n", testBuildFile.toFile(), Charsets.UTF_8);
+    WatchEvent<Object> event = WatchEvents.createOverflowEvent();
+    parser.onFileSystemChange(event);
+
+    // Call filterAllTargetsInProject to request cached rules.
+    filterAllTargetsInProject(parser);
+
+    // Test that the second parseBuildFile call repopulated the cache.
+    assertEquals("Should have invalidated cache.", 2, buildFileParserFactory.calls);
+  }
+
+  @Test
+  public void buildFilesIncludingAFileIncludeItDirectlyOrTransitively()
+      throws BuildFileParseException, BuildTargetException, IOException, InterruptedException {
+    TestProjectBuildFileParserFactory buildFileParserFactory =
+        new TestProjectBuildFileParserFactory(filesystem, buildRuleTypes);
+    Parser parser = createParser(emptyBuildTargets(), buildFileParserFactory);
+
+    // Call filterAllTargetsInProject to parse the build file and its includes.
+    filterAllTargetsInProject(parser);
+
+    Path buildFile = Paths.get("java/com/facebook", BuckConstant.BUILD_RULES_FILE_NAME);
+    assertEquals(
+        ImmutableSet.of(buildFile),
+        parser.getBuildFilesIncluding(Paths.get("java/com/facebook/includedByBuildFile")));
+    assertEquals(
+        ImmutableSet.of(buildFile),
+        parser.getBuildFilesIncluding(Paths.get("java/com/facebook/includedByIncludeFile")));
+    assertEquals(
+        ImmutableSet.<Path>of(),
+        parser.getBuildFilesIncluding(Paths.get("bar.py")));
+  }
+
+  @Test
+  public void whenBuildFileChangedDuringParseThenNonPathEventInvalidatesCachedRules()
+      throws BuildFileParseException, BuildTargetException, IOException, InterruptedException {
+    TestProjectBuildFileParserFactory buildFileParserFactory =
+        new TestProjectBuildFileParserFactory(filesystem, buildRuleTypes);
+    Parser parser = createParser(emptyBuildTargets(), buildFileParserFactory);
+
+    // Change the build file after it has been executed, but before its rules are cached.
+    buildFileParserFactory.fileToChangeWhileParsing = testBuildFile;
+    filterAllTargetsInProject(parser);
+    buildFileParserFactory.fileToChangeWhileParsing = null;
+
+    WatchEvent<Object> event = WatchEvents.createOverflowEvent();
+    parser.onFileSystemChange(event);
+
+    // Call filterAllTargetsInProject to request cached rules.
+    filterAllTargetsInProject(parser);
+
+    // Test that the second parseBuildFile call repopulated the cache.
+    assertEquals("Should have invalidated cache.", 2, buildFileParserFactory.calls);
+  }
+
+  @Test
+  public void whenNotifiedOfNonPathEventAndIncludedFileChangedThenCacheRulesAreInvalidated()
+      throws BuildFileParseException, BuildTargetException, IOException, InterruptedException {
+    TestProjectBuildFileParserFactory buildFileParserFactory =
+        new TestProjectBuildFileParserFactory(filesystem, buildRuleTypes);
+    Parser parser = createParser(emptyBuildTargets(), buildFileParserFactory);
+
+    // Call filterAllTargetsInProject to populate the cache.
+    filterAllTargetsInProject(parser);
+
+    // Change a transitively included file without notifying the parser, then process event.
+    Files.append("\n", includedByIncludeFile.toFile(), Charsets.UTF_8);
+    WatchEvent<Object> event = WatchEvents.createOverflowEvent();
+    parser.onFileSystemChange(event);
+
+    // Call filterAllTargetsInProject to request cached rules.
+    filterAllTargetsInProject(parser);
+
+    // Test that the second parseBuildFile call repopulated the cache.
+    assertEquals("Should have invalidated cache.", 2, buildFileParserFactory.calls);
+  }
+
+  @Test
+  public void whenNotifiedOfNonPathEventAndFileAddedToPackageThenCacheRulesAreInvalidated()
+      throws BuildFileParseException, BuildTargetException, IOException, InterruptedException {
+    TestProjectBuildFileParserFactory buildFileParserFactory =
+        new TestProjectBuildFileParserFactory(filesystem, buildRuleTypes);
+    Parser parser = createParser(emptyBuildTargets(), buildFileParserFactory);
+
+    // Make sure that adding a file changes the modification time of the package directory.
+    java.nio.file.Files.setLastModifiedTime(
+        testBuildFile.getParent(),
+        FileTime.fromMillis(System.currentTimeMillis() - TimeUnit.HOURS.toMillis(1)));
+
+    // Call filterAllTargetsInProject to populate the cache.
+    filterAllTargetsInProject(parser);
+
+    // Add a file that a glob could match without notifying the parser, then process event.
+    tempDir.newFile("java/com/facebook/Foo.java");
+    WatchEvent<Object> event = WatchEvents.createOverflowEvent();
+    parser.onFileSystemChange(event);
+
+    // Call filterAllTargetsInProject to request cached rules.
+    filterAllTargetsInProject(parser);
+
+    // Test that the second parseBuildFile call repopulated the cache.
+    assertEquals("Should have invalidated cache.", 2, buildFileParserFactory.calls);
+  }
+
+  private void filterAllTargetsInProject(Parser parser)
+      throws BuildFileParseException, BuildTargetException, IOException, InterruptedException {
     parser.filterAllTargetsInProject(
         filesystem,
         Lists.<String>newArrayList(),
@@ -405,9 +527,73 @@ public class ParserTest extends EasyMockSupport {
         ImmutableMap.<String, String>of(),
         BuckEventBusFactory.newInstance(),
         false /* enableProfiling */);
+  }
 
-    // Test that the second parseBuildFile call repopulated the cache.
-    assertEquals("Should have invalidated cache.", 2, buildFileParserFactory.calls);
+  @Test
+  public void projectTargetGraphIsCachedUntilABuildFileChanges()
+      throws BuildFileParseException, BuildTargetException, IOException, InterruptedException {
+    TestProjectBuildFileParserFactory buildFileParserFactory =
+        new TestProjectBuildFileParserFactory(filesystem, buildRuleTypes);
+    Parser parser = createParser(emptyBuildTargets(), buildFileParserFactory);
+
+    TargetGraph targetGraph = buildProjectTargetGraph(parser, ImmutableList.<String>of());
+    parser.onFileSystemChange(
+        createPathEvent(
+            Paths.get("java/com/facebook/SomeClass.java"),
+            StandardWatchEventKinds.ENTRY_MODIFY));
+    assertSame(
+        "Should have cached the target graph.",
+        targetGraph,
+        buildProjectTargetGraph(parser, ImmutableList.<String>of()));
+
+    parser.onFileSystemChange(
+        createPathEvent(testBuildFile, StandardWatchEventKinds.ENTRY_MODIFY));
+    assertNotSame(
+        "Should have invalidated the target graph.",
+        targetGraph,
+        buildProjectTargetGraph(parser, ImmutableList.<String>of()));
+    assertEquals("Should have parsed the build file again.", 2, buildFileParserFactory.calls);
+  }
+
+  @Test
+  public void whenBuildFileAddedThenProjectTargetGraphIsInvalidated()
+      throws BuildFileParseException, BuildTargetException, IOException, InterruptedException {
+    Parser parser = createParser(emptyBuildTargets());
+
+    TargetGraph targetGraph = buildProjectTargetGraph(parser, ImmutableList.<String>of());
+    parser.onFileSystemChange(
+        createPathEvent(
+            Paths.get("java/com/facebook/sub/" + BuckConstant.BUILD_RULES_FILE_NAME),
+            StandardWatchEventKinds.ENTRY_CREATE));
+
+    assertNotSame(
+        "Should have invalidated the target graph.",
+        targetGraph,
+        buildProjectTargetGraph(parser, ImmutableList.<String>of()));
+  }
+
+  @Test
+  public void whenDefaultIncludesChangeThenProjectTargetGraphIsInvalidated()
+      throws BuildFileParseException, BuildTargetException, IOException, InterruptedException {
+    Parser parser = createParser(emptyBuildTargets());
+
+    TargetGraph targetGraph = buildProjectTargetGraph(parser, ImmutableList.<String>of());
+
+    assertNotSame(
+        "Should have invalidated the target graph.",
+        targetGraph,
+        buildProjectTargetGraph(
+            parser,
+            ImmutableList.of("//java/com/facebook/defaultIncludeFile")));
+  }
+
+  private TargetGraph buildProjectTargetGraph(Parser parser, Iterable<String> defaultIncludes)
+      throws BuildFileParseException, BuildTargetException, IOException, InterruptedException {
+    return parser.buildProjectTargetGraph(
+        defaultIncludes,
+        BuckEventBusFactory.newInstance(),
+        new TestConsole(),
+        ImmutableMap.<String, String>of());
   }
 
   @Test
@@ -1153,6 +1339,9 @@ public class ParserTest extends EasyMockSupport {
     private final ProjectFilesystem projectFilesystem;
     private final KnownBuildRuleTypes buildRuleTypes;
     public int calls = 0;
+    /** A file to change after each build file is executed, before the parser gets the rules. */
+    @Nullable
+    public Path fileToChangeWhileParsing;
 
     public TestProjectBuildFileParserFactory(
         ProjectFilesystem projectFilesystem,
@@ -1196,7 +1385,11 @@ public class ParserTest extends EasyMockSupport {
       protected List<Map<String, Object>> getAllRulesInternal(Optional<Path> buildFile)
           throws IOException {
         calls += 1;
-        return super.getAllRulesInternal(buildFile);
+        List<Map<String, Object>> rules = super.getAllRulesInternal(buildFile);
+        if (fileToChangeWhileParsing != null) {
+          Files.append("\n", fileToChangeWhileParsing.toFile(), Charsets.UTF_8);
+        }
+        return rules;
       }
     }
   }
@@ -0,0 +1,178 @@
+/*
+ * Copyright 2014-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.parser;
+
+import static com.facebook.buck.shell.GenruleTargetNodeBuilder.newGenruleTargetNodeBuilder;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import com.facebook.buck.android.AndroidBinaryDescription;
+import com.facebook.buck.graph.MutableDirectedGraph;
+import com.facebook.buck.java.JavaCompilerEnvironment;
+import com.facebook.buck.java.JavaLibraryDescription;
+import com.facebook.buck.java.JavacOptions;
+import com.facebook.buck.java.KeystoreDescription;
+import com.facebook.buck.model.BuildTarget;
+import com.facebook.buck.model.BuildTargetFactory;
+import com.facebook.buck.model.Flavor;
+import com.facebook.buck.rules.ActionGraph;
+import com.facebook.buck.rules.BuildRule;
+import com.facebook.buck.rules.BuildRuleFactoryParams;
+import com.facebook.buck.rules.BuildRuleResolver;
+import com.facebook.buck.rules.Description;
+import com.facebook.buck.rules.FakeRuleKeyBuilderFactory;
+import com.facebook.buck.rules.TargetNode;
+import com.facebook.buck.testutil.AllExistingProjectFilesystem;
+import com.facebook.buck.util.HumanReadableException;
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+
+import org.junit.Test;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+public class TargetGraphTest {
+
+  private static final int NUM_DEPENDENTS = 64;
+
+  @Test
+  public void independentNodesAreAllTransformedAgainstTheRulesOfTheirDeps()
+      throws InterruptedException {
+    MutableDirectedGraph<TargetNode<?>> graph = new MutableDirectedGraph<>();
+    TargetNode<?> lib = newGenruleTargetNodeBuilder("//foo:lib").build();
+    graph.addNode(lib);
+    TargetNode<?> bin = newGenruleTargetNodeBuilder("//foo:bin").build();
+    graph.addNode(bin);
+    List<TargetNode<?>> dependents = Lists.newArrayList();
+    for (int i = 0; i < NUM_DEPENDENTS; i++) {
+      TargetNode<?> dependent = newGenruleTargetNodeBuilder("//foo:dependent" + i)
+          .setDeps("//foo:lib")
+          .build();
+      graph.addNode(dependent);
+      graph.addEdge(dependent, lib);
+      graph.addEdge(bin, dependent);
+      dependents.add(dependent);
+    }
+
+    BuildRuleResolver ruleResolver = new BuildRuleResolver();
+    ActionGraph actionGraph = new TargetGraph(graph).buildActionGraph(ruleResolver);
+
+    assertEquals(NUM_DEPENDENTS + 2, Iterables.size(actionGraph.getNodes()));
+    BuildRule libRule = ruleResolver.getRule(lib.getBuildTarget());
+    for (TargetNode<?> dependent : dependents) {
+      BuildRule dependentRule = ruleResolver.getRule(dependent.getBuildTarget());
+      assertSame(libRule, dependentRule.getDeps().first());
+      assertSame(libRule, actionGraph.getOutgoingNodesFor(dependentRule).iterator().next());
+    }
+  }
+
+  /**
+   * Each android_binary creates the pre-dexed rules of its java_library deps unless another
+   * android_binary has already created them, so binaries in the same wave must not both do so.
+   */
+  @Test
+  public void androidBinariesInTheSameWaveShareThePreDexedRulesOfTheirDeps()
+      throws InterruptedException {
+    MutableDirectedGraph<TargetNode<?>> graph = new MutableDirectedGraph<>();
+    TargetNode<?> keystore = createNode(
+        new KeystoreDescription(),
+        "//keystore:debug",
+        ImmutableMap.<String, Object>of(
+            "store", "debug.keystore",
+            "properties", "debug.keystore.properties"));
+    graph.addNode(keystore);
+    TargetNode<?> lib = createNode(
+        new JavaLibraryDescription(JavaCompilerEnvironment.DEFAULT),
+        "//lib:lib",
+        ImmutableMap.<String, Object>of("srcs", ImmutableList.of("Lib.java")));
+    graph.addNode(lib);
+    List<TargetNode<?>> binaries = Lists.newArrayList();
+    for (int i = 0; i < NUM_DEPENDENTS; i++) {
+      TargetNode<?> binary = createNode(
+          new AndroidBinaryDescription(JavacOptions.DEFAULTS, Optional.<Path>absent()),
+          "//app:app" + i,
+          ImmutableMap.<String, Object>of(
+              "manifest", "AndroidManifest.xml",
+              "target", "Google Inc.:Google APIs:16",
+              "keystore", "//keystore:debug",
+              "deps", ImmutableList.of("//lib:lib")));
+      graph.addNode(binary);
+      graph.addEdge(binary, keystore);
+      graph.addEdge(binary, lib);
+      binaries.add(binary);
+    }
+
+    BuildRuleResolver ruleResolver = new BuildRuleResolver();
+    new TargetGraph(graph).buildActionGraph(ruleResolver);
+
+    BuildTarget preDexTarget = BuildTarget.builder(lib.getBuildTarget())
+        .addFlavor(new Flavor("dex"))
+        .build();
+    BuildRule preDexRule = ruleResolver.getRule(preDexTarget);
+    for (TargetNode<?> binary : binaries) {
+      Set<BuildRule> rules = Sets.newIdentityHashSet();
+      addTransitiveDeps(ruleResolver.getRule(binary.getBuildTarget()), rules);
+      assertTrue(rules.contains(preDexRule));
+      for (BuildRule rule : rules) {
+        assertSame(ruleResolver.getRule(rule.getBuildTarget()), rule);
+      }
+    }
+  }
+
+  @Test(expected = HumanReadableException.class)
+  public void errorsWhileTransformingANodeAreRethrown() throws InterruptedException {
+    MutableDirectedGraph<TargetNode<?>> graph = new MutableDirectedGraph<>();
+    graph.addNode(newGenruleTargetNodeBuilder("//foo:lib").build());
+    graph.addNode(newGenruleTargetNodeBuilder("//foo:bin").setDeps("//foo:missing").build());
+
+    new TargetGraph(graph).buildActionGraph(new BuildRuleResolver());
+  }
+
+  private static void addTransitiveDeps(BuildRule rule, Set<BuildRule> rules) {
+    for (BuildRule dep : rule.getDeps()) {
+      if (rules.add(dep)) {
+        addTransitiveDeps(dep, rules);
+      }
+    }
+  }
+
+  private static <T> TargetNode<T> createNode(
+      Description<T> description,
+      String target,
+      Map<String, Object> instance) {
+    try {
+      return new TargetNode<>(
+          description,
+          new BuildRuleFactoryParams(
+              instance,
+              new AllExistingProjectFilesystem(),
+              new BuildTargetParser(),
+              BuildTargetFactory.newInstance(target),
+              new FakeRuleKeyBuilderFactory()));
+    } catch (NoSuchBuildTargetException e) {
+      throw new RuntimeException(e);
+    }
+  }
+}
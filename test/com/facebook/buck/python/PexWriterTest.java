@@ -0,0 +1,182 @@
+/*
+ * Copyright 2014-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.python;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import com.facebook.buck.util.HumanReadableException;
+import com.facebook.buck.zip.CustomZipEntry;
+import com.facebook.buck.zip.CustomZipOutputStream;
+import com.facebook.buck.zip.ZipOutputStreams;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteStreams;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+public class PexWriterTest {
+
+  private static final Path THIRD_PARTY_PY = Paths.get("third-party/py").toAbsolutePath();
+
+  @Rule
+  public TemporaryFolder tmp = new TemporaryFolder();
+
+  private PexWriter writer;
+  private Path output;
+  private ImmutableMap<Path, Path> modules;
+  private ImmutableMap<Path, Path> resources;
+
+  @Before
+  public void setUp() throws IOException {
+    writer = new PexWriter(THIRD_PARTY_PY, "/usr/bin/env python2.7", "foo.bar.main");
+    output = tmp.getRoot().toPath().resolve("out.pex");
+    Path main = tmp.newFile("main.py").toPath();
+    Files.write(main, "print 'hello'\n".getBytes(UTF_8));
+    Path data = tmp.newFile("data.txt").toPath();
+    Files.write(data, "some data".getBytes(UTF_8));
+    modules = ImmutableMap.of(Paths.get("foo/bar/main.py"), main);
+    resources = ImmutableMap.of(Paths.get("foo/data.txt"), data);
+  }
+
+  @Test
+  public void testPexLayout() throws IOException, InterruptedException {
+    writer.write(output, modules, resources);
+
+    assertTrue(Files.isExecutable(output));
+    byte[] hashbang = "#!/usr/bin/env python2.7\n".getBytes(UTF_8);
+    byte[] start = new byte[hashbang.length];
+    try (InputStream in = Files.newInputStream(output)) {
+      ByteStreams.readFully(in, start);
+    }
+    assertArrayEquals(hashbang, start);
+
+    try (ZipFile zip = new ZipFile(output.toFile())) {
+      assertEquals("print 'hello'\n", read(zip, "foo/bar/main.py"));
+      assertEquals("some data", read(zip, "foo/data.txt"));
+      assertTrue(read(zip, "foo/__init__.py").contains("declare_namespace"));
+      assertTrue(read(zip, "foo/bar/__init__.py").contains("declare_namespace"));
+      assertTrue(read(zip, "__main__.py").contains("bootstrap_pex"));
+      assertNotNull(zip.getEntry(".bootstrap/pkg_resources.py"));
+      assertNotNull(zip.getEntry(".bootstrap/_twitter_common_python/pex_bootstrapper.py"));
+      assertNotNull(zip.getEntry(".bootstrap/_twitter_common_python/http/__init__.py"));
+
+      JsonNode pexInfo = new ObjectMapper().readTree(read(zip, "PEX-INFO"));
+      assertEquals("foo.bar.main", pexInfo.get("entry_point").asText());
+      assertTrue(pexInfo.get("zip_safe").asBoolean());
+    }
+  }
+
+  @Test
+  public void testPexIsDeterministic() throws IOException, InterruptedException {
+    writer.write(output, modules, resources);
+    byte[] first = Files.readAllBytes(output);
+    Files.delete(output);
+    writer.write(output, modules, resources);
+    assertArrayEquals(first, Files.readAllBytes(output));
+
+    // Rewriting on top of the previous PEX reuses its entries, which must not change anything.
+    writer.write(output, modules, resources);
+    assertArrayEquals(first, Files.readAllBytes(output));
+  }
+
+  @Test
+  public void testUnchangedEntriesAreCopiedFromThePreviousPex()
+      throws IOException, InterruptedException {
+    // Store the module uncompressed, which is never what the writer would do itself, so that we
+    // can tell whether it was recompressed.
+    byte[] contents = Files.readAllBytes(modules.get(Paths.get("foo/bar/main.py")));
+    try (CustomZipOutputStream zip = ZipOutputStreams.newOutputStream(output.toFile())) {
+      CustomZipEntry entry = new CustomZipEntry("foo/bar/main.py");
+      entry.setCompressionLevel(0);
+      entry.setMethod(ZipEntry.DEFLATED);
+      zip.putNextEntry(entry);
+      zip.write(contents);
+    }
+    long previousCompressedSize;
+    try (ZipFile zip = new ZipFile(output.toFile())) {
+      previousCompressedSize = zip.getEntry("foo/bar/main.py").getCompressedSize();
+    }
+
+    writer.write(output, modules, resources);
+
+    try (ZipFile zip = new ZipFile(output.toFile())) {
+      assertEquals(
+          previousCompressedSize,
+          zip.getEntry("foo/bar/main.py").getCompressedSize());
+      assertEquals("print 'hello'\n", read(zip, "foo/bar/main.py"));
+    }
+  }
+
+  @Test
+  public void testEntriesWithTheSameCrcAndSizeButOtherContentsAreNotReused()
+      throws IOException, InterruptedException {
+    // XOR-ing the CRC-32 polynomial into a message leaves its CRC unchanged.
+    byte[] collision = "some data".getBytes(UTF_8);
+    byte[] polynomial = {0x41, 0x06, 0x71, (byte) 0xdb, 0x01};
+    for (int i = 0; i < polynomial.length; i++) {
+      collision[i] ^= polynomial[i];
+    }
+    try (CustomZipOutputStream zip = ZipOutputStreams.newOutputStream(output.toFile())) {
+      CustomZipEntry entry = new CustomZipEntry("foo/data.txt");
+      entry.setMethod(ZipEntry.DEFLATED);
+      zip.putNextEntry(entry);
+      zip.write(collision);
+    }
+    try (ZipFile zip = new ZipFile(output.toFile())) {
+      assertEquals(
+          Hashing.crc32().hashBytes("some data".getBytes(UTF_8)).padToLong(),
+          zip.getEntry("foo/data.txt").getCrc());
+    }
+
+    writer.write(output, modules, resources);
+
+    try (ZipFile zip = new ZipFile(output.toFile())) {
+      assertEquals("some data", read(zip, "foo/data.txt"));
+    }
+  }
+
+  @Test(expected = HumanReadableException.class)
+  public void testModulesMayNotClashWithTheRuntime() throws IOException, InterruptedException {
+    writer.write(
+        output,
+        ImmutableMap.of(Paths.get("__main__.py"), modules.values().iterator().next()),
+        ImmutableMap.<Path, Path>of());
+  }
+
+  private static String read(ZipFile zip, String name) throws IOException {
+    try (InputStream in = zip.getInputStream(zip.getEntry(name))) {
+      return new String(ByteStreams.toByteArray(in), UTF_8);
+    }
+  }
+}
@@ -42,7 +42,7 @@ import java.nio.file.Paths;
 
 public class PythonBinaryDescriptionTest {
 
-  private static final Path PEX_PATH = Paths.get("pex");
+  private static final Optional<Path> PEX_PATH = Optional.of(Paths.get("pex"));
 
   @Test
   public void thatComponentSourcePathDepsPropagateProperly() {
@@ -30,6 +30,7 @@ import com.facebook.buck.rules.SourcePath;
 import com.facebook.buck.rules.SourcePathResolver;
 import com.facebook.buck.testutil.FakeFileHashCache;
 import com.google.common.base.Charsets;
+import com.google.common.base.Optional;
 import com.google.common.base.Strings;
 import com.google.common.collect.ImmutableMap;
 
@@ -58,7 +59,8 @@ public class PythonBinaryTest {
         BuildRuleParamsFactory.createTrivialBuildRuleParams(
             BuildTargetFactory.newInstance("//:bin")),
         new SourcePathResolver(new BuildRuleResolver()),
-        Paths.get("dummy_path_to_pex"),
+        Optional.of(Paths.get("dummy_path_to_pex")),
+        Paths.get("dummy_path_to_third_party_py"),
         new PythonEnvironment(Paths.get("fake_python"), new PythonVersion("Python 2.7")),
         Paths.get("main.py"),
         new PythonPackageComponents(
@@ -125,4 +127,14 @@ public class PythonBinaryTest {
     assertNotEquals(pair1.getTotalRuleKey(), pair3.getTotalRuleKey());
   }
 
+  @Test
+  public void testHashbangUsesPythonVersion() {
+    assertEquals(
+        "/usr/bin/env python2.7",
+        PythonBinary.getHashbang(new PythonVersion("Python 2.7")));
+    assertEquals(
+        "/usr/bin/env python",
+        PythonBinary.getHashbang(new PythonVersion("unknown")));
+  }
+
 }
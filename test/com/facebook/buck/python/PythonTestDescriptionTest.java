@@ -40,7 +40,7 @@ import java.nio.file.Paths;
 
 public class PythonTestDescriptionTest {
 
-  private static final Path PEX_PATH = Paths.get("pex");
+  private static final Optional<Path> PEX_PATH = Optional.of(Paths.get("pex"));
   private static final Path TEST_MAIN = Paths.get("main");
 
   @Test
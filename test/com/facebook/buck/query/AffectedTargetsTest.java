@@ -0,0 +1,104 @@
+/*
+ * Copyright 2014-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.query;
+
+import static com.facebook.buck.shell.GenruleTargetNodeBuilder.newGenruleTargetNodeBuilder;
+import static org.junit.Assert.assertEquals;
+
+import com.facebook.buck.graph.MutableDirectedGraph;
+import com.facebook.buck.parser.TargetGraph;
+import com.facebook.buck.rules.TargetNode;
+import com.facebook.buck.testutil.FakeProjectFilesystem;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSortedSet;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+public class AffectedTargetsTest {
+
+  private FakeProjectFilesystem filesystem;
+  private TargetGraphIndex index;
+
+  /**
+   * <pre>
+   * //app:bin -> //lib/a:a -> //lib/a/b:b
+   * //app:other
+   * </pre>
+   */
+  @Before
+  public void setUp() {
+    filesystem = new FakeProjectFilesystem();
+    MutableDirectedGraph<TargetNode<?>> graph = new MutableDirectedGraph<>();
+    TargetNode<?> b = newGenruleTargetNodeBuilder("//lib/a/b:b").setSrcs("b.txt").build();
+    TargetNode<?> a = newGenruleTargetNodeBuilder("//lib/a:a")
+        .setSrcs("a.txt")
+        .setDeps("//lib/a/b:b")
+        .build();
+    TargetNode<?> bin = newGenruleTargetNodeBuilder("//app:bin")
+        .setSrcs("main.txt")
+        .setDeps("//lib/a:a")
+        .build();
+    TargetNode<?> other = newGenruleTargetNodeBuilder("//app:other").setSrcs("other.txt").build();
+    for (TargetNode<?> node : ImmutableList.of(b, a, bin, other)) {
+      graph.addNode(node);
+      filesystem.touch(node.getInputs().iterator().next());
+    }
+    graph.addEdge(a, b);
+    graph.addEdge(bin, a);
+    index = TargetGraphIndex.of(new TargetGraph(graph));
+  }
+
+  @Test
+  public void ownersOfChangedFilesAndTheirReverseDepsAreAffected() {
+    assertAffected(
+        ImmutableList.of(Paths.get("lib/a/b/b.txt")),
+        "//app:bin",
+        "//lib/a/b:b",
+        "//lib/a:a");
+    assertAffected(ImmutableList.of(Paths.get("app/./other.txt")), "//app:other");
+
+    Path unowned = Paths.get("lib/a/unowned.txt");
+    filesystem.touch(unowned);
+    assertAffected(ImmutableList.of(unowned));
+  }
+
+  @Test
+  public void changedBuildFilesAffectTheirWholePackage() {
+    assertAffected(ImmutableList.of(Paths.get("app/BUCK")), "//app:bin", "//app:other");
+  }
+
+  @Test
+  public void removedFilesAffectTheirEnclosingPackage() {
+    assertAffected(
+        ImmutableList.of(Paths.get("lib/a/b/c/removed.txt")),
+        "//app:bin",
+        "//lib/a/b:b",
+        "//lib/a:a");
+  }
+
+  private void assertAffected(Iterable<Path> changedPaths, String... expected) {
+    ImmutableSortedSet.Builder<String> actual = ImmutableSortedSet.naturalOrder();
+    for (TargetNode<?> node : AffectedTargets.find(index, filesystem, changedPaths)) {
+      actual.add(node.getBuildTarget().getFullyQualifiedName());
+    }
+    assertEquals(ImmutableSortedSet.copyOf(expected), actual.build());
+  }
+}
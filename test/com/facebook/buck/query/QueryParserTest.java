@@ -0,0 +1,138 @@
+/*
+ * Copyright 2014-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.query;
+
+import static com.facebook.buck.shell.GenruleTargetNodeBuilder.newGenruleTargetNodeBuilder;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import com.facebook.buck.graph.MutableDirectedGraph;
+import com.facebook.buck.parser.TargetGraph;
+import com.facebook.buck.rules.TargetNode;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSortedSet;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class QueryParserTest {
+
+  private TargetGraphIndex index;
+
+  /**
+   * <pre>
+   * //app:bin -> //lib/a:a -> //lib/a/b:b
+   *           -> //lib/c:c
+   * </pre>
+   */
+  @Before
+  public void setUp() {
+    MutableDirectedGraph<TargetNode<?>> graph = new MutableDirectedGraph<>();
+    TargetNode<?> b = newGenruleTargetNodeBuilder("//lib/a/b:b")
+        .setSrcs("b.txt")
+        .setLabels("slow")
+        .build();
+    TargetNode<?> a = newGenruleTargetNodeBuilder("//lib/a:a")
+        .setSrcs("a.txt")
+        .setDeps("//lib/a/b:b")
+        .build();
+    TargetNode<?> c = newGenruleTargetNodeBuilder("//lib/c:c")
+        .setSrcs("c.txt")
+        .setLabels("slow")
+        .build();
+    TargetNode<?> bin = newGenruleTargetNodeBuilder("//app:bin")
+        .setSrcs("main.txt")
+        .setDeps("//lib/a:a", "//lib/c:c")
+        .build();
+    for (TargetNode<?> node : ImmutableList.of(b, a, c, bin)) {
+      graph.addNode(node);
+    }
+    graph.addEdge(a, b);
+    graph.addEdge(bin, a);
+    graph.addEdge(bin, c);
+    index = TargetGraphIndex.of(new TargetGraph(graph));
+  }
+
+  @Test
+  public void targetPatterns() throws QueryException {
+    assertQuery("//lib/a:a", "//lib/a:a");
+    assertQuery("//lib/a:", "//lib/a:a");
+    assertQuery("//lib/a/...", "//lib/a/b:b", "//lib/a:a");
+    assertQuery("//...", "//app:bin", "//lib/a/b:b", "//lib/a:a", "//lib/c:c");
+  }
+
+  @Test
+  public void depsAndReverseDeps() throws QueryException {
+    assertQuery("deps(//app:bin, 1)", "//app:bin", "//lib/a:a", "//lib/c:c");
+    assertQuery("deps(//app:bin) - //app:bin", "//lib/a/b:b", "//lib/a:a", "//lib/c:c");
+    assertQuery("rdeps(//lib/a/b:b)", "//app:bin", "//lib/a/b:b", "//lib/a:a");
+    assertQuery("rdeps(//lib/a/b:b, 0)", "//lib/a/b:b");
+  }
+
+  @Test
+  public void ownersKindsLabelsAndFilters() throws QueryException {
+    assertQuery("owner('lib/a/a.txt')", "//lib/a:a");
+    assertQuery("rdeps(owner(\"lib/c/./c.txt\"))", "//app:bin", "//lib/c:c");
+    assertQuery("kind('^gen', //app:)", "//app:bin");
+    assertQuery("kind(java_library, //...)");
+    assertQuery("label(slow, //...)", "//lib/a/b:b", "//lib/c:c");
+    assertQuery("filter('(a|c)$', //lib/...)", "//lib/a:a", "//lib/c:c");
+  }
+
+  @Test
+  public void setOperatorsAreLeftAssociative() throws QueryException {
+    assertQuery("//lib/... except //lib/a/... union //app:bin", "//app:bin", "//lib/c:c");
+    assertQuery("//lib/... - (//lib/a/... + //app:bin)", "//lib/c:c");
+    assertQuery("deps(//app:bin) ^ label(slow, //...)", "//lib/a/b:b", "//lib/c:c");
+  }
+
+  @Test
+  public void invalidQueriesAreReported() {
+    assertInvalid("deps(//app:bin");
+    assertInvalid("deps(//app:bin, many)");
+    assertInvalid("frobnicate(//app:bin)");
+    assertInvalid("kind('[', //...)");
+    assertInvalid("//app:missing");
+    assertInvalid("owner('lib/a/a.txt)");
+    assertInvalid("//app:bin //lib/c:c");
+  }
+
+  @Test
+  public void indexIsBuiltOncePerGraph() {
+    MutableDirectedGraph<TargetNode<?>> graph = new MutableDirectedGraph<>();
+    TargetGraph targetGraph = new TargetGraph(graph);
+    assertSame(TargetGraphIndex.of(targetGraph), TargetGraphIndex.of(targetGraph));
+  }
+
+  private void assertQuery(String query, String... expected) throws QueryException {
+    ImmutableSortedSet.Builder<String> actual = ImmutableSortedSet.naturalOrder();
+    for (TargetNode<?> node : QueryParser.parse(query).eval(index)) {
+      actual.add(node.getBuildTarget().getFullyQualifiedName());
+    }
+    assertEquals(query, ImmutableSortedSet.copyOf(expected), actual.build());
+  }
+
+  private void assertInvalid(String query) {
+    try {
+      QueryParser.parse(query).eval(index);
+      fail("Expected an exception for: " + query);
+    } catch (QueryException e) {
+      // Expected.
+    }
+  }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright 2014-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.rules;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.base.Strings;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+public class ArtifactEnvelopeTest {
+
+  private static final RuleKey RULE_KEY = new RuleKey("aaaa");
+
+  @Test
+  public void whenEnvelopeIsReadThenContentsAreRestored() throws IOException {
+    byte[] contents = "hello world".getBytes(StandardCharsets.UTF_8);
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    assertTrue(ArtifactEnvelope.read(RULE_KEY, new ByteArrayInputStream(write(contents)), output));
+    assertArrayEquals(contents, output.toByteArray());
+  }
+
+  @Test
+  public void whenContentsAreCompressibleThenEnvelopeIsSmaller() throws IOException {
+    byte[] contents = Strings.repeat("hello world", 10000).getBytes(StandardCharsets.UTF_8);
+    assertTrue(write(contents).length < contents.length / 10);
+  }
+
+  @Test
+  public void whenEnvelopeIsCorruptThenReadFails() throws IOException {
+    byte[] envelope = write(Strings.repeat("hello world", 100).getBytes(StandardCharsets.UTF_8));
+    for (int i = 0; i < envelope.length; i++) {
+      byte[] corrupt = envelope.clone();
+      // Flip every bit, as the padding bits at the end of the deflate stream are never read.
+      corrupt[i] ^= 0xff;
+      assertFalse(
+          "Corrupting byte " + i + " must be detected.",
+          read(RULE_KEY, corrupt));
+    }
+  }
+
+  @Test
+  public void whenEnvelopeIsTruncatedThenReadFails() throws IOException {
+    byte[] envelope = write("hello world".getBytes(StandardCharsets.UTF_8));
+    for (int length = 0; length < envelope.length; length++) {
+      assertFalse(read(RULE_KEY, Arrays.copyOf(envelope, length)));
+    }
+  }
+
+  @Test
+  public void whenEnvelopeIsForAnotherRuleKeyThenReadFails() throws IOException {
+    byte[] envelope = write("hello world".getBytes(StandardCharsets.UTF_8));
+    assertFalse(read(new RuleKey("bbbb"), envelope));
+  }
+
+  @Test(expected = IOException.class)
+  public void whenArtifactIsNotTheExpectedSizeThenWriteFails() throws IOException {
+    ArtifactEnvelope.write(
+        RULE_KEY,
+        new ByteArrayInputStream(new byte[10]),
+        11,
+        new ByteArrayOutputStream());
+  }
+
+  private static byte[] write(byte[] contents) throws IOException {
+    ByteArrayOutputStream envelope = new ByteArrayOutputStream();
+    ArtifactEnvelope.write(
+        RULE_KEY,
+        new ByteArrayInputStream(contents),
+        contents.length,
+        envelope);
+    return envelope.toByteArray();
+  }
+
+  private static boolean read(RuleKey ruleKey, byte[] envelope) throws IOException {
+    return ArtifactEnvelope.read(
+        ruleKey,
+        new ByteArrayInputStream(envelope),
+        new ByteArrayOutputStream());
+  }
+}
@@ -416,6 +416,58 @@ public class CachingBuildEngineTest extends EasyMockSupport {
     verifyAll();
   }
 
+  /**
+   * Rebuild a rule where an input that was not used by the last build has been modified, such that
+   * its RuleKey has changed, but its dep file RuleKey is the same.
+   */
+  @Test
+  public void testDepFileRuleKeyCanAvoidRebuild()
+      throws InterruptedException, ExecutionException, IOException {
+    BuildRuleParams buildRuleParams = new FakeBuildRuleParamsBuilder(buildTarget).build();
+    DepFileTestAbstractCachingBuildRule buildRule =
+        new DepFileTestAbstractCachingBuildRule(
+            buildRuleParams,
+            new SourcePathResolver(new BuildRuleResolver()));
+
+    BuckEventBus buckEventBus = BuckEventBusFactory.newInstance();
+    BuildContext buildContext = createMock(BuildContext.class);
+
+    BuildInfoRecorder buildInfoRecorder = createMock(BuildInfoRecorder.class);
+    expect(buildContext.createBuildInfoRecorder(
+           eq(buildTarget),
+           /* ruleKey */ anyObject(RuleKey.class),
+           /* ruleKeyWithoutDeps */ anyObject(RuleKey.class)))
+        .andReturn(buildInfoRecorder);
+
+    // The RuleKey on disk is different from the one in memory, but the dep file RuleKey, computed
+    // from just the inputs that were used, is the same.
+    OnDiskBuildInfo onDiskBuildInfo = new FakeOnDiskBuildInfo()
+        .setRuleKey(reverse(buildRule.getRuleKey()))
+        .putMetadata(
+            SupportsDependencyFileRuleKey.DEP_FILE_ON_DISK_METADATA,
+            DepFileTestAbstractCachingBuildRule.USED_INPUTS)
+        .putMetadata(
+            SupportsDependencyFileRuleKey.DEP_FILE_RULE_KEY_ON_DISK_METADATA,
+            DepFileTestAbstractCachingBuildRule.DEP_FILE_RULE_KEY_HASH);
+
+    // The metadata on disk should be updated with the new RuleKey.
+    buildInfoRecorder.writeMetadataToDisk(/* clearExistingMetadata */ false);
+
+    expect(buildContext.createOnDiskBuildInfoFor(buildTarget)).andReturn(onDiskBuildInfo);
+    expect(buildContext.getStepRunner()).andReturn(createSameThreadStepRunner());
+    expect(buildContext.getEventBus()).andReturn(buckEventBus).anyTimes();
+
+    replayAll();
+    CachingBuildEngine cachingBuildEngine = new CachingBuildEngine();
+
+    ListenableFuture<BuildRuleSuccess> result = cachingBuildEngine.build(buildContext, buildRule);
+    assertTrue(MoreFutures.isSuccess(result));
+    assertEquals(BuildRuleSuccess.Type.MATCHING_DEP_FILE_RULE_KEY, result.get().getType());
+    assertEquals(DepFileTestAbstractCachingBuildRule.USED_INPUTS, buildRule.depFileEntries);
+
+    verifyAll();
+  }
+
   private StepRunner createSameThreadStepRunner() {
     return createSameThreadStepRunner(null);
   }
@@ -828,6 +880,30 @@ public class CachingBuildEngineTest extends EasyMockSupport {
     }
   }
 
+  private static class DepFileTestAbstractCachingBuildRule
+      extends TestAbstractCachingBuildRule
+      implements SupportsDependencyFileRuleKey {
+
+    private static final String DEP_FILE_RULE_KEY_HASH =
+        "0f4a8e7e7d0cba1d1d6c1e4a5d06ec67bd08a9d1";
+    private static final ImmutableList<String> USED_INPUTS = ImmutableList.of("used.h");
+
+    @Nullable
+    private ImmutableList<String> depFileEntries;
+
+    DepFileTestAbstractCachingBuildRule(
+        BuildRuleParams buildRuleParams,
+        SourcePathResolver resolver) {
+      super(buildRuleParams, resolver);
+    }
+
+    @Override
+    public Optional<RuleKey> getDepFileRuleKey(ImmutableList<String> depFileEntries) {
+      this.depFileEntries = depFileEntries;
+      return Optional.of(new RuleKey(DEP_FILE_RULE_KEY_HASH));
+    }
+  }
+
   private static class LocallyBuiltTestAbstractCachingBuildRule
       extends TestAbstractCachingBuildRule {
     LocallyBuiltTestAbstractCachingBuildRule(
@@ -16,37 +16,386 @@
 
 package com.facebook.buck.rules;
 
+import static org.easymock.EasyMock.anyInt;
+import static org.easymock.EasyMock.anyObject;
 import static org.easymock.EasyMock.createMock;
+import static org.easymock.EasyMock.createNiceMock;
+import static org.easymock.EasyMock.eq;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.getCurrentArguments;
 import static org.easymock.EasyMock.replay;
 import static org.easymock.EasyMock.verify;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 import com.facebook.buck.event.BuckEventBus;
-import com.facebook.buck.testutil.FakeFileHashCache;
-import com.facebook.buck.util.FileHashCache;
-import com.google.common.collect.Maps;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.Futures;
 import com.netflix.astyanax.AstyanaxContext;
+import com.netflix.astyanax.ColumnListMutation;
 import com.netflix.astyanax.Keyspace;
+import com.netflix.astyanax.MutationBatch;
+import com.netflix.astyanax.connectionpool.OperationResult;
+import com.netflix.astyanax.model.Column;
+import com.netflix.astyanax.model.ColumnFamily;
+import com.netflix.astyanax.model.ColumnList;
+import com.netflix.astyanax.model.Row;
+import com.netflix.astyanax.model.Rows;
+import com.netflix.astyanax.query.ColumnFamilyQuery;
+import com.netflix.astyanax.query.ColumnQuery;
+import com.netflix.astyanax.query.RowQuery;
+import com.netflix.astyanax.query.RowSliceQuery;
 
+import org.easymock.IAnswer;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
 
 public class CassandraArtifactCacheTest {
 
+  private static final int TTL = 3600;
+
+  @Rule
+  public TemporaryFolder tmp = new TemporaryFolder();
+
   @Test
   @SuppressWarnings("unchecked") // Needed to mock generic class.
   public void whenCacheClosedThenContextShutdown() {
     AstyanaxContext<Keyspace> mockContext = createMock(AstyanaxContext.class);
     BuckEventBus mockEventBus = createMock(BuckEventBus.class);
-    FileHashCache fileHashCache =
-        FakeFileHashCache.createFromStrings(Maps.<String, String>newHashMap());
     mockContext.shutdown();
     replay(mockContext);
     CassandraArtifactCache cache = new CassandraArtifactCache(
         10 /* timeoutSeconds */,
         true /* doStore */,
         mockEventBus,
-        fileHashCache,
         mockContext);
     cache.close();
     verify(mockContext);
   }
+
+  @Test
+  @SuppressWarnings("unchecked") // Needed to mock generic classes.
+  public void whenArtifactStoredThenChunksAreWrittenBeforeManifest() throws Exception {
+    int chunkSize = CassandraArtifactCache.CHUNK_SIZE_BYTES;
+    // Random contents do not compress, so that the envelope spans several chunks.
+    byte[] contents = new byte[2 * chunkSize + chunkSize / 2];
+    new Random(0).nextBytes(contents);
+    File output = tmp.newFile("artifact");
+    Files.write(output.toPath(), contents);
+
+    final List<String> writes = Lists.newArrayList();
+    final ByteArrayOutputStream chunks = new ByteArrayOutputStream();
+    final ColumnListMutation<String> mutation = createNiceMock(ColumnListMutation.class);
+    expect(mutation.setDefaultTtl(TTL)).andReturn(mutation).anyTimes();
+    expect(mutation.putColumn(anyObject(String.class), anyObject(byte[].class)))
+        .andAnswer(
+            new IAnswer<ColumnListMutation<String>>() {
+              @Override
+              public ColumnListMutation<String> answer() throws IOException {
+                byte[] chunk = (byte[]) getCurrentArguments()[1];
+                writes.add((String) getCurrentArguments()[0]);
+                chunks.write(chunk);
+                return mutation;
+              }
+            })
+        .anyTimes();
+    expect(mutation.putColumn(eq("chunks"), anyInt()))
+        .andAnswer(recordWrite(writes, mutation)).once();
+
+    MutationBatch mutationBatch = createNiceMock(MutationBatch.class);
+    expect(mutationBatch.withRow(anyObject(ColumnFamily.class), eq("aaaa")))
+        .andReturn(mutation)
+        .anyTimes();
+    expect(mutationBatch.executeAsync())
+        .andReturn(Futures.<OperationResult<Void>>immediateFuture(null))
+        .anyTimes();
+
+    Keyspace keyspace = createConnectedKeyspace(
+        ImmutableMap.<String, RowQuery<String, String>>of(),
+        createNiceMock(RowSliceQuery.class));
+    expect(keyspace.prepareMutationBatch()).andReturn(mutationBatch).anyTimes();
+
+    AstyanaxContext<Keyspace> context = createNiceMock(AstyanaxContext.class);
+    expect(context.getClient()).andReturn(keyspace);
+    replay(mutation, mutationBatch, keyspace, context);
+
+    CassandraArtifactCache cache = new CassandraArtifactCache(
+        10 /* timeoutSeconds */,
+        true /* doStore */,
+        createMock(BuckEventBus.class),
+        context);
+    cache.store(new RuleKey("aaaa"), output);
+    cache.close();
+
+    assertEquals(
+        ImmutableList.of("chunk-0", "chunk-1", "chunk-2", "chunks=3"),
+        writes);
+    ByteArrayOutputStream fetched = new ByteArrayOutputStream();
+    assertTrue(
+        ArtifactEnvelope.read(
+            new RuleKey("aaaa"),
+            new ByteArrayInputStream(chunks.toByteArray()),
+            fetched));
+    assertArrayEquals(contents, fetched.toByteArray());
+  }
+
+  @Test
+  @SuppressWarnings("unchecked") // Needed to mock generic classes.
+  public void whenArtifactFetchedThenChunksAreStreamedToOutput() throws Exception {
+    byte[] contents = "hello world".getBytes(StandardCharsets.UTF_8);
+    ByteArrayOutputStream envelopeStream = new ByteArrayOutputStream();
+    ArtifactEnvelope.write(
+        new RuleKey("aaaa"),
+        new ByteArrayInputStream(contents),
+        contents.length,
+        envelopeStream);
+    byte[] envelope = envelopeStream.toByteArray();
+
+    Rows<String, String> rows = createNiceMock(Rows.class);
+    expect(rows.getRow("aaaa")).andReturn(createManifestRow(2)).anyTimes();
+    RowSliceQuery<String, String> manifestQuery = createNiceMock(RowSliceQuery.class);
+    expect(manifestQuery.withColumnSlice("chunks")).andReturn(manifestQuery).anyTimes();
+    expect(manifestQuery.execute()).andReturn(createResult(rows)).anyTimes();
+
+    RowQuery<String, String> artifact = createNiceMock(RowQuery.class);
+    expect(artifact.getColumn("chunk-0"))
+        .andReturn(createChunkQuery(Arrays.copyOfRange(envelope, 0, 10)));
+    expect(artifact.getColumn("chunk-1"))
+        .andReturn(createChunkQuery(Arrays.copyOfRange(envelope, 10, envelope.length)));
+
+    Keyspace keyspace = createConnectedKeyspace(
+        ImmutableMap.of("aaaa", artifact),
+        manifestQuery);
+    AstyanaxContext<Keyspace> context = createNiceMock(AstyanaxContext.class);
+    expect(context.getClient()).andReturn(keyspace);
+    replay(rows, manifestQuery, artifact, keyspace, context);
+
+    CassandraArtifactCache cache = new CassandraArtifactCache(
+        10 /* timeoutSeconds */,
+        true /* doStore */,
+        createNiceMock(BuckEventBus.class),
+        context);
+    File output = new File(tmp.getRoot(), "out/artifact");
+    CacheResult result = cache.fetch(new RuleKey("aaaa"), output);
+    cache.close();
+
+    assertEquals(CacheResult.CASSANDRA_HIT, result);
+    assertArrayEquals(contents, Files.readAllBytes(output.toPath()));
+    verify(artifact);
+  }
+
+  @Test
+  @SuppressWarnings("unchecked") // Needed to mock generic classes.
+  public void whenManifestIsMalformedThenFetchMissesAndLaterFetchesStillSucceed()
+      throws Exception {
+    byte[] contents = "hello world".getBytes(StandardCharsets.UTF_8);
+    ByteArrayOutputStream envelope = new ByteArrayOutputStream();
+    ArtifactEnvelope.write(
+        new RuleKey("aaaa"),
+        new ByteArrayInputStream(contents),
+        contents.length,
+        envelope);
+
+    ColumnList<String> malformedManifest = createNiceMock(ColumnList.class);
+    Column<String> malformedChunks = createNiceMock(Column.class);
+    expect(malformedChunks.getIntegerValue()).andThrow(new NumberFormatException()).anyTimes();
+    expect(malformedManifest.getColumnByName("chunks")).andReturn(malformedChunks).anyTimes();
+    Row<String, String> malformedRow = createNiceMock(Row.class);
+    expect(malformedRow.getColumns()).andReturn(malformedManifest).anyTimes();
+    Rows<String, String> rows = createNiceMock(Rows.class);
+    expect(rows.getRow("aaaa")).andReturn(createManifestRow(1)).anyTimes();
+    expect(rows.getRow("bbbb")).andReturn(malformedRow).anyTimes();
+    RowSliceQuery<String, String> manifestQuery = createNiceMock(RowSliceQuery.class);
+    expect(manifestQuery.withColumnSlice("chunks")).andReturn(manifestQuery).anyTimes();
+    expect(manifestQuery.execute()).andReturn(createResult(rows)).anyTimes();
+
+    RowQuery<String, String> artifact = createNiceMock(RowQuery.class);
+    expect(artifact.getColumn("chunk-0")).andReturn(createChunkQuery(envelope.toByteArray()));
+
+    Keyspace keyspace = createConnectedKeyspace(
+        ImmutableMap.of("aaaa", artifact),
+        manifestQuery);
+    AstyanaxContext<Keyspace> context = createNiceMock(AstyanaxContext.class);
+    expect(context.getClient()).andReturn(keyspace);
+    replay(
+        malformedChunks,
+        malformedManifest,
+        malformedRow,
+        rows,
+        manifestQuery,
+        artifact,
+        keyspace,
+        context);
+
+    CassandraArtifactCache cache = new CassandraArtifactCache(
+        10 /* timeoutSeconds */,
+        true /* doStore */,
+        createNiceMock(BuckEventBus.class),
+        context);
+    CacheResult malformedResult = cache.fetch(
+        new RuleKey("bbbb"),
+        new File(tmp.getRoot(), "out/malformed"));
+    File output = new File(tmp.getRoot(), "out/artifact");
+    CacheResult result = cache.fetch(new RuleKey("aaaa"), output);
+    cache.close();
+
+    assertEquals(CacheResult.MISS, malformedResult);
+    assertEquals(CacheResult.CASSANDRA_HIT, result);
+    assertArrayEquals(contents, Files.readAllBytes(output.toPath()));
+  }
+
+  @Test
+  @SuppressWarnings("unchecked") // Needed to mock generic classes.
+  public void whenManifestLookupDoesNotCompleteThenFetchTimesOutAsAMiss() throws Exception {
+    final CountDownLatch lookupReleased = new CountDownLatch(1);
+    RowSliceQuery<String, String> manifestQuery = createNiceMock(RowSliceQuery.class);
+    expect(manifestQuery.withColumnSlice("chunks")).andReturn(manifestQuery).anyTimes();
+    expect(manifestQuery.execute())
+        .andAnswer(
+            new IAnswer<OperationResult<Rows<String, String>>>() {
+              @Override
+              public OperationResult<Rows<String, String>> answer() throws InterruptedException {
+                lookupReleased.await();
+                throw new IllegalStateException("The lookup was released.");
+              }
+            })
+        .anyTimes();
+
+    Keyspace keyspace = createConnectedKeyspace(
+        ImmutableMap.<String, RowQuery<String, String>>of(),
+        manifestQuery);
+    AstyanaxContext<Keyspace> context = createNiceMock(AstyanaxContext.class);
+    expect(context.getClient()).andReturn(keyspace);
+    replay(manifestQuery, keyspace, context);
+
+    CassandraArtifactCache cache = new CassandraArtifactCache(
+        1 /* timeoutSeconds */,
+        true /* doStore */,
+        createNiceMock(BuckEventBus.class),
+        context);
+    CacheResult result;
+    try {
+      result = cache.fetch(new RuleKey("aaaa"), new File(tmp.getRoot(), "out/artifact"));
+    } finally {
+      lookupReleased.countDown();
+      cache.close();
+    }
+
+    assertEquals(CacheResult.MISS, result);
+  }
+
+  private static IAnswer<ColumnListMutation<String>> recordWrite(
+      final List<String> writes,
+      final ColumnListMutation<String> mutation) {
+    return new IAnswer<ColumnListMutation<String>>() {
+      @Override
+      public ColumnListMutation<String> answer() {
+        writes.add(getCurrentArguments()[0] + "=" + getCurrentArguments()[1]);
+        return mutation;
+      }
+    };
+  }
+
+  /**
+   * @param rows rows of the artifact column family to return from queries by key.
+   * @param manifestQuery the query to return for lookups of manifests.
+   * @return a keyspace that has been set up as an artifact cache, which must still be replayed.
+   */
+  @SuppressWarnings("unchecked") // Needed to mock generic classes.
+  private static Keyspace createConnectedKeyspace(
+      Map<String, RowQuery<String, String>> rows,
+      RowSliceQuery<String, String> manifestQuery) throws Exception {
+    final ImmutableMap<String, RowQuery<String, String>> rowsByKey =
+        ImmutableMap.<String, RowQuery<String, String>>builder()
+            .put("magic", createConfigurationRow("Buck artifact cache"))
+            .put("ttl", createConfigurationRow(String.valueOf(TTL)))
+            .putAll(rows)
+            .build();
+    ColumnFamilyQuery<String, String> query = createNiceMock(ColumnFamilyQuery.class);
+    expect(query.getKey(anyObject(String.class)))
+        .andAnswer(
+            new IAnswer<RowQuery<String, String>>() {
+              @Override
+              public RowQuery<String, String> answer() {
+                return rowsByKey.get(getCurrentArguments()[0]);
+              }
+            })
+        .anyTimes();
+    expect(query.getKeySlice(anyObject(Collection.class))).andReturn(manifestQuery).anyTimes();
+    replay(query);
+
+    Keyspace keyspace = createNiceMock(Keyspace.class);
+    expect(keyspace.prepareQuery(anyObject(ColumnFamily.class))).andReturn(query).anyTimes();
+    return keyspace;
+  }
+
+  @SuppressWarnings("unchecked") // Needed to mock generic classes.
+  private static RowQuery<String, String> createConfigurationRow(String value) throws Exception {
+    ColumnList<String> columns = createNiceMock(ColumnList.class);
+    expect(columns.getColumnByName("value")).andReturn(createColumn(value)).anyTimes();
+    RowQuery<String, String> row = createNiceMock(RowQuery.class);
+    expect(row.execute()).andReturn(createResult(columns)).anyTimes();
+    replay(columns, row);
+    return row;
+  }
+
+  /**
+   * @return a row of the artifact column family whose manifest records {@code numChunks} chunks.
+   */
+  @SuppressWarnings("unchecked") // Needed to mock generic classes.
+  private static Row<String, String> createManifestRow(int numChunks) {
+    Column<String> chunks = createNiceMock(Column.class);
+    expect(chunks.getIntegerValue()).andReturn(numChunks).anyTimes();
+    expect(chunks.getTimestamp()).andReturn(System.currentTimeMillis() * 1000L).anyTimes();
+    ColumnList<String> manifest = createNiceMock(ColumnList.class);
+    expect(manifest.getColumnByName("chunks")).andReturn(chunks).anyTimes();
+    Row<String, String> row = createNiceMock(Row.class);
+    expect(row.getColumns()).andReturn(manifest).anyTimes();
+    replay(chunks, manifest, row);
+    return row;
+  }
+
+  @SuppressWarnings("unchecked") // Needed to mock generic classes.
+  private static ColumnQuery<String> createChunkQuery(byte[] data) throws Exception {
+    Column<String> column = createNiceMock(Column.class);
+    expect(column.getByteArrayValue()).andReturn(data).anyTimes();
+    ColumnQuery<String> query = createNiceMock(ColumnQuery.class);
+    expect(query.executeAsync()).andReturn(Futures.immediateFuture(createResult(column)));
+    replay(column, query);
+    return query;
+  }
+
+  @SuppressWarnings("unchecked") // Needed to mock generic classes.
+  private static Column<String> createColumn(String value) {
+    Column<String> column = createNiceMock(Column.class);
+    expect(column.getStringValue()).andReturn(value).anyTimes();
+    expect(column.getTimestamp()).andReturn(System.currentTimeMillis() * 1000L).anyTimes();
+    replay(column);
+    return column;
+  }
+
+  @SuppressWarnings("unchecked") // Needed to mock generic classes.
+  private static <T> OperationResult<T> createResult(T value) {
+    OperationResult<T> result = createNiceMock(OperationResult.class);
+    expect(result.getResult()).andReturn(value).anyTimes();
+    replay(result);
+    return result;
+  }
 }
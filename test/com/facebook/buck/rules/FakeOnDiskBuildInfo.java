@@ -32,6 +32,7 @@ public class FakeOnDiskBuildInfo implements OnDiskBuildInfo {
   @Nullable private RuleKey ruleKey;
   @Nullable private RuleKey ruleKeyWithoutDeps;
   private Map<String, String> metadata = Maps.newHashMap();
+  private Map<String, ImmutableList<String>> metadataValues = Maps.newHashMap();
   private Map<Path, ImmutableList<String>> pathsToContents = Maps.newHashMap();
 
   /** @return this */
@@ -67,10 +68,14 @@ public class FakeOnDiskBuildInfo implements OnDiskBuildInfo {
     return Optional.fromNullable(metadata.get(key));
   }
 
+  public FakeOnDiskBuildInfo putMetadata(String key, ImmutableList<String> values) {
+    this.metadataValues.put(key, values);
+    return this;
+  }
+
   @Override
   public Optional<ImmutableList<String>> getValues(String key) {
-    // TODO(mbolin): Implement.
-    throw new UnsupportedOperationException();
+    return Optional.fromNullable(metadataValues.get(key));
   }
 
   @Override
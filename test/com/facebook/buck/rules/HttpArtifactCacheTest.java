@@ -21,14 +21,13 @@ import static org.easymock.EasyMock.createNiceMock;
 import static org.easymock.EasyMock.expect;
 import static org.easymock.EasyMock.replay;
 import static org.easymock.EasyMock.verify;
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotEquals;
 
 import com.facebook.buck.event.BuckEventBus;
 import com.facebook.buck.event.BuckEventBusFactory;
-import com.facebook.buck.util.FileHashCache;
 import com.facebook.buck.util.ProjectFilesystem;
-import com.google.common.hash.HashCode;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -38,25 +37,26 @@ import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.ObjectOutputStream;
 import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
 
 public class HttpArtifactCacheTest {
 
+  private static final RuleKey RULE_KEY = new RuleKey("00000000000000000000000000000000");
+
   private HttpArtifactCache cache;
   private HttpURLConnection connection;
   private ProjectFilesystem projectFilesystem;
   private BuckEventBus buckEventBus;
-  private FileHashCache fileHashCache;
 
-  private byte[] createFileContentsWithHashCode(HashCode code, String contents) throws IOException {
+  private byte[] createEnvelope(String contents) throws IOException {
+    byte[] data = contents.getBytes(StandardCharsets.UTF_8);
     ByteArrayOutputStream output = new ByteArrayOutputStream();
-    ObjectOutputStream objectStream = new ObjectOutputStream(output);
-    objectStream.writeObject(code);
-    output.write(contents.getBytes());
+    ArtifactEnvelope.write(RULE_KEY, new ByteArrayInputStream(data), data.length, output);
     return output.toByteArray();
   }
 
@@ -65,26 +65,22 @@ public class HttpArtifactCacheTest {
     connection = createNiceMock(HttpURLConnection.class);
     projectFilesystem = createMock(ProjectFilesystem.class);
     buckEventBus = BuckEventBusFactory.newInstance();
-    fileHashCache = createMock(FileHashCache.class);
-    cache = new FakeHttpArtifactCache(connection, projectFilesystem, buckEventBus, fileHashCache);
+    cache = new FakeHttpArtifactCache(connection, projectFilesystem, buckEventBus);
   }
 
   @Test
   public void testFetchNotFound() throws IOException {
     expect(connection.getResponseCode()).andReturn(HttpURLConnection.HTTP_NOT_FOUND);
     replay(connection);
-    assertEquals(cache.fetch(new RuleKey("00000000000000000000000000000000"),
-          File.createTempFile("000", "")),
-        CacheResult.MISS);
+    assertEquals(cache.fetch(RULE_KEY, File.createTempFile("000", "")), CacheResult.MISS);
     verify(connection);
   }
 
   @Test
   public void testFetchOK() throws IOException {
     String data = "test";
-    HashCode hashCode = HashCode.fromString("deadbeef");
     expect(connection.getResponseCode()).andReturn(HttpURLConnection.HTTP_OK);
-    InputStream is = new ByteArrayInputStream(createFileContentsWithHashCode(hashCode, data));
+    InputStream is = new ByteArrayInputStream(createEnvelope(data));
     expect(connection.getInputStream()).andReturn(is);
     File file = File.createTempFile("000", "");
     Path path = file.toPath();
@@ -95,27 +91,24 @@ public class HttpArtifactCacheTest {
             path.getFileName().toString(),
             ".tmp"))
         .andReturn(temp);
-    projectFilesystem.copyToPath(is, temp, StandardCopyOption.REPLACE_EXISTING);
-    expect(fileHashCache.get(temp)).andReturn(hashCode);
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    expect(projectFilesystem.newFileOutputStream(temp)).andReturn(output);
     projectFilesystem.move(temp, path, StandardCopyOption.REPLACE_EXISTING);
-    replay(fileHashCache);
     replay(connection);
     replay(projectFilesystem);
-    assertEquals(
-        cache.fetch(new RuleKey("00000000000000000000000000000000"), file),
-        CacheResult.HTTP_HIT);
-    verify(fileHashCache);
+    assertEquals(cache.fetch(RULE_KEY, file), CacheResult.HTTP_HIT);
     verify(connection);
     verify(projectFilesystem);
+    assertArrayEquals(data.getBytes(StandardCharsets.UTF_8), output.toByteArray());
   }
 
   @Test
   public void testFetchBadChecksum() throws IOException {
     String data = "test";
-    HashCode hashCode = HashCode.fromString("deadbeef");
-    HashCode badHashCode = HashCode.fromString("deafbead");
+    byte[] envelope = createEnvelope(data);
+    envelope[envelope.length - 1] ^= 1;
     expect(connection.getResponseCode()).andReturn(HttpURLConnection.HTTP_OK);
-    InputStream is = new ByteArrayInputStream(createFileContentsWithHashCode(hashCode, data));
+    InputStream is = new ByteArrayInputStream(envelope);
     expect(connection.getInputStream()).andReturn(is);
     File file = File.createTempFile("000", "");
     Path path = file.toPath();
@@ -126,16 +119,11 @@ public class HttpArtifactCacheTest {
             path.getFileName().toString(),
             ".tmp"))
         .andReturn(temp);
-    projectFilesystem.copyToPath(is, temp, StandardCopyOption.REPLACE_EXISTING);
-    expect(fileHashCache.get(temp)).andReturn(badHashCode);
+    expect(projectFilesystem.newFileOutputStream(temp)).andReturn(new ByteArrayOutputStream());
     expect(projectFilesystem.deleteFileAtPath(temp)).andReturn(true);
-    replay(fileHashCache);
     replay(connection);
     replay(projectFilesystem);
-    assertEquals(
-        cache.fetch(new RuleKey("00000000000000000000000000000000"), file),
-        CacheResult.MISS);
-    verify(fileHashCache);
+    assertEquals(cache.fetch(RULE_KEY, file), CacheResult.MISS);
     verify(connection);
     verify(projectFilesystem);
   }
@@ -143,27 +131,24 @@ public class HttpArtifactCacheTest {
   @Test
   public void testStore() throws IOException {
     String data = "test";
-    HashCode hashCode = HashCode.fromString("deadbeef");
     connection.setConnectTimeout(1000);
     connection.setDoOutput(true);
     connection.setRequestMethod("POST");
     ByteArrayOutputStream output = new ByteArrayOutputStream();
     expect(connection.getOutputStream()).andReturn(output);
     File file = File.createTempFile("000", "");
-    expect(fileHashCache.get(file.toPath())).andReturn(hashCode);
-    InputStream is = new ByteArrayInputStream(data.getBytes());
+    Files.write(file.toPath(), data.getBytes(StandardCharsets.UTF_8));
+    InputStream is = new ByteArrayInputStream(data.getBytes(StandardCharsets.UTF_8));
     expect(projectFilesystem.newFileInputStream(file.toPath())).andReturn(is);
     expect(connection.getResponseCode()).andReturn(HttpURLConnection.HTTP_ACCEPTED);
-    replay(fileHashCache);
     replay(connection);
     replay(projectFilesystem);
-    cache.store(new RuleKey("00000000000000000000000000000000"), file);
-    verify(fileHashCache);
+    cache.store(RULE_KEY, file);
     verify(connection);
     verify(projectFilesystem);
     assertNotEquals(
         -1,
-        output.toString().indexOf(new String(createFileContentsWithHashCode(hashCode, data))));
+        output.toString("ISO-8859-1").indexOf(new String(createEnvelope(data), "ISO-8859-1")));
   }
 
   class FakeHttpArtifactCache extends HttpArtifactCache {
@@ -172,9 +157,8 @@ public class HttpArtifactCacheTest {
     FakeHttpArtifactCache(
         HttpURLConnection connectionMock,
         ProjectFilesystem projectFilesystem,
-        BuckEventBus buckEventBus,
-        FileHashCache fileHashCache) {
-      super("localhost", 8080, 1, true, projectFilesystem, buckEventBus, fileHashCache);
+        BuckEventBus buckEventBus) {
+      super("localhost", 8080, 1, true, projectFilesystem, buckEventBus);
       this.connectionMock = connectionMock;
     }
 
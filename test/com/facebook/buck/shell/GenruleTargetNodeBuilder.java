@@ -0,0 +1,103 @@
+/*
+ * Copyright 2014-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.shell;
+
+import com.facebook.buck.model.BuildTarget;
+import com.facebook.buck.model.BuildTargetFactory;
+import com.facebook.buck.parser.BuildTargetParser;
+import com.facebook.buck.parser.NoSuchBuildTargetException;
+import com.facebook.buck.rules.BuildRuleFactoryParams;
+import com.facebook.buck.rules.FakeRuleKeyBuilderFactory;
+import com.facebook.buck.rules.TargetNode;
+import com.facebook.buck.testutil.AllExistingProjectFilesystem;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * Creates genrule {@link TargetNode}s the way the parser does, for tests of code that works on the
+ * target graph.
+ */
+public class GenruleTargetNodeBuilder {
+
+  private final BuildTarget target;
+  private String cmd = "echo";
+  private ImmutableList<String> srcs = ImmutableList.of();
+  private ImmutableList<String> labels = ImmutableList.of();
+  private ImmutableList<String> deps = ImmutableList.of();
+
+  private GenruleTargetNodeBuilder(BuildTarget target) {
+    this.target = Preconditions.checkNotNull(target);
+  }
+
+  public static GenruleTargetNodeBuilder newGenruleTargetNodeBuilder(BuildTarget target) {
+    return new GenruleTargetNodeBuilder(target);
+  }
+
+  public static GenruleTargetNodeBuilder newGenruleTargetNodeBuilder(String target) {
+    return newGenruleTargetNodeBuilder(BuildTargetFactory.newInstance(target));
+  }
+
+  public GenruleTargetNodeBuilder setCmd(String cmd) {
+    this.cmd = Preconditions.checkNotNull(cmd);
+    return this;
+  }
+
+  public GenruleTargetNodeBuilder setSrcs(String... srcs) {
+    this.srcs = ImmutableList.copyOf(srcs);
+    return this;
+  }
+
+  public GenruleTargetNodeBuilder setLabels(String... labels) {
+    this.labels = ImmutableList.copyOf(labels);
+    return this;
+  }
+
+  public GenruleTargetNodeBuilder setDeps(String... deps) {
+    this.deps = ImmutableList.copyOf(deps);
+    return this;
+  }
+
+  public GenruleTargetNodeBuilder setDeps(BuildTarget... deps) {
+    ImmutableList.Builder<String> depNames = ImmutableList.builder();
+    for (BuildTarget dep : deps) {
+      depNames.add(dep.getFullyQualifiedName());
+    }
+    this.deps = depNames.build();
+    return this;
+  }
+
+  public TargetNode<GenruleDescription.Arg> build() {
+    try {
+      return new TargetNode<>(
+          new GenruleDescription(),
+          new BuildRuleFactoryParams(
+              ImmutableMap.<String, Object>of(
+                  "out", target.getShortNameOnly() + ".out",
+                  "cmd", cmd,
+                  "srcs", srcs,
+                  "labels", labels,
+                  "deps", deps),
+              new AllExistingProjectFilesystem(),
+              new BuildTargetParser(),
+              target,
+              new FakeRuleKeyBuilderFactory()));
+    } catch (NoSuchBuildTargetException e) {
+      throw new RuntimeException(e);
+    }
+  }
+}
@@ -125,10 +125,10 @@ public class FakeProjectFilesystem extends ProjectFilesystem {
 
   public FakeProjectFilesystem(Clock clock) {
     super(Paths.get("."));
-    fileContents = Maps.newHashMap();
-    fileAttributes = Maps.newHashMap();
-    fileLastModifiedTimes = Maps.newHashMap();
-    directories = Sets.newHashSet();
+    fileContents = Maps.newConcurrentMap();
+    fileAttributes = Maps.newConcurrentMap();
+    fileLastModifiedTimes = Maps.newConcurrentMap();
+    directories = Sets.newConcurrentHashSet();
     this.clock = Preconditions.checkNotNull(clock);
 
     // Generally, tests don't care whether files exist.
@@ -25,6 +25,7 @@ import com.facebook.buck.rules.AbstractBuildRule;
 import com.facebook.buck.rules.BuildRuleParams;
 import com.facebook.buck.rules.BuildRuleParamsFactory;
 import com.facebook.buck.rules.BuildRuleResolver;
+import com.facebook.buck.rules.FakeBuildRuleParamsBuilder;
 import com.facebook.buck.rules.FakeBuildContext;
 import com.facebook.buck.rules.FakeBuildableContext;
 import com.facebook.buck.rules.FakeRuleKeyBuilderFactory;
@@ -36,15 +37,18 @@ import com.facebook.buck.rules.TestSourcePath;
 import com.facebook.buck.step.Step;
 import com.facebook.buck.step.fs.MakeCleanDirectoryStep;
 import com.facebook.buck.testutil.FakeFileHashCache;
+import com.facebook.buck.testutil.FakeProjectFilesystem;
 import com.google.common.base.Strings;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Maps;
 
 import org.junit.Test;
 
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Map;
 
 public class ThriftCompilerTest {
 
@@ -250,6 +254,118 @@ public class ThriftCompilerTest {
     assertNotEquals(defaultRuleKey.getTotalRuleKey(), includesValueChange.getTotalRuleKey());
   }
 
+  @Test
+  public void testThatOnlyTransitiveIncludesAffectTheRuleKey() {
+    SourcePathResolver resolver = new SourcePathResolver(new BuildRuleResolver());
+    FakeProjectFilesystem filesystem = new FakeProjectFilesystem();
+    filesystem.writeContentsToPath(
+        "namespace cpp foo\n" +
+        "include \"used.thrift\"\n" +
+        "// include \"commented.thrift\"\n",
+        Paths.get("foo/test.thrift"));
+    filesystem.writeContentsToPath(
+        "include \"bar/leaf.thrift\"\n",
+        Paths.get("foo/used.thrift"));
+    filesystem.writeContentsToPath("", Paths.get("bar/leaf.thrift"));
+    filesystem.writeContentsToPath("", Paths.get("foo/unused.thrift"));
+    BuildRuleParams params = new FakeBuildRuleParamsBuilder("//foo:bar")
+        .setProjectFilesystem(filesystem)
+        .build();
+
+    SourcePath input = new TestSourcePath("foo/test.thrift");
+    ImmutableMap<Path, SourcePath> includes = ImmutableMap.<Path, SourcePath>of(
+        Paths.get("foo/test.thrift"), input,
+        Paths.get("foo/used.thrift"), new TestSourcePath("foo/used.thrift"),
+        Paths.get("bar/leaf.thrift"), new TestSourcePath("bar/leaf.thrift"),
+        Paths.get("foo/unused.thrift"), new TestSourcePath("foo/unused.thrift"));
+    ThriftCompiler compiler = new ThriftCompiler(
+        params,
+        resolver,
+        DEFAULT_COMPILER,
+        DEFAULT_FLAGS,
+        DEFAULT_OUTPUT_DIR,
+        input,
+        DEFAULT_LANGUAGE,
+        DEFAULT_OPTIONS,
+        DEFAULT_INCLUDE_ROOTS,
+        includes);
+
+    ImmutableMap<String, String> hashes = ImmutableMap.of(
+        "thrift", Strings.repeat("a", 40),
+        "foo/test.thrift", Strings.repeat("b", 40),
+        "foo/used.thrift", Strings.repeat("c", 40),
+        "bar/leaf.thrift", Strings.repeat("d", 40),
+        "foo/unused.thrift", Strings.repeat("e", 40));
+    RuleKey.Builder.RuleKeyPair defaultRuleKey = generateRuleKey(
+        new FakeRuleKeyBuilderFactory(FakeFileHashCache.createFromStrings(hashes)),
+        compiler);
+
+    // Changing a file that is not included does not change the rule key.
+    RuleKey.Builder.RuleKeyPair unusedChange = generateRuleKey(
+        new FakeRuleKeyBuilderFactory(
+            FakeFileHashCache.createFromStrings(
+                withHash(hashes, "foo/unused.thrift", Strings.repeat("f", 40)))),
+        compiler);
+    assertEquals(defaultRuleKey.getTotalRuleKey(), unusedChange.getTotalRuleKey());
+
+    // Changing a transitively included file does.
+    RuleKey.Builder.RuleKeyPair leafChange = generateRuleKey(
+        new FakeRuleKeyBuilderFactory(
+            FakeFileHashCache.createFromStrings(
+                withHash(hashes, "bar/leaf.thrift", Strings.repeat("f", 40)))),
+        compiler);
+    assertNotEquals(defaultRuleKey.getTotalRuleKey(), leafChange.getTotalRuleKey());
+  }
+
+  @Test
+  public void testThatEveryIncludeAffectsTheRuleKeyWhenAnIncludeCannotBeParsed() {
+    SourcePathResolver resolver = new SourcePathResolver(new BuildRuleResolver());
+    FakeProjectFilesystem filesystem = new FakeProjectFilesystem();
+    filesystem.writeContentsToPath(
+        "include \"used.thrift\"\n" +
+        "/* never closed\n",
+        Paths.get("foo/test.thrift"));
+    filesystem.writeContentsToPath("", Paths.get("foo/used.thrift"));
+    filesystem.writeContentsToPath("", Paths.get("foo/unused.thrift"));
+    BuildRuleParams params = new FakeBuildRuleParamsBuilder("//foo:bar")
+        .setProjectFilesystem(filesystem)
+        .build();
+
+    SourcePath input = new TestSourcePath("foo/test.thrift");
+    ImmutableMap<Path, SourcePath> includes = ImmutableMap.<Path, SourcePath>of(
+        Paths.get("foo/test.thrift"), input,
+        Paths.get("foo/used.thrift"), new TestSourcePath("foo/used.thrift"),
+        Paths.get("foo/unused.thrift"), new TestSourcePath("foo/unused.thrift"));
+    ThriftCompiler compiler = new ThriftCompiler(
+        params,
+        resolver,
+        DEFAULT_COMPILER,
+        DEFAULT_FLAGS,
+        DEFAULT_OUTPUT_DIR,
+        input,
+        DEFAULT_LANGUAGE,
+        DEFAULT_OPTIONS,
+        DEFAULT_INCLUDE_ROOTS,
+        includes);
+
+    ImmutableMap<String, String> hashes = ImmutableMap.of(
+        "thrift", Strings.repeat("a", 40),
+        "foo/test.thrift", Strings.repeat("b", 40),
+        "foo/used.thrift", Strings.repeat("c", 40),
+        "foo/unused.thrift", Strings.repeat("d", 40));
+    RuleKey.Builder.RuleKeyPair defaultRuleKey = generateRuleKey(
+        new FakeRuleKeyBuilderFactory(FakeFileHashCache.createFromStrings(hashes)),
+        compiler);
+
+    // The includes of the input cannot be told apart, so every file on the include path counts.
+    RuleKey.Builder.RuleKeyPair unusedChange = generateRuleKey(
+        new FakeRuleKeyBuilderFactory(
+            FakeFileHashCache.createFromStrings(
+                withHash(hashes, "foo/unused.thrift", Strings.repeat("e", 40)))),
+        compiler);
+    assertNotEquals(defaultRuleKey.getTotalRuleKey(), unusedChange.getTotalRuleKey());
+  }
+
   @Test
   public void thatCorrectBuildStepsAreUsed() {
     SourcePathResolver pathResolver = new SourcePathResolver(new BuildRuleResolver());
@@ -284,4 +400,13 @@ public class ThriftCompilerTest {
     assertEquals(expected, actual);
   }
 
+  private static ImmutableMap<String, String> withHash(
+      ImmutableMap<String, String> hashes,
+      String path,
+      String hash) {
+    Map<String, String> updated = Maps.newHashMap(hashes);
+    updated.put(path, hash);
+    return ImmutableMap.copyOf(updated);
+  }
+
 }
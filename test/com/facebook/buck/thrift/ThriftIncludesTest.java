@@ -0,0 +1,89 @@
+/*
+ * Copyright 2014-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.thrift;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import com.google.common.base.Joiner;
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+
+import org.junit.Test;
+
+public class ThriftIncludesTest {
+
+  @Test
+  public void testIncludesAreParsedInOrder() {
+    String contents = Joiner.on('\n').join(
+        "include \"foo.thrift\"",
+        "  include 'bar/baz.thrift'",
+        "cpp_include \"<vector>\"",
+        "namespace java com.example",
+        "struct Include { 1: string included }");
+    assertEquals(
+        Optional.of(ImmutableList.of("foo.thrift", "bar/baz.thrift")),
+        ThriftIncludes.parse(contents));
+  }
+
+  @Test
+  public void testCommentedOutIncludesAreIgnored() {
+    String contents = Joiner.on('\n').join(
+        "// include \"a.thrift\"",
+        "# include \"b.thrift\"",
+        "/*",
+        "include \"c.thrift\"",
+        "*/",
+        "include \"d.thrift\" // trailing comment");
+    assertEquals(Optional.of(ImmutableList.of("d.thrift")), ThriftIncludes.parse(contents));
+  }
+
+  @Test
+  public void testBlockCommentMarkersInLineCommentsAreIgnored() {
+    String contents = Joiner.on('\n').join(
+        "// see foo/*.thrift",
+        "include \"a.thrift\"",
+        "# and bar/*",
+        "include \"b.thrift\"",
+        "// */");
+    assertEquals(
+        Optional.of(ImmutableList.of("a.thrift", "b.thrift")),
+        ThriftIncludes.parse(contents));
+  }
+
+  @Test
+  public void testCommentMarkersInStringLiteralsAreIgnored() {
+    String contents = Joiner.on('\n').join(
+        "const string URL = \"http://example.com/#anchor\"",
+        "const string GLOB = '/*.thrift'",
+        "include \"a.thrift\"",
+        "const string END = \"*/\"",
+        "include \"b.thrift\"");
+    assertEquals(
+        Optional.of(ImmutableList.of("a.thrift", "b.thrift")),
+        ThriftIncludes.parse(contents));
+  }
+
+  @Test
+  public void testContentsThatCannotBeTokenizedAreNotParsed() {
+    assertFalse(ThriftIncludes.parse("include \"a.thrift\"\n/* unterminated").isPresent());
+    assertFalse(ThriftIncludes.parse("const string S = \"unterminated").isPresent());
+    assertFalse(ThriftIncludes.parse("const string S = \"ambiguous\\\"\"").isPresent());
+    assertFalse(ThriftIncludes.parse("include a.thrift").isPresent());
+  }
+
+}
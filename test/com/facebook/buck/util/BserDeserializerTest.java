@@ -0,0 +1,174 @@
+/*
+ * Copyright 2014-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.io.ByteStreams;
+import com.google.common.primitives.Bytes;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+public class BserDeserializerTest {
+
+  @Test
+  public void testScalars() throws IOException {
+    BserDeserializer deserializer = new BserDeserializer(ByteOrder.LITTLE_ENDIAN);
+    InputStream input = new ByteArrayInputStream(Bytes.concat(
+        pdu(0x03, 0x7f),
+        pdu(0x04, 0x00, 0x80),
+        pdu(0x05, 0x01, 0x00, 0x00, 0x80),
+        pdu(0x06, 0xff, 0xff, 0xff, 0xff, 0xff, 0xff, 0xff, 0xff),
+        pdu(0x07, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0xf8, 0x3f),
+        pdu(0x08),
+        pdu(0x09),
+        pdu(0x0a),
+        pdu(0x02, 0x03, 0x03, 'f', 'o', 'o')));
+
+    assertEquals(127L, deserializer.deserializeBserValue(input));
+    assertEquals((long) Short.MIN_VALUE, deserializer.deserializeBserValue(input));
+    assertEquals(Integer.MIN_VALUE + 1L, deserializer.deserializeBserValue(input));
+    assertEquals(-1L, deserializer.deserializeBserValue(input));
+    assertEquals(1.5, deserializer.deserializeBserValue(input));
+    assertEquals(Boolean.TRUE, deserializer.deserializeBserValue(input));
+    assertEquals(Boolean.FALSE, deserializer.deserializeBserValue(input));
+    assertEquals(null, deserializer.deserializeBserValue(input));
+    assertEquals("foo", deserializer.deserializeBserValue(input));
+    try {
+      deserializer.deserializeBserValue(input);
+      fail("Should have reached the end of the stream.");
+    } catch (EOFException e) {
+      // Expected.
+    }
+  }
+
+  @Test
+  public void testIntegersUseTheGivenByteOrder() throws IOException {
+    // The length of the PDU is written in the same byte order as the values.
+    byte[] value = {0x00, 0x01, 0x03, 0x03, 0x04, 0x01, 0x02};
+    assertEquals(
+        0x0201L,
+        new BserDeserializer(ByteOrder.LITTLE_ENDIAN)
+            .deserializeBserValue(new ByteArrayInputStream(value)));
+    assertEquals(
+        0x0102L,
+        new BserDeserializer(ByteOrder.BIG_ENDIAN)
+            .deserializeBserValue(new ByteArrayInputStream(value)));
+  }
+
+  @Test
+  public void testArraysAndObjects() throws IOException {
+    // {"files": ["a", 1], "is_fresh_instance": false}
+    byte[] value = pdu(
+        0x01, 0x03, 0x02,
+        0x02, 0x03, 0x05, 'f', 'i', 'l', 'e', 's',
+        0x00, 0x03, 0x02,
+        0x02, 0x03, 0x01, 'a',
+        0x03, 0x01,
+        0x02, 0x03, 0x11, 'i', 's', '_', 'f', 'r', 'e', 's', 'h', '_',
+        'i', 'n', 's', 't', 'a', 'n', 'c', 'e',
+        0x09);
+
+    assertEquals(
+        ImmutableMap.of(
+            "files", ImmutableList.of("a", 1L),
+            "is_fresh_instance", false),
+        new BserDeserializer(ByteOrder.LITTLE_ENDIAN)
+            .deserializeBserValue(new ByteArrayInputStream(value)));
+  }
+
+  @Test
+  public void testTemplatesExpandToObjectsWithoutSkippedKeys() throws IOException {
+    // [{"name": "a", "exists": true}, {"name": "b"}], written as a template.
+    byte[] value = pdu(
+        0x0b,
+        0x00, 0x03, 0x02,
+        0x02, 0x03, 0x04, 'n', 'a', 'm', 'e',
+        0x02, 0x03, 0x06, 'e', 'x', 'i', 's', 't', 's',
+        0x03, 0x02,
+        0x02, 0x03, 0x01, 'a',
+        0x08,
+        0x02, 0x03, 0x01, 'b',
+        0x0c);
+
+    assertEquals(
+        ImmutableList.of(
+            ImmutableMap.of("name", "a", "exists", true),
+            ImmutableMap.of("name", "b")),
+        new BserDeserializer(ByteOrder.LITTLE_ENDIAN)
+            .deserializeBserValue(new ByteArrayInputStream(value)));
+  }
+
+  @Test
+  public void testLargeValuesGrowTheBuffer() throws IOException {
+    byte[] name = new byte[100000];
+    Arrays.fill(name, (byte) 'x');
+    ByteArrayOutputStream value = new ByteArrayOutputStream();
+    value.write(new byte[] {0x02, 0x05});
+    value.write(ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN).putInt(name.length).array());
+    value.write(name);
+
+    assertEquals(
+        new String(name, Charsets.US_ASCII),
+        new BserDeserializer(ByteOrder.LITTLE_ENDIAN)
+            .deserializeBserValue(new ByteArrayInputStream(pdu(value.toByteArray()))));
+  }
+
+  @Test(expected = IOException.class)
+  public void testInvalidHeaderIsRejected() throws IOException {
+    new BserDeserializer(ByteOrder.LITTLE_ENDIAN)
+        .deserializeBserValue(new ByteArrayInputStream(new byte[] {'{', '}', 0x03, 0x00}));
+  }
+
+  @Test(expected = IOException.class)
+  public void testTruncatedValueIsRejected() throws IOException {
+    byte[] value = pdu(0x02, 0x03, 0x03, 'f', 'o', 'o');
+    new BserDeserializer(ByteOrder.LITTLE_ENDIAN)
+        .deserializeBserValue(ByteStreams.limit(new ByteArrayInputStream(value), value.length - 1));
+  }
+
+  private static byte[] pdu(int... value) {
+    byte[] bytes = new byte[value.length];
+    for (int i = 0; i < value.length; i++) {
+      bytes[i] = (byte) value[i];
+    }
+    return pdu(bytes);
+  }
+
+  /** Wraps an encoded value in a PDU whose length is written as a little-endian int32. */
+  private static byte[] pdu(byte[] value) {
+    return ByteBuffer.allocate(7 + value.length)
+        .order(ByteOrder.LITTLE_ENDIAN)
+        .put(new byte[] {0x00, 0x01, 0x05})
+        .putInt(value.length)
+        .put(value)
+        .array();
+  }
+}
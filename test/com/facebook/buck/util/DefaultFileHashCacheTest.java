@@ -72,6 +72,44 @@ public class DefaultFileHashCacheTest {
     assertFalse("Cache should not contain path", cache.contains(path));
   }
 
+  @Test
+  public void whenNotifiedOfOverflowEventUnchangedFilesAreKept() throws IOException {
+    DefaultFileHashCache cache = new DefaultFileHashCache(new ProjectFilesystem(tmp.getRoot()));
+    File inputFile = tmp.newFile("SomeClass.java");
+    Files.write("class SomeClass {}".getBytes(Charsets.US_ASCII), inputFile);
+    Path path = Paths.get("SomeClass.java");
+    cache.get(path);
+    cache.onFileSystemChange(createOverflowEvent());
+    assertTrue("Cache should still contain path", cache.contains(path));
+  }
+
+  @Test
+  public void whenNotifiedOfOverflowEventChangedFilesAreRemoved() throws IOException {
+    DefaultFileHashCache cache = new DefaultFileHashCache(new ProjectFilesystem(tmp.getRoot()));
+    File inputFile = tmp.newFile("SomeClass.java");
+    Files.write("class SomeClass {}".getBytes(Charsets.US_ASCII), inputFile);
+    Path path = Paths.get("SomeClass.java");
+    HashCode originalHash = cache.get(path);
+
+    Files.write("class SomeClass { int i; }".getBytes(Charsets.US_ASCII), inputFile);
+    cache.onFileSystemChange(createOverflowEvent());
+    assertFalse("Cache should not contain path", cache.contains(path));
+    assertFalse("Hash should reflect the new contents", originalHash.equals(cache.get(path)));
+  }
+
+  @Test
+  public void whenNotifiedOfOverflowEventDeletedFilesAreRemoved() throws IOException {
+    DefaultFileHashCache cache = new DefaultFileHashCache(new ProjectFilesystem(tmp.getRoot()));
+    File inputFile = tmp.newFile("SomeClass.java");
+    Files.write("class SomeClass {}".getBytes(Charsets.US_ASCII), inputFile);
+    Path path = Paths.get("SomeClass.java");
+    cache.get(path);
+
+    assertTrue(inputFile.delete());
+    cache.onFileSystemChange(createOverflowEvent());
+    assertFalse("Cache should not contain path", cache.contains(path));
+  }
+
   @Test
   public void whenNotifiedOfCreateEventCacheEntryIsRemoved() throws IOException {
     DefaultFileHashCache cache =
@@ -0,0 +1,80 @@
+/*
+ * Copyright 2014-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.facebook.buck.testutil.integration.DebuggableTemporaryFolder;
+import com.google.common.base.Charsets;
+import com.google.common.base.Functions;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Maps;
+import com.google.common.io.Files;
+
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Map;
+
+public class FileReconcilerTest {
+
+  @Rule
+  public DebuggableTemporaryFolder tmp = new DebuggableTemporaryFolder();
+
+  @Test
+  public void onlyChangedAndDeletedFilesAreReported() throws IOException, InterruptedException {
+    Map<Path, FileSnapshot> snapshots = Maps.newHashMap();
+    // Enough files to be split across several tasks.
+    for (int i = 0; i < 2000; i++) {
+      File file = tmp.newFile("file" + i);
+      Files.write("contents", file, Charsets.UTF_8);
+      snapshots.put(file.toPath(), FileSnapshot.of(file.toPath()));
+    }
+    File changed = new File(tmp.getRoot(), "file42");
+    Files.append(" and more", changed, Charsets.UTF_8);
+    File deleted = new File(tmp.getRoot(), "file1999");
+    assertTrue(deleted.delete());
+    Path missing = tmp.getRoot().toPath().resolve("missing");
+    snapshots.put(missing, FileSnapshot.MISSING);
+
+    assertEquals(
+        ImmutableSet.of(changed.toPath(), deleted.toPath()),
+        FileReconciler.findChangedPaths(snapshots, Functions.<Path>identity()));
+  }
+
+  @Test
+  public void keysAreResolvedWithTheAbsolutifier() throws IOException, InterruptedException {
+    ProjectFilesystem filesystem = new ProjectFilesystem(tmp.getRoot());
+    File file = tmp.newFile("SomeClass.java");
+    Path path = tmp.getRoot().toPath().relativize(file.toPath());
+    Map<Path, FileSnapshot> snapshots = Maps.newHashMap();
+    snapshots.put(path, FileSnapshot.of(file.toPath()));
+
+    assertEquals(
+        ImmutableSet.<Path>of(),
+        FileReconciler.findChangedPaths(snapshots, filesystem.getAbsolutifier()));
+
+    Files.write("class SomeClass {}", file, Charsets.UTF_8);
+    assertEquals(
+        ImmutableSet.of(path),
+        FileReconciler.findChangedPaths(snapshots, filesystem.getAbsolutifier()));
+  }
+}
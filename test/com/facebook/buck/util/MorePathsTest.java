@@ -18,6 +18,7 @@ package com.facebook.buck.util;
 
 import static org.hamcrest.CoreMatchers.equalTo;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
 
@@ -211,4 +212,11 @@ public class MorePathsTest {
     Path p2 = Paths.get("c/d/e");
     assertThat(MorePaths.relativize(p1, p2), equalTo(Paths.get("../c/d/e")));
   }
+
+  @Test
+  public void internReturnsTheSameInstanceForEqualPaths() {
+    Path first = MorePaths.intern(Paths.get("foo/bar"));
+
+    assertSame(first, MorePaths.intern(Paths.get("foo").resolve("bar")));
+  }
 }
@@ -17,6 +17,8 @@
 package com.facebook.buck.util;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 import com.google.common.base.Optional;
 
@@ -24,6 +26,7 @@ import org.junit.Test;
 
 import java.io.IOException;
 import java.util.EnumSet;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public class ProcessExecutorTest {
   @Test
@@ -54,4 +57,71 @@ public class ProcessExecutorTest {
     assertEquals("Hello\n", result.getStdout().get());
     assertEquals("", result.getStderr().get());
   }
+
+  @Test
+  public void testStdinIsWrittenWhileOutputIsConsumed() throws IOException, InterruptedException {
+    Console console = new Console(
+        Verbosity.ALL, new CapturingPrintStream(), new CapturingPrintStream(), Ansi.withoutTty());
+    ProcessExecutor executor = new ProcessExecutor(console);
+    ProcessExecutor.Result result = executor.execute(
+        Runtime.getRuntime().exec("cat"),
+        EnumSet.of(ProcessExecutor.Option.EXPECTING_STD_OUT),
+        Optional.of("Hello\nworld\n"));
+    assertEquals(0, result.getExitCode());
+    assertEquals("Hello\nworld\n", result.getStdout().get());
+    assertEquals("", result.getStderr().get());
+  }
+
+  @Test
+  public void testInterruptingExecuteDestroysTheProcess() throws IOException, InterruptedException {
+    Console console = new Console(
+        Verbosity.ALL, new CapturingPrintStream(), new CapturingPrintStream(), Ansi.withoutTty());
+    final ProcessExecutor executor = new ProcessExecutor(console);
+    final Process process = Runtime.getRuntime().exec("sleep 600");
+    final AtomicBoolean wasInterrupted = new AtomicBoolean(false);
+    Thread thread = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          executor.execute(process);
+        } catch (InterruptedException e) {
+          wasInterrupted.set(true);
+        }
+      }
+    });
+    thread.start();
+
+    // Give the thread time to start waiting for the process.
+    Thread.sleep(200);
+    thread.interrupt();
+    thread.join(10000);
+
+    try {
+      assertFalse("execute() should return when interrupted.", thread.isAlive());
+      assertTrue(wasInterrupted.get());
+      // The process has been destroyed, so it has an exit value.
+      process.exitValue();
+    } finally {
+      process.destroy();
+    }
+  }
+
+  @Test
+  public void testStatisticsCountLaunchedAndExecutedProcesses()
+      throws IOException, InterruptedException {
+    Console console = new Console(
+        Verbosity.ALL, new CapturingPrintStream(), new CapturingPrintStream(), Ansi.withoutTty());
+    ProcessExecutor executor = new ProcessExecutor(console);
+    ProcessExecutor.Statistics before = ProcessExecutor.getStatistics();
+
+    for (int i = 0; i < 3; i++) {
+      executor.execute(executor.launchProcess(new ProcessBuilder("true")));
+    }
+
+    ProcessExecutor.Statistics statistics = ProcessExecutor.getStatistics().since(before);
+    assertTrue(statistics.getProcessesLaunched() >= 3);
+    assertTrue(statistics.getProcessesExecuted() >= 3);
+    assertTrue(statistics.getTotalSpawnNanos() > 0);
+    assertTrue(statistics.getTotalExecutionNanos() > 0);
+  }
 }
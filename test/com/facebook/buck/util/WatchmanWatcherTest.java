@@ -16,519 +16,603 @@
 
 package com.facebook.buck.util;
 
-import static org.easymock.EasyMock.capture;
-import static org.easymock.EasyMock.createMock;
-import static org.easymock.EasyMock.createStrictMock;
-import static org.easymock.EasyMock.expect;
-import static org.easymock.EasyMock.expectLastCall;
-import static org.easymock.EasyMock.replay;
-import static org.easymock.EasyMock.verify;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
-import com.facebook.buck.timing.Clock;
-import com.facebook.buck.timing.IncrementingFakeClock;
+import com.facebook.buck.timing.DefaultClock;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 
 import com.google.common.base.Charsets;
-import com.google.common.base.Joiner;
-import com.google.common.base.Preconditions;
-import com.google.common.base.Suppliers;
+import com.google.common.base.Supplier;
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Iterators;
 import com.google.common.collect.Lists;
-import com.google.common.collect.Sets;
 import com.google.common.eventbus.EventBus;
 import com.google.common.eventbus.Subscribe;
 
-import org.easymock.Capture;
 import org.hamcrest.Matchers;
 import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
-import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardWatchEventKinds;
 import java.nio.file.WatchEvent;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
 
 public class WatchmanWatcherTest {
 
+  private static final String COOKIE_PREFIX = WatchmanWatcher.createCookiePrefix("uuid");
+  private static final String SUBSCRIBE_COMMAND = "[\"subscribe\"]";
+
+  @Rule
+  public TemporaryFolder cookieDirectory = new TemporaryFolder();
+
+  private EventBus eventBus;
+  private List<WatchEvent<?>> events;
+
+  @Before
+  public void setUp() {
+    events = new ArrayList<>();
+    eventBus = new EventBus("watchman test");
+    eventBus.register(
+        new Object() {
+          @Subscribe
+          public void listen(WatchEvent<?> event) {
+            events.add(event);
+          }
+        });
+  }
+
   @After
   public void cleanUp() {
     // Clear interrupted state so it doesn't affect any other test.
     Thread.interrupted();
   }
 
+  @Test
+  public void whenSubscriptionStartsThenSubscribeCommandIsSentAndOverflowEventIsGenerated()
+      throws IOException, InterruptedException {
+    FakeWatchmanProcess process = new FakeWatchmanProcess(/* reportCookies */ true);
+    WatchmanWatcher watcher = createWatcher(process);
+    watcher.postEvents();
+    watcher.close();
+
+    assertEquals(SUBSCRIBE_COMMAND, process.getStdin());
+    assertEquals(1, events.size());
+    assertEquals("Should be overflow event.",
+        StandardWatchEventKinds.OVERFLOW,
+        events.get(0).kind());
+    assertTrue(process.isDestroyed());
+  }
+
   @Test
   public void whenFilesListIsEmptyThenNoEventsAreGenerated()
       throws IOException, InterruptedException {
-    String watchmanOutput = Joiner.on('\n').join(
-        "{",
-        "\"version\": \"2.9.2\",",
-        "\"clock\": \"c:1386170113:26390:5:50273\",",
-        "\"is_fresh_instance\": false,",
-        "\"files\": []",
-        "}");
-    EventBus eventBus = createStrictMock(EventBus.class);
-    Process process = createWaitForProcessMock(watchmanOutput);
-    replay(eventBus, process);
-    WatchmanWatcher watcher = createWatcher(
-        eventBus,
-        process,
-        new IncrementingFakeClock(),
-        new ObjectMapper());
+    FakeWatchmanProcess process = new FakeWatchmanProcess(/* reportCookies */ true);
+    WatchmanWatcher watcher = createWatcher(process);
+    watcher.postEvents();
+    events.clear();
+
+    process.respond(
+        ImmutableMap.of(
+            "is_fresh_instance", false,
+            "files", ImmutableList.of()));
     watcher.postEvents();
-    verify(eventBus, process);
+    watcher.close();
+
+    assertEquals(ImmutableList.<WatchEvent<?>>of(), events);
   }
 
   @Test
   public void whenNameThenModifyEventIsGenerated() throws IOException, InterruptedException {
-    String watchmanOutput = Joiner.on('\n').join(
-        "{\"files\": [",
-            "{",
-                "\"name\": \"foo/bar/baz\"",
-            "}",
-        "]}");
-    Capture<WatchEvent<Path>> eventCapture = new Capture<>();
-    EventBus eventBus = createStrictMock(EventBus.class);
-    eventBus.post(capture(eventCapture));
-    Process process = createWaitForProcessMock(watchmanOutput);
-    replay(eventBus, process);
-    WatchmanWatcher watcher = createWatcher(
-        eventBus,
-        process,
-        new IncrementingFakeClock(),
-        new ObjectMapper());
-    watcher.postEvents();
-    verify(eventBus, process);
+    WatchEvent<?> event = postSingleFileEvent(ImmutableMap.of("name", "foo/bar/baz"));
     assertEquals("Should be modify event.",
         StandardWatchEventKinds.ENTRY_MODIFY,
-        eventCapture.getValue().kind());
+        event.kind());
     assertEquals("Path should match watchman output.",
         "foo/bar/baz",
-        eventCapture.getValue().context().toString());
+        event.context().toString());
   }
 
   @Test
   public void whenNewIsTrueThenCreateEventIsGenerated() throws IOException, InterruptedException {
-    String watchmanOutput = Joiner.on('\n').join(
-        "{\"files\": [",
-            "{",
-                "\"name\": \"foo/bar/baz\",",
-                "\"new\": true",
-            "}",
-        "]}");
-    Capture<WatchEvent<Path>> eventCapture = new Capture<>();
-    EventBus eventBus = createStrictMock(EventBus.class);
-    eventBus.post(capture(eventCapture));
-    Process process = createWaitForProcessMock(watchmanOutput);
-    replay(eventBus, process);
-    WatchmanWatcher watcher = createWatcher(
-        eventBus,
-        process,
-        new IncrementingFakeClock(),
-        new ObjectMapper());
-    watcher.postEvents();
-    verify(eventBus, process);
+    WatchEvent<?> event = postSingleFileEvent(
+        ImmutableMap.of(
+            "name", "foo/bar/baz",
+            "new", true));
     assertEquals("Should be create event.",
         StandardWatchEventKinds.ENTRY_CREATE,
-        eventCapture.getValue().kind());
+        event.kind());
   }
 
   @Test
   public void whenExistsIsFalseThenDeleteEventIsGenerated()
       throws IOException, InterruptedException {
-    String watchmanOutput = Joiner.on('\n').join(
-        "{\"files\": [",
-            "{",
-                "\"name\": \"foo/bar/baz\",",
-                "\"exists\": false",
-            "}",
-        "]}");
-    Capture<WatchEvent<Path>> eventCapture = new Capture<>();
-    EventBus eventBus = createStrictMock(EventBus.class);
-    eventBus.post(capture(eventCapture));
-    Process process = createWaitForProcessMock(watchmanOutput);
-    replay(eventBus, process);
-    WatchmanWatcher watcher = createWatcher(
-        eventBus,
-        process,
-        new IncrementingFakeClock(),
-        new ObjectMapper());
-    watcher.postEvents();
-    verify(eventBus, process);
+    WatchEvent<?> event = postSingleFileEvent(
+        ImmutableMap.of(
+            "name", "foo/bar/baz",
+            "exists", false));
     assertEquals("Should be delete event.",
         StandardWatchEventKinds.ENTRY_DELETE,
-        eventCapture.getValue().kind());
+        event.kind());
   }
 
   @Test
   public void whenNewAndNotExistsThenDeleteEventIsGenerated()
       throws IOException, InterruptedException {
-    String watchmanOutput = Joiner.on('\n').join(
-        "{\"files\": [",
-            "{",
-                "\"name\": \"foo/bar/baz\",",
-                "\"new\": true,",
-                "\"exists\": false",
-             "}",
-        "]}");
-    Capture<WatchEvent<Path>> eventCapture = new Capture<>();
-    EventBus eventBus = createStrictMock(EventBus.class);
-    eventBus.post(capture(eventCapture));
-    Process process = createWaitForProcessMock(watchmanOutput);
-    replay(eventBus, process);
-    WatchmanWatcher watcher = createWatcher(
-        eventBus,
-        process,
-        new IncrementingFakeClock(),
-        new ObjectMapper());
-    watcher.postEvents();
-    verify(eventBus, process);
+    WatchEvent<?> event = postSingleFileEvent(
+        ImmutableMap.of(
+            "name", "foo/bar/baz",
+            "new", true,
+            "exists", false));
     assertEquals("Should be delete event.",
         StandardWatchEventKinds.ENTRY_DELETE,
-        eventCapture.getValue().kind());
+        event.kind());
   }
 
   @Test
   public void whenMultipleFilesThenMultipleEventsGenerated()
       throws IOException, InterruptedException {
-    String watchmanOutput = Joiner.on('\n').join(
-        "{\"files\": [",
-            "{",
-                "\"name\": \"foo/bar/baz\"",
-            "},",
-            "{",
-                "\"name\": \"foo/bar/boz\"",
-            "}",
-        "]}");
-    EventBus eventBus = createStrictMock(EventBus.class);
-    Capture<WatchEvent<Path>> firstEvent = new Capture<>();
-    Capture<WatchEvent<Path>> secondEvent = new Capture<>();
-    eventBus.post(capture(firstEvent));
-    eventBus.post(capture(secondEvent));
-    Process process = createWaitForProcessMock(watchmanOutput);
-    replay(eventBus, process);
-    WatchmanWatcher watcher = createWatcher(
-        eventBus,
-        process,
-        new IncrementingFakeClock(),
-        new ObjectMapper());
+    FakeWatchmanProcess process = new FakeWatchmanProcess(/* reportCookies */ true);
+    WatchmanWatcher watcher = createWatcher(process);
     watcher.postEvents();
-    verify(eventBus, process);
+    events.clear();
+
+    process.respond(
+        ImmutableMap.of(
+            "files", ImmutableList.of(
+                ImmutableMap.of("name", "foo/bar/baz"),
+                ImmutableMap.of("name", "foo/bar/boz"))));
+    watcher.postEvents();
+    watcher.close();
+
+    assertEquals(2, events.size());
     assertEquals("Path should match watchman output.",
         "foo/bar/baz",
-        firstEvent.getValue().context().toString());
+        events.get(0).context().toString());
     assertEquals("Path should match watchman output.",
         "foo/bar/boz",
-        secondEvent.getValue().context().toString());
+        events.get(1).context().toString());
   }
 
   @Test
-  public void whenTooManyChangesThenOverflowEventGenerated()
+  public void whenManyChangesThenAllEventsAreGeneratedWithoutOverflow()
       throws IOException, InterruptedException {
-    String watchmanOutput = Joiner.on('\n').join(
-        "{\"files\": [",
-            "{",
-                "\"name\": \"foo/bar/baz\"",
-            "}",
-        "]}");
-    Capture<WatchEvent<Path>> eventCapture = new Capture<>();
-    EventBus eventBus = createStrictMock(EventBus.class);
-    eventBus.post(capture(eventCapture));
-    Process process = createProcessMock(watchmanOutput);
-    process.destroy();
-    expectLastCall();
-    replay(eventBus, process);
-    WatchmanWatcher watcher = createWatcher(
-        eventBus,
-        process,
-        new IncrementingFakeClock(),
-        new ObjectMapper(),
-        -1 /* overflow */,
-        10000 /* timeout */);
+    FakeWatchmanProcess process = new FakeWatchmanProcess(/* reportCookies */ true);
+    WatchmanWatcher watcher = createWatcher(process);
     watcher.postEvents();
-    verify(eventBus, process);
-    assertEquals("Should be overflow event.",
-        StandardWatchEventKinds.OVERFLOW,
-        eventCapture.getValue().kind());
+    events.clear();
+
+    int fileCount = 20000;
+    List<Object> files = new ArrayList<>();
+    for (int i = 0; i < fileCount; i++) {
+      files.add(ImmutableMap.of("name", "foo/file" + i));
+    }
+    // A branch switch is reported in several notifications.
+    for (List<Object> partition : Lists.partition(files, 1000)) {
+      process.respond(ImmutableMap.of("files", partition));
+    }
+    watcher.postEvents();
+    watcher.close();
+
+    assertEquals(fileCount, events.size());
+    for (WatchEvent<?> event : events) {
+      assertEquals(StandardWatchEventKinds.ENTRY_MODIFY, event.kind());
+    }
+    assertEquals("foo/file" + (fileCount - 1), events.get(fileCount - 1).context().toString());
   }
 
   @Test
-  public void whenWatchmanFailsThenOverflowEventGenerated()
+  public void whenCookieIsNotReportedThenOverflowEventGenerated()
       throws IOException, InterruptedException {
-    String watchmanOutput = "";
-    Capture<WatchEvent<Path>> eventCapture = new Capture<>();
-    EventBus eventBus = createStrictMock(EventBus.class);
-    eventBus.post(capture(eventCapture));
-    Process process = createWaitForProcessMock(watchmanOutput, 1);
-    replay(eventBus, process);
-    WatchmanWatcher watcher = createWatcher(
-        eventBus,
-        process,
-        new IncrementingFakeClock(),
-        new ObjectMapper());
+    FakeWatchmanProcess process = new FakeWatchmanProcess(/* reportCookies */ false);
+    WatchmanWatcher watcher = createWatcher(process);
+    watcher.postEvents();
+    watcher.close();
+
+    assertEquals(2, events.size());
+    for (WatchEvent<?> event : events) {
+      assertEquals("Should be overflow event.",
+          StandardWatchEventKinds.OVERFLOW,
+          event.kind());
+    }
+  }
+
+  @Test
+  public void whenSubscriptionEndsThenOverflowEventGeneratedAndSubscriptionRestarted()
+      throws IOException, InterruptedException {
+    FakeWatchmanProcess firstProcess = new FakeWatchmanProcess(/* reportCookies */ true);
+    firstProcess.endSubscription();
+    FakeWatchmanProcess secondProcess = new FakeWatchmanProcess(/* reportCookies */ true);
+    WatchmanWatcher watcher = createWatcher(firstProcess, secondProcess);
     try {
       watcher.postEvents();
-      fail("Should have thrown IOException.");
+      fail("Should have thrown WatchmanWatcherException.");
     } catch (WatchmanWatcherException e) {
-      assertTrue("Should be watchman error", e.getMessage().startsWith("Watchman failed"));
+      assertThat(e.getMessage(), Matchers.containsString("ended unexpectedly"));
     }
-    verify(eventBus, process);
-    assertEquals("Should be overflow event.",
-        StandardWatchEventKinds.OVERFLOW,
-        eventCapture.getValue().kind());
+    assertEquals(2, events.size());
+    assertEquals(StandardWatchEventKinds.OVERFLOW, events.get(1).kind());
+    events.clear();
+
+    watcher.postEvents();
+    watcher.close();
+
+    assertEquals(SUBSCRIBE_COMMAND, secondProcess.getStdin());
+    assertEquals(1, events.size());
+    assertEquals(StandardWatchEventKinds.OVERFLOW, events.get(0).kind());
   }
 
   @Test
   public void whenWatchmanInterruptedThenOverflowEventGenerated()
       throws IOException, InterruptedException {
-    String watchmanOutput = "";
-    String message = "Boo!";
-    Capture<WatchEvent<Path>> eventCapture = new Capture<>();
-    EventBus eventBus = createStrictMock(EventBus.class);
-    eventBus.post(capture(eventCapture));
-    Process process = createWaitForProcessMock(watchmanOutput, new InterruptedException(message));
-    process.destroy();
-    replay(eventBus, process);
-    WatchmanWatcher watcher = createWatcher(
-        eventBus,
-        process,
-        new IncrementingFakeClock(),
-        new ObjectMapper());
+    FakeWatchmanProcess process = new FakeWatchmanProcess(/* reportCookies */ true);
+    WatchmanWatcher watcher = createWatcher(process);
+    watcher.postEvents();
+    events.clear();
+
+    Thread.currentThread().interrupt();
     try {
       watcher.postEvents();
+      fail("Should have thrown InterruptedException.");
     } catch (InterruptedException e) {
-      assertEquals("Should be test interruption.", e.getMessage(), message);
+      // Expected.
+    } finally {
+      watcher.close();
     }
-    verify(eventBus, process);
     assertTrue(Thread.currentThread().isInterrupted());
+    assertEquals(1, events.size());
     assertEquals("Should be overflow event.",
         StandardWatchEventKinds.OVERFLOW,
-        eventCapture.getValue().kind());
+        events.get(0).kind());
   }
 
   @Test
-  public void whenQueryResultContainsErrorThenHumanReadableExceptionThrown()
+  public void whenSubscriptionContainsErrorThenHumanReadableExceptionThrown()
       throws IOException, InterruptedException {
     String watchmanError = "Watch does not exist.";
-    String watchmanOutput = Joiner.on('\n').join(
-        "{",
-        "\"version\": \"2.9.2\",",
-        "\"error\": \"" + watchmanError + "\"",
-        "}");
-    EventBus eventBus = createStrictMock(EventBus.class);
-    Process process = createWaitForProcessMock(watchmanOutput);
-    replay(eventBus, process);
-    WatchmanWatcher watcher = createWatcher(
-        eventBus,
-        process,
-        new IncrementingFakeClock(),
-        new ObjectMapper());
+    FakeWatchmanProcess process = new FakeWatchmanProcess(/* reportCookies */ true);
+    process.respond(
+        ImmutableMap.of(
+            "version", "2.9.2",
+            "error", watchmanError));
+    WatchmanWatcher watcher = createWatcher(process);
     try {
       watcher.postEvents();
-      fail("Should have thrown RuntimeException");
-    } catch (RuntimeException e) {
+      fail("Should have thrown WatchmanWatcherException.");
+    } catch (WatchmanWatcherException e) {
       assertThat("Should contain watchman error.",
           e.getMessage(),
           Matchers.containsString(watchmanError));
     }
+    assertTrue("Subscription should have been closed.", process.isDestroyed());
+    assertEquals(StandardWatchEventKinds.OVERFLOW, events.get(events.size() - 1).kind());
   }
 
   @Test
   public void whenWatchmanInstanceIsFreshAllCachesAreCleared()
       throws IOException, InterruptedException {
-    String watchmanOutput = Joiner.on('\n').join(
-        "{",
-        "\"version\": \"2.9.2\",",
-        "\"clock\": \"c:1386170113:26390:5:50273\",",
-        "\"is_fresh_instance\": true,",
-        "\"files\": []",
-        "}");
-
-    final Set<WatchEvent<?>> events = Sets.newHashSet();
-    EventBus bus = new EventBus("watchman test");
-    bus.register(
-        new Object() {
-          @Subscribe
-          public void listen(WatchEvent<?> event) {
-            events.add(event);
-          }
-        });
-    Process process = createWaitForProcessMock(watchmanOutput);
-    replay(process);
-    WatchmanWatcher watcher = createWatcher(
-        bus,
-        process,
-        new IncrementingFakeClock(),
-        new ObjectMapper());
+    FakeWatchmanProcess process = new FakeWatchmanProcess(/* reportCookies */ true);
+    WatchmanWatcher watcher = createWatcher(process);
     watcher.postEvents();
+    events.clear();
 
-    verify(process);
-    boolean overflowSeen = false;
-    for (WatchEvent<?> event : events) {
-      overflowSeen |= event.kind().equals(StandardWatchEventKinds.OVERFLOW);
-    }
-    assertTrue(overflowSeen);
+    process.respond(
+        ImmutableMap.of(
+            "is_fresh_instance", true,
+            "files", ImmutableList.of()));
+    watcher.postEvents();
+    watcher.close();
+
+    assertEquals(1, events.size());
+    assertEquals(StandardWatchEventKinds.OVERFLOW, events.get(0).kind());
   }
 
   @Test
-  public void whenParseTimesOutThenOverflowGenerated()
-      throws IOException, InterruptedException {
-    String watchmanOutput = Joiner.on('\n').join(
-        "{",
-        "\"version\": \"2.9.2\",",
-        "\"clock\": \"c:1386170113:26390:5:50273\",",
-        "\"is_fresh_instance\": true,",
-        "\"files\": []",
-        "}");
-
-    final Set<WatchEvent<?>> events = Sets.newHashSet();
-    EventBus bus = new EventBus("watchman test");
-    bus.register(
-        new Object() {
-          @Subscribe
-          public void listen(WatchEvent<?> event) {
-            events.add(event);
-          }
-        });
-    Process process = createProcessMock(watchmanOutput);
-    process.destroy();
-    replay(process);
-    WatchmanWatcher watcher = createWatcher(
-        bus,
-        process,
-        new IncrementingFakeClock(),
-        new ObjectMapper(),
-        200 /* overflow */,
-        -1 /* timeout */);
+  public void cookiesAreDeletedAfterPostingEvents() throws IOException, InterruptedException {
+    FakeWatchmanProcess process = new FakeWatchmanProcess(/* reportCookies */ true);
+    WatchmanWatcher watcher = createWatcher(process);
+    watcher.postEvents();
     watcher.postEvents();
+    watcher.close();
 
-    verify(process);
-    boolean overflowSeen = false;
-    for (WatchEvent<?> event : events) {
-      overflowSeen |= event.kind().equals(StandardWatchEventKinds.OVERFLOW);
-    }
-    assertTrue(overflowSeen);
+    assertEquals(0, cookieDirectory.getRoot().list().length);
   }
 
   @Test
-  public void watchmanQueryWithRepoPathNeedingEscapingFormatsToCorrectJson() {
-    String query = WatchmanWatcher.createQuery(
+  public void watchmanSubscribeCommandWithRepoPathNeedingEscapingFormatsToCorrectJson() {
+    String command = WatchmanWatcher.createSubscribeCommand(
         new ObjectMapper(),
         "/path/to/\"repo\"",
-        "uuid",
+        COOKIE_PREFIX,
         Lists.<Path>newArrayList(),
         Lists.<String>newArrayList());
     assertEquals(
-        "[\"query\",\"/path/to/\\\"repo\\\"\",{\"since\":\"n:buckduuid\"," +
-        "\"expression\":[\"not\",[\"anyof\"," +
-        "[\"type\",\"d\"]]]," +
+        "[\"subscribe\",\"/path/to/\\\"repo\\\"\",\"buckd-uuid-\",{" +
+        "\"expression\":[\"anyof\"," +
+        "[\"match\",\".buckd-watchman-cookie-uuid-*\",\"wholename\"]," +
+        "[\"not\",[\"anyof\"," +
+        "[\"type\",\"d\"]]]]," +
         "\"empty_on_fresh_instance\":true,\"fields\":[\"name\",\"exists\",\"new\"]}]",
-        query);
+        command);
   }
 
   @Test
-  public void watchmanQueryWithExcludePathsAddsExpressionToQuery() {
-    String query = WatchmanWatcher.createQuery(
+  public void watchmanSubscribeCommandWithExcludePathsAddsExpressionToCommand() {
+    String command = WatchmanWatcher.createSubscribeCommand(
         new ObjectMapper(),
         "/path/to/repo",
-        "uuid",
+        COOKIE_PREFIX,
         Lists.<Path>newArrayList(Paths.get("foo"), Paths.get("bar/baz")),
         Lists.<String>newArrayList());
     assertEquals(
-        "[\"query\",\"/path/to/repo\",{\"since\":\"n:buckduuid\"," +
-        "\"expression\":[\"not\",[\"anyof\"," +
+        "[\"subscribe\",\"/path/to/repo\",\"buckd-uuid-\",{" +
+        "\"expression\":[\"anyof\"," +
+        "[\"match\",\".buckd-watchman-cookie-uuid-*\",\"wholename\"]," +
+        "[\"not\",[\"anyof\"," +
         "[\"type\",\"d\"]," +
         "[\"match\",\"foo/*\",\"wholename\"]," +
-        "[\"match\",\"bar/baz/*\",\"wholename\"]]]," +
+        "[\"match\",\"bar/baz/*\",\"wholename\"]]]]," +
         "\"empty_on_fresh_instance\":true,\"fields\":[\"name\",\"exists\",\"new\"]}]",
-        query);
+        command);
   }
 
   @Test
-  public void watchmanQueryWithExcludeGlobsAddsExpressionToQuery() {
-    String query = WatchmanWatcher.createQuery(
+  public void watchmanSubscribeCommandWithExcludeGlobsAddsExpressionToCommand() {
+    String command = WatchmanWatcher.createSubscribeCommand(
         new ObjectMapper(),
         "/path/to/repo",
-        "uuid",
+        COOKIE_PREFIX,
         Lists.<Path>newArrayList(),
         Lists.<String>newArrayList("*/project.pbxproj", "buck-out/*"));
     assertEquals(
-        "[\"query\",\"/path/to/repo\",{\"since\":\"n:buckduuid\"," +
-        "\"expression\":[\"not\",[\"anyof\"," +
+        "[\"subscribe\",\"/path/to/repo\",\"buckd-uuid-\",{" +
+        "\"expression\":[\"anyof\"," +
+        "[\"match\",\".buckd-watchman-cookie-uuid-*\",\"wholename\"]," +
+        "[\"not\",[\"anyof\"," +
         "[\"type\",\"d\"]," +
         "[\"match\",\"*/project.pbxproj\",\"wholename\"]," +
-        "[\"match\",\"buck-out/*\",\"wholename\"]]]," +
+        "[\"match\",\"buck-out/*\",\"wholename\"]]]]," +
         "\"empty_on_fresh_instance\":true,\"fields\":[\"name\",\"exists\",\"new\"]}]",
-        query);
+        command);
   }
 
-  private WatchmanWatcher createWatcher(
-      EventBus eventBus,
-      Process process,
-      Clock clock,
-      ObjectMapper objectMapper) {
-    return createWatcher(
-        eventBus,
-        process,
-        clock,
-        objectMapper,
-        200 /* overflow */,
-        10000 /* timeout */);
+  private WatchEvent<?> postSingleFileEvent(Map<String, ?> file)
+      throws IOException, InterruptedException {
+    FakeWatchmanProcess process = new FakeWatchmanProcess(/* reportCookies */ true);
+    WatchmanWatcher watcher = createWatcher(process);
+    watcher.postEvents();
+    events.clear();
+
+    process.respond(ImmutableMap.of("files", ImmutableList.of(file)));
+    watcher.postEvents();
+    watcher.close();
+
+    assertEquals(1, events.size());
+    return events.get(0);
   }
 
-  private WatchmanWatcher createWatcher(EventBus eventBus,
-                                        Process process,
-                                        Clock clock,
-                                        ObjectMapper objectMapper,
-                                        int overflow,
-                                        long timeoutMillis) {
+  private WatchmanWatcher createWatcher(FakeWatchmanProcess... processes) {
+    final Iterator<FakeWatchmanProcess> processIterator = Iterators.forArray(processes);
     return new WatchmanWatcher(
-        Suppliers.ofInstance(process),
+        new Supplier<Process>() {
+          @Override
+          public Process get() {
+            FakeWatchmanProcess process = processIterator.next();
+            process.start();
+            return process;
+          }
+        },
         eventBus,
-        clock,
-        objectMapper,
-        overflow,
-        timeoutMillis,
-        "" /* query */);
+        new DefaultClock(),
+        500 /* timeout */,
+        cookieDirectory.getRoot().toPath(),
+        COOKIE_PREFIX,
+        SUBSCRIBE_COMMAND);
   }
 
-  private Process createProcessMock(String output) {
-    Process process = createMock(Process.class);
-    expect(process.getInputStream()).andReturn(
-        new ByteArrayInputStream(output.getBytes(Charsets.US_ASCII)));
-    expect(process.getOutputStream()).andReturn(
-        new ByteArrayOutputStream()).times(2);
-    return process;
-  }
+  /**
+   * Stands in for a {@code watchman --persistent} client: anything passed to {@link #respond} is
+   * written to stdout as BSER, and so is a notification for every cookie that appears in the cookie
+   * directory, which is polled on a background thread.
+   */
+  private class FakeWatchmanProcess extends Process implements Runnable {
+
+    private final Object endOfSubscription = new Object();
+    private final boolean reportCookies;
+    private final ByteArrayOutputStream stdin = new ByteArrayOutputStream();
+    private final PipedInputStream stdout = new PipedInputStream(1024 * 1024);
+    private final PipedOutputStream stdoutSink;
+    private final BlockingQueue<Object> responses = new LinkedBlockingQueue<>();
+    private final Set<Path> cookiesReported = new HashSet<>();
+    private volatile boolean destroyed;
+
+    private FakeWatchmanProcess(boolean reportCookies) throws IOException {
+      this.reportCookies = reportCookies;
+      this.stdoutSink = new PipedOutputStream(stdout);
+    }
+
+    public void respond(Object response) {
+      responses.add(response);
+    }
 
-  private Process createWaitForProcessMock(String output) {
-    return createWaitForProcessMock(output, 0);
+    public void endSubscription() {
+      responses.add(endOfSubscription);
+    }
+
+    public String getStdin() {
+      return new String(stdin.toByteArray(), Charsets.UTF_8);
+    }
+
+    public boolean isDestroyed() {
+      return destroyed;
+    }
+
+    private void start() {
+      Thread thread = new Thread(this, "Fake watchman");
+      thread.setDaemon(true);
+      thread.start();
+    }
+
+    @Override
+    public void run() {
+      try (OutputStream output = stdoutSink) {
+        while (!destroyed) {
+          if (!writeResponses(output)) {
+            return;
+          }
+          if (reportCookies) {
+            for (Path cookie : findNewCookies()) {
+              // Everything that changed before the cookie was created must be reported first.
+              if (!writeResponses(output)) {
+                return;
+              }
+              output.write(serializeBser(
+                  ImmutableMap.of(
+                      "files", ImmutableList.of(
+                          ImmutableMap.of(
+                              "name", cookie.getFileName().toString(),
+                              "exists", true,
+                              "new", true)))));
+              output.flush();
+            }
+          }
+          Thread.sleep(5);
+        }
+      } catch (IOException | InterruptedException e) {
+        if (!destroyed) {
+          throw Throwables.propagate(e);
+        }
+      }
+    }
+
+    /**
+     * @return false if the subscription has ended.
+     */
+    private boolean writeResponses(OutputStream output) throws IOException {
+      for (Object response = responses.poll(); response != null; response = responses.poll()) {
+        if (response == endOfSubscription) {
+          return false;
+        }
+        output.write(serializeBser(response));
+      }
+      output.flush();
+      return true;
+    }
+
+    private List<Path> findNewCookies() throws IOException {
+      List<Path> cookies = new ArrayList<>();
+      try (DirectoryStream<Path> stream =
+               Files.newDirectoryStream(cookieDirectory.getRoot().toPath(), COOKIE_PREFIX + "*")) {
+        for (Path cookie : stream) {
+          if (cookiesReported.add(cookie)) {
+            cookies.add(cookie);
+          }
+        }
+      }
+      return cookies;
+    }
+
+    @Override
+    public OutputStream getOutputStream() {
+      return stdin;
+    }
+
+    @Override
+    public InputStream getInputStream() {
+      return stdout;
+    }
+
+    @Override
+    public InputStream getErrorStream() {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public int waitFor() {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public int exitValue() {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void destroy() {
+      destroyed = true;
+    }
   }
 
-  private Process createWaitForProcessMock(String output, Throwable t) throws InterruptedException {
-    Process process = createProcessMock(output);
-    expect(process.waitFor()).andThrow(Preconditions.checkNotNull(t));
-    return process;
+  /** Encodes a value as a BSER PDU in native byte order, which is what Watchman writes. */
+  private static byte[] serializeBser(Object value) {
+    ByteBuffer body = ByteBuffer.allocate(1024 * 1024).order(ByteOrder.nativeOrder());
+    writeBserValue(body, value);
+    body.flip();
+    ByteBuffer pdu = ByteBuffer.allocate(7 + body.remaining()).order(ByteOrder.nativeOrder());
+    pdu.put(new byte[] {0x00, 0x01});
+    writeBserInt(pdu, body.remaining());
+    pdu.put(body);
+    return pdu.array();
   }
 
-  private Process createWaitForProcessMock(String output, int exitCode) {
-    Process process = createProcessMock(output);
-    if (exitCode != 0) {
-      expect(process.getErrorStream()).andReturn(
-          new ByteArrayInputStream("".getBytes(Charsets.US_ASCII)));
-    }
-    try {
-      expect(process.waitFor()).andReturn(exitCode);
-    } catch (InterruptedException e) {
-      fail("Should not throw exception.");
+  private static void writeBserValue(ByteBuffer buffer, Object value) {
+    if (value == null) {
+      buffer.put((byte) 0x0a);
+    } else if (value instanceof Boolean) {
+      buffer.put((Boolean) value ? (byte) 0x08 : (byte) 0x09);
+    } else if (value instanceof Number) {
+      buffer.put((byte) 0x06).putLong(((Number) value).longValue());
+    } else if (value instanceof String) {
+      byte[] bytes = ((String) value).getBytes(Charsets.UTF_8);
+      buffer.put((byte) 0x02);
+      writeBserInt(buffer, bytes.length);
+      buffer.put(bytes);
+    } else if (value instanceof List) {
+      buffer.put((byte) 0x00);
+      writeBserInt(buffer, ((List<?>) value).size());
+      for (Object element : (List<?>) value) {
+        writeBserValue(buffer, element);
+      }
+    } else if (value instanceof Map) {
+      buffer.put((byte) 0x01);
+      writeBserInt(buffer, ((Map<?, ?>) value).size());
+      for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+        writeBserValue(buffer, entry.getKey());
+        writeBserValue(buffer, entry.getValue());
+      }
+    } else {
+      throw new IllegalArgumentException("Cannot encode " + value);
     }
-    return process;
+  }
+
+  private static void writeBserInt(ByteBuffer buffer, int value) {
+    buffer.put((byte) 0x05).putInt(value);
   }
 }
@@ -0,0 +1,68 @@
+/*
+ * Copyright 2014-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.util.concurrent;
+
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+
+public class MoreExecutorsTest {
+
+  private static final Callable<Thread> CURRENT_THREAD = new Callable<Thread>() {
+    @Override
+    public Thread call() {
+      return Thread.currentThread();
+    }
+  };
+
+  @Test
+  public void singleTaskIsRunOnTheCallingThread()
+      throws ExecutionException, InterruptedException {
+    ExecutorService executor = MoreExecutors.newMultiThreadExecutorForTasks("test", 1);
+    try {
+      assertSame(Thread.currentThread(), executor.submit(CURRENT_THREAD).get());
+    } finally {
+      executor.shutdownNow();
+    }
+    assertTrue(executor.isTerminated());
+  }
+
+  @Test(expected = RejectedExecutionException.class)
+  public void tasksAreRejectedOnceTheCallingThreadExecutorIsShutDown() {
+    ExecutorService executor = MoreExecutors.newMultiThreadExecutorForTasks("test", 1);
+    executor.shutdown();
+    executor.submit(CURRENT_THREAD);
+  }
+
+  @Test
+  public void severalTasksAreRunOnThreadsOfTheirOwn()
+      throws ExecutionException, InterruptedException {
+    ExecutorService executor = MoreExecutors.newMultiThreadExecutorForTasks("test", 2);
+    try {
+      Thread thread = executor.submit(CURRENT_THREAD).get();
+      assertTrue(thread.getName().startsWith("test-"));
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+}
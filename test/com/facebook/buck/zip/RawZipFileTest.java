@@ -0,0 +1,94 @@
+/*
+ * Copyright 2014-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.zip;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import com.google.common.base.Optional;
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteStreams;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+public class RawZipFileTest {
+
+  @Rule
+  public TemporaryFolder tmp = new TemporaryFolder();
+
+  @Test
+  public void rawEntriesCanBeCopiedBetweenZipsWithPrependedData() throws IOException {
+    byte[] contents = "To be, or not to be: that is the question".getBytes(UTF_8);
+    Path source = tmp.newFile("source.zip").toPath();
+    try (OutputStream out = Files.newOutputStream(source)) {
+      out.write("#!/usr/bin/env python\n".getBytes(UTF_8));
+      try (CustomZipOutputStream zip = ZipOutputStreams.newOutputStream(out)) {
+        ZipEntry stored = new ZipEntry("stored.txt");
+        stored.setMethod(ZipEntry.STORED);
+        stored.setSize(contents.length);
+        stored.setCompressedSize(contents.length);
+        stored.setCrc(Hashing.crc32().hashBytes(contents).padToLong());
+        zip.putNextEntry(stored);
+        zip.write(contents);
+        CustomZipEntry deflated = new CustomZipEntry("deflated.txt");
+        deflated.setCompressionLevel(9);
+        zip.putNextEntry(deflated);
+        zip.write(contents);
+      }
+    }
+
+    Path copy = tmp.newFile("copy.zip").toPath();
+    try (RawZipFile raw = RawZipFile.open(source);
+         CustomZipOutputStream zip = ZipOutputStreams.newOutputStream(copy.toFile())) {
+      assertFalse(raw.getEntry("missing.txt").isPresent());
+      for (String name : new String[] {"deflated.txt", "stored.txt"}) {
+        Optional<ZipEntry> entry = raw.getEntry(name);
+        assertEquals(contents.length, entry.get().getSize());
+        zip.putNextRawEntry(entry.get());
+        zip.write(raw.getRawContents(name));
+      }
+    }
+
+    try (ZipFile zip = new ZipFile(copy.toFile())) {
+      for (String name : new String[] {"deflated.txt", "stored.txt"}) {
+        try (InputStream in = zip.getInputStream(zip.getEntry(name))) {
+          assertArrayEquals(contents, ByteStreams.toByteArray(in));
+        }
+      }
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rawEntriesMustHaveTheirSizesSet() throws IOException {
+    try (CustomZipOutputStream zip =
+             ZipOutputStreams.newOutputStream(tmp.newFile("out.zip"))) {
+      zip.putNextRawEntry(new ZipEntry("incomplete.txt"));
+    }
+  }
+}